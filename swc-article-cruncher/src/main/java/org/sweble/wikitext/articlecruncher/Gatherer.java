@@ -17,9 +17,11 @@
 
 package org.sweble.wikitext.articlecruncher;
 
+import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
 
 import org.sweble.wikitext.articlecruncher.utils.AbortHandler;
+import org.sweble.wikitext.articlecruncher.utils.StageMetrics;
 import org.sweble.wikitext.articlecruncher.utils.WorkerBase;
 
 public class Gatherer
@@ -32,6 +34,8 @@ public class Gatherer
 	
 	private final BlockingQueue<Job> outTray;
 	
+	private final StageMetrics metrics;
+	
 	// =========================================================================
 	
 	public Gatherer(
@@ -39,6 +43,21 @@ public class Gatherer
 			BlockingQueue<Job> inTray,
 			BlockingQueue<Job> processedJobs,
 			BlockingQueue<Job> outTray)
+	{
+		this(
+				abortHandler,
+				inTray,
+				processedJobs,
+				outTray,
+				new StageMetrics(getClassName(), processedJobs));
+	}
+	
+	public Gatherer(
+			AbortHandler abortHandler,
+			BlockingQueue<Job> inTray,
+			BlockingQueue<Job> processedJobs,
+			BlockingQueue<Job> outTray,
+			StageMetrics metrics)
 	{
 		super(getClassName(), abortHandler);
 		
@@ -47,6 +66,7 @@ public class Gatherer
 		this.inTray = inTray;
 		this.processedJobs = processedJobs;
 		this.outTray = outTray;
+		this.metrics = metrics;
 	}
 	
 	private static String getClassName()
@@ -56,29 +76,46 @@ public class Gatherer
 	
 	// =========================================================================
 	
+	private static final int MAX_BATCH_SIZE = 64;
+	
 	private int count = 0;
 	
 	@Override
 	protected void work() throws Throwable
 	{
+		ArrayList<Job> batch = new ArrayList<Job>(MAX_BATCH_SIZE);
 		while (true)
 		{
-			Job processed = processedJobs.take();
-			++count;
-			
-			processed.signOff(getClass(), null);
-			
-			// TODO: Decide what to do with it.
-			boolean tryAgain = false;
+			// Block for the first job, then take whatever else is available
+			batch.add(processedJobs.take());
+			processedJobs.drainTo(batch, MAX_BATCH_SIZE - 1);
+			metrics.recordBatch(batch.size());
 			
-			if (tryAgain)
+			for (int i = 0; i < batch.size(); ++i)
 			{
-				inTray.put(processed);
-			}
-			else
-			{
-				outTray.put(processed);
+				long start = System.nanoTime();
+				
+				Job processed = batch.get(i);
+				++count;
+				
+				processed.signOff(getClass(), null);
+				
+				// TODO: Decide what to do with it.
+				boolean tryAgain = false;
+				
+				if (tryAgain)
+				{
+					inTray.put(processed);
+				}
+				else
+				{
+					outTray.put(processed);
+				}
+				
+				metrics.record(System.nanoTime() - start);
 			}
+			
+			batch.clear();
 		}
 	}
 	
@@ -86,5 +123,6 @@ public class Gatherer
 	protected void after()
 	{
 		info(getClass().getSimpleName() + " counts " + count + " items");
+		info(metrics);
 	}
 }
@@ -21,12 +21,15 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import org.apache.log4j.Logger;
 import org.sweble.wikitext.articlecruncher.utils.AbortHandler;
 import org.sweble.wikitext.articlecruncher.utils.ExecutorType;
+import org.sweble.wikitext.articlecruncher.utils.MeteredBlockingQueue;
+import org.sweble.wikitext.articlecruncher.utils.MeteredBlockingQueue.Side;
 import org.sweble.wikitext.articlecruncher.utils.MyExecutorService;
+import org.sweble.wikitext.articlecruncher.utils.QueueType;
+import org.sweble.wikitext.articlecruncher.utils.StageMetrics;
 import org.sweble.wikitext.articlecruncher.utils.WorkerBase;
 import org.sweble.wikitext.articlecruncher.utils.WorkerLauncher;
 import org.sweble.wikitext.articlecruncher.utils.WorkerSynchronizer;
@@ -62,6 +65,12 @@ public class Nexus
 	
 	private WorkerLauncher gatherer;
 	
+	private StageMetrics jobGeneratorMetrics;
+	
+	private StageMetrics gathererMetrics;
+	
+	private StageMetrics storerMetrics;
+	
 	private NexusState state;
 	
 	private AbortHandler abortHandler;
@@ -86,6 +95,25 @@ public class Nexus
 			int inTrayCapacity,
 			int processedJobsCapacity,
 			int outTrayCapacity) throws Throwable
+	{
+		setUp(
+				inTrayCapacity,
+				processedJobsCapacity,
+				outTrayCapacity,
+				QueueType.LINKED_BLOCKING_DEQUE);
+	}
+	
+	/**
+	 * Sets up the Nexus with the given type of queues for the in tray, the
+	 * processed jobs and the out tray. QueueType.BOUNDED_RING avoids lock
+	 * contention between many producers and consumers and is best combined
+	 * with a {@link org.sweble.wikitext.articlecruncher.pnodes.PooledProcessingNode}.
+	 */
+	public void setUp(
+			int inTrayCapacity,
+			int processedJobsCapacity,
+			int outTrayCapacity,
+			QueueType queueType) throws Throwable
 	{
 		synchronized (synchronizer.getMonitor())
 		{
@@ -96,11 +124,19 @@ public class Nexus
 			{
 				logger.info("Nexus starting");
 				
-				inTray = new LinkedBlockingDeque<Job>(inTrayCapacity);
+				inTray = queueType.create(inTrayCapacity);
+				
+				processedJobs = queueType.create(processedJobsCapacity);
+				
+				outTray = queueType.create(outTrayCapacity);
 				
-				processedJobs = new LinkedBlockingDeque<Job>(processedJobsCapacity);
+				jobGeneratorMetrics = new StageMetrics("JobGenerator");
 				
-				outTray = new LinkedBlockingDeque<Job>(outTrayCapacity);
+				gathererMetrics = new StageMetrics(
+						Gatherer.class.getSimpleName(),
+						processedJobs);
+				
+				storerMetrics = new StageMetrics("Storer", outTray);
 				
 				executor = new MyExecutorService(ExecutorType.CACHED_THREAD_POOL, logger);
 				
@@ -118,7 +154,12 @@ public class Nexus
 					@Override
 					public WorkerBase instantiate()
 					{
-						return new Gatherer(abortHandler, inTray, processedJobs, outTray);
+						return new Gatherer(
+								abortHandler,
+								inTray,
+								processedJobs,
+								outTray,
+								gathererMetrics);
 					}
 				}, abortHandler);
 				
@@ -182,6 +223,10 @@ public class Nexus
 			
 			if (exec != null)
 				exec.shutdownAndAwaitTermination();
+			
+			logger.info(jobGeneratorMetrics);
+			logger.info(storerMetrics);
+			
 			nexusStopped();
 		}
 	}
@@ -202,7 +247,10 @@ public class Nexus
 						@Override
 						public WorkerBase instantiate()
 						{
-							return factory.create(abortHandler, inTray, jobTraces);
+							return factory.create(
+									abortHandler,
+									new MeteredBlockingQueue<Job>(inTray, jobGeneratorMetrics, Side.PRODUCER),
+									jobTraces);
 						}
 					}, abortHandler);
 					
@@ -269,7 +317,10 @@ public class Nexus
 						@Override
 						public WorkerBase instantiate()
 						{
-							return factory.create(abortHandler, jobTraces, outTray);
+							return factory.create(
+									abortHandler,
+									jobTraces,
+									new MeteredBlockingQueue<Job>(outTray, storerMetrics, Side.CONSUMER));
 						}
 					}, abortHandler);
 					
@@ -300,6 +351,29 @@ public class Nexus
 		return outTray;
 	}
 	
+	/**
+	 * Returns the metrics of all job generators. The time a generator spent
+	 * on a job is the time between two puts into the in tray.
+	 */
+	public StageMetrics getJobGeneratorMetrics()
+	{
+		return jobGeneratorMetrics;
+	}
+	
+	public StageMetrics getGathererMetrics()
+	{
+		return gathererMetrics;
+	}
+	
+	/**
+	 * Returns the metrics of all storers. The time a storer spent on a job is
+	 * the time between two takes from the out tray.
+	 */
+	public StageMetrics getStorerMetrics()
+	{
+		return storerMetrics;
+	}
+	
 	public/*static*/void shutdown()
 	{
 		internalShutdown(null);
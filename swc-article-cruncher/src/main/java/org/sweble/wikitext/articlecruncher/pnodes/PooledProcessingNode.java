@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.pnodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sweble.wikitext.articlecruncher.Job;
+import org.sweble.wikitext.articlecruncher.ProcessingNode;
+import org.sweble.wikitext.articlecruncher.WorkerInstantiator;
+import org.sweble.wikitext.articlecruncher.utils.AbortHandler;
+import org.sweble.wikitext.articlecruncher.utils.MyExecutorService;
+import org.sweble.wikitext.articlecruncher.utils.StageMetrics;
+import org.sweble.wikitext.articlecruncher.utils.WorkerBase;
+import org.sweble.wikitext.articlecruncher.utils.WorkerLauncher;
+import org.sweble.wikitext.articlecruncher.utils.WorkerSynchronizer;
+
+/**
+ * A processing node whose workers take jobs from the in tray themselves.
+ *
+ * Unlike the {@link LocalProcessingNode} there is no distributor, no gatherer
+ * and no per-job task submission. Each of the fixed number of workers takes one
+ * job at a time from the in tray, processes it with its own processor and
+ * puts the result into the processed jobs queue right away. Idle workers
+ * simply take the next job, so the load balances itself without a central
+ * hand-off. Back pressure comes from the bounded queues of the Nexus.
+ *
+ * Combine with {@link org.sweble.wikitext.articlecruncher.utils.QueueType#BOUNDED_RING}
+ * queues to avoid lock contention on the trays.
+ */
+public class PooledProcessingNode
+		extends
+			ProcessingNode
+{
+	private final BlockingQueue<Job> inTray;
+	
+	private final BlockingQueue<Job> processedJobs;
+	
+	private final int numWorkers;
+	
+	private final LpnJobProcessorFactory jobProcessorFactory;
+	
+	private final StageMetrics metrics;
+	
+	private MyExecutorService executor;
+	
+	private List<WorkerLauncher> workers;
+	
+	// =========================================================================
+	
+	public PooledProcessingNode(
+			AbortHandler abortHandler,
+			BlockingQueue<Job> inTray,
+			BlockingQueue<Job> processedJobs,
+			LpnJobProcessorFactory jobProcessorFactory,
+			int numWorkers)
+	{
+		this(
+				abortHandler,
+				inTray,
+				processedJobs,
+				jobProcessorFactory,
+				numWorkers,
+				new StageMetrics(getClassName(), inTray));
+	}
+	
+	/**
+	 * @param metrics
+	 *            Receives the processing latency of every job. Pass an
+	 *            instance created outside the node to monitor it while the
+	 *            Nexus is running.
+	 */
+	public PooledProcessingNode(
+			AbortHandler abortHandler,
+			BlockingQueue<Job> inTray,
+			BlockingQueue<Job> processedJobs,
+			LpnJobProcessorFactory jobProcessorFactory,
+			int numWorkers,
+			StageMetrics metrics)
+	{
+		super(getClassName(), abortHandler);
+		
+		if (numWorkers <= 0)
+			throw new IllegalArgumentException("numWorkers must be positive");
+		
+		Thread.currentThread().setName(getClassName());
+		
+		this.inTray = inTray;
+		this.processedJobs = processedJobs;
+		this.jobProcessorFactory = jobProcessorFactory;
+		this.numWorkers = numWorkers;
+		this.metrics = metrics;
+	}
+	
+	private static String getClassName()
+	{
+		return PooledProcessingNode.class.getSimpleName();
+	}
+	
+	// =========================================================================
+	
+	public StageMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	protected void work() throws Throwable
+	{
+		try
+		{
+			info(getClass().getSimpleName() + " starts with a pool of " + numWorkers + " workers");
+			
+			executor = new MyExecutorService(
+					getLogger(),
+					numWorkers,
+					numWorkers,
+					60,
+					TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>());
+			
+			executor.setThreadNameTemplate(jobProcessorFactory.getProcessorNameTemplate());
+			
+			final AbortHandler abortHandler = new AbortHandler()
+			{
+				@Override
+				public void notify(Throwable t)
+				{
+					abort(t);
+				}
+			};
+			
+			WorkerSynchronizer synchronizer = new WorkerSynchronizer();
+			
+			workers = new ArrayList<WorkerLauncher>(numWorkers);
+			for (int i = 0; i < numWorkers; ++i)
+			{
+				WorkerLauncher worker = new WorkerLauncher(new WorkerInstantiator()
+				{
+					@Override
+					public WorkerBase instantiate()
+					{
+						return new PooledWorker(
+								abortHandler,
+								inTray,
+								processedJobs,
+								jobProcessorFactory,
+								metrics);
+					}
+				}, abortHandler);
+				
+				workers.add(worker);
+				
+				worker.start(executor, synchronizer);
+			}
+			
+			synchronizer.waitForAny();
+		}
+		finally
+		{
+			info("Sending kill signal to workers");
+			
+			if (workers != null)
+			{
+				for (WorkerLauncher worker : workers)
+					worker.stop();
+			}
+			
+			if (executor != null)
+				executor.shutdownAndAwaitTermination();
+		}
+	}
+	
+	@Override
+	protected void after()
+	{
+		info(metrics);
+	}
+}
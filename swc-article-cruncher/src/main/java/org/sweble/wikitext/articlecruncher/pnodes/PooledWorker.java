@@ -0,0 +1,108 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.pnodes;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.sweble.wikitext.articlecruncher.Job;
+import org.sweble.wikitext.articlecruncher.Processor;
+import org.sweble.wikitext.articlecruncher.utils.AbortHandler;
+import org.sweble.wikitext.articlecruncher.utils.StageMetrics;
+import org.sweble.wikitext.articlecruncher.utils.WorkerBase;
+
+final class PooledWorker
+		extends
+			WorkerBase
+{
+	private final BlockingQueue<Job> inTray;
+	
+	private final BlockingQueue<Job> processedJobs;
+	
+	private final LpnJobProcessorFactory jobProcessorFactory;
+	
+	private final StageMetrics metrics;
+	
+	private int count = 0;
+	
+	private int failureCount = 0;
+	
+	// =========================================================================
+	
+	PooledWorker(
+			AbortHandler abortHandler,
+			BlockingQueue<Job> inTray,
+			BlockingQueue<Job> processedJobs,
+			LpnJobProcessorFactory jobProcessorFactory,
+			StageMetrics metrics)
+	{
+		super(getClassName(), abortHandler);
+		
+		this.inTray = inTray;
+		this.processedJobs = processedJobs;
+		this.jobProcessorFactory = jobProcessorFactory;
+		this.metrics = metrics;
+	}
+	
+	private static String getClassName()
+	{
+		return PooledWorker.class.getSimpleName();
+	}
+	
+	// =========================================================================
+	
+	@Override
+	protected void work() throws Throwable
+	{
+		// A worker only ever runs on one thread and can keep its processor
+		Processor processor = jobProcessorFactory.createProcessor();
+		
+		while (true)
+		{
+			// Take one job at a time: a job waiting in the in tray is never
+			// held back by a worker that is busy with another job
+			Job job = inTray.take();
+			++count;
+			
+			long start = System.nanoTime();
+			
+			job.signOff(getClass(), null);
+			
+			try
+			{
+				job.processed(processor.process(job));
+			}
+			catch (Exception t)
+			{
+				warn("Processing failed with exception", t);
+				
+				job.failed(t);
+				++failureCount;
+			}
+			
+			metrics.record(System.nanoTime() - start);
+			
+			processedJobs.put(job);
+		}
+	}
+	
+	@Override
+	protected void after()
+	{
+		debug(getClass().getSimpleName() + " counts " + count + " items, " + failureCount + " of which failed");
+	}
+}
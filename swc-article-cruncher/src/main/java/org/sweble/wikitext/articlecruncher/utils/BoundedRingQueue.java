@@ -0,0 +1,425 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.utils;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded multi-producer/multi-consumer queue backed by an array ring.
+ *
+ * Producers and consumers claim slots with a single compare-and-set on the
+ * tail or head counter. Every slot carries a sequence number that tells
+ * whether it is free for the producer of a given round or filled for the
+ * consumer of a given round. No locks are taken on the fast path.
+ *
+ * The blocking operations spin for a short while, then yield and then park for
+ * intervals that double from one microsecond up to about a millisecond.
+ * Threads which still cannot proceed register as waiters and park until a
+ * successful offer wakes a waiting consumer or a successful poll wakes a
+ * waiting producer. An idle stage therefore does not burn CPU time. The
+ * blocking operations respond to interruption like the blocking operations
+ * of the java.util.concurrent queues.
+ *
+ * The capacity is rounded up to the next power of two. Iteration works on a
+ * snapshot and does not support removal.
+ */
+public class BoundedRingQueue<E>
+		extends
+			AbstractQueue<E>
+		implements
+			BlockingQueue<E>
+{
+	private static final int SPIN_TRIES = 64;
+	
+	private static final int YIELD_TRIES = 64;
+	
+	private static final int PARK_TRIES = 11;
+	
+	private static final int BACKOFF_TRIES = SPIN_TRIES + YIELD_TRIES + PARK_TRIES;
+	
+	private static final long MIN_PARK_NANOS = 1000;
+	
+	// =========================================================================
+	
+	private final int capacity;
+	
+	private final int mask;
+	
+	private final AtomicReferenceArray<E> buffer;
+	
+	private final AtomicLongArray sequences;
+	
+	private final AtomicLong tail = new AtomicLong(0);
+	
+	private final AtomicLong head = new AtomicLong(0);
+	
+	private final ConcurrentLinkedQueue<Thread> waitingConsumers =
+			new ConcurrentLinkedQueue<Thread>();
+	
+	private final ConcurrentLinkedQueue<Thread> waitingProducers =
+			new ConcurrentLinkedQueue<Thread>();
+	
+	// =========================================================================
+	
+	public BoundedRingQueue(int capacity)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Capacity out of range: " + capacity);
+		
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		
+		for (int i = 0; i < size; ++i)
+			sequences.set(i, i);
+	}
+	
+	// =========================================================================
+	
+	public int getCapacity()
+	{
+		return capacity;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public boolean offer(E e)
+	{
+		if (e == null)
+			throw new NullPointerException();
+		
+		while (true)
+		{
+			long pos = tail.get();
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - pos;
+			
+			if (dif == 0)
+			{
+				if (tail.compareAndSet(pos, pos + 1))
+				{
+					buffer.set(index, e);
+					
+					// A volatile write, so that a consumer registering as
+					// waiter either sees the element or is seen below
+					sequences.set(index, pos + 1);
+					
+					if (!waitingConsumers.isEmpty())
+						wakeUp(waitingConsumers);
+					return true;
+				}
+			}
+			else if (dif < 0)
+			{
+				// The consumer of the previous round has not freed the slot yet
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	public E poll()
+	{
+		while (true)
+		{
+			long pos = head.get();
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - (pos + 1);
+			
+			if (dif == 0)
+			{
+				if (head.compareAndSet(pos, pos + 1))
+				{
+					E e = buffer.get(index);
+					buffer.lazySet(index, null);
+					sequences.set(index, pos + capacity);
+					
+					if (!waitingProducers.isEmpty())
+						wakeUp(waitingProducers);
+					return e;
+				}
+			}
+			else if (dif < 0)
+			{
+				// The producer of this round has not filled the slot yet
+				return null;
+			}
+		}
+	}
+	
+	@Override
+	public E peek()
+	{
+		long pos = head.get();
+		int index = (int) (pos & mask);
+		if (sequences.get(index) != pos + 1)
+			return null;
+		
+		return buffer.get(index);
+	}
+	
+	@Override
+	public void put(E e) throws InterruptedException
+	{
+		offer(e, false, 0);
+	}
+	
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return offer(e, true, System.nanoTime() + unit.toNanos(timeout));
+	}
+	
+	@Override
+	public E take() throws InterruptedException
+	{
+		return poll(false, 0);
+	}
+	
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return poll(true, System.nanoTime() + unit.toNanos(timeout));
+	}
+	
+	@Override
+	public int drainTo(Collection<? super E> c)
+	{
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements)
+	{
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		
+		int n = 0;
+		while (n < maxElements)
+		{
+			E e = poll();
+			if (e == null)
+				break;
+			c.add(e);
+			++n;
+		}
+		
+		return n;
+	}
+	
+	@Override
+	public int size()
+	{
+		long after = head.get();
+		while (true)
+		{
+			long before = after;
+			long t = tail.get();
+			after = head.get();
+			if (before == after)
+			{
+				long size = t - after;
+				if (size < 0)
+					return 0;
+				return (int) Math.min(size, capacity);
+			}
+		}
+	}
+	
+	@Override
+	public boolean isEmpty()
+	{
+		return head.get() == tail.get();
+	}
+	
+	@Override
+	public int remainingCapacity()
+	{
+		return capacity - size();
+	}
+	
+	@Override
+	public Iterator<E> iterator()
+	{
+		long from = head.get();
+		long to = tail.get();
+		if (from >= to)
+		{
+			return Collections.<E> emptyList().iterator();
+		}
+		
+		ArrayList<E> snapshot = new ArrayList<E>((int) Math.min(to - from, capacity));
+		for (long pos = from; pos < to; ++pos)
+		{
+			int index = (int) (pos & mask);
+			if (sequences.get(index) != pos + 1)
+				continue;
+			
+			E e = buffer.get(index);
+			if (e != null)
+				snapshot.add(e);
+		}
+		
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+	
+	// =========================================================================
+	
+	private boolean offer(E e, boolean timed, long deadline) throws InterruptedException
+	{
+		int tries = 0;
+		while (!offer(e))
+		{
+			if (timed && System.nanoTime() - deadline >= 0)
+				return false;
+			
+			if (tries < BACKOFF_TRIES)
+			{
+				tries = backOff(tries);
+				continue;
+			}
+			
+			Thread current = Thread.currentThread();
+			waitingProducers.add(current);
+			try
+			{
+				if (offer(e))
+					return true;
+				park(timed, deadline);
+			}
+			finally
+			{
+				leave(waitingProducers, current, remainingCapacity() > 0);
+			}
+		}
+		
+		return true;
+	}
+	
+	private E poll(boolean timed, long deadline) throws InterruptedException
+	{
+		int tries = 0;
+		while (true)
+		{
+			E e = poll();
+			if (e != null)
+				return e;
+			
+			if (timed && System.nanoTime() - deadline >= 0)
+				return null;
+			
+			if (tries < BACKOFF_TRIES)
+			{
+				tries = backOff(tries);
+				continue;
+			}
+			
+			Thread current = Thread.currentThread();
+			waitingConsumers.add(current);
+			try
+			{
+				e = poll();
+				if (e != null)
+					return e;
+				park(timed, deadline);
+			}
+			finally
+			{
+				leave(waitingConsumers, current, !isEmpty());
+			}
+		}
+	}
+	
+	/**
+	 * Removes a thread from the waiters. If the thread was already removed
+	 * by a wake-up it might not have used that wake-up. In that case the
+	 * wake-up is passed on to the next waiter as long as others can proceed.
+	 */
+	private void leave(
+			ConcurrentLinkedQueue<Thread> waiters,
+			Thread current,
+			boolean canProceed)
+	{
+		if (!waiters.remove(current) && canProceed)
+			wakeUp(waiters);
+	}
+	
+	private static void wakeUp(ConcurrentLinkedQueue<Thread> waiters)
+	{
+		Thread waiter = waiters.poll();
+		if (waiter != null)
+			LockSupport.unpark(waiter);
+	}
+	
+	private void park(boolean timed, long deadline) throws InterruptedException
+	{
+		if (timed)
+		{
+			long nanos = deadline - System.nanoTime();
+			if (nanos > 0)
+				LockSupport.parkNanos(this, nanos);
+		}
+		else
+		{
+			LockSupport.park(this);
+		}
+		
+		if (Thread.interrupted())
+			throw new InterruptedException();
+	}
+	
+	private static int backOff(int tries) throws InterruptedException
+	{
+		if (Thread.interrupted())
+			throw new InterruptedException();
+		
+		if (tries < SPIN_TRIES)
+		{
+			// Busy spin
+		}
+		else if (tries < SPIN_TRIES + YIELD_TRIES)
+		{
+			Thread.yield();
+		}
+		else
+		{
+			LockSupport.parkNanos(MIN_PARK_NANOS << (tries - SPIN_TRIES - YIELD_TRIES));
+		}
+		
+		return tries + 1;
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.utils;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A view of a queue which records the work of the stage on one side of the
+ * queue in a {@link StageMetrics} object.
+ *
+ * The Nexus hands such views to the stages it does not implement itself: the
+ * job generators, which only put jobs into the in tray, and the storers,
+ * which only take jobs from the out tray. The time a stage spent on a job is
+ * the time between two operations of the same thread on its side of the
+ * queue: from the return of one put to the call of the next put for a
+ * producer and from the return of one take to the call of the next take for
+ * a consumer. Time spent blocking in the queue does not count. Every job put
+ * or taken counts as a job of the stage, even if the time spent on it is not
+ * known, as for the first job of a producer or the last job of a consumer.
+ */
+public class MeteredBlockingQueue<E>
+		extends
+			AbstractQueue<E>
+		implements
+			BlockingQueue<E>
+{
+	public static enum Side
+	{
+		PRODUCER,
+		CONSUMER
+	}
+	
+	// =========================================================================
+	
+	private final BlockingQueue<E> queue;
+	
+	private final StageMetrics metrics;
+	
+	private final Side side;
+	
+	/**
+	 * The time the last operation of a thread on the metered side returned.
+	 */
+	private final ThreadLocal<long[]> lastReturn = new ThreadLocal<long[]>()
+	{
+		@Override
+		protected long[] initialValue()
+		{
+			return new long[] { -1 };
+		}
+	};
+	
+	// =========================================================================
+	
+	public MeteredBlockingQueue(
+			BlockingQueue<E> queue,
+			StageMetrics metrics,
+			Side side)
+	{
+		this.queue = queue;
+		this.metrics = metrics;
+		this.side = side;
+	}
+	
+	// =========================================================================
+	
+	public StageMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public boolean offer(E e)
+	{
+		enter(Side.PRODUCER);
+		return leave(Side.PRODUCER, queue.offer(e));
+	}
+	
+	@Override
+	public void put(E e) throws InterruptedException
+	{
+		enter(Side.PRODUCER);
+		queue.put(e);
+		leave(Side.PRODUCER, true);
+	}
+	
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		enter(Side.PRODUCER);
+		return leave(Side.PRODUCER, queue.offer(e, timeout, unit));
+	}
+	
+	@Override
+	public E poll()
+	{
+		enter(Side.CONSUMER);
+		E e = queue.poll();
+		leave(Side.CONSUMER, e != null);
+		return e;
+	}
+	
+	@Override
+	public E take() throws InterruptedException
+	{
+		enter(Side.CONSUMER);
+		E e = queue.take();
+		leave(Side.CONSUMER, true);
+		return e;
+	}
+	
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		enter(Side.CONSUMER);
+		E e = queue.poll(timeout, unit);
+		leave(Side.CONSUMER, e != null);
+		return e;
+	}
+	
+	@Override
+	public int drainTo(Collection<? super E> c)
+	{
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements)
+	{
+		enter(Side.CONSUMER);
+		int n = queue.drainTo(c, maxElements);
+		if (side == Side.CONSUMER && n > 0)
+		{
+			metrics.recordBatch(n);
+			for (int i = 1; i < n; ++i)
+				metrics.recordJob();
+		}
+		leave(Side.CONSUMER, n > 0);
+		return n;
+	}
+	
+	@Override
+	public E peek()
+	{
+		return queue.peek();
+	}
+	
+	@Override
+	public int size()
+	{
+		return queue.size();
+	}
+	
+	@Override
+	public int remainingCapacity()
+	{
+		return queue.remainingCapacity();
+	}
+	
+	@Override
+	public boolean contains(Object o)
+	{
+		return queue.contains(o);
+	}
+	
+	@Override
+	public boolean remove(Object o)
+	{
+		return queue.remove(o);
+	}
+	
+	@Override
+	public Iterator<E> iterator()
+	{
+		return queue.iterator();
+	}
+	
+	// =========================================================================
+	
+	private void enter(Side side)
+	{
+		if (side != this.side)
+			return;
+		
+		long[] last = lastReturn.get();
+		if (last[0] != -1)
+			metrics.recordLatency(System.nanoTime() - last[0]);
+	}
+	
+	/**
+	 * @param success
+	 *            Whether a job was put or taken. If not, the time until the
+	 *            next operation is not attributed to a job.
+	 */
+	private boolean leave(Side side, boolean success)
+	{
+		if (side == this.side)
+		{
+			if (success)
+				metrics.recordJob();
+			lastReturn.get()[0] = success ? System.nanoTime() : -1;
+		}
+		return success;
+	}
+}
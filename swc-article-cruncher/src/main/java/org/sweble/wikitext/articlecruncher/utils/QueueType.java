@@ -0,0 +1,47 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.utils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+public enum QueueType
+{
+	LINKED_BLOCKING_DEQUE
+	{
+		@Override
+		public <E> BlockingQueue<E> create(int capacity)
+		{
+			return new LinkedBlockingDeque<E>(capacity);
+		}
+	},
+	
+	/**
+	 * Lock-free bounded queue, see {@link BoundedRingQueue}.
+	 */
+	BOUNDED_RING
+	{
+		@Override
+		public <E> BlockingQueue<E> create(int capacity)
+		{
+			return new BoundedRingQueue<E>(capacity);
+		}
+	};
+	
+	public abstract <E> BlockingQueue<E> create(int capacity);
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.articlecruncher.utils;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Throughput, latency and queue depth of one stage of the Nexus.
+ *
+ * A stage records the time it spent on every job it handled and the size of
+ * every batch it took from its input queue. Stages which cannot tell the time
+ * spent on every job record the job and the latencies they know separately. Latencies are collected in a
+ * histogram with power-of-two buckets: bucket i counts latencies between
+ * 2^(i-1) (inclusive) and 2^i (exclusive) nanoseconds. All methods can be
+ * called concurrently by the workers of a stage and by monitoring threads.
+ */
+public class StageMetrics
+{
+	private static final int NUM_BUCKETS = 64;
+	
+	// =========================================================================
+	
+	private final String name;
+	
+	private final Queue<?> inputQueue;
+	
+	private final AtomicLong count = new AtomicLong(0);
+	
+	private final AtomicLong latencies = new AtomicLong(0);
+	
+	private final AtomicLong batches = new AtomicLong(0);
+	
+	private final AtomicLong batchedJobs = new AtomicLong(0);
+	
+	private final AtomicLong totalLatency = new AtomicLong(0);
+	
+	private final AtomicLongArray latencyHistogram = new AtomicLongArray(NUM_BUCKETS);
+	
+	private volatile long startTime = System.nanoTime();
+	
+	// =========================================================================
+	
+	public StageMetrics(String name)
+	{
+		this(name, null);
+	}
+	
+	/**
+	 * @param inputQueue
+	 *            The queue the stage takes its jobs from. Used to report the
+	 *            queue depth. Can be null.
+	 */
+	public StageMetrics(String name, Queue<?> inputQueue)
+	{
+		this.name = name;
+		this.inputQueue = inputQueue;
+	}
+	
+	// =========================================================================
+	
+	public void recordBatch(int size)
+	{
+		batches.incrementAndGet();
+		batchedJobs.addAndGet(size);
+	}
+	
+	/**
+	 * Records a job and the time the stage spent on it.
+	 */
+	public void record(long latencyInNanos)
+	{
+		recordJob();
+		recordLatency(latencyInNanos);
+	}
+	
+	/**
+	 * Records a job without the time the stage spent on it.
+	 */
+	public void recordJob()
+	{
+		count.incrementAndGet();
+	}
+	
+	/**
+	 * Records the time the stage spent on a job that was recorded separately.
+	 */
+	public void recordLatency(long latencyInNanos)
+	{
+		if (latencyInNanos < 0)
+			latencyInNanos = 0;
+		
+		latencies.incrementAndGet();
+		totalLatency.addAndGet(latencyInNanos);
+		latencyHistogram.incrementAndGet(getBucket(latencyInNanos));
+	}
+	
+	public void reset()
+	{
+		count.set(0);
+		latencies.set(0);
+		batches.set(0);
+		batchedJobs.set(0);
+		totalLatency.set(0);
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+			latencyHistogram.set(i, 0);
+		startTime = System.nanoTime();
+	}
+	
+	// =========================================================================
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * @return The number of jobs waiting in the input queue of this stage or
+	 *         -1 if the stage was not given an input queue.
+	 */
+	public int getQueueDepth()
+	{
+		return (inputQueue != null) ? inputQueue.size() : -1;
+	}
+	
+	public long getCount()
+	{
+		return count.get();
+	}
+	
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+	
+	public float getAvgBatchSize()
+	{
+		long b = batches.get();
+		return (b > 0) ? (float) batchedJobs.get() / b : Float.NaN;
+	}
+	
+	/**
+	 * @return Jobs per second since this object was created or last reset.
+	 */
+	public float getThroughput()
+	{
+		long elapsed = System.nanoTime() - startTime;
+		return (elapsed > 0) ? count.get() * 1e9f / elapsed : Float.NaN;
+	}
+	
+	public float getAvgLatencyInNanos()
+	{
+		long c = latencies.get();
+		return (c > 0) ? (float) totalLatency.get() / c : Float.NaN;
+	}
+	
+	/**
+	 * Returns an upper bound for the given percentile of all recorded
+	 * latencies. The bound is exact up to the resolution of the histogram.
+	 *
+	 * @param percentile
+	 *            A value between 0 and 100.
+	 * @return The upper bound of the bucket holding the percentile or 0 if no
+	 *         latencies were recorded yet.
+	 */
+	public long getLatencyPercentileInNanos(double percentile)
+	{
+		long[] histogram = getLatencyHistogram();
+		
+		long total = 0;
+		for (long c : histogram)
+			total += c;
+		if (total == 0)
+			return 0;
+		
+		long threshold = (long) Math.ceil(total * percentile / 100.);
+		
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+		{
+			seen += histogram[i];
+			if (seen >= threshold && seen > 0)
+				return getBucketUpperBound(i);
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	public long[] getLatencyHistogram()
+	{
+		long[] histogram = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; ++i)
+			histogram[i] = latencyHistogram.get(i);
+		return histogram;
+	}
+	
+	// =========================================================================
+	
+	static int getBucket(long latencyInNanos)
+	{
+		return Math.min(64 - Long.numberOfLeadingZeros(latencyInNanos), NUM_BUCKETS - 1);
+	}
+	
+	static long getBucketUpperBound(int bucket)
+	{
+		return (bucket >= 63) ? Long.MAX_VALUE : (1L << bucket);
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"StageMetrics(%s): depth=%d, count=%d, throughput=%.1f/s, avgBatch=%.1f, avgLatency=%.1fus, p50<=%dus, p99<=%dus",
+				name,
+				getQueueDepth(),
+				getCount(),
+				getThroughput(),
+				getAvgBatchSize(),
+				getAvgLatencyInNanos() / 1000.f,
+				getLatencyPercentileInNanos(50) / 1000,
+				getLatencyPercentileInNanos(99) / 1000);
+	}
+}
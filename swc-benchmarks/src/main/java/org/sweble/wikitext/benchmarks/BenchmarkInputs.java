@@ -0,0 +1,243 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.config.WikiRuntimeInfo;
+
+/**
+ * Loads the benchmark inputs which are copied into the benchmark jar from the
+ * test resources of the parser and engine modules.
+ */
+final class BenchmarkInputs
+{
+	private static final String RESOURCES_DIR = "/benchmarks/";
+	
+	/**
+	 * A large, template-heavy article from the parser's complex test set.
+	 */
+	public static final String ARTICLE = "raw-Germany.wikitext";
+	
+	/**
+	 * The mass expansion fixture of the engine which records all statements
+	 * expanded while rendering "Barack Obama" and the pages they transclude.
+	 */
+	public static final String EXPANSION_FIXTURE = "Barack Obama.zip";
+	
+	// =========================================================================
+	
+	private static final Pattern FILE_URL_RX = Pattern.compile("fileUrl-(.*?)-(-?\\d+)-(-?\\d+).txt");
+	
+	private static final Pattern ARTICLE_RX = Pattern.compile("retrieveWikitext-(.*?)-(\\d+).wikitext");
+	
+	private static final String TITLE_DELIM = "==[ TITLE ]=====================================================================\n";
+	
+	private static final String STATEMENT_DELIM = "\n==[ STATEMENT ]=================================================================\n";
+	
+	private static final String EXPECTED_DELIM = "\n==[ EXPECTED EXPANSION ]========================================================\n";
+	
+	// =========================================================================
+	
+	private BenchmarkInputs()
+	{
+	}
+	
+	// =========================================================================
+	
+	public static String loadArticle(String name) throws IOException
+	{
+		InputStream is = open(name);
+		try
+		{
+			return IOUtils.toString(is, "UTF-8");
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+	
+	public static ExpansionFixture loadExpansionFixture(String name) throws IOException
+	{
+		String suiteName = name.substring(0, name.length() - ".zip".length());
+		String testPrefix = suiteName + "/tests/";
+		String resourcesPrefix = suiteName + "/resources/";
+		
+		ExpansionFixture fixture = new ExpansionFixture();
+		
+		ZipInputStream zis = new ZipInputStream(open(name));
+		try
+		{
+			ZipEntry ze;
+			while ((ze = zis.getNextEntry()) != null)
+			{
+				String filename = ze.getName();
+				if (filename.endsWith("/"))
+					continue;
+				
+				String content = IOUtils.toString(zis, "UTF-8");
+				
+				if (filename.startsWith(resourcesPrefix))
+				{
+					filename = filename.substring(resourcesPrefix.length());
+					
+					Matcher m = FILE_URL_RX.matcher(filename);
+					if (m.matches())
+					{
+						fixture.fileUrls.put(
+								fileUrlKey(m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3))),
+								content);
+						continue;
+					}
+					
+					m = ARTICLE_RX.matcher(filename);
+					if (m.matches())
+					{
+						fixture.articles.put(m.group(1), content);
+						fixture.revisions.put(m.group(1), Long.parseLong(m.group(2)));
+					}
+				}
+				else if (filename.startsWith(testPrefix) && filename.endsWith(".txt"))
+				{
+					fixture.statements.add(parseStatement(filename, content));
+				}
+			}
+		}
+		finally
+		{
+			zis.close();
+		}
+		
+		Collections.sort(fixture.statements);
+		return fixture;
+	}
+	
+	/**
+	 * Fixes the site name and the current date to the values that were in
+	 * effect when the expansion fixture was recorded.
+	 */
+	public static WikiConfigImpl fixConfig(WikiConfigImpl config)
+	{
+		config.setSiteName("English Wikipedia");
+		
+		config.setRuntimeInfo(new WikiRuntimeInfo()
+		{
+			@Override
+			public Calendar getDateAndTime(Locale locale)
+			{
+				Calendar timestamp = new GregorianCalendar(locale);
+				timestamp.setLenient(true);
+				timestamp.set(2012, 9, 18, 14, 25, 13);
+				return timestamp;
+			}
+			
+			@Override
+			public Calendar getDateAndTime()
+			{
+				return getDateAndTime(Locale.getDefault());
+			}
+		});
+		
+		return config;
+	}
+	
+	static String fileUrlKey(String encName, int width, int height)
+	{
+		return encName + "-" + width + "-" + height;
+	}
+	
+	// =========================================================================
+	
+	private static InputStream open(String name) throws IOException
+	{
+		InputStream is = BenchmarkInputs.class.getResourceAsStream(RESOURCES_DIR + name);
+		if (is == null)
+			throw new IOException("Benchmark input not found: " + name);
+		return is;
+	}
+	
+	private static Statement parseStatement(String filename, String content)
+	{
+		int i0 = content.indexOf(TITLE_DELIM);
+		int i1 = content.indexOf(STATEMENT_DELIM);
+		int i2 = content.indexOf(EXPECTED_DELIM);
+		if (i0 != 0 || i1 < 0 || i2 < i1)
+			throw new IllegalArgumentException("Wrong test case file format: " + filename);
+		
+		return new Statement(
+				filename,
+				content.substring(TITLE_DELIM.length(), i1),
+				content.substring(i1 + STATEMENT_DELIM.length(), i2));
+	}
+	
+	// =========================================================================
+	
+	public static final class ExpansionFixture
+	{
+		/**
+		 * Maps safe filenames of normalized full titles to wikitext.
+		 */
+		public final Map<String, String> articles = new HashMap<String, String>();
+		
+		public final Map<String, Long> revisions = new HashMap<String, Long>();
+		
+		public final Map<String, String> fileUrls = new HashMap<String, String>();
+		
+		public final List<Statement> statements = new ArrayList<Statement>();
+	}
+	
+	public static final class Statement
+			implements
+				Comparable<Statement>
+	{
+		public final String name;
+		
+		public final String title;
+		
+		public final String wikitext;
+		
+		public Statement(String name, String title, String wikitext)
+		{
+			this.name = name;
+			this.title = title;
+			this.wikitext = wikitext;
+		}
+		
+		@Override
+		public int compareTo(Statement o)
+		{
+			return name.compareTo(o.name);
+		}
+	}
+}
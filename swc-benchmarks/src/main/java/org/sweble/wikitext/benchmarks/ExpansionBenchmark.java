@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sweble.wikitext.benchmarks.BenchmarkInputs.ExpansionFixture;
+import org.sweble.wikitext.benchmarks.BenchmarkInputs.Statement;
+import org.sweble.wikitext.engine.ExpansionCallback;
+import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+import de.fau.cs.osr.utils.StringUtils;
+
+/**
+ * Expands all statements recorded in the engine's "Barack Obama" mass
+ * expansion fixture. Transcluded pages and file URLs are served from the
+ * fixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ExpansionBenchmark
+{
+	private WtEngineImpl engine;
+	
+	private ExpansionCallback callback;
+	
+	private List<PageId> pageIds;
+	
+	private List<String> statements;
+	
+	// =========================================================================
+	
+	@Setup
+	public void setUp() throws Exception
+	{
+		WikiConfigImpl config = BenchmarkInputs.fixConfig(DefaultConfigEnWp.generate());
+		engine = new WtEngineImpl(config);
+		
+		ExpansionFixture fixture =
+				BenchmarkInputs.loadExpansionFixture(BenchmarkInputs.EXPANSION_FIXTURE);
+		
+		callback = new FixtureCallback(fixture);
+		
+		pageIds = new ArrayList<PageId>(fixture.statements.size());
+		statements = new ArrayList<String>(fixture.statements.size());
+		for (Statement s : fixture.statements)
+		{
+			pageIds.add(new PageId(PageTitle.make(config, s.title), -1));
+			statements.add(s.wikitext);
+		}
+	}
+	
+	// =========================================================================
+	
+	@Benchmark
+	public void expand(Blackhole bh) throws Exception
+	{
+		for (int i = 0; i < statements.size(); ++i)
+			bh.consume(engine.expand(pageIds.get(i), statements.get(i), false, callback));
+	}
+	
+	// =========================================================================
+	
+	private static final class FixtureCallback
+			implements
+				ExpansionCallback
+	{
+		private final ExpansionFixture fixture;
+		
+		public FixtureCallback(ExpansionFixture fixture)
+		{
+			this.fixture = fixture;
+		}
+		
+		@Override
+		public FullPage retrieveWikitext(
+				ExpansionFrame expansionFrame,
+				PageTitle pageTitle) throws Exception
+		{
+			String title = StringUtils.safeFilename(
+					pageTitle.getNormalizedFullTitle());
+			
+			String content = fixture.articles.get(title);
+			if (content == null)
+				return null;
+			
+			PageId pageId = new PageId(pageTitle, fixture.revisions.get(title));
+			return new FullPage(pageId, content);
+		}
+		
+		@Override
+		public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+		{
+			String title = StringUtils.safeFilename(
+					pageTitle.getNormalizedFullTitle());
+			
+			return fixture.fileUrls.get(BenchmarkInputs.fileUrlKey(title, width, height));
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.nodes.EngPage;
+import org.sweble.wikitext.engine.output.HtmlRenderer;
+import org.sweble.wikitext.engine.output.HtmlRendererCallback;
+import org.sweble.wikitext.engine.output.MediaInfo;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.UrlEncoding;
+import org.sweble.wikitext.parser.nodes.WtUrl;
+
+/**
+ * Renders the postprocessed AST of a large article to HTML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class HtmlRendererBenchmark
+{
+	private WikiConfig config;
+	
+	private PageTitle pageTitle;
+	
+	private EngPage page;
+	
+	private HtmlRendererCallback callback;
+	
+	// =========================================================================
+	
+	@Setup
+	public void setUp() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		
+		pageTitle = PageTitle.make(config, "Germany");
+		
+		String wikitext = BenchmarkInputs.loadArticle(BenchmarkInputs.ARTICLE);
+		
+		page = new WtEngineImpl(config).postprocess(
+				new PageId(pageTitle, -1),
+				wikitext,
+				null).getPage();
+		
+		callback = new RendererCallback();
+	}
+	
+	// =========================================================================
+	
+	@Benchmark
+	public String render()
+	{
+		return HtmlRenderer.print(callback, config, pageTitle, page);
+	}
+	
+	// =========================================================================
+	
+	private static final class RendererCallback
+			implements
+				HtmlRendererCallback
+	{
+		@Override
+		public boolean resourceExists(PageTitle target)
+		{
+			return false;
+		}
+		
+		@Override
+		public MediaInfo getMediaInfo(String title, int width, int height) throws Exception
+		{
+			return null;
+		}
+		
+		@Override
+		public String makeUrl(PageTitle target)
+		{
+			String page = UrlEncoding.WIKI.encode(target.getNormalizedFullTitle());
+			String f = target.getFragment();
+			if (f != null && !f.isEmpty())
+				page = page + "#" + UrlEncoding.WIKI.encode(f);
+			return "/" + page;
+		}
+		
+		@Override
+		public String makeUrl(WtUrl target)
+		{
+			if (target.getProtocol() == "")
+				return target.getPath();
+			return target.getProtocol() + ":" + target.getPath();
+		}
+		
+		@Override
+		public String makeUrlMissingTarget(String path)
+		{
+			return "?title=" + path + "&amp;action=edit&amp;redlink=1";
+		}
+	}
+}
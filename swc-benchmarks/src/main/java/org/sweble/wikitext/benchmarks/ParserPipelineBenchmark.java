@@ -0,0 +1,152 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.ParserConfig;
+import org.sweble.wikitext.parser.WikitextEncodingValidator;
+import org.sweble.wikitext.parser.WikitextParser;
+import org.sweble.wikitext.parser.WikitextPostprocessor;
+import org.sweble.wikitext.parser.WikitextPreprocessor;
+import org.sweble.wikitext.parser.encval.ValidatedWikitext;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtParsedWikitextPage;
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+import org.sweble.wikitext.parser.parser.PreprocessorToParserTransformer;
+import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+
+/**
+ * Measures the individual stages of the parser pipeline in isolation. Each
+ * stage is fed the output of the previous stage, which is computed once
+ * during setup. Run with <code>-prof gc</code> to see allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ParserPipelineBenchmark
+{
+	private static final String TITLE = "Germany";
+	
+	private ParserConfig parserConfig;
+	
+	private String wikitext;
+	
+	private ValidatedWikitext validated;
+	
+	private PreprocessedWikitext preprocessed;
+	
+	private WtParsedWikitextPage parsed;
+	
+	// =========================================================================
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		WikiConfig config = DefaultConfigEnWp.generate();
+		parserConfig = config.getParserConfig();
+		
+		wikitext = BenchmarkInputs.loadArticle(BenchmarkInputs.ARTICLE);
+		
+		validated = new WikitextEncodingValidator().validate(
+				parserConfig,
+				wikitext,
+				TITLE);
+		
+		WtPreproWikitextPage ppAst = (WtPreproWikitextPage)
+				new WikitextPreprocessor(parserConfig).parseArticle(
+						validated,
+						TITLE,
+						false);
+		
+		preprocessed = PreprocessorToParserTransformer.transform(
+				ppAst,
+				config.getEngineConfig().isTrimTransparentBeforeParsing());
+		
+		parsed = (WtParsedWikitextPage)
+				new WikitextParser(parserConfig).parseArticle(preprocessed, TITLE);
+	}
+	
+	// =========================================================================
+	
+	@Benchmark
+	public ValidatedWikitext validate() throws Exception
+	{
+		return new WikitextEncodingValidator().validate(
+				parserConfig,
+				wikitext,
+				TITLE);
+	}
+	
+	@Benchmark
+	public WtNode preprocess() throws Exception
+	{
+		return new WikitextPreprocessor(parserConfig).parseArticle(
+				validated,
+				TITLE,
+				false);
+	}
+	
+	@Benchmark
+	public WtNode parse() throws Exception
+	{
+		return new WikitextParser(parserConfig).parseArticle(preprocessed, TITLE);
+	}
+	
+	@Benchmark
+	public WtNode postprocess(ParsedAstCopy copy) throws Exception
+	{
+		return new WikitextPostprocessor(parserConfig).postprocess(copy.ast, TITLE);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * The postprocessor rewrites the tree it is given, it therefore works on
+	 * a fresh copy of the parsed AST in each invocation. The copy lives in its
+	 * own state so that the per-invocation setup only affects the postprocess
+	 * benchmark.
+	 */
+	@State(Scope.Thread)
+	public static class ParsedAstCopy
+	{
+		private WtParsedWikitextPage ast;
+		
+		@Setup(Level.Invocation)
+		public void copy(ParserPipelineBenchmark pipeline)
+		{
+			ast = (WtParsedWikitextPage) pipeline.parsed.deepCloneWrapException();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts a multistream bzip2 file into its individual streams.
+ * 
+ * Every stream starts on a byte boundary with the stream header
+ * <code>BZh[1-9]</code> immediately followed by the magic number of the first
+ * block. Streams without blocks (empty streams) are not detected and stay
+ * attached to the preceding stream. Since all consumers decompress
+ * concatenated streams this does no harm.
+ */
+final class BZip2StreamSplitter
+{
+	private static final int READ_SIZE = 1024 * 1024;
+	
+	/** "BZh" followed by the block size and the first block's magic number. */
+	private static final int HEADER_LENGTH = 10;
+	
+	private static final byte[] BLOCK_MAGIC = {
+			0x31, 0x41, 0x59, 0x26, 0x53, 0x59 };
+	
+	// =========================================================================
+	
+	private final InputStream in;
+	
+	private final int maxStreamSize;
+	
+	private byte[] buffer = new byte[2 * READ_SIZE];
+	
+	private int bufferLength;
+	
+	private long bufferOffset;
+	
+	private int scanFrom = 1;
+	
+	private boolean eof;
+	
+	private boolean oversized;
+	
+	// =========================================================================
+	
+	public BZip2StreamSplitter(InputStream in, int maxStreamSize)
+	{
+		this.in = in;
+		this.maxStreamSize = maxStreamSize;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * The offset of the stream that will be returned by the next call to
+	 * next().
+	 */
+	public long getOffset()
+	{
+		return bufferOffset;
+	}
+	
+	/**
+	 * Whether splitting stopped because no stream boundary could be found
+	 * within maxStreamSize bytes.
+	 */
+	public boolean isOversized()
+	{
+		return oversized;
+	}
+	
+	/**
+	 * Returns the compressed bytes of the next stream or null if the input is
+	 * exhausted or the next stream is larger than maxStreamSize.
+	 */
+	public byte[] next() throws IOException
+	{
+		if (oversized)
+			return null;
+		
+		int end = findNextHeader();
+		while (end < 0)
+		{
+			if (eof)
+			{
+				end = bufferLength;
+				break;
+			}
+			
+			if (bufferLength >= maxStreamSize)
+			{
+				oversized = true;
+				return null;
+			}
+			
+			fillBuffer();
+			end = findNextHeader();
+		}
+		
+		if (end == 0)
+			return null;
+		
+		byte[] stream = Arrays.copyOf(buffer, end);
+		
+		System.arraycopy(buffer, end, buffer, 0, bufferLength - end);
+		bufferLength -= end;
+		bufferOffset += end;
+		scanFrom = 1;
+		
+		return stream;
+	}
+	
+	/**
+	 * Returns the input that has not been split into streams yet, starting at
+	 * getOffset().
+	 */
+	public InputStream getRemainder()
+	{
+		return new SequenceInputStream(
+				new ByteArrayInputStream(buffer, 0, bufferLength),
+				in);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns the position of the next stream header in the buffer. The header
+	 * at position 0 which starts the current stream is not considered.
+	 */
+	private int findNextHeader()
+	{
+		byte[] b = buffer;
+		int last = bufferLength - HEADER_LENGTH;
+		for (int i = scanFrom; i <= last; ++i)
+		{
+			if (b[i] == 'B' &&
+					b[i + 1] == 'Z' &&
+					b[i + 2] == 'h' &&
+					b[i + 3] >= '1' && b[i + 3] <= '9' &&
+					b[i + 4] == BLOCK_MAGIC[0] &&
+					b[i + 5] == BLOCK_MAGIC[1] &&
+					b[i + 6] == BLOCK_MAGIC[2] &&
+					b[i + 7] == BLOCK_MAGIC[3] &&
+					b[i + 8] == BLOCK_MAGIC[4] &&
+					b[i + 9] == BLOCK_MAGIC[5])
+			{
+				return i;
+			}
+		}
+		
+		scanFrom = Math.max(1, last + 1);
+		return -1;
+	}
+	
+	private void fillBuffer() throws IOException
+	{
+		if (buffer.length - bufferLength < READ_SIZE)
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		
+		int read = in.read(buffer, bufferLength, READ_SIZE);
+		if (read == -1)
+			eof = true;
+		else
+			bufferLength += read;
+	}
+}
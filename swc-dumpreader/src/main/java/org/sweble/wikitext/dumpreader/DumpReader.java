@@ -24,10 +24,22 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -36,8 +48,12 @@ import javax.xml.bind.ValidationEventHandler;
 import javax.xml.bind.ValidationEventLocator;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
@@ -60,6 +76,8 @@ public abstract class DumpReader
 	
 	private final XMLStreamReader xmlStreamReader;
 	
+	private final JAXBContext context;
+	
 	private final Unmarshaller unmarshaller;
 	
 	private final ExportSchemaVersion schemaVersion;
@@ -68,12 +86,19 @@ public abstract class DumpReader
 	
 	private CountingInputStream compressedInputStream;
 	
+	private ParallelBZip2InputStream parallelDecompressor;
+	
 	private long fileLength;
 	
-	private long parsedCount;
+	private final AtomicLong parsedCount = new AtomicLong();
 	
 	private boolean decompress;
 	
+	private final boolean useSchema;
+	
+	private final AtomicReference<Throwable> workerFailure =
+			new AtomicReference<Throwable>();
+	
 	private static final int LOOKAHEAD = 4096;
 	
 	// =========================================================================
@@ -123,6 +148,23 @@ public abstract class DumpReader
 			String url,
 			Logger logger,
 			boolean useSchema) throws Exception
+	{
+		this(is, encoding, url, logger, useSchema, 1);
+	}
+	
+	/**
+	 * @param decompressionThreads
+	 *            If greater than one and the dump is a bzip2 file, the dump is
+	 *            decompressed on this many threads. This only pays off for
+	 *            multistream dumps. See {@link ParallelBZip2InputStream}.
+	 */
+	public DumpReader(
+			InputStream is,
+			Charset encoding,
+			String url,
+			Logger logger,
+			boolean useSchema,
+			int decompressionThreads) throws Exception
 	{
 		this.dumpInputStream = is;
 		this.dumpUri = url;
@@ -130,21 +172,23 @@ public abstract class DumpReader
 		
 		logger.info("Setting up parser for file " + dumpUri);
 		
-		getDumpInputStream();
+		getDumpInputStream(decompressionThreads);
 		
 		schemaVersion = determineExportVersion();
 		
-		unmarshaller = createUnmarshaller(schemaVersion.getContextPath());
+		context = JAXBContext.newInstance(schemaVersion.getContextPath());
+		
+		unmarshaller = context.createUnmarshaller();
 		
-		installCallbacks();
+		installCallbacks(unmarshaller);
 		
+		this.useSchema = useSchema;
 		if (useSchema)
-			setSchema(DumpReader.class.getResource(schemaVersion.getSchema()));
+			setSchema(unmarshaller, DumpReader.class.getResource(schemaVersion.getSchema()));
 		
 		xmlStreamReader = getXmlStreamReader(encoding);
 		
 		fileLength = -1;
-		parsedCount = 0;
 	}
 	
 	// =========================================================================
@@ -161,6 +205,72 @@ public abstract class DumpReader
 		}
 	}
 	
+	/**
+	 * Reads the dump using a streaming page splitter instead of a single JAXB
+	 * unmarshaller.
+	 * 
+	 * The calling thread only cuts the dump into page-sized XML chunks using
+	 * the underlying StAX reader. Turning a chunk into a page object is left
+	 * to a pool of <code>workerCount</code> threads, each of which owns its own
+	 * JAXB unmarshaller. The site info of the dump is read once up front and
+	 * the same mediaWiki object is passed to every invocation of
+	 * processPage(). Since the mediaWiki object is only a header in this mode,
+	 * its page list is always empty.
+	 * 
+	 * If <code>preserveOrder</code> is <code>true</code>, processPage() is
+	 * called on a single delivery thread in the order in which the pages
+	 * appear in the dump. Otherwise processPage() is called directly on the
+	 * worker threads as soon as a page has been decoded and overriding
+	 * implementations have to be thread-safe. processRevision() and
+	 * processEvent() are always called on the worker threads.
+	 * 
+	 * @param workerCount
+	 *            The number of threads decoding pages.
+	 * @param maxPendingPages
+	 *            The maximum number of pages that have been split off but not
+	 *            yet processed. Bounds the memory consumption if the workers
+	 *            cannot keep up with the splitter.
+	 * @param preserveOrder
+	 *            Whether processPage() must see the pages in dump order.
+	 */
+	public void unmarshalParallel(
+			int workerCount,
+			int maxPendingPages,
+			boolean preserveOrder) throws JAXBException, XMLStreamException, InterruptedException
+	{
+		if (workerCount < 1 || maxPendingPages < 1)
+			throw new IllegalArgumentException();
+		
+		ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+		
+		ExecutorService delivery = preserveOrder ?
+				Executors.newSingleThreadExecutor() :
+				null;
+		
+		try
+		{
+			splitPages(workers, delivery, new Semaphore(maxPendingPages));
+			
+			workers.shutdown();
+			if (delivery != null)
+				delivery.shutdown();
+			
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			if (delivery != null)
+				delivery.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			
+			rethrowWorkerFailure();
+		}
+		finally
+		{
+			workers.shutdownNow();
+			if (delivery != null)
+				delivery.shutdownNow();
+			
+			closeStreams();
+		}
+	}
+	
 	@Override
 	public void close() throws IOException
 	{
@@ -186,7 +296,13 @@ public abstract class DumpReader
 	
 	public long getCompressedBytesRead() throws IOException
 	{
-		if (decompress)
+		if (parallelDecompressor != null)
+		{
+			// The decompressor reads ahead. Only report what has actually
+			// been handed to the XML parser.
+			return parallelDecompressor.getCompressedBytesRead();
+		}
+		else if (decompress)
 		{
 			return compressedInputStream.getCount();
 		}
@@ -198,7 +314,7 @@ public abstract class DumpReader
 	
 	public long getParsedCount()
 	{
-		return parsedCount;
+		return parsedCount.get();
 	}
 	
 	// =========================================================================
@@ -229,7 +345,7 @@ public abstract class DumpReader
 	
 	private void handlePage(Object mediaWiki, Object page) throws Exception
 	{
-		++parsedCount;
+		parsedCount.incrementAndGet();
 		
 		processPage(mediaWiki, page);
 	}
@@ -246,7 +362,7 @@ public abstract class DumpReader
 	
 	// =========================================================================
 	
-	private void getDumpInputStream() throws Exception
+	private void getDumpInputStream(int decompressionThreads) throws Exception
 	{
 		InputStream decomp;
 		if (dumpUri.endsWith(".bz2"))
@@ -255,7 +371,18 @@ public abstract class DumpReader
 			
 			compressedInputStream = new CountingInputStream(dumpInputStream);
 			
-			decomp = new BZip2CompressorInputStream(compressedInputStream, true);
+			if (decompressionThreads > 1)
+			{
+				parallelDecompressor = new ParallelBZip2InputStream(
+						compressedInputStream,
+						decompressionThreads);
+				
+				decomp = parallelDecompressor;
+			}
+			else
+			{
+				decomp = new BZip2CompressorInputStream(compressedInputStream, true);
+			}
 		}
 		else if (dumpUri.endsWith(".gz"))
 		{
@@ -284,8 +411,11 @@ public abstract class DumpReader
 		int read = decompressedInputStream.read(b, 0, LOOKAHEAD);
 		decompressedInputStream.reset();
 		
-		String header = new String(b, 0, read);
-		
+		return determineExportVersion(new String(b, 0, read));
+	}
+	
+	static ExportSchemaVersion determineExportVersion(String header)
+	{
 		if (header.contains("xmlns=\"http://www.mediawiki.org/xml/export-0.5/\""))
 		{
 			return ExportSchemaVersion.V0_5;
@@ -344,7 +474,7 @@ public abstract class DumpReader
 		}
 	}
 	
-	private void setSchema(URL schemaUrl) throws Exception
+	private void setSchema(Unmarshaller unmarshaller, URL schemaUrl) throws Exception
 	{
 		SchemaFactory sf = SchemaFactory.newInstance(
 				javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI);
@@ -376,7 +506,7 @@ public abstract class DumpReader
 				});
 	}
 	
-	private void installCallbacks()
+	private void installCallbacks(Unmarshaller unmarshaller)
 	{
 		final DumpReaderListener pageListener = new DumpReaderListener()
 		{
@@ -431,10 +561,345 @@ public abstract class DumpReader
 		});
 	}
 	
-	private Unmarshaller createUnmarshaller(String contextPath) throws JAXBException
+	// =========================================================================
+	
+	private void splitPages(
+			ExecutorService workers,
+			ExecutorService delivery,
+			Semaphore pending) throws JAXBException, XMLStreamException, InterruptedException
+	{
+		Unmarshaller headerUnmarshaller = context.createUnmarshaller();
+		
+		ThreadLocal<Unmarshaller> pageUnmarshaller = createPageUnmarshallers();
+		
+		XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+		
+		Object mediaWiki = null;
+		
+		int depth = 0;
+		int event = xmlStreamReader.getEventType();
+		while (workerFailure.get() == null)
+		{
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				String name = xmlStreamReader.getLocalName();
+				if (depth == 1 && name.equals("siteinfo"))
+				{
+					readSiteInfo(headerUnmarshaller, mediaWiki);
+					
+					// The unmarshaller leaves the reader on the event that
+					// follows the </siteinfo> tag.
+					event = xmlStreamReader.getEventType();
+					continue;
+				}
+				else if (depth == 1 && name.equals("page"))
+				{
+					// Leaves the reader on the </page> tag. Start and end tag
+					// are both consumed here and the depth does not change.
+					String pageXml = copyElement(xmlOutputFactory);
+					
+					pending.acquire();
+					submitPage(workers, delivery, pending, pageUnmarshaller, mediaWiki, pageXml);
+				}
+				else
+				{
+					if (depth == 0)
+						mediaWiki = createMediaWiki();
+					++depth;
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				--depth;
+			}
+			
+			if (!xmlStreamReader.hasNext())
+				break;
+			event = xmlStreamReader.next();
+		}
+	}
+	
+	private void submitPage(
+			ExecutorService workers,
+			ExecutorService delivery,
+			final Semaphore pending,
+			final ThreadLocal<Unmarshaller> pageUnmarshaller,
+			final Object mediaWiki,
+			final String pageXml)
+	{
+		final boolean deliverInWorker = (delivery == null);
+		
+		final Future<Object> decoded = workers.submit(new Callable<Object>()
+		{
+			@Override
+			public Object call()
+			{
+				try
+				{
+					Object page = decodePage(pageUnmarshaller.get(), pageXml);
+					if (deliverInWorker)
+						handlePage(mediaWiki, page);
+					return page;
+				}
+				catch (Throwable t)
+				{
+					workerFailure.compareAndSet(null, t);
+					return null;
+				}
+				finally
+				{
+					if (deliverInWorker)
+						pending.release();
+				}
+			}
+		});
+		
+		if (deliverInWorker)
+			return;
+		
+		delivery.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Object page = decoded.get();
+					if (page != null && workerFailure.get() == null)
+						handlePage(mediaWiki, page);
+				}
+				catch (Throwable t)
+				{
+					workerFailure.compareAndSet(null, t);
+				}
+				finally
+				{
+					pending.release();
+				}
+			}
+		});
+	}
+	
+	private Object decodePage(Unmarshaller unmarshaller, String pageXml) throws JAXBException
+	{
+		StreamSource source = new StreamSource(new StringReader(pageXml));
+		return unmarshaller.unmarshal(source, schemaVersion.getPageType()).getValue();
+	}
+	
+	private ThreadLocal<Unmarshaller> createPageUnmarshallers()
+	{
+		return new ThreadLocal<Unmarshaller>()
+		{
+			@Override
+			protected Unmarshaller initialValue()
+			{
+				try
+				{
+					Unmarshaller unmarshaller = context.createUnmarshaller();
+					
+					installCallbacks(unmarshaller);
+					
+					// A single page is only valid with respect to the
+					// fragments schema.
+					if (useSchema)
+						setSchema(unmarshaller, DumpReader.class.getResource(schemaVersion.getFragmentsSchema()));
+					
+					return unmarshaller;
+				}
+				catch (RuntimeException e)
+				{
+					throw e;
+				}
+				catch (Exception e)
+				{
+					throw new WrappedException(e);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Copies the element the reader is currently positioned on (including all
+	 * its children) into a self-contained XML string. When this method
+	 * returns, the reader is positioned on the element's end tag.
+	 */
+	private String copyElement(XMLOutputFactory xmlOutputFactory) throws XMLStreamException
+	{
+		XMLStreamReader r = xmlStreamReader;
+		
+		StringWriter sw = new StringWriter();
+		XMLStreamWriter w = xmlOutputFactory.createXMLStreamWriter(sw);
+		
+		int depth = 0;
+		while (true)
+		{
+			switch (r.getEventType())
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					copyStartElement(r, w, depth == 0);
+					++depth;
+					break;
+				
+				case XMLStreamConstants.END_ELEMENT:
+					w.writeEndElement();
+					--depth;
+					break;
+				
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					w.writeCharacters(
+							r.getTextCharacters(),
+							r.getTextStart(),
+							r.getTextLength());
+					break;
+				
+				case XMLStreamConstants.CDATA:
+					w.writeCData(r.getText());
+					break;
+				
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					w.writeEntityRef(r.getLocalName());
+					break;
+				
+				default:
+					// Comments and processing instructions are dropped
+					break;
+			}
+			
+			if (depth == 0)
+				break;
+			
+			r.next();
+		}
+		
+		w.close();
+		return sw.toString();
+	}
+	
+	private static void copyStartElement(
+			XMLStreamReader r,
+			XMLStreamWriter w,
+			boolean root) throws XMLStreamException
+	{
+		String prefix = r.getPrefix();
+		String ns = r.getNamespaceURI();
+		if (prefix == null)
+			prefix = XMLConstants.DEFAULT_NS_PREFIX;
+		if (ns == null)
+			ns = XMLConstants.NULL_NS_URI;
+		
+		w.writeStartElement(prefix, r.getLocalName(), ns);
+		
+		boolean declared = false;
+		for (int i = 0; i < r.getNamespaceCount(); ++i)
+		{
+			String nsPrefix = r.getNamespacePrefix(i);
+			if (nsPrefix == null || nsPrefix.isEmpty())
+			{
+				w.writeDefaultNamespace(r.getNamespaceURI(i));
+				declared |= prefix.isEmpty();
+			}
+			else
+			{
+				w.writeNamespace(nsPrefix, r.getNamespaceURI(i));
+				declared |= prefix.equals(nsPrefix);
+			}
+		}
+		
+		// The namespace of the root element was declared by one of its
+		// ancestors in the dump and has to be repeated in the copy.
+		if (root && !declared && !ns.isEmpty())
+		{
+			if (prefix.isEmpty())
+				w.writeDefaultNamespace(ns);
+			else
+				w.writeNamespace(prefix, ns);
+		}
+		
+		for (int i = 0; i < r.getAttributeCount(); ++i)
+		{
+			String attrPrefix = r.getAttributePrefix(i);
+			String attrNs = r.getAttributeNamespace(i);
+			if (attrNs == null || attrNs.isEmpty())
+			{
+				w.writeAttribute(r.getAttributeLocalName(i), r.getAttributeValue(i));
+			}
+			else
+			{
+				w.writeAttribute(
+						attrPrefix,
+						attrNs,
+						r.getAttributeLocalName(i),
+						r.getAttributeValue(i));
+			}
+		}
+	}
+	
+	private Object createMediaWiki() throws JAXBException
+	{
+		try
+		{
+			Class<?> mediaWikiType = schemaVersion.getMediaWikiType();
+			Object mediaWiki = mediaWikiType.newInstance();
+			
+			String version = xmlStreamReader.getAttributeValue(null, "version");
+			if (version != null)
+				mediaWikiType.getMethod("setVersion", String.class).invoke(mediaWiki, version);
+			
+			String lang = xmlStreamReader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+			if (lang != null)
+				mediaWikiType.getMethod("setLang", String.class).invoke(mediaWiki, lang);
+			
+			return mediaWiki;
+		}
+		catch (Exception e)
+		{
+			throw new JAXBException("Cannot instantiate " + schemaVersion.getMediaWikiType().getName(), e);
+		}
+	}
+	
+	private void readSiteInfo(Unmarshaller headerUnmarshaller, Object mediaWiki) throws JAXBException
+	{
+		Class<?> mediaWikiType = schemaVersion.getMediaWikiType();
+		
+		Method getter;
+		Method setter;
+		try
+		{
+			getter = mediaWikiType.getMethod("getSiteinfo");
+			setter = mediaWikiType.getMethod("setSiteinfo", getter.getReturnType());
+		}
+		catch (NoSuchMethodException e)
+		{
+			throw new JAXBException("Cannot access site info of " + mediaWikiType.getName(), e);
+		}
+		
+		Object siteInfo = headerUnmarshaller.unmarshal(
+				xmlStreamReader,
+				getter.getReturnType()).getValue();
+		
+		try
+		{
+			setter.invoke(mediaWiki, siteInfo);
+		}
+		catch (Exception e)
+		{
+			throw new JAXBException("Cannot set site info of " + mediaWikiType.getName(), e);
+		}
+	}
+	
+	private void rethrowWorkerFailure() throws JAXBException
 	{
-		JAXBContext context = JAXBContext.newInstance(contextPath);
+		Throwable t = workerFailure.get();
+		if (t == null)
+			return;
 		
-		return context.createUnmarshaller();
+		if (t instanceof JAXBException)
+			throw (JAXBException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		throw new WrappedException((Exception) t);
 	}
 }
@@ -0,0 +1,382 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.sweble.wikitext.dumpreader.model.Page;
+
+import de.fau.cs.osr.utils.WrappedException;
+
+/**
+ * Random access to the pages of a multistream bzip2 dump.
+ * 
+ * A page is looked up in a {@link MultistreamDumpIndex} and only the single
+ * bzip2 stream that holds the page is decompressed. All pages of a
+ * decompressed stream are kept in a small LRU cache, since pages that are
+ * requested together (e.g. templates) often end up in the same stream.
+ * 
+ * Instances can be shared between threads.
+ */
+public class MultistreamDump
+		implements
+			Closeable
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final int LOOKAHEAD = 4096;
+	
+	// =========================================================================
+	
+	private final String dumpUri;
+	
+	private final RandomAccessFile file;
+	
+	private final FileChannel channel;
+	
+	private final MultistreamDumpIndex index;
+	
+	private final ExportSchemaVersion schemaVersion;
+	
+	private final XMLInputFactory xmlInputFactory;
+	
+	private final ThreadLocal<DumpUnmarshaller> unmarshaller;
+	
+	private final StreamCache streamCache;
+	
+	private long hits;
+	
+	private long misses;
+	
+	// =========================================================================
+	
+	/**
+	 * @param dumpFile
+	 *            The multistream dump.
+	 * @param index
+	 *            The index of the dump.
+	 * @param maxCachedStreams
+	 *            The number of decompressed streams to keep in memory.
+	 */
+	public MultistreamDump(
+			File dumpFile,
+			MultistreamDumpIndex index,
+			int maxCachedStreams) throws IOException
+	{
+		if (maxCachedStreams < 1)
+			throw new IllegalArgumentException();
+		
+		this.dumpUri = dumpFile.getAbsolutePath();
+		this.index = index;
+		this.file = new RandomAccessFile(dumpFile, "r");
+		this.channel = file.getChannel();
+		this.streamCache = new StreamCache(maxCachedStreams);
+		
+		try
+		{
+			this.schemaVersion = determineExportVersion();
+		}
+		catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			file.close();
+			throw e;
+		}
+		
+		this.xmlInputFactory = XMLInputFactory.newInstance();
+		
+		this.unmarshaller = new ThreadLocal<DumpUnmarshaller>()
+		{
+			@Override
+			protected DumpUnmarshaller initialValue()
+			{
+				try
+				{
+					return new DumpUnmarshaller(schemaVersion, false);
+				}
+				catch (Exception e)
+				{
+					throw new WrappedException(e);
+				}
+			}
+		};
+	}
+	
+	// =========================================================================
+	
+	public MultistreamDumpIndex getIndex()
+	{
+		return index;
+	}
+	
+	public ExportSchemaVersion getSchemaVersion()
+	{
+		return schemaVersion;
+	}
+	
+	/**
+	 * Retrieves a page from the dump.
+	 * 
+	 * @param title
+	 *            The full title of the page as it appears in the dump (with
+	 *            namespace prefix and spaces instead of underscores).
+	 * @return The page or null if the dump does not contain such a page.
+	 */
+	public Page getPage(String title) throws IOException, JAXBException, XMLStreamException
+	{
+		long offset = index.getStreamOffset(title);
+		if (offset < 0)
+			return null;
+		
+		Map<String, Page> pages;
+		synchronized (streamCache)
+		{
+			pages = streamCache.get(offset);
+			if (pages != null)
+				++hits;
+			else
+				++misses;
+		}
+		
+		if (pages == null)
+		{
+			// Two threads might decode the same stream concurrently. That's
+			// wasted work but does no harm.
+			pages = decodeStream(offset);
+			synchronized (streamCache)
+			{
+				streamCache.put(offset, pages);
+			}
+		}
+		
+		return pages.get(title);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (streamCache)
+		{
+			streamCache.clear();
+		}
+		file.close();
+	}
+	
+	// =========================================================================
+	
+	public long getHits()
+	{
+		synchronized (streamCache)
+		{
+			return hits;
+		}
+	}
+	
+	public long getMisses()
+	{
+		synchronized (streamCache)
+		{
+			return misses;
+		}
+	}
+	
+	// =========================================================================
+	
+	private Map<String, Page> decodeStream(long offset) throws IOException, JAXBException, XMLStreamException
+	{
+		// A page stream only contains a sequence of <page> elements. Wrap them
+		// into a root element which declares the export namespace.
+		String prolog = "<mediawiki xmlns=\"" + schemaVersion.getMediaWikiNamespace() + "\">";
+		String epilog = "</mediawiki>";
+		
+		InputStream xml = new SequenceInputStream(
+				new ByteArrayInputStream(prolog.getBytes(UTF8)),
+				new SequenceInputStream(
+						openStream(offset),
+						new ByteArrayInputStream(epilog.getBytes(UTF8))));
+		
+		Map<String, Page> pages = new HashMap<String, Page>();
+		
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml, "UTF-8");
+		try
+		{
+			DumpUnmarshaller u = unmarshaller.get();
+			
+			int depth = 0;
+			int event = reader.getEventType();
+			while (true)
+			{
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					if (depth == 1 && reader.getLocalName().equals("page"))
+					{
+						// The unmarshaller leaves the reader on the event
+						// that follows the </page> tag.
+						Page page = u.unmarshalToPage(reader);
+						pages.put(page.getTitle(), page);
+						
+						event = reader.getEventType();
+						continue;
+					}
+					++depth;
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					--depth;
+				}
+				
+				if (!reader.hasNext())
+					break;
+				event = reader.next();
+			}
+		}
+		finally
+		{
+			reader.close();
+			xml.close();
+		}
+		
+		return pages;
+	}
+	
+	/**
+	 * Returns the decompressed content of the bzip2 stream at the given
+	 * offset.
+	 */
+	private InputStream openStream(long offset) throws IOException
+	{
+		return new BZip2CompressorInputStream(
+				new BufferedInputStream(new ChannelInputStream(channel, offset)),
+				false);
+	}
+	
+	private ExportSchemaVersion determineExportVersion() throws IOException
+	{
+		InputStream is = openStream(0);
+		try
+		{
+			byte[] b = new byte[LOOKAHEAD];
+			
+			int read = 0;
+			while (read < LOOKAHEAD)
+			{
+				int n = is.read(b, read, LOOKAHEAD - read);
+				if (n == -1)
+					break;
+				read += n;
+			}
+			
+			return DumpReader.determineExportVersion(new String(b, 0, read, UTF8));
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Cannot determine export version of " + dumpUri, e);
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class StreamCache
+			extends
+				LinkedHashMap<Long, Map<String, Page>>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int maxStreams;
+		
+		public StreamCache(int maxStreams)
+		{
+			super(16, 0.75f, true);
+			this.maxStreams = maxStreams;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Long, Map<String, Page>> eldest)
+		{
+			return size() > maxStreams;
+		}
+	}
+	
+	/**
+	 * Reads from a file channel starting at a given position without moving
+	 * the channel's position. Multiple instances can therefore read from the
+	 * same channel concurrently.
+	 */
+	private static final class ChannelInputStream
+			extends
+				InputStream
+	{
+		private final FileChannel channel;
+		
+		private long position;
+		
+		public ChannelInputStream(FileChannel channel, long position)
+		{
+			this.channel = channel;
+			this.position = position;
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return (read == -1) ? -1 : (b[0] & 0xFF);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			
+			int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+			if (read > 0)
+				position += read;
+			return read;
+		}
+	}
+}
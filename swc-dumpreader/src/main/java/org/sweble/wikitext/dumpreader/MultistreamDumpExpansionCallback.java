@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.util.List;
+
+import org.sweble.wikitext.dumpreader.model.Page;
+import org.sweble.wikitext.dumpreader.model.Revision;
+import org.sweble.wikitext.engine.ExpansionCallback;
+import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageExistenceCallback;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.config.Namespace;
+
+/**
+ * An expansion callback that retrieves transcluded pages from a multistream
+ * dump. Together with a {@link MultistreamDump} this allows the full
+ * expansion of the pages of a dump without setting up a database.
+ * 
+ * The dump does not contain information about uploaded files, therefore
+ * fileUrl() always returns null.
+ * 
+ * Existence checks agree with retrieveWikitext(): A page only exists if its
+ * latest revision has text. If a {@link TitleIndex} is given, existence
+ * checks are answered from the index alone. The title index must then have
+ * been built with {@link TitleIndexBuilder#buildFromDump} or
+ * {@link TitleIndexBuilder#add(Page)}, which skip pages without text.
+ * Otherwise titles which are not in the index of the multistream dump are
+ * rejected without decompressing anything, while titles found in the index
+ * are confirmed by reading the page from the dump.
+ */
+public class MultistreamDumpExpansionCallback
+		implements
+			ExpansionCallback,
+			PageExistenceCallback
+{
+	private final MultistreamDump dump;
+	
+	private final TitleIndex titleIndex;
+	
+	// =========================================================================
+	
+	public MultistreamDumpExpansionCallback(MultistreamDump dump)
+	{
+		this(dump, null);
+	}
+	
+	public MultistreamDumpExpansionCallback(
+			MultistreamDump dump,
+			TitleIndex titleIndex)
+	{
+		this.dump = dump;
+		this.titleIndex = titleIndex;
+	}
+	
+	// =========================================================================
+	
+	public MultistreamDump getDump()
+	{
+		return dump;
+	}
+	
+	public TitleIndex getTitleIndex()
+	{
+		return titleIndex;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public FullPage retrieveWikitext(
+			ExpansionFrame expansionFrame,
+			PageTitle pageTitle) throws Exception
+	{
+		if (pageTitle.isInterwiki())
+			return null;
+		
+		Page page = dump.getPage(getDumpTitle(pageTitle));
+		if (page == null)
+			return null;
+		
+		Revision revision = getLatestRevisionWithText(page);
+		if (revision == null)
+			return null;
+		
+		return new FullPage(
+				new PageId(pageTitle, revision.getId().longValue()),
+				revision.getText());
+	}
+	
+	@Override
+	public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+	{
+		return null;
+	}
+	
+	@Override
+	public boolean existsPage(PageTitle pageTitle) throws Exception
+	{
+		if (titleIndex != null)
+			return titleIndex.exists(pageTitle);
+		
+		if (pageTitle.isInterwiki())
+			return false;
+		
+		String title = getDumpTitle(pageTitle);
+		if (!dump.getIndex().contains(title))
+			return false;
+		
+		Page page = dump.getPage(title);
+		return (page != null) && (getLatestRevisionWithText(page) != null);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Converts a page title into the form used by the dump and its index: The
+	 * canonical local namespace name (instead of a possible alias) followed by
+	 * the title with spaces instead of underscores.
+	 */
+	public static String getDumpTitle(PageTitle pageTitle)
+	{
+		Namespace ns = pageTitle.getNamespace();
+		String title = pageTitle.getDenormalizedTitle();
+		if (ns.getId() != 0)
+			title = ns.getName() + ":" + title;
+		return title;
+	}
+	
+	/**
+	 * Returns the latest revision of a page if its text is available or null
+	 * if the page has no revisions or the text of the latest revision was
+	 * deleted.
+	 */
+	public static Revision getLatestRevisionWithText(Page page)
+	{
+		// The latest revision comes last
+		List<Revision> revisions = page.getRevisions();
+		if (revisions.isEmpty())
+			return null;
+		
+		Revision revision = revisions.get(revisions.size() - 1);
+		return hasText(revision) ? revision : null;
+	}
+	
+	public static boolean hasText(Revision revision)
+	{
+		return !revision.isTextDeleted() && (revision.getText() != null);
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Maps page titles to the offset of the bzip2 stream in a multistream dump
+ * that holds the page, and to the page's id.
+ * 
+ * The index can be loaded from the index file Wikimedia publishes alongside
+ * every multistream dump (e.g.
+ * <code>pages-articles-multistream-index.txt.bz2</code>) or it can be built by
+ * scanning the dump itself. Each line of the index file has the form
+ * <code>offset:pageid:title</code>. Titles are full titles including the
+ * namespace prefix with spaces instead of underscores, exactly as they appear
+ * in the dump.
+ * 
+ * The index is immutable and can be shared between threads.
+ */
+public final class MultistreamDumpIndex
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final Pattern PAGE_RX = Pattern.compile(
+			"<page>\\s*<title>([^<]*)</title>.*?<id>(\\d+)</id>",
+			Pattern.DOTALL);
+	
+	// =========================================================================
+	
+	private final String[] titles;
+	
+	private final long[] streamOffsets;
+	
+	private final long[] pageIds;
+	
+	// =========================================================================
+	
+	private MultistreamDumpIndex(List<Entry> entries)
+	{
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry o1, Entry o2)
+			{
+				return o1.title.compareTo(o2.title);
+			}
+		});
+		
+		int size = 0;
+		String[] titles = new String[entries.size()];
+		long[] streamOffsets = new long[entries.size()];
+		long[] pageIds = new long[entries.size()];
+		for (Entry e : entries)
+		{
+			// The sort is stable. For duplicate titles the last one wins.
+			if (size > 0 && titles[size - 1].equals(e.title))
+				--size;
+			
+			titles[size] = e.title;
+			streamOffsets[size] = e.streamOffset;
+			pageIds[size] = e.pageId;
+			++size;
+		}
+		
+		this.titles = Arrays.copyOf(titles, size);
+		this.streamOffsets = Arrays.copyOf(streamOffsets, size);
+		this.pageIds = Arrays.copyOf(pageIds, size);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Loads an index file. If the file name ends in <code>.bz2</code> the file
+	 * is decompressed on the fly.
+	 */
+	public static MultistreamDumpIndex load(File indexFile) throws IOException
+	{
+		InputStream is = new BufferedInputStream(new FileInputStream(indexFile));
+		try
+		{
+			if (indexFile.getName().endsWith(".bz2"))
+				is = new BZip2CompressorInputStream(is, true);
+			
+			return load(is);
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+	
+	/**
+	 * Loads an index from a stream of uncompressed index lines.
+	 */
+	public static MultistreamDumpIndex load(InputStream indexStream) throws IOException
+	{
+		BufferedReader r = new BufferedReader(new InputStreamReader(indexStream, UTF8));
+		
+		List<Entry> entries = new ArrayList<Entry>();
+		
+		int lineNo = 0;
+		String line;
+		while ((line = r.readLine()) != null)
+		{
+			++lineNo;
+			if (line.isEmpty())
+				continue;
+			
+			int i = line.indexOf(':');
+			int j = (i < 0) ? -1 : line.indexOf(':', i + 1);
+			if (j < 0)
+				throw new IOException("Malformed index entry in line " + lineNo + ": " + line);
+			
+			try
+			{
+				entries.add(new Entry(
+						line.substring(j + 1),
+						Long.parseLong(line.substring(0, i)),
+						Long.parseLong(line.substring(i + 1, j))));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IOException("Malformed index entry in line " + lineNo + ": " + line, e);
+			}
+		}
+		
+		return new MultistreamDumpIndex(entries);
+	}
+	
+	/**
+	 * Builds an index by decompressing the given multistream dump once.
+	 */
+	public static MultistreamDumpIndex build(InputStream compressedDump) throws IOException
+	{
+		BZip2StreamSplitter splitter = new BZip2StreamSplitter(
+				compressedDump,
+				ParallelBZip2InputStream.MAX_STREAM_SIZE);
+		
+		List<Entry> entries = new ArrayList<Entry>();
+		
+		while (true)
+		{
+			long offset = splitter.getOffset();
+			
+			byte[] compressed = splitter.next();
+			if (compressed == null)
+				break;
+			
+			InputStream bzIn = new BZip2CompressorInputStream(
+					new ByteArrayInputStream(compressed), true);
+			
+			String xml = new String(IOUtils.toByteArray(bzIn), UTF8);
+			
+			Matcher m = PAGE_RX.matcher(xml);
+			while (m.find())
+			{
+				entries.add(new Entry(
+						unescapeXml(m.group(1)),
+						offset,
+						Long.parseLong(m.group(2))));
+			}
+		}
+		
+		if (splitter.isOversized())
+			throw new IOException("Input is not a multistream bzip2 dump");
+		
+		return new MultistreamDumpIndex(entries);
+	}
+	
+	/**
+	 * Writes the index in the format of the Wikimedia index files
+	 * (uncompressed). The entries are ordered by title.
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		Writer w = new OutputStreamWriter(out, UTF8);
+		for (int i = 0; i < titles.length; ++i)
+		{
+			w.write(Long.toString(streamOffsets[i]));
+			w.write(':');
+			w.write(Long.toString(pageIds[i]));
+			w.write(':');
+			w.write(titles[i]);
+			w.write('\n');
+		}
+		w.flush();
+	}
+	
+	// =========================================================================
+	
+	public int size()
+	{
+		return titles.length;
+	}
+	
+	public boolean contains(String title)
+	{
+		return find(title) >= 0;
+	}
+	
+	/**
+	 * @return The offset of the bzip2 stream which contains the page or -1 if
+	 *         the index does not know the title.
+	 */
+	public long getStreamOffset(String title)
+	{
+		int i = find(title);
+		return (i < 0) ? -1 : streamOffsets[i];
+	}
+	
+	/**
+	 * @return The id of the page or -1 if the index does not know the title.
+	 */
+	public long getPageId(String title)
+	{
+		int i = find(title);
+		return (i < 0) ? -1 : pageIds[i];
+	}
+	
+	// =========================================================================
+	
+	private int find(String title)
+	{
+		int i = Arrays.binarySearch(titles, title);
+		return (i < 0) ? -1 : i;
+	}
+	
+	private static String unescapeXml(String s)
+	{
+		if (s.indexOf('&') < 0)
+			return s;
+		
+		return s
+				.replace("&lt;", "<")
+				.replace("&gt;", ">")
+				.replace("&quot;", "\"")
+				.replace("&#039;", "'")
+				.replace("&apos;", "'")
+				.replace("&amp;", "&");
+	}
+	
+	// =========================================================================
+	
+	private static final class Entry
+	{
+		public final String title;
+		
+		public final long streamOffset;
+		
+		public final long pageId;
+		
+		public Entry(String title, long streamOffset, long pageId)
+		{
+			this.title = title;
+			this.streamOffset = streamOffset;
+			this.pageId = pageId;
+		}
+	}
+}
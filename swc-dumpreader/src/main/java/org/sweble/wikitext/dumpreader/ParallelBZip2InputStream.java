@@ -0,0 +1,303 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Decompresses a multistream bzip2 file using multiple threads.
+ * 
+ * Multistream dumps (e.g. <code>pages-articles-multistream.xml.bz2</code>)
+ * are a concatenation of independent bzip2 streams, each holding about a
+ * hundred pages. This stream cuts the compressed input into these streams
+ * (see {@link BZip2StreamSplitter}), hands each stream to a worker thread for
+ * decompression and returns the decompressed data in the original order.
+ * 
+ * If no stream header is found within {@link #MAX_STREAM_SIZE} bytes, the
+ * input is most likely an ordinary single stream bzip2 file. In that case the
+ * remaining input is decompressed sequentially on the calling thread.
+ */
+public final class ParallelBZip2InputStream
+		extends
+			InputStream
+{
+	public static final int MAX_STREAM_SIZE = 64 * 1024 * 1024;
+	
+	// =========================================================================
+	
+	private final InputStream in;
+	
+	private final BZip2StreamSplitter splitter;
+	
+	private final ExecutorService executor;
+	
+	private final int readAhead;
+	
+	private final ArrayDeque<Stream> streams = new ArrayDeque<Stream>();
+	
+	private boolean splittingDone;
+	
+	private Stream current;
+	
+	private byte[] data;
+	
+	private int pos;
+	
+	private long compressedBytesDone;
+	
+	private CountingInputStream tailCounter;
+	
+	private long tailOffset;
+	
+	private InputStream tail;
+	
+	private volatile long compressedBytesRead;
+	
+	private final byte[] singleByte = new byte[1];
+	
+	// =========================================================================
+	
+	/**
+	 * @param in
+	 *            The compressed input.
+	 * @param threads
+	 *            The number of threads used for decompression.
+	 */
+	public ParallelBZip2InputStream(InputStream in, int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException();
+		
+		this.in = in;
+		this.splitter = new BZip2StreamSplitter(in, MAX_STREAM_SIZE);
+		this.readAhead = 2 * threads;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private int count = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "BZip2Decompressor-" + (count++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns the number of compressed bytes that correspond to the data that
+	 * was returned by this stream so far. The position inside a stream that is
+	 * currently being read is interpolated. Compressed data that has only been
+	 * read ahead for decompression is not counted.
+	 * 
+	 * This method can be called from any thread.
+	 */
+	public long getCompressedBytesRead()
+	{
+		return compressedBytesRead;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public int read() throws IOException
+	{
+		int read = read(singleByte, 0, 1);
+		return (read == -1) ? -1 : (singleByte[0] & 0xFF);
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+		
+		while (true)
+		{
+			if (data != null && pos < data.length)
+			{
+				int n = Math.min(len, data.length - pos);
+				System.arraycopy(data, pos, b, off, n);
+				pos += n;
+				
+				compressedBytesRead = compressedBytesDone +
+						(current.compressedLength * pos) / data.length;
+				
+				return n;
+			}
+			
+			if (!nextStream())
+				return readTail(b, off, len);
+		}
+	}
+	
+	@Override
+	public int available() throws IOException
+	{
+		return (data != null) ? (data.length - pos) : 0;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		executor.shutdownNow();
+		streams.clear();
+		data = null;
+		if (tail != null)
+			tail.close();
+		in.close();
+	}
+	
+	// =========================================================================
+	
+	private boolean nextStream() throws IOException
+	{
+		if (current != null)
+		{
+			compressedBytesDone += current.compressedLength;
+			compressedBytesRead = compressedBytesDone;
+			current = null;
+			data = null;
+		}
+		
+		while (!splittingDone && streams.size() < readAhead)
+			splitStream();
+		
+		if (streams.isEmpty())
+			return false;
+		
+		current = streams.poll();
+		data = getDecompressed(current.decompressed);
+		pos = 0;
+		
+		// Keep the workers busy while the consumer works through this stream
+		while (!splittingDone && streams.size() < readAhead)
+			splitStream();
+		
+		return true;
+	}
+	
+	private int readTail(byte[] b, int off, int len) throws IOException
+	{
+		if (tailCounter == null)
+			return -1;
+		
+		if (tail == null)
+			tail = new BZip2CompressorInputStream(tailCounter, true);
+		
+		int read = tail.read(b, off, len);
+		compressedBytesRead = tailOffset + tailCounter.getCount();
+		return read;
+	}
+	
+	private byte[] getDecompressed(Future<byte[]> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException("Decompression of bzip2 stream failed", cause);
+		}
+	}
+	
+	// =========================================================================
+	
+	private void splitStream() throws IOException
+	{
+		long offset = splitter.getOffset();
+		
+		byte[] compressed = splitter.next();
+		if (compressed != null)
+		{
+			submit(compressed);
+		}
+		else
+		{
+			if (splitter.isOversized())
+			{
+				tailOffset = offset;
+				tailCounter = new CountingInputStream(splitter.getRemainder());
+			}
+			
+			splittingDone = true;
+		}
+	}
+	
+	private void submit(final byte[] compressed)
+	{
+		Future<byte[]> decompressed = executor.submit(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				// Decompress concatenated streams in case the scanner missed a
+				// stream boundary (e.g. an empty stream without blocks).
+				InputStream bzIn = new BZip2CompressorInputStream(
+						new ByteArrayInputStream(compressed), true);
+				
+				ByteArrayOutputStream out =
+						new ByteArrayOutputStream(4 * compressed.length);
+				
+				IOUtils.copy(bzIn, out);
+				return out.toByteArray();
+			}
+		});
+		
+		streams.add(new Stream(compressed.length, decompressed));
+	}
+	
+	// =========================================================================
+	
+	private static final class Stream
+	{
+		public final long compressedLength;
+		
+		public final Future<byte[]> decompressed;
+		
+		public Stream(long compressedLength, Future<byte[]> decompressed)
+		{
+			this.compressedLength = compressedLength;
+			this.decompressed = decompressed;
+		}
+	}
+}
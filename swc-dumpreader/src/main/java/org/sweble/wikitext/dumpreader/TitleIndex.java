@@ -0,0 +1,378 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.sweble.wikitext.engine.PageTitle;
+
+/**
+ * A compact, memory-mapped index of the titles of all pages in a dump which
+ * answers whether a page exists and whether it is a redirect.
+ * 
+ * The index is written by {@link TitleIndexBuilder}. Titles are stored as
+ * UTF-8 byte strings in unsigned lexicographic order. They are grouped into
+ * blocks of a fixed number of titles. Within a block each title only stores
+ * the suffix it does not share with its predecessor (front coding). A lookup
+ * performs a binary search over the first titles of all blocks and then scans
+ * a single block. An optional Bloom filter in front of the table answers most
+ * lookups of titles that do not exist without touching the table at all.
+ * 
+ * File layout (big endian):
+ * 
+ * <pre>
+ * int     magic ("SWTI")
+ * int     version
+ * int     number of titles
+ * int     titles per block
+ * int     number of blocks
+ * int     number of Bloom filter hash functions (0 = no Bloom filter)
+ * int     number of Bloom filter words
+ * long[]  Bloom filter words
+ * int[]   offset of each block relative to the start of the data section
+ * ...     data section
+ * </pre>
+ * 
+ * Each entry of a block consists of the length of the prefix shared with the
+ * previous title (varint), the length of the remaining suffix (varint), the
+ * suffix, a flags byte and, if the page is a redirect, the length of the
+ * redirect target (varint) followed by the target title.
+ * 
+ * Lookups do not modify any state and can be performed concurrently.
+ */
+public final class TitleIndex
+		implements
+			Closeable
+{
+	static final int MAGIC = 0x53575449;
+	
+	static final int VERSION = 1;
+	
+	static final int FLAG_REDIRECT = 0x01;
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// =========================================================================
+	
+	private final RandomAccessFile file;
+	
+	private final ByteBuffer buffer;
+	
+	private final int titleCount;
+	
+	private final int blockSize;
+	
+	private final int blockCount;
+	
+	private final int bloomHashCount;
+	
+	private final long bloomBitCount;
+	
+	private final int bloomStart;
+	
+	private final int blockTableStart;
+	
+	private final int dataStart;
+	
+	// =========================================================================
+	
+	private TitleIndex(RandomAccessFile file, ByteBuffer buffer) throws IOException
+	{
+		this.file = file;
+		this.buffer = buffer;
+		
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a title index");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported title index version: " + buffer.getInt(4));
+		
+		this.titleCount = buffer.getInt(8);
+		this.blockSize = buffer.getInt(12);
+		this.blockCount = buffer.getInt(16);
+		this.bloomHashCount = buffer.getInt(20);
+		
+		int bloomWordCount = buffer.getInt(24);
+		this.bloomBitCount = 64L * bloomWordCount;
+		this.bloomStart = 28;
+		this.blockTableStart = bloomStart + 8 * bloomWordCount;
+		this.dataStart = blockTableStart + 4 * blockCount;
+	}
+	
+	/**
+	 * Maps an index file into memory.
+	 */
+	public static TitleIndex open(File indexFile) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Title index too large: " + indexFile);
+			
+			ByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			return new TitleIndex(file, buffer);
+		}
+		catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Wraps an index that is already held in memory.
+	 */
+	public static TitleIndex wrap(byte[] index) throws IOException
+	{
+		return new TitleIndex(null, ByteBuffer.wrap(index));
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (file != null)
+			file.close();
+	}
+	
+	// =========================================================================
+	
+	public int size()
+	{
+		return titleCount;
+	}
+	
+	public boolean hasBloomFilter()
+	{
+		return bloomHashCount > 0;
+	}
+	
+	/**
+	 * @param title
+	 *            The full title as it appears in the dump (with namespace
+	 *            prefix and spaces instead of underscores).
+	 */
+	public boolean exists(String title)
+	{
+		return find(title.getBytes(UTF8)) >= 0;
+	}
+	
+	public boolean exists(PageTitle pageTitle)
+	{
+		if (pageTitle.isInterwiki())
+			return false;
+		return exists(MultistreamDumpExpansionCallback.getDumpTitle(pageTitle));
+	}
+	
+	public boolean isRedirect(String title)
+	{
+		int pos = find(title.getBytes(UTF8));
+		return (pos >= 0) && ((buffer.get(pos) & FLAG_REDIRECT) != 0);
+	}
+	
+	/**
+	 * @return The title of the redirect target or null if the page does not
+	 *         exist or is not a redirect.
+	 */
+	public String getRedirectTarget(String title)
+	{
+		int pos = find(title.getBytes(UTF8));
+		if (pos < 0 || (buffer.get(pos) & FLAG_REDIRECT) == 0)
+			return null;
+		
+		int[] cursor = new int[] { pos + 1 };
+		int length = readVarInt(cursor);
+		
+		byte[] target = new byte[length];
+		for (int i = 0; i < length; ++i)
+			target[i] = buffer.get(cursor[0] + i);
+		
+		return new String(target, UTF8);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * @return The position of the flags byte of the entry or -1 if the title
+	 *         is not in the index.
+	 */
+	private int find(byte[] key)
+	{
+		if (blockCount == 0 || !mightContain(key))
+			return -1;
+		
+		// Find the last block whose first title is less or equal to the key
+		int lo = 0;
+		int hi = blockCount - 1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi + 1) >>> 1;
+			if (compareFirstTitle(mid, key) <= 0)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		
+		int[] cursor = new int[] { blockStart(lo) };
+		byte[] title = new byte[Math.max(64, key.length)];
+		
+		int count = Math.min(blockSize, titleCount - lo * blockSize);
+		for (int i = 0; i < count; ++i)
+		{
+			int shared = readVarInt(cursor);
+			int suffix = readVarInt(cursor);
+			int length = shared + suffix;
+			
+			if (length > title.length)
+			{
+				byte[] grown = new byte[Math.max(length, 2 * title.length)];
+				System.arraycopy(title, 0, grown, 0, shared);
+				title = grown;
+			}
+			
+			for (int j = 0; j < suffix; ++j)
+				title[shared + j] = buffer.get(cursor[0] + j);
+			cursor[0] += suffix;
+			
+			int cmp = compare(title, length, key);
+			if (cmp == 0)
+				return cursor[0];
+			if (cmp > 0)
+				return -1;
+			
+			int flags = buffer.get(cursor[0]++);
+			if ((flags & FLAG_REDIRECT) != 0)
+			{
+				int targetLength = readVarInt(cursor);
+				cursor[0] += targetLength;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private int blockStart(int block)
+	{
+		return dataStart + buffer.getInt(blockTableStart + 4 * block);
+	}
+	
+	private int compareFirstTitle(int block, byte[] key)
+	{
+		int[] cursor = new int[] { blockStart(block) };
+		
+		// The first entry of a block never shares a prefix
+		readVarInt(cursor);
+		int length = readVarInt(cursor);
+		
+		int start = cursor[0];
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; ++i)
+		{
+			int a = buffer.get(start + i) & 0xFF;
+			int b = key[i] & 0xFF;
+			if (a != b)
+				return a - b;
+		}
+		return length - key.length;
+	}
+	
+	private static int compare(byte[] title, int length, byte[] key)
+	{
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; ++i)
+		{
+			int a = title[i] & 0xFF;
+			int b = key[i] & 0xFF;
+			if (a != b)
+				return a - b;
+		}
+		return length - key.length;
+	}
+	
+	private int readVarInt(int[] cursor)
+	{
+		int pos = cursor[0];
+		int value = 0;
+		int shift = 0;
+		while (true)
+		{
+			int b = buffer.get(pos++);
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+			shift += 7;
+		}
+		cursor[0] = pos;
+		return value;
+	}
+	
+	private boolean mightContain(byte[] key)
+	{
+		if (bloomHashCount == 0)
+			return true;
+		
+		long h1 = hash1(key);
+		long h2 = hash2(h1);
+		for (int i = 0; i < bloomHashCount; ++i)
+		{
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bloomBitCount;
+			long word = buffer.getLong(bloomStart + 8 * (int) (bit >>> 6));
+			if ((word & (1L << (bit & 63))) == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * FNV-1a.
+	 */
+	static long hash1(byte[] key)
+	{
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key)
+		{
+			h ^= (b & 0xFF);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+	
+	/**
+	 * A second, independent hash derived from the first one (MurmurHash3
+	 * finalizer). Always odd.
+	 */
+	static long hash2(long h1)
+	{
+		long h = h1 ^ 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h | 1;
+	}
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.sweble.wikitext.dumpreader.model.DumpConverter;
+import org.sweble.wikitext.dumpreader.model.Page;
+
+/**
+ * Collects page titles and redirect targets and writes them as a
+ * {@link TitleIndex}.
+ */
+public final class TitleIndexBuilder
+{
+	public static final int DEFAULT_BLOCK_SIZE = 16;
+	
+	public static final int DEFAULT_BLOOM_FILTER_BITS_PER_TITLE = 10;
+	
+	// =========================================================================
+	
+	private final Map<String, String> titles = new HashMap<String, String>();
+	
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	
+	private int bloomFilterBitsPerTitle = DEFAULT_BLOOM_FILTER_BITS_PER_TITLE;
+	
+	// =========================================================================
+	
+	public TitleIndexBuilder()
+	{
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Builds a title index from all pages of a dump whose latest revision has
+	 * text. Revisions are only inspected, their text is not kept in memory
+	 * while reading the dump.
+	 */
+	public static void buildFromDump(
+			File dumpFile,
+			File indexFile,
+			Logger logger) throws Exception
+	{
+		final TitleIndexBuilder builder = new TitleIndexBuilder();
+		final DumpConverter converter = new DumpConverter();
+		
+		// Whether the latest revision seen so far of a page has text. The
+		// revisions of a page are always processed before the page itself.
+		final Map<Object, Boolean> latestRevisionHasText =
+				Collections.synchronizedMap(new IdentityHashMap<Object, Boolean>());
+		
+		InputStream is = new FileInputStream(dumpFile);
+		try
+		{
+			DumpReader dr = new DumpReader(
+					is,
+					Charset.forName("UTF-8"),
+					dumpFile.getAbsolutePath(),
+					logger,
+					false)
+			{
+				@Override
+				protected void processPage(Object mediaWiki, Object page) throws Exception
+				{
+					Boolean hasText = latestRevisionHasText.remove(page);
+					if (hasText == null || !hasText)
+						return;
+					
+					Page p = converter.convertPage(page);
+					builder.add(p.getTitle(), p.getRedirectTitle());
+				}
+				
+				@Override
+				protected boolean processRevision(Object page, Object revision) throws Exception
+				{
+					latestRevisionHasText.put(
+							page,
+							MultistreamDumpExpansionCallback.hasText(
+									converter.convertRevision(revision)));
+					
+					// We only need titles, don't keep the text in memory
+					return false;
+				}
+			};
+			
+			dr.unmarshal();
+		}
+		finally
+		{
+			is.close();
+		}
+		
+		logger.info("Writing title index with " + builder.size() + " titles to " + indexFile);
+		builder.write(indexFile);
+	}
+	
+	// =========================================================================
+	
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+	
+	/**
+	 * The number of titles per front-coded block. Larger blocks make the index
+	 * smaller but lookups slower.
+	 */
+	public void setBlockSize(int blockSize)
+	{
+		if (blockSize < 1)
+			throw new IllegalArgumentException();
+		this.blockSize = blockSize;
+	}
+	
+	public int getBloomFilterBitsPerTitle()
+	{
+		return bloomFilterBitsPerTitle;
+	}
+	
+	/**
+	 * The size of the Bloom filter in bits per title. 10 bits per title give a
+	 * false positive rate of about 1%. 0 disables the Bloom filter.
+	 */
+	public void setBloomFilterBitsPerTitle(int bloomFilterBitsPerTitle)
+	{
+		if (bloomFilterBitsPerTitle < 0)
+			throw new IllegalArgumentException();
+		this.bloomFilterBitsPerTitle = bloomFilterBitsPerTitle;
+	}
+	
+	public int size()
+	{
+		return titles.size();
+	}
+	
+	/**
+	 * @param title
+	 *            The full title of the page as it appears in the dump.
+	 * @param redirectTarget
+	 *            The redirect target or null if the page is not a redirect.
+	 */
+	public void add(String title, String redirectTarget)
+	{
+		titles.put(title, redirectTarget);
+	}
+	
+	/**
+	 * Adds a page if its latest revision has text. Pages without text are
+	 * skipped since MultistreamDumpExpansionCallback cannot retrieve them
+	 * either.
+	 */
+	public void add(Page page)
+	{
+		if (MultistreamDumpExpansionCallback.getLatestRevisionWithText(page) == null)
+			return;
+		add(page.getTitle(), page.getRedirectTitle());
+	}
+	
+	// =========================================================================
+	
+	public void write(File indexFile) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+		try
+		{
+			write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	public void write(OutputStream out) throws IOException
+	{
+		List<Entry> entries = new ArrayList<Entry>(titles.size());
+		for (Map.Entry<String, String> e : titles.entrySet())
+		{
+			entries.add(new Entry(
+					e.getKey().getBytes(TitleIndex.UTF8),
+					(e.getValue() == null) ? null : e.getValue().getBytes(TitleIndex.UTF8)));
+		}
+		
+		Collections.sort(entries, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry o1, Entry o2)
+			{
+				return compareUnsigned(o1.title, o2.title);
+			}
+		});
+		
+		int blockCount = (entries.size() + blockSize - 1) / blockSize;
+		int[] blockOffsets = new int[blockCount];
+		
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] previous = null;
+		for (int i = 0; i < entries.size(); ++i)
+		{
+			Entry e = entries.get(i);
+			
+			int shared = 0;
+			if (i % blockSize == 0)
+			{
+				blockOffsets[i / blockSize] = data.size();
+			}
+			else
+			{
+				int n = Math.min(previous.length, e.title.length);
+				while (shared < n && previous[shared] == e.title[shared])
+					++shared;
+			}
+			
+			writeVarInt(data, shared);
+			writeVarInt(data, e.title.length - shared);
+			data.write(e.title, shared, e.title.length - shared);
+			
+			if (e.redirectTarget != null)
+			{
+				data.write(TitleIndex.FLAG_REDIRECT);
+				writeVarInt(data, e.redirectTarget.length);
+				data.write(e.redirectTarget, 0, e.redirectTarget.length);
+			}
+			else
+			{
+				data.write(0);
+			}
+			
+			previous = e.title;
+		}
+		
+		long[] bloom = buildBloomFilter(entries);
+		int bloomHashCount = (bloom.length == 0) ?
+				0 :
+				Math.max(1, (int) Math.round(bloomFilterBitsPerTitle * Math.log(2)));
+		
+		if (bloomHashCount > 0)
+			fillBloomFilter(bloom, bloomHashCount, entries);
+		
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(TitleIndex.MAGIC);
+		dos.writeInt(TitleIndex.VERSION);
+		dos.writeInt(entries.size());
+		dos.writeInt(blockSize);
+		dos.writeInt(blockCount);
+		dos.writeInt(bloomHashCount);
+		dos.writeInt(bloom.length);
+		for (long word : bloom)
+			dos.writeLong(word);
+		for (int offset : blockOffsets)
+			dos.writeInt(offset);
+		data.writeTo(dos);
+		dos.flush();
+	}
+	
+	// =========================================================================
+	
+	private long[] buildBloomFilter(List<Entry> entries)
+	{
+		if (bloomFilterBitsPerTitle == 0 || entries.isEmpty())
+			return new long[0];
+		
+		long bits = (long) entries.size() * bloomFilterBitsPerTitle;
+		return new long[(int) ((bits + 63) / 64)];
+	}
+	
+	private static void fillBloomFilter(
+			long[] bloom,
+			int hashCount,
+			List<Entry> entries)
+	{
+		long bitCount = 64L * bloom.length;
+		for (Entry e : entries)
+		{
+			long h1 = TitleIndex.hash1(e.title);
+			long h2 = TitleIndex.hash2(h1);
+			for (int i = 0; i < hashCount; ++i)
+			{
+				long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+				bloom[(int) (bit >>> 6)] |= 1L << (bit & 63);
+			}
+		}
+	}
+	
+	private static void writeVarInt(ByteArrayOutputStream out, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static int compareUnsigned(byte[] a, byte[] b)
+	{
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; ++i)
+		{
+			int x = a[i] & 0xFF;
+			int y = b[i] & 0xFF;
+			if (x != y)
+				return x - y;
+		}
+		return a.length - b.length;
+	}
+	
+	// =========================================================================
+	
+	private static final class Entry
+	{
+		public final byte[] title;
+		
+		public final byte[] redirectTarget;
+		
+		public Entry(byte[] title, byte[] redirectTarget)
+		{
+			this.title = title;
+			this.redirectTarget = redirectTarget;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.ValidationEventLocator;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.dumpreader.export_0_10.MediaWikiType;
+import org.sweble.wikitext.dumpreader.export_0_10.PageType;
+import org.sweble.wikitext.dumpreader.export_0_10.RevisionType;
+
+import de.fau.cs.osr.utils.StringUtils;
+
+public class TestDumpReader_0_10_Parallel
+{
+	private static final int PAGE_COUNT = 300;
+	
+	private static final int WORKER_COUNT = 4;
+	
+	private static final int MAX_PENDING_PAGES = 2;
+	
+	private static final String HEADER =
+			"<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\" version=\"0.10\" xml:lang=\"en\">\n" +
+					"  <siteinfo>\n" +
+					"    <sitename>SITENAME</sitename>\n" +
+					"    <dbname>DBNAME</dbname>\n" +
+					"    <base>BASE</base>\n" +
+					"    <generator>GENERATOR</generator>\n" +
+					"    <case>first-letter</case>\n" +
+					"    <namespaces>\n" +
+					"      <namespace key=\"-1\" case=\"first-letter\">NEGATIVE</namespace>\n" +
+					"      <namespace key=\"0\" case=\"first-letter\" />\n" +
+					"      <namespace key=\"1\" case=\"first-letter\">POSITIVE</namespace>\n" +
+					"    </namespaces>\n" +
+					"  </siteinfo>\n";
+	
+	private static final String FOOTER = "</mediawiki>\n";
+	
+	private Logger logger;
+	
+	private File dumpFile;
+	
+	/**
+	 * The number of pages whose revisions have been decoded but which have
+	 * not yet been processed.
+	 */
+	private final AtomicInteger pendingPages = new AtomicInteger();
+	
+	private final AtomicInteger maxPendingPages = new AtomicInteger();
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		logger = Logger.getLogger(getClass());
+		
+		dumpFile = File.createTempFile("parallel-", ".xml");
+		
+		OutputStream out = new FileOutputStream(dumpFile);
+		try
+		{
+			out.write(HEADER.getBytes("UTF-8"));
+			for (int i = 0; i < PAGE_COUNT; ++i)
+				out.write(makePage(getTitle(i), i + 1).getBytes("UTF-8"));
+			out.write(FOOTER.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	@After
+	public void tearDown()
+	{
+		dumpFile.delete();
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testOrderedParallelExport() throws Throwable
+	{
+		checkPages(unmarshalParallel(getSinglePageDump(), 2, 4, true, 1));
+	}
+	
+	@Test
+	public void testUnorderedParallelExport() throws Throwable
+	{
+		checkPages(unmarshalParallel(getSinglePageDump(), 2, 4, false, 1));
+	}
+	
+	@Test
+	public void testOrderedParallelExportKeepsDumpOrder() throws Throwable
+	{
+		List<PageType> pages = unmarshalParallel(
+				dumpFile,
+				WORKER_COUNT,
+				MAX_PENDING_PAGES,
+				true,
+				PAGE_COUNT);
+		
+		List<String> titles = new ArrayList<String>();
+		for (PageType page : pages)
+			titles.add(page.getTitle());
+		
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < PAGE_COUNT; ++i)
+			expected.add(getTitle(i));
+		
+		assertEquals(expected, titles);
+		assertTrue(maxPendingPages.get() <= MAX_PENDING_PAGES);
+	}
+	
+	@Test
+	public void testUnorderedParallelExportDeliversAllPages() throws Throwable
+	{
+		List<PageType> pages = unmarshalParallel(
+				dumpFile,
+				WORKER_COUNT,
+				MAX_PENDING_PAGES,
+				false,
+				PAGE_COUNT);
+		
+		Set<String> titles = new HashSet<String>();
+		for (PageType page : pages)
+		{
+			assertTrue(titles.add(page.getTitle()));
+			
+			RevisionType rev = (RevisionType) page.getRevisionOrUpload().get(0);
+			assertEquals("TEXT " + page.getTitle(), rev.getText().getValue());
+		}
+		
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < PAGE_COUNT; ++i)
+			expected.add(getTitle(i));
+		
+		assertEquals(expected, titles);
+		assertTrue(maxPendingPages.get() <= MAX_PENDING_PAGES);
+	}
+	
+	// =========================================================================
+	
+	private File getSinglePageDump()
+	{
+		URL resource = getClass().getResource("/input-0.10.xml");
+		String path = StringUtils.decodeUsingDefaultCharset(resource.getFile());
+		return new File(path);
+	}
+		
+	private List<PageType> unmarshalParallel(
+			File file,
+			int workerCount,
+			int maxPending,
+			boolean preserveOrder,
+			int expectedCount) throws Throwable
+	{
+		final List<PageType> pages =
+				Collections.synchronizedList(new ArrayList<PageType>());
+		
+		DumpReader dr = null;
+		InputStream is = null;
+		try
+		{
+			is = new FileInputStream(file);
+			dr = new DumpReader(is, null, file.getAbsolutePath(), logger, true)
+			{
+				@Override
+				protected boolean processRevision(Object page, Object revision) throws Exception
+				{
+					// Each page of the dump has exactly one revision
+					int pending = pendingPages.incrementAndGet();
+					while (true)
+					{
+						int max = maxPendingPages.get();
+						if (pending <= max || maxPendingPages.compareAndSet(max, pending))
+							break;
+					}
+					
+					return super.processRevision(page, revision);
+				}
+				
+				@Override
+				protected void processPage(Object mediaWiki, Object page)
+				{
+					MediaWikiType mw = (MediaWikiType) mediaWiki;
+					assertEquals("0.10", mw.getVersion());
+					assertEquals("SITENAME", mw.getSiteinfo().getSitename());
+					assertEquals(3, mw.getSiteinfo().getNamespaces().getNamespace().size());
+					
+					pages.add((PageType) page);
+					
+					pendingPages.decrementAndGet();
+				}
+				
+				@Override
+				protected boolean processEvent(
+						ValidationEvent ve,
+						ValidationEventLocator vel) throws Exception
+				{
+					fail(ve.getMessage());
+					return super.processEvent(ve, vel);
+				}
+			};
+			dr.unmarshalParallel(workerCount, maxPending, preserveOrder);
+			
+			assertEquals(expectedCount, dr.getParsedCount());
+		}
+		finally
+		{
+			try
+			{
+				if (dr != null)
+					dr.close();
+			}
+			finally
+			{
+				if (is != null)
+					is.close();
+			}
+		}
+		
+		assertEquals(expectedCount, pages.size());
+		return pages;
+	}
+	
+	private void checkPages(List<PageType> pages)
+	{
+		assertEquals(1, pages.size());
+		
+		PageType p = pages.get(0);
+		assertEquals("TITLE", p.getTitle());
+		assertEquals(BigInteger.valueOf(10), p.getId());
+		assertEquals(BigInteger.valueOf(0), p.getNs());
+		assertNotNull(p.getRedirect());
+		
+		List<Object> items = p.getRevisionOrUpload();
+		assertEquals(1, items.size());
+		
+		RevisionType rev = (RevisionType) items.get(0);
+		assertEquals(BigInteger.valueOf(123456789), rev.getId());
+		assertEquals("TEXT", rev.getText().getValue());
+	}
+	
+	// =========================================================================
+	
+	private static String getTitle(int i)
+	{
+		return String.format("Page %03d", i);
+	}
+
+	private static String makePage(String title, int id)
+	{
+		return "  <page>\n" +
+				"    <title>" + title + "</title>\n" +
+				"    <ns>0</ns>\n" +
+				"    <id>" + id + "</id>\n" +
+				"    <revision>\n" +
+				"      <id>" + (1000 + id) + "</id>\n" +
+				"      <timestamp>2012-05-21T11:11:11Z</timestamp>\n" +
+				"      <contributor>\n" +
+				"        <username>USERNAME</username>\n" +
+				"        <id>987654321</id>\n" +
+				"      </contributor>\n" +
+				"      <comment>COMMENT</comment>\n" +
+				"      <model>wikitext</model>\n" +
+				"      <format>text/x-wiki</format>\n" +
+				"      <text xml:space=\"preserve\">TEXT " + title + "</text>\n" +
+				"      <sha1>abcdfeghijklmnopqrstuvwxyz01234</sha1>\n" +
+				"    </revision>\n" +
+				"  </page>\n";
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.dumpreader.model.Page;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class TestMultistreamDump
+{
+	private static final String HEADER =
+			"<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\" version=\"0.10\" xml:lang=\"en\">\n" +
+					"  <siteinfo>\n" +
+					"    <sitename>SITENAME</sitename>\n" +
+					"  </siteinfo>\n";
+	
+	private static final String FOOTER = "</mediawiki>\n";
+	
+	private File dumpFile;
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		dumpFile = File.createTempFile("multistream-", ".xml.bz2");
+		
+		OutputStream out = new FileOutputStream(dumpFile);
+		try
+		{
+			writeStream(out, HEADER);
+			writeStream(out, makePage("First", 1, "FIRST") + makePage("Template:Second", 2, "SECOND"));
+			writeStream(out, makePage("Third & Fourth", 3, "THIRD") + makeDeletedPage("Deleted", 4));
+			writeStream(out, FOOTER);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	@After
+	public void tearDown()
+	{
+		dumpFile.delete();
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testBuiltIndexMatchesWrittenIndex() throws IOException
+	{
+		MultistreamDumpIndex index = buildIndex();
+		assertEquals(4, index.size());
+		assertEquals(index.getStreamOffset("First"), index.getStreamOffset("Template:Second"));
+		assertTrue(index.getStreamOffset("First") < index.getStreamOffset("Third & Fourth"));
+		assertEquals(3, index.getPageId("Third & Fourth"));
+		assertFalse(index.contains("Fifth"));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.write(out);
+		
+		MultistreamDumpIndex loaded = MultistreamDumpIndex.load(
+				new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(index.size(), loaded.size());
+		for (String title : new String[] { "First", "Template:Second", "Third & Fourth", "Deleted" })
+		{
+			assertEquals(index.getStreamOffset(title), loaded.getStreamOffset(title));
+			assertEquals(index.getPageId(title), loaded.getPageId(title));
+		}
+	}
+	
+	@Test
+	public void testRandomAccess() throws Exception
+	{
+		MultistreamDump dump = new MultistreamDump(dumpFile, buildIndex(), 1);
+		try
+		{
+			assertEquals(ExportSchemaVersion.V0_10, dump.getSchemaVersion());
+			
+			assertText("THIRD", dump.getPage("Third & Fourth"));
+			assertText("SECOND", dump.getPage("Template:Second"));
+			assertText("FIRST", dump.getPage("First"));
+			assertNull(dump.getPage("Fifth"));
+			
+			assertEquals(1, dump.getHits());
+			assertEquals(2, dump.getMisses());
+		}
+		finally
+		{
+			dump.close();
+		}
+	}
+	
+	@Test
+	public void testExistenceChecksAgreeWithRetrieval() throws Exception
+	{
+		MultistreamDump dump = new MultistreamDump(dumpFile, buildIndex(), 1);
+		try
+		{
+			checkExistence(new MultistreamDumpExpansionCallback(dump));
+		}
+		finally
+		{
+			dump.close();
+		}
+	}
+	
+	@Test
+	public void testExistenceChecksWithTitleIndexAgreeWithRetrieval() throws Exception
+	{
+		File indexFile = File.createTempFile("title-index-", ".bin");
+		try
+		{
+			TitleIndexBuilder.buildFromDump(
+					dumpFile,
+					indexFile,
+					Logger.getLogger(TestMultistreamDump.class));
+			
+			TitleIndex titleIndex = TitleIndex.open(indexFile);
+			MultistreamDump dump = new MultistreamDump(dumpFile, buildIndex(), 1);
+			try
+			{
+				assertEquals(3, titleIndex.size());
+				checkExistence(new MultistreamDumpExpansionCallback(dump, titleIndex));
+			}
+			finally
+			{
+				dump.close();
+				titleIndex.close();
+			}
+		}
+		finally
+		{
+			indexFile.delete();
+		}
+	}
+	
+	@Test
+	public void testTitleIndexBuilderSkipsPagesWithoutText() throws Exception
+	{
+		MultistreamDump dump = new MultistreamDump(dumpFile, buildIndex(), 1);
+		try
+		{
+			TitleIndexBuilder builder = new TitleIndexBuilder();
+			builder.add(dump.getPage("First"));
+			builder.add(dump.getPage("Deleted"));
+			assertEquals(1, builder.size());
+		}
+		finally
+		{
+			dump.close();
+		}
+	}
+	
+	// =========================================================================
+	
+	private static void checkExistence(MultistreamDumpExpansionCallback callback) throws Exception
+	{
+		WikiConfig config = DefaultConfigEnWp.generate();
+		
+		String[] titles = { "First", "Template:Second", "Third & Fourth", "Deleted", "Fifth" };
+		for (String title : titles)
+		{
+			PageTitle pageTitle = PageTitle.make(config, title);
+			FullPage page = callback.retrieveWikitext(null, pageTitle);
+			
+			assertEquals(title, page != null, callback.existsPage(pageTitle));
+		}
+		
+		assertTrue(callback.existsPage(PageTitle.make(config, "First")));
+		assertFalse(callback.existsPage(PageTitle.make(config, "Deleted")));
+	}
+	
+	private MultistreamDumpIndex buildIndex() throws IOException
+	{
+		InputStream in = new FileInputStream(dumpFile);
+		try
+		{
+			return MultistreamDumpIndex.build(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	private static void assertText(String expected, Page page)
+	{
+		assertNotNull(page);
+		assertEquals(1, page.getRevisions().size());
+		assertEquals(expected, page.getRevisions().get(0).getText());
+	}
+	
+	private static void writeStream(OutputStream out, String xml) throws IOException
+	{
+		BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(out);
+		bzOut.write(xml.getBytes("UTF-8"));
+		bzOut.finish();
+	}
+	
+	private static String makePage(String title, int id, String text)
+	{
+		return makePageWithText(
+				title,
+				id,
+				"<text xml:space=\"preserve\">" + text + "</text>");
+	}
+	
+	private static String makeDeletedPage(String title, int id)
+	{
+		return makePageWithText(title, id, "<text deleted=\"deleted\" />");
+	}
+	
+	private static String makePageWithText(String title, int id, String textElement)
+	{
+		return "  <page>\n" +
+				"    <title>" + title.replace("&", "&amp;") + "</title>\n" +
+				"    <ns>0</ns>\n" +
+				"    <id>" + id + "</id>\n" +
+				"    <revision>\n" +
+				"      <id>" + (100 + id) + "</id>\n" +
+				"      <timestamp>2012-05-21T11:11:11Z</timestamp>\n" +
+				"      <contributor>\n" +
+				"        <username>USERNAME</username>\n" +
+				"        <id>987654321</id>\n" +
+				"      </contributor>\n" +
+				"      <comment>COMMENT</comment>\n" +
+				"      <model>wikitext</model>\n" +
+				"      <format>text/x-wiki</format>\n" +
+				"      " + textElement + "\n" +
+				"      <sha1>abcdfeghijklmnopqrstuvwxyz01234</sha1>\n" +
+				"    </revision>\n" +
+				"  </page>\n";
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class TestParallelBZip2InputStream
+{
+	@Test
+	public void testMultistreamInputIsDecompressedInOrder() throws IOException
+	{
+		byte[][] parts = new byte[][] {
+				makeText(1, 10000),
+				makeText(2, 200000),
+				makeText(3, 0),
+				makeText(4, 50000),
+				makeText(5, 300000) };
+		
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (byte[] part : parts)
+		{
+			compressed.write(compress(part));
+			expected.write(part);
+		}
+		
+		checkDecompression(compressed.toByteArray(), expected.toByteArray());
+	}
+	
+	@Test
+	public void testSingleStreamInput() throws IOException
+	{
+		byte[] text = makeText(6, 500000);
+		checkDecompression(compress(text), text);
+	}
+	
+	@Test
+	public void testEmptyInput() throws IOException
+	{
+		checkDecompression(new byte[0], new byte[0]);
+	}
+	
+	// =========================================================================
+	
+	private void checkDecompression(byte[] compressed, byte[] expected) throws IOException
+	{
+		ParallelBZip2InputStream in = new ParallelBZip2InputStream(
+				new ByteArrayInputStream(compressed), 3);
+		
+		try
+		{
+			assertArrayEquals(expected, IOUtils.toByteArray(in));
+			assertEquals(compressed.length, in.getCompressedBytesRead());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	private static byte[] compress(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(out);
+		IOUtils.copy(new ByteArrayInputStream(data), bzOut);
+		bzOut.close();
+		return out.toByteArray();
+	}
+	
+	private static byte[] makeText(long seed, int length)
+	{
+		Random random = new Random(seed);
+		byte[] text = new byte[length];
+		for (int i = 0; i < length; ++i)
+			text[i] = (byte) ('a' + random.nextInt(26));
+		return text;
+	}
+}
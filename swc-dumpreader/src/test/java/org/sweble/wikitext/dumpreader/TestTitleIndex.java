@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.dumpreader;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTitleIndex
+{
+	@Test
+	public void testLookupWithoutBloomFilter() throws IOException
+	{
+		checkLookups(16, 0);
+	}
+	
+	@Test
+	public void testLookupWithBloomFilter() throws IOException
+	{
+		checkLookups(16, 10);
+	}
+	
+	@Test
+	public void testLookupWithSingleTitleBlocks() throws IOException
+	{
+		checkLookups(1, 10);
+	}
+	
+	@Test
+	public void testEmptyIndex() throws IOException
+	{
+		TitleIndex index = TitleIndex.wrap(write(new TitleIndexBuilder()));
+		assertEquals(0, index.size());
+		assertFalse(index.exists("Main Page"));
+	}
+	
+	// =========================================================================
+	
+	private void checkLookups(int blockSize, int bloomFilterBitsPerTitle) throws IOException
+	{
+		TitleIndexBuilder builder = new TitleIndexBuilder();
+		builder.setBlockSize(blockSize);
+		builder.setBloomFilterBitsPerTitle(bloomFilterBitsPerTitle);
+		
+		Map<String, String> titles = new HashMap<String, String>();
+		
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; ++i)
+		{
+			String title = "Title " + Integer.toString(random.nextInt(1000000), 36);
+			if (i % 7 == 0)
+				title = "Vorlage:" + title + " ü";
+			
+			String redirectTarget = (i % 5 == 0) ? ("Target of " + title) : null;
+			
+			builder.add(title, redirectTarget);
+			titles.put(title, redirectTarget);
+		}
+		
+		TitleIndex index = TitleIndex.wrap(write(builder));
+		assertEquals(titles.size(), index.size());
+		assertEquals(bloomFilterBitsPerTitle > 0, index.hasBloomFilter());
+		
+		for (Map.Entry<String, String> e : titles.entrySet())
+		{
+			assertTrue(index.exists(e.getKey()));
+			assertEquals(e.getValue() != null, index.isRedirect(e.getKey()));
+			assertEquals(e.getValue(), index.getRedirectTarget(e.getKey()));
+		}
+		
+		assertFalse(index.exists(""));
+		assertFalse(index.exists("A"));
+		assertFalse(index.exists("Title"));
+		assertFalse(index.exists("ÿ"));
+		assertNull(index.getRedirectTarget("Missing"));
+		
+		for (int i = 0; i < 2000; ++i)
+		{
+			String title = "Missing " + i;
+			assertFalse(index.exists(title));
+			assertFalse(index.isRedirect(title));
+		}
+	}
+	
+	private static byte[] write(TitleIndexBuilder builder) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		builder.write(out);
+		return out.toByteArray();
+	}
+}
@@ -57,7 +57,9 @@ public interface ExpansionCallback
 	 * Retrieves the specified revision of the article.
 	 *
 	String retrieveWikitext(ExpansionFrame expansionFrame, PageId pageId) throws Exception;
-	void cachePreprocessedPage(ExpansionFrame expansionFrame, FullPreprocessedPage page);
-	FullPreprocessedPage retrievePreprocessedPage(ExpansionFrame expansionFrame, PageTitle pageTitle, boolean forInclusion);
+	 */
+	
+	/* Caching of preprocessed pages is done by the engine, see
+	 * WtEngine.setPreprocessedPageCache(PreprocessedPageCache).
 	 */
 }
@@ -0,0 +1,265 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records what the expansion of a section of a page depended on, so that
+ * {@link WtEngineImpl#reparse(IncrementalPage, PageId, String, ExpansionCallback)}
+ * can tell whether the expanded section of a previous revision is still up to
+ * date.
+ *
+ * The dependencies wrap the callback of the expansion and record the answer
+ * to every question the expansion asked the callback: the revisions of the
+ * pages it retrieved, the URLs of files and the existence of pages. Besides,
+ * they remember whether a volatile parser function was called (see
+ * {@link ParserFunctionBase#isVolatile()}), whose result cannot be checked
+ * later on.
+ *
+ * To check the dependencies the callback is asked the same questions again.
+ * There is no expansion frame at that point, so the callback is passed
+ * <code>null</code> as frame.
+ */
+final class ExpansionDependencies
+		implements
+			ExpansionCallback,
+			PageExistenceCallback
+{
+	private final ExpansionCallback callback;
+	
+	private final Map<String, Dependency> dependencies =
+			new LinkedHashMap<String, Dependency>();
+	
+	private boolean volatileCalls = false;
+	
+	// =========================================================================
+	
+	public ExpansionDependencies(ExpansionCallback callback)
+	{
+		this.callback = callback;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Remembers that a volatile parser function was called.
+	 */
+	public void markVolatile()
+	{
+		this.volatileCalls = true;
+	}
+	
+	/**
+	 * Checks whether the given callback still gives the recorded answers and
+	 * no volatile parser function was called.
+	 */
+	public boolean isUpToDate(ExpansionCallback callback)
+	{
+		if (volatileCalls)
+			return false;
+		
+		try
+		{
+			for (Dependency dependency : dependencies.values())
+			{
+				if (!dependency.isUpToDate(callback))
+					return false;
+			}
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+		
+		return true;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public FullPage retrieveWikitext(
+			ExpansionFrame expansionFrame,
+			PageTitle pageTitle) throws Exception
+	{
+		FullPage page = callback.retrieveWikitext(expansionFrame, pageTitle);
+		record(new PageDependency(pageTitle, page));
+		return page;
+	}
+	
+	@Override
+	public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+	{
+		String url = callback.fileUrl(pageTitle, width, height);
+		record(new FileUrlDependency(pageTitle, width, height, url));
+		return url;
+	}
+	
+	@Override
+	public boolean existsPage(PageTitle pageTitle) throws Exception
+	{
+		boolean exists = exists(callback, pageTitle);
+		record(new ExistenceDependency(pageTitle, exists));
+		return exists;
+	}
+	
+	// =========================================================================
+	
+	private void record(Dependency dependency)
+	{
+		// The first answer is the one the expansion built upon
+		String key = dependency.getKey();
+		if (!dependencies.containsKey(key))
+			dependencies.put(key, dependency);
+	}
+	
+	private static boolean exists(ExpansionCallback callback, PageTitle pageTitle) throws Exception
+	{
+		if (callback instanceof PageExistenceCallback)
+			return ((PageExistenceCallback) callback).existsPage(pageTitle);
+		
+		return (callback.retrieveWikitext(null, pageTitle) != null) ||
+				(callback.fileUrl(pageTitle, -1, -1) != null);
+	}
+	
+	// =========================================================================
+	
+	private static abstract class Dependency
+	{
+		protected final PageTitle title;
+		
+		public Dependency(PageTitle title)
+		{
+			this.title = title;
+		}
+		
+		public abstract String getKey();
+		
+		public abstract boolean isUpToDate(ExpansionCallback callback) throws Exception;
+	}
+	
+	// =========================================================================
+	
+	private static final class PageDependency
+			extends
+				Dependency
+	{
+		private final boolean exists;
+		
+		private final long revision;
+		
+		/**
+		 * Only kept if the callback does not know the revision of the page.
+		 */
+		private final String text;
+		
+		public PageDependency(PageTitle title, FullPage page)
+		{
+			super(title);
+			this.exists = (page != null);
+			this.revision = exists ? page.getId().getRevision() : -1;
+			this.text = (exists && revision < 0) ? page.getText() : null;
+		}
+		
+		@Override
+		public String getKey()
+		{
+			return "page:" + title.getNormalizedFullTitle();
+		}
+		
+		@Override
+		public boolean isUpToDate(ExpansionCallback callback) throws Exception
+		{
+			FullPage page = callback.retrieveWikitext(null, title);
+			if (page == null || !exists)
+				return page == null && !exists;
+			
+			long current = page.getId().getRevision();
+			if (revision >= 0 && current >= 0)
+				return revision == current;
+			
+			return text != null && text.equals(page.getText());
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class FileUrlDependency
+			extends
+				Dependency
+	{
+		private final int width;
+		
+		private final int height;
+		
+		private final String url;
+		
+		public FileUrlDependency(
+				PageTitle title,
+				int width,
+				int height,
+				String url)
+		{
+			super(title);
+			this.width = width;
+			this.height = height;
+			this.url = url;
+		}
+		
+		@Override
+		public String getKey()
+		{
+			return "file:" + width + "x" + height + ":" + title.getNormalizedFullTitle();
+		}
+		
+		@Override
+		public boolean isUpToDate(ExpansionCallback callback) throws Exception
+		{
+			String current = callback.fileUrl(title, width, height);
+			return (url == null) ? current == null : url.equals(current);
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class ExistenceDependency
+			extends
+				Dependency
+	{
+		private final boolean exists;
+		
+		public ExistenceDependency(PageTitle title, boolean exists)
+		{
+			super(title);
+			this.exists = exists;
+		}
+		
+		@Override
+		public String getKey()
+		{
+			return "exists:" + title.getNormalizedFullTitle();
+		}
+		
+		@Override
+		public boolean isUpToDate(ExpansionCallback callback) throws Exception
+		{
+			return exists(callback, title) == exists;
+		}
+	}
+}
@@ -39,6 +39,8 @@ public class ExpansionFrame
 	
 	private final ExpansionFrame parentFrame;
 	
+	private final PageId pageId;
+	
 	private final PageTitle title;
 	
 	private final Map<String, WtNodeList> arguments;
@@ -57,6 +59,12 @@ public class ExpansionFrame
 	
 	private ExpansionVisitor expansionVisitor;
 	
+	private final ExpansionMemo memo;
+	
+	private long cacheHits;
+	
+	private long cacheMisses;
+	
 	// FIXME: That should have been initialized from a request!
 	//        And only once for the whole expansion process!
 	private UrlService urlService = new UrlService();
@@ -67,7 +75,7 @@ public class ExpansionFrame
 			WtEngineImpl engine,
 			ExpansionCallback callback,
 			ExpansionDebugHooks hooks,
-			PageTitle title,
+			PageId pageId,
 			WtEntityMap entityMap,
 			boolean noRedirect,
 			List<Warning> warnings,
@@ -77,7 +85,8 @@ public class ExpansionFrame
 	{
 		this.engine = engine;
 		this.callback = callback;
-		this.title = title;
+		this.pageId = pageId;
+		this.title = pageId.getTitle();
 		this.entityMap = entityMap;
 		this.arguments = new HashMap<String, WtNodeList>();
 		this.forInclusion = false;
@@ -86,6 +95,7 @@ public class ExpansionFrame
 		this.frameLog = frameLog;
 		this.rootFrame = this;
 		this.parentFrame = null;
+		this.memo = engine.isMemoizationEnabled() ? new ExpansionMemo() : null;
 		
 		expansionVisitor = new ExpansionVisitor(
 				this,
@@ -99,7 +109,7 @@ public class ExpansionFrame
 			WtEngineImpl engine,
 			ExpansionCallback callback,
 			ExpansionDebugHooks hooks,
-			PageTitle title,
+			PageId pageId,
 			WtEntityMap entityMap,
 			Map<String, WtNodeList> arguments,
 			boolean forInclusion,
@@ -113,7 +123,8 @@ public class ExpansionFrame
 	{
 		this.engine = engine;
 		this.callback = callback;
-		this.title = title;
+		this.pageId = pageId;
+		this.title = pageId.getTitle();
 		this.entityMap = entityMap;
 		this.arguments = arguments;
 		this.forInclusion = forInclusion;
@@ -122,6 +133,7 @@ public class ExpansionFrame
 		this.frameLog = frameLog;
 		this.rootFrame = rootFrame;
 		this.parentFrame = parentFrame;
+		this.memo = null;
 		
 		expansionVisitor = new ExpansionVisitor(
 				this,
@@ -131,6 +143,76 @@ public class ExpansionFrame
 				catchAll);
 	}
 	
+	/**
+	 * @deprecated Use the constructor taking the {@link PageId} of the
+	 *             expanded page. The revision of the page is assumed to be
+	 *             unknown.
+	 */
+	@Deprecated
+	public ExpansionFrame(
+			WtEngineImpl engine,
+			ExpansionCallback callback,
+			ExpansionDebugHooks hooks,
+			PageTitle title,
+			WtEntityMap entityMap,
+			boolean noRedirect,
+			List<Warning> warnings,
+			EngLogContainer frameLog,
+			boolean timingEnabled,
+			boolean catchAll)
+	{
+		this(
+				engine,
+				callback,
+				hooks,
+				new PageId(title, -1),
+				entityMap,
+				noRedirect,
+				warnings,
+				frameLog,
+				timingEnabled,
+				catchAll);
+	}
+	
+	/**
+	 * @deprecated Use the constructor taking the {@link PageId} of the
+	 *             expanded page. The revision of the page is assumed to be
+	 *             unknown.
+	 */
+	@Deprecated
+	public ExpansionFrame(
+			WtEngineImpl engine,
+			ExpansionCallback callback,
+			ExpansionDebugHooks hooks,
+			PageTitle title,
+			WtEntityMap entityMap,
+			Map<String, WtNodeList> arguments,
+			boolean forInclusion,
+			boolean noRedirect,
+			ExpansionFrame rootFrame,
+			ExpansionFrame parentFrame,
+			List<Warning> warnings,
+			EngLogContainer frameLog,
+			boolean timingEnabled,
+			boolean catchAll)
+	{
+		this(
+				engine,
+				callback,
+				hooks,
+				new PageId(title, -1),
+				entityMap,
+				arguments,
+				forInclusion,
+				noRedirect,
+				rootFrame,
+				parentFrame,
+				warnings,
+				frameLog,
+				timingEnabled,
+				catchAll);
+	}
+	
 	// =========================================================================
 	
 	public WtEngineImpl getEngine()
@@ -148,6 +230,16 @@ public class ExpansionFrame
 		return parentFrame;
 	}
 	
+	/**
+	 * Returns the title and revision of the page expanded in this frame. The
+	 * revision is -1 if it is not known or if the frame expands only a part
+	 * of a page.
+	 */
+	public PageId getPageId()
+	{
+		return pageId;
+	}
+	
 	public PageTitle getTitle()
 	{
 		return title;
@@ -208,6 +300,37 @@ public class ExpansionFrame
 		return urlService;
 	}
 	
+	/**
+	 * Returns the memo table of the expansion run this frame belongs to or
+	 * null if memoization is disabled.
+	 */
+	public ExpansionMemo getMemo()
+	{
+		return rootFrame.memo;
+	}
+	
+	/**
+	 * Counts a lookup of a transcluded page in the preprocessed page cache
+	 * for the expansion run this frame belongs to.
+	 */
+	void countCacheLookup(boolean hit)
+	{
+		if (hit)
+			++rootFrame.cacheHits;
+		else
+			++rootFrame.cacheMisses;
+	}
+	
+	long getCacheHits()
+	{
+		return rootFrame.cacheHits;
+	}
+	
+	long getCacheMisses()
+	{
+		return rootFrame.cacheMisses;
+	}
+	
 	// =========================================================================
 	
 	public WtNode expand(WtNode ppAst) throws ExpansionException
@@ -224,8 +347,21 @@ public class ExpansionFrame
 	
 	// =========================================================================
 	
+	/**
+	 * Called before a volatile parser function is invoked (see
+	 * {@link ParserFunctionBase#isVolatile()}).
+	 */
+	void notifyVolatileCall()
+	{
+		if (callback instanceof ExpansionDependencies)
+			((ExpansionDependencies) callback).markVolatile();
+	}
+	
 	public boolean existsPage(PageTitle pageTitle) throws Exception
 	{
+		if (callback instanceof PageExistenceCallback)
+			return ((PageExistenceCallback) callback).existsPage(pageTitle);
+		
 		return (callback.retrieveWikitext(this, pageTitle) != null) ||
 				(callback.fileUrl(pageTitle, -1, -1) != null);
 	}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.sweble.wikitext.engine.nodes.EngNode;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtTemplateArgument;
+import org.sweble.wikitext.parser.nodes.WtText;
+
+/**
+ * Remembers the results of parser function calls and transclusions during the
+ * expansion of one page. The memo table is owned by the root frame of an
+ * expansion run and is discarded with it. A memo table must never be shared
+ * between pages: "pure" only means that a result does not change while one
+ * page is expanded. The result of #time, for example, depends on the wall
+ * clock.
+ * 
+ * Only calls whose arguments consist of nothing but plain text can be
+ * memoized. Such calls do not depend on the parameters of the frame they
+ * appear in. Parser functions must additionally declare that they are pure
+ * (see {@link ParserFunctionBase#isPure()}).
+ * 
+ * Warnings and log entries of a memoized call are not repeated when the result
+ * is reused.
+ */
+public final class ExpansionMemo
+{
+	private static final char ARG_SEPARATOR = '\u0000';
+	
+	private static final char NAME_SEPARATOR = '\u0001';
+	
+	// =========================================================================
+	
+	private final HashMap<String, WtNode> results = new HashMap<String, WtNode>();
+	
+	private long hits;
+	
+	private long misses;
+	
+	// =========================================================================
+	
+	ExpansionMemo()
+	{
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns a private copy of a memoized result or null, if no result was
+	 * memoized for the given key.
+	 */
+	public WtNode retrieve(String key)
+	{
+		WtNode result = results.get(key);
+		if (result == null)
+		{
+			++misses;
+			return null;
+		}
+		
+		++hits;
+		return (WtNode) result.deepCloneWrapException();
+	}
+	
+	/**
+	 * Stores a copy of the given result. Soft errors are never memoized since
+	 * they refer to the node which could not be expanded.
+	 */
+	public void store(String key, WtNode result)
+	{
+		if (result.isNodeType(EngNode.NT_SOFT_ERROR))
+			return;
+		
+		results.put(key, (WtNode) result.deepCloneWrapException());
+	}
+	
+	public int size()
+	{
+		return results.size();
+	}
+	
+	public long getHits()
+	{
+		return hits;
+	}
+	
+	public long getMisses()
+	{
+		return misses;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Builds the memo key for a parser function call.
+	 * 
+	 * @return The key or null if the call cannot be memoized.
+	 */
+	public static String makeParserFunctionKey(
+			ParserFunctionBase pfn,
+			List<? extends WtNode> argsValues)
+	{
+		if (!pfn.isPure())
+			return null;
+		
+		StringBuilder b = new StringBuilder();
+		b.append('#');
+		b.append(pfn.getId());
+		
+		for (WtNode arg : argsValues)
+		{
+			b.append(ARG_SEPARATOR);
+			if (!appendText(b, arg))
+				return null;
+		}
+		
+		return b.toString();
+	}
+	
+	/**
+	 * Builds the memo key for a transclusion.
+	 * 
+	 * @return The key or null if the transclusion cannot be memoized.
+	 */
+	public static String makeTransclusionKey(
+			PageTitle title,
+			List<WtTemplateArgument> args)
+	{
+		StringBuilder b = new StringBuilder();
+		b.append(title.getNormalizedFullTitle());
+		
+		for (WtTemplateArgument arg : args)
+		{
+			b.append(ARG_SEPARATOR);
+			if (arg.hasName())
+			{
+				if (!appendText(b, arg.getName()))
+					return null;
+				b.append(NAME_SEPARATOR);
+			}
+			
+			if (!appendText(b, arg.getValue()))
+				return null;
+		}
+		
+		return b.toString();
+	}
+	
+	/**
+	 * Appends the text of the given AST to the key. Only text nodes and lists
+	 * are accepted. Everything else (templates, parameters, but also comments
+	 * and entity references) makes the call ineligible for memoization.
+	 */
+	private static boolean appendText(StringBuilder b, WtNode n)
+	{
+		if (n.isNodeType(WtNode.NT_TEXT))
+		{
+			b.append(((WtText) n).getContent());
+			return true;
+		}
+		else if (n instanceof WtNodeList)
+		{
+			for (WtNode c : n)
+			{
+				if (!appendText(b, c))
+					return false;
+			}
+			return true;
+		}
+		else
+		{
+			return false;
+		}
+	}
+}
@@ -656,7 +656,7 @@ public final class ExpansionVisitor
 		WtNode result = null;
 		try
 		{
-			result = pfn.invoke(n, expFrame, argsValues);
+			result = invokePfnMemoized(n, pfn, argsValues);
 			if (result == null)
 				throw new NullPointerException("Parser function `" + pfn.getId() + "' returned null value!");
 			
@@ -686,6 +686,40 @@ public final class ExpansionVisitor
 				result;
 	}
 	
+	/**
+	 * Calls the parser function or reuses the result of an earlier call with
+	 * identical arguments if memoization is enabled.
+	 */
+	private WtNode invokePfnMemoized(
+			WtTemplate n,
+			ParserFunctionBase pfn,
+			List<? extends WtNode> argsValues)
+	{
+		if (pfn.isVolatile())
+			expFrame.notifyVolatileCall();
+		
+		ExpansionMemo memo = expFrame.getMemo();
+		
+		String key = null;
+		if (memo != null)
+		{
+			key = ExpansionMemo.makeParserFunctionKey(pfn, argsValues);
+			if (key != null)
+			{
+				WtNode result = memo.retrieve(key);
+				if (result != null)
+					return result;
+			}
+		}
+		
+		WtNode result = pfn.invoke(n, expFrame, argsValues);
+		
+		if (key != null && result != null && result != n)
+			memo.store(key, result);
+		
+		return result;
+	}
+	
 	/**
 	 * Try to resolve the template as transclusion.
 	 * 
@@ -783,10 +817,28 @@ public final class ExpansionVisitor
 		
 		log.setCanonical(title.getDenormalizedFullTitle());
 		
+		ExpansionMemo memo = expFrame.getMemo();
+		
+		String key = null;
+		if (memo != null)
+		{
+			key = ExpansionMemo.makeTransclusionKey(title, args);
+			if (key != null)
+			{
+				WtNode tResult = memo.retrieve(key);
+				if (tResult != null)
+				{
+					log.setSuccess(true);
+					
+					return treatBlockElements(n, tResult);
+				}
+			}
+		}
+		
 		FullPage page = getWikitext(title);
 		if (page != null)
 		{
-			// EXPANDS ARGUMENTS!
+			// EXPANDS ARGUMENT NAMES! VALUES ARE EXPANDED ON DEMAND!
 			Map<String, WtNodeList> tmplArgs = prepareTransclusionArguments(args, log);
 			
 			EngProcessedPage processedPage = getEngine().preprocessAndExpand(
@@ -803,6 +855,9 @@ public final class ExpansionVisitor
 			
 			WtNode tResult = mergeLogsAndWarnings(log, processedPage);
 			
+			if (key != null)
+				memo.store(key, tResult);
+			
 			return treatBlockElements(n, tResult);
 		}
 		else
@@ -836,7 +891,8 @@ public final class ExpansionVisitor
 	
 	/**
 	 * Prepares the template argument list for transclusion. This encompasses
-	 * the expansion of name and value of each argument.
+	 * the expansion of the name of each argument. The values are only expanded
+	 * when the transcluded page refers to them (see TransclusionArguments).
 	 * 
 	 * Each argument is added to the mapping with its one-based index as key.
 	 * 
@@ -847,20 +903,14 @@ public final class ExpansionVisitor
 			List<WtTemplateArgument> args,
 			EngLogTransclusionResolution log)
 	{
-		HashMap<String, WtNodeList> transclArgs = new HashMap<String, WtNodeList>();
+		TransclusionArguments transclArgs = new TransclusionArguments(this);
 		
 		int index = 1;
 		for (WtTemplateArgument arg : args)
 		{
-			// EXPAND VALUE!
-			WtValue value = (WtValue) dispatch(arg.getValue());
-			
 			boolean named = false;
 			if (arg.hasName())
 			{
-				// ONLY TRIM NAMED VALUES!
-				value = (WtValue) tu.trim(value);
-				
 				// EXPAND NAME!
 				WtName name = (WtName) dispatch(arg.getName());
 				
@@ -870,7 +920,7 @@ public final class ExpansionVisitor
 					
 					if (!nameStr.isEmpty())
 					{
-						transclArgs.put(nameStr, nf.toList(value));
+						transclArgs.putNamed(nameStr, arg.getValue());
 						named = true;
 					}
 				}
@@ -885,12 +935,11 @@ public final class ExpansionVisitor
 			
 			if (!named)
 			{
-				String id = String.valueOf(index);
-				
-				WtNodeList prev = transclArgs.put(id, nf.toList(value));
-				// Automatic indices never overwrite!
-				if (prev != null)
-					transclArgs.put(id, prev);
+				// ONLY TRIM NAMED VALUES!
+				transclArgs.putIndexed(
+						String.valueOf(index),
+						arg.getValue(),
+						arg.hasName());
 				
 				// Only unnamed arguments increase the index
 				index++;
@@ -900,6 +949,31 @@ public final class ExpansionVisitor
 		return transclArgs;
 	}
 	
+	/**
+	 * Expands the value of a template argument. Called by
+	 * TransclusionArguments when the transcluded page first refers to the
+	 * argument. The newline state of this visitor is preserved since we are
+	 * (usually) in the middle of the transclusion of a template statement.
+	 */
+	WtNodeList expandTransclusionArgument(WtValue value, boolean trim)
+	{
+		boolean hadNewline = this.hadNewlineGlobal;
+		try
+		{
+			// EXPAND VALUE!
+			WtValue expanded = (WtValue) dispatch(value);
+			
+			if (trim)
+				expanded = (WtValue) tu.trim(expanded);
+			
+			return nf.toList(expanded);
+		}
+		finally
+		{
+			this.hadNewlineGlobal = hadNewline;
+		}
+	}
+	
 	// =========================================================================
 	// ==
 	// ==  T e m p l a t e  P a r a m e t e r
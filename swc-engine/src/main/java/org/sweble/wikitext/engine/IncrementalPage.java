@@ -0,0 +1,176 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.List;
+
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+
+import de.fau.cs.osr.ptk.common.Warning;
+
+/**
+ * A revision of a page processed by
+ * {@link WtEngine#reparse(IncrementalPage, PageId, String, ExpansionCallback)}.
+ *
+ * Besides the processed page it remembers the wikitext and the processing
+ * results of every top-level section of the revision. When the next revision
+ * of the page is reparsed, the results of all sections whose wikitext did not
+ * change are reused, unless the pages and files the expansion of a section
+ * depended on changed or the section called a volatile parser function.
+ *
+ * The processed pages of consecutive revisions share the nodes of unchanged
+ * sections. These nodes must therefore not be modified.
+ */
+public final class IncrementalPage
+{
+	private final EngProcessedPage processedPage;
+	
+	private final String wikitext;
+	
+	private final Section[] sections;
+	
+	private final int reusedSectionCount;
+	
+	// =========================================================================
+	
+	IncrementalPage(
+			EngProcessedPage processedPage,
+			String wikitext,
+			Section[] sections,
+			int reusedSectionCount)
+	{
+		this.processedPage = processedPage;
+		this.wikitext = wikitext;
+		this.sections = sections;
+		this.reusedSectionCount = reusedSectionCount;
+	}
+	
+	// =========================================================================
+	
+	public EngProcessedPage getProcessedPage()
+	{
+		return processedPage;
+	}
+	
+	public String getWikitext()
+	{
+		return wikitext;
+	}
+	
+	/**
+	 * @return The number of chunks the wikitext was processed in. A chunk
+	 *         holds one top-level section or, if the page could not be split,
+	 *         the whole page.
+	 */
+	public int getSectionCount()
+	{
+		return sections.length;
+	}
+	
+	/**
+	 * @return The number of chunks whose processing results were taken from
+	 *         the previous revision.
+	 */
+	public int getReusedSectionCount()
+	{
+		return reusedSectionCount;
+	}
+	
+	Section[] getSections()
+	{
+		return sections;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * The processing results of one chunk of a page.
+	 */
+	static final class Section
+	{
+		/**
+		 * The wikitext of the chunk.
+		 */
+		final String source;
+		
+		/**
+		 * The preprocessed and expanded text that was handed to the parser.
+		 */
+		final String expanded;
+		
+		/**
+		 * The postprocessed nodes of the chunk.
+		 */
+		final WtNodeList content;
+		
+		final List<Warning> warnings;
+		
+		/**
+		 * Whether every XML start tag in the chunk is closed by an end tag in
+		 * the same chunk and vice versa. Only balanced chunks can be combined
+		 * with other chunks.
+		 */
+		final boolean balanced;
+		
+		/**
+		 * The line number the locations of the content nodes are based on.
+		 */
+		final int firstLine;
+		
+		/**
+		 * What the expansion of the chunk depended on or null if the chunk
+		 * was not expanded.
+		 */
+		final ExpansionDependencies dependencies;
+		
+		// =====================================================================
+		
+		Section(
+				String source,
+				String expanded,
+				WtNodeList content,
+				List<Warning> warnings,
+				boolean balanced,
+				int firstLine,
+				ExpansionDependencies dependencies)
+		{
+			this.source = source;
+			this.expanded = expanded;
+			this.content = content;
+			this.warnings = warnings;
+			this.balanced = balanced;
+			this.firstLine = firstLine;
+			this.dependencies = dependencies;
+		}
+		
+		// =====================================================================
+		
+		/**
+		 * Checks whether expanding the chunk with the given callback would
+		 * yield the same text again.
+		 */
+		boolean isUpToDate(ExpansionCallback callback)
+		{
+			if (dependencies == null || callback == null)
+				return dependencies == null && callback == null;
+			
+			return dependencies.isUpToDate(callback);
+		}
+	}
+}
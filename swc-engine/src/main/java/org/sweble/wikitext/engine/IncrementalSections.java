@@ -0,0 +1,492 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sweble.wikitext.engine.IncrementalPage.Section;
+import org.sweble.wikitext.parser.ParserConfig;
+import org.sweble.wikitext.parser.SectionSplitter;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtXmlEndTag;
+import org.sweble.wikitext.parser.nodes.WtXmlStartTag;
+
+import de.fau.cs.osr.ptk.common.ast.AstLocation;
+
+/**
+ * Splits the wikitext of a page into top-level sections that can be processed
+ * independently and checks whether the processed sections can be combined
+ * into a page.
+ *
+ * Processing the sections of a page one by one yields the same page as
+ * processing the page as a whole if the following holds:
+ * <ul>
+ * <li>No template, template parameter, table, internal link, comment or
+ * extension tag spans two sections. Otherwise preprocessing and expansion
+ * would see different text. This is checked on the wikitext.</li>
+ * <li>The parser would start a new top-level section at the beginning of each
+ * expanded section. This is checked on the expanded text with the
+ * {@link SectionSplitter} of the parser.</li>
+ * <li>No XML element is opened in one section and closed in another.
+ * Otherwise the postprocessor would nest the elements differently. This is
+ * checked on the parsed sections.</li>
+ * </ul>
+ */
+final class IncrementalSections
+{
+	private static final int MAX_LEVEL = 6;
+	
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input",
+			"link", "meta", "param", "source", "track", "wbr"));
+	
+	private static final Set<String> OPAQUE_TAGS = new HashSet<String>(Arrays.asList(
+			"nowiki", "pre", "includeonly", "noinclude", "onlyinclude"));
+	
+	// =========================================================================
+	
+	private final ParserConfig config;
+	
+	private final String text;
+	
+	private final int length;
+	
+	private int braceDepth = 0;
+	
+	private int linkDepth = 0;
+	
+	private boolean stopped = false;
+	
+	private int minLevel = MAX_LEVEL + 1;
+	
+	private int[] candidates = new int[16];
+	
+	private int[] candidateLevels = new int[16];
+	
+	private int candidateCount = 0;
+	
+	// =========================================================================
+	
+	private IncrementalSections(ParserConfig config, String text)
+	{
+		this.config = config;
+		this.text = text;
+		this.length = text.length();
+	}
+	
+	/**
+	 * Splits the wikitext of a page in front of its top-level headings.
+	 *
+	 * @return The start offsets of the sections, beginning with 0. If the
+	 *         wikitext cannot be split, the array only contains 0.
+	 */
+	public static int[] split(ParserConfig config, String wikitext)
+	{
+		IncrementalSections splitter = new IncrementalSections(config, wikitext);
+		if (splitter.isRedirect())
+			return new int[] { 0 };
+		
+		splitter.scan();
+		return splitter.group();
+	}
+	
+	/**
+	 * Checks whether the parser would start a new top-level section at the
+	 * beginning of every expanded section except the first.
+	 */
+	public static boolean canSplitAt(String[] expanded)
+	{
+		StringBuilder sb = new StringBuilder();
+		int[] offsets = new int[expanded.length];
+		for (int i = 0; i < expanded.length; ++i)
+		{
+			offsets[i] = sb.length();
+			sb.append(expanded[i]);
+		}
+		
+		int[] splits = SectionSplitter.split(sb, 1);
+		if (splits == null)
+			return false;
+		
+		for (int i = 1; i < offsets.length; ++i)
+		{
+			if (Arrays.binarySearch(splits, offsets[i]) < 0)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Checks whether every XML start tag in the given AST is closed by an end
+	 * tag of the same name and every end tag closes a preceding start tag.
+	 */
+	public static boolean isBalanced(WtNode ast)
+	{
+		Map<String, int[]> open = new HashMap<String, int[]>();
+		if (!countTags(ast, open))
+			return false;
+		
+		for (int[] count : open.values())
+		{
+			if (count[0] != 0)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns a copy of a processed section whose node locations are based on
+	 * the given line. The given section is not modified.
+	 */
+	public static Section relocate(Section section, int firstLine)
+	{
+		WtNodeList content = (WtNodeList) section.content.deepCloneWrapException();
+		
+		shiftLocations(content, firstLine - section.firstLine);
+		
+		return new Section(
+				section.source,
+				section.expanded,
+				content,
+				section.warnings,
+				section.balanced,
+				firstLine,
+				section.dependencies);
+	}
+	
+	/**
+	 * Counts line breaks the way the parser counts lines.
+	 */
+	public static int countLineBreaks(String text)
+	{
+		return SectionSplitter.getLineNumbers(text, new int[] { text.length() })[0] - 1;
+	}
+	
+	// =========================================================================
+	
+	private boolean isRedirect()
+	{
+		// Only the first section could be a redirect but expanding a redirect
+		// can replace the whole page.
+		int i = 0;
+		while (i < length && Character.isWhitespace(text.charAt(i)))
+			++i;
+		return i < length && text.charAt(i) == '#';
+	}
+	
+	private void scan()
+	{
+		boolean bol = true;
+		int i = 0;
+		while (i < length && !stopped)
+		{
+			if (bol)
+			{
+				bol = false;
+				startOfLine(i);
+			}
+			
+			char ch = text.charAt(i);
+			switch (ch)
+			{
+				case '\n':
+					bol = true;
+					++i;
+					break;
+				
+				case '{':
+					// Counts templates, template parameters and tables alike
+					++braceDepth;
+					++i;
+					break;
+				
+				case '}':
+					if (braceDepth > 0)
+						--braceDepth;
+					++i;
+					break;
+				
+				case '[':
+					if (i + 1 < length && text.charAt(i + 1) == '[')
+					{
+						++linkDepth;
+						i += 2;
+					}
+					else
+					{
+						++i;
+					}
+					break;
+				
+				case ']':
+					if (i + 1 < length && text.charAt(i + 1) == ']')
+					{
+						if (linkDepth > 0)
+							--linkDepth;
+						i += 2;
+					}
+					else
+					{
+						++i;
+					}
+					break;
+				
+				case '<':
+					i = scanTag(i);
+					break;
+				
+				default:
+					++i;
+					break;
+			}
+		}
+	}
+	
+	private void startOfLine(int i)
+	{
+		int eol = i;
+		while (eol < length && text.charAt(eol) != '\n')
+			++eol;
+		
+		int end = eol;
+		while (end > i && isSpace(text.charAt(end - 1)))
+			--end;
+		
+		if (end <= i || text.charAt(i) != '=' || text.charAt(end - 1) != '=')
+			return;
+		
+		int open = 0;
+		while (i + open < end && text.charAt(i + open) == '=')
+			++open;
+		
+		int close = 0;
+		while (end - close - 1 >= i && text.charAt(end - close - 1) == '=')
+			++close;
+		
+		if (open + close >= end - i)
+		{
+			// Only equals signs, the parser might still see a heading
+			int level = Math.min((end - i - 1) / 2, MAX_LEVEL);
+			if (level > 0 && level < minLevel)
+				minLevel = level;
+			return;
+		}
+		
+		int level = Math.min(Math.min(open, close), MAX_LEVEL);
+		if (level < minLevel)
+			minLevel = level;
+		
+		if (braceDepth == 0 && linkDepth == 0 && isPlainTitle(i + open, end - close))
+			addCandidate(i, level);
+	}
+	
+	private boolean isPlainTitle(int from, int to)
+	{
+		boolean hasText = false;
+		for (int i = from; i < to; ++i)
+		{
+			char ch = text.charAt(i);
+			switch (ch)
+			{
+				case '[':
+				case ']':
+				case '{':
+				case '}':
+				case '<':
+				case '>':
+				case '\r':
+					return false;
+				
+				default:
+					if (!isSpace(ch))
+						hasText = true;
+					break;
+			}
+		}
+		return hasText;
+	}
+	
+	private int scanTag(int i)
+	{
+		if (text.startsWith("<!--", i))
+		{
+			int end = text.indexOf("-->", i + 4);
+			if (end < 0)
+			{
+				stopped = true;
+				return length;
+			}
+			return end + 3;
+		}
+		
+		int j = i + 1;
+		int nameStart = j;
+		while (j < length && isNameChar(text.charAt(j), j == nameStart))
+			++j;
+		if (j == nameStart)
+			return i + 1;
+		
+		String name = text.substring(nameStart, j).toLowerCase();
+		if (!OPAQUE_TAGS.contains(name) && !config.isValidExtensionTagName(name))
+			return i + 1;
+		
+		int end = text.indexOf('>', j);
+		if (end < 0)
+		{
+			stopped = true;
+			return length;
+		}
+		
+		if (text.charAt(end - 1) == '/')
+			return end + 1;
+		
+		// The body of these elements is not processed like the surrounding
+		// wikitext. Skip it as a whole.
+		int close = indexOfIgnoreCase("</" + name, end + 1);
+		if (close < 0)
+		{
+			stopped = true;
+			return length;
+		}
+		
+		int closeEnd = text.indexOf('>', close);
+		if (closeEnd < 0)
+		{
+			stopped = true;
+			return length;
+		}
+		
+		return closeEnd + 1;
+	}
+	
+	private void addCandidate(int offset, int level)
+	{
+		if (candidateCount == candidates.length)
+		{
+			candidates = Arrays.copyOf(candidates, candidateCount * 2);
+			candidateLevels = Arrays.copyOf(candidateLevels, candidateCount * 2);
+		}
+		candidates[candidateCount] = offset;
+		candidateLevels[candidateCount] = level;
+		++candidateCount;
+	}
+	
+	private int[] group()
+	{
+		int[] starts = new int[candidateCount + 1];
+		int count = 1;
+		
+		for (int i = 0; i < candidateCount; ++i)
+		{
+			if (candidateLevels[i] == minLevel && candidates[i] > 0)
+				starts[count++] = candidates[i];
+		}
+		
+		return Arrays.copyOf(starts, count);
+	}
+	
+	private int indexOfIgnoreCase(String s, int from)
+	{
+		outer: for (int i = from; i + s.length() <= length; ++i)
+		{
+			for (int j = 0; j < s.length(); ++j)
+			{
+				if (Character.toLowerCase(text.charAt(i + j)) != s.charAt(j))
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+	
+	// =========================================================================
+	
+	private static boolean countTags(WtNode n, Map<String, int[]> open)
+	{
+		switch (n.getNodeType())
+		{
+			case WtNode.NT_XML_START_TAG:
+			{
+				String name = ((WtXmlStartTag) n).getName().toLowerCase();
+				if (!VOID_ELEMENTS.contains(name))
+				{
+					int[] count = open.get(name);
+					if (count == null)
+						open.put(name, count = new int[1]);
+					++count[0];
+				}
+				break;
+			}
+			
+			case WtNode.NT_XML_END_TAG:
+			{
+				String name = ((WtXmlEndTag) n).getName().toLowerCase();
+				if (!VOID_ELEMENTS.contains(name))
+				{
+					int[] count = open.get(name);
+					if (count == null || count[0] == 0)
+						return false;
+					--count[0];
+				}
+				break;
+			}
+		}
+		
+		for (WtNode c : n)
+		{
+			if (!countTags(c, open))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private static void shiftLocations(WtNode n, int delta)
+	{
+		AstLocation location = n.getNativeLocation();
+		if (location != null)
+		{
+			n.setNativeLocation(new AstLocation(
+					location.getFile(),
+					location.getLine() + delta,
+					location.getColumn()));
+		}
+		
+		for (WtNode c : n)
+			shiftLocations(c, delta);
+	}
+	
+	private static boolean isSpace(char ch)
+	{
+		return ch == ' ' || ch == '\t' || ch == '\r';
+	}
+	
+	private static boolean isNameChar(char ch, boolean first)
+	{
+		if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))
+			return true;
+		return !first && ch >= '0' && ch <= '9';
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+
+/**
+ * A thread-safe, least-recently-used cache for preprocessed pages.
+ * 
+ * Entries are evicted if either the number of entries exceeds
+ * <code>maxEntries</code> or if the accumulated length of the source wikitext
+ * of all cached pages exceeds <code>maxSourceChars</code>.
+ */
+public class LruPreprocessedPageCache
+		implements
+			PreprocessedPageCache
+{
+	private final int maxEntries;
+	
+	private final long maxSourceChars;
+	
+	private final LinkedHashMap<CacheKey, CacheEntry> cache =
+			new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true);
+	
+	private long sourceChars;
+	
+	private long hits;
+	
+	private long misses;
+	
+	private long evictions;
+	
+	// =========================================================================
+	
+	public LruPreprocessedPageCache(int maxEntries)
+	{
+		this(maxEntries, Long.MAX_VALUE);
+	}
+	
+	public LruPreprocessedPageCache(int maxEntries, long maxSourceChars)
+	{
+		if (maxEntries < 1 || maxSourceChars < 1)
+			throw new IllegalArgumentException();
+		
+		this.maxEntries = maxEntries;
+		this.maxSourceChars = maxSourceChars;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public synchronized WtPreproWikitextPage retrievePreprocessedPage(
+			PageId pageId,
+			String wikitext,
+			boolean forInclusion)
+	{
+		CacheKey key = new CacheKey(pageId, forInclusion);
+		
+		CacheEntry entry = cache.get(key);
+		if (entry != null && !entry.matches(wikitext))
+		{
+			// The page changed without changing its revision number.
+			remove(key);
+			entry = null;
+		}
+		
+		if (entry == null)
+		{
+			++misses;
+			return null;
+		}
+		
+		++hits;
+		return entry.ppAst;
+	}
+	
+	@Override
+	public synchronized void cachePreprocessedPage(
+			PageId pageId,
+			String wikitext,
+			boolean forInclusion,
+			WtPreproWikitextPage ppAst)
+	{
+		if (wikitext.length() > maxSourceChars)
+			return;
+		
+		CacheKey key = new CacheKey(pageId, forInclusion);
+		
+		CacheEntry prev = cache.put(key, new CacheEntry(wikitext, ppAst));
+		if (prev != null)
+			sourceChars -= prev.wikitext.length();
+		
+		sourceChars += wikitext.length();
+		
+		evict();
+	}
+	
+	// =========================================================================
+	
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+	
+	public synchronized long getSourceChars()
+	{
+		return sourceChars;
+	}
+	
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+	
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+	
+	public synchronized double getHitRate()
+	{
+		long requests = hits + misses;
+		return (requests == 0) ? 0. : ((double) hits / requests);
+	}
+	
+	public synchronized void clear()
+	{
+		cache.clear();
+		sourceChars = 0;
+	}
+	
+	public synchronized void resetStatistics()
+	{
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return String.format(
+				"LruPreprocessedPageCache(entries=%d, chars=%d, hits=%d, misses=%d, evictions=%d)",
+				cache.size(),
+				sourceChars,
+				hits,
+				misses,
+				evictions);
+	}
+	
+	// =========================================================================
+	
+	private void remove(CacheKey key)
+	{
+		CacheEntry entry = cache.remove(key);
+		if (entry != null)
+			sourceChars -= entry.wikitext.length();
+	}
+	
+	private void evict()
+	{
+		Iterator<Entry<CacheKey, CacheEntry>> i = cache.entrySet().iterator();
+		while (i.hasNext() &&
+				(cache.size() > maxEntries || sourceChars > maxSourceChars))
+		{
+			CacheEntry eldest = i.next().getValue();
+			i.remove();
+			
+			sourceChars -= eldest.wikitext.length();
+			++evictions;
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class CacheKey
+	{
+		private final PageTitle title;
+		
+		private final long revision;
+		
+		private final boolean forInclusion;
+		
+		public CacheKey(PageId pageId, boolean forInclusion)
+		{
+			this.title = pageId.getTitle();
+			this.revision = pageId.getRevision();
+			this.forInclusion = forInclusion;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (forInclusion ? 1231 : 1237);
+			result = prime * result + (int) (revision ^ (revision >>> 32));
+			result = prime * result + ((title == null) ? 0 : title.hashCode());
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (forInclusion != other.forInclusion)
+				return false;
+			if (revision != other.revision)
+				return false;
+			if (title == null)
+			{
+				if (other.title != null)
+					return false;
+			}
+			else if (!title.equals(other.title))
+				return false;
+			return true;
+		}
+	}
+	
+	private static final class CacheEntry
+	{
+		private final String wikitext;
+		
+		private final WtPreproWikitextPage ppAst;
+		
+		public CacheEntry(String wikitext, WtPreproWikitextPage ppAst)
+		{
+			this.wikitext = wikitext;
+			this.ppAst = ppAst;
+		}
+		
+		public boolean matches(String wikitext)
+		{
+			return this.wikitext == wikitext || this.wikitext.equals(wikitext);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sweble.wikitext.engine;
+
+/**
+ * Optional extension of an {@link ExpansionCallback}.
+ * 
+ * If the callback passed to the engine also implements this interface,
+ * existence checks (e.g. for <code>{{#ifexist:}}</code>) are answered by
+ * existsPage() instead of retrieving the page's wikitext and the URL of a
+ * file with the same title. Implementations usually consult an index of page
+ * titles, see for example the title index of the dump reader.
+ */
+public interface PageExistenceCallback
+{
+	/**
+	 * Determines whether a page or a file with the given title exists.
+	 * 
+	 * Must give the same answer as checking whether retrieveWikitext() or
+	 * fileUrl() of the corresponding ExpansionCallback return something other
+	 * than null.
+	 */
+	boolean existsPage(PageTitle pageTitle) throws Exception;
+}
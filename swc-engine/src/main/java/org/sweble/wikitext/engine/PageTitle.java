@@ -287,10 +287,35 @@ public class PageTitle
 		return make(config, target, null);
 	}
 	
+	/**
+	 * Resolves the given link target. If the configuration provides a page
+	 * title cache, the title is looked up in and added to that cache.
+	 */
 	public static PageTitle make(
 			WikiConfig config,
 			String target,
 			Namespace defaultNamespace) throws LinkTargetException
+	{
+		if (defaultNamespace == null)
+			defaultNamespace = config.getDefaultNamespace();
+		
+		PageTitleCache cache = config.getPageTitleCache();
+		if (cache == null)
+			return resolve(config, target, defaultNamespace);
+		
+		PageTitle title = cache.get(target, defaultNamespace);
+		if (title == null)
+		{
+			title = resolve(config, target, defaultNamespace);
+			cache.put(target, defaultNamespace, title);
+		}
+		return title;
+	}
+	
+	private static PageTitle resolve(
+			WikiConfig config,
+			String target,
+			Namespace defaultNamespace) throws LinkTargetException
 	{
 		// FIXME: Review the implementation!
 		
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.config.Namespace;
+
+/**
+ * A thread-safe, bounded cache for page titles resolved by
+ * {@link PageTitle#make(org.sweble.wikitext.engine.config.WikiConfig, String, Namespace)}.
+ * 
+ * Titles are keyed by the raw link target and the default namespace that was
+ * used to resolve the target. The cache is split into segments which are
+ * locked independently. Each segment evicts its least recently used entries
+ * once it holds more than its share of <code>maxEntries</code>.
+ * 
+ * The cached titles depend on the namespaces and interwikis of the
+ * configuration they were resolved with. The cache therefore has to be cleared
+ * whenever the configuration changes.
+ */
+public class PageTitleCache
+{
+	private static final int SEGMENT_COUNT = 16;
+	
+	private final Segment[] segments;
+	
+	private final int maxEntries;
+	
+	// =========================================================================
+	
+	public PageTitleCache(int maxEntries)
+	{
+		if (maxEntries < 1)
+			throw new IllegalArgumentException();
+		
+		this.maxEntries = maxEntries;
+		
+		int segmentCount = Math.min(SEGMENT_COUNT, maxEntries);
+		int maxSegmentEntries = (maxEntries + segmentCount - 1) / segmentCount;
+		
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; ++i)
+			this.segments[i] = new Segment(maxSegmentEntries);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * @return The cached title or <code>null</code> if the target was not
+	 *         resolved before.
+	 */
+	public PageTitle get(String target, Namespace defaultNamespace)
+	{
+		CacheKey key = new CacheKey(target, defaultNamespace);
+		return segmentFor(key).get(key);
+	}
+	
+	public void put(String target, Namespace defaultNamespace, PageTitle title)
+	{
+		CacheKey key = new CacheKey(target, defaultNamespace);
+		segmentFor(key).put(key, title);
+	}
+	
+	// =========================================================================
+	
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+	
+	public int size()
+	{
+		int size = 0;
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				size += s.size();
+			}
+		}
+		return size;
+	}
+	
+	public long getHits()
+	{
+		long hits = 0;
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				hits += s.hits;
+			}
+		}
+		return hits;
+	}
+	
+	public long getMisses()
+	{
+		long misses = 0;
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				misses += s.misses;
+			}
+		}
+		return misses;
+	}
+	
+	public long getEvictions()
+	{
+		long evictions = 0;
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				evictions += s.evictions;
+			}
+		}
+		return evictions;
+	}
+	
+	public double getHitRate()
+	{
+		long hits = getHits();
+		long requests = hits + getMisses();
+		return (requests == 0) ? 0. : ((double) hits / requests);
+	}
+	
+	public void clear()
+	{
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				s.clear();
+			}
+		}
+	}
+	
+	public void resetStatistics()
+	{
+		for (Segment s : segments)
+		{
+			synchronized (s)
+			{
+				s.hits = 0;
+				s.misses = 0;
+				s.evictions = 0;
+			}
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"PageTitleCache(entries=%d, hits=%d, misses=%d, evictions=%d)",
+				size(),
+				getHits(),
+				getMisses(),
+				getEvictions());
+	}
+	
+	// =========================================================================
+	
+	private Segment segmentFor(CacheKey key)
+	{
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & 0x7FFFFFFF) % segments.length];
+	}
+	
+	// =========================================================================
+	
+	private static final class Segment
+			extends
+				LinkedHashMap<CacheKey, PageTitle>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int maxEntries;
+		
+		private long hits;
+		
+		private long misses;
+		
+		private long evictions;
+		
+		public Segment(int maxEntries)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+		
+		public synchronized PageTitle get(CacheKey key)
+		{
+			PageTitle title = super.get(key);
+			if (title == null)
+				++misses;
+			else
+				++hits;
+			return title;
+		}
+		
+		@Override
+		public synchronized PageTitle put(CacheKey key, PageTitle title)
+		{
+			return super.put(key, title);
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, PageTitle> eldest)
+		{
+			if (size() <= maxEntries)
+				return false;
+			++evictions;
+			return true;
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class CacheKey
+	{
+		private final String target;
+		
+		private final Namespace defaultNamespace;
+		
+		private final int hash;
+		
+		public CacheKey(String target, Namespace defaultNamespace)
+		{
+			this.target = target;
+			this.defaultNamespace = defaultNamespace;
+			
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((defaultNamespace == null) ? 0 : defaultNamespace.getId());
+			result = prime * result + target.hashCode();
+			this.hash = result;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (hash != other.hash)
+				return false;
+			if (defaultNamespace != other.defaultNamespace)
+				return false;
+			return target.equals(other.target);
+		}
+	}
+}
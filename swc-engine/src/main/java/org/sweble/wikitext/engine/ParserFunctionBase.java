@@ -147,6 +147,33 @@ public abstract class ParserFunctionBase
 		return pageSwitch;
 	}
 	
+	/**
+	 * Returns whether the result of this parser function only depends on its
+	 * arguments, the wiki configuration and the page being expanded. A pure
+	 * parser function must return the same result for the same arguments
+	 * while one page is expanded, it may return different results for
+	 * different pages or expansion runs. Calls to pure parser functions with
+	 * plain text arguments can be memoized (see {@link ExpansionMemo}).
+	 * Parser functions are not pure unless they override this method.
+	 */
+	public boolean isPure()
+	{
+		return false;
+	}
+	
+	/**
+	 * Returns whether the result of this parser function depends on state
+	 * that changes without the wikitext of any page changing, like the wall
+	 * clock. Incremental reparsing never reuses the expansion of a section
+	 * that called a volatile parser function (see
+	 * {@link WtEngine#reparse(IncrementalPage, PageId, String, ExpansionCallback)}).
+	 * Parser functions are not volatile unless they override this method.
+	 */
+	public boolean isVolatile()
+	{
+		return false;
+	}
+	
 	protected EngineNodeFactory nf()
 	{
 		return nf;
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+
+/**
+ * Caches the result of validating and preprocessing pages that are pulled in
+ * for transclusion or redirection.
+ * 
+ * An implementation must be thread-safe if the engine using it is shared
+ * between threads. The ASTs handed to and returned from a cache must be
+ * treated as immutable. The engine will only work on deep copies of the cached
+ * ASTs.
+ */
+public interface PreprocessedPageCache
+{
+	/**
+	 * Retrieves the preprocessed AST of a page.
+	 * 
+	 * @param pageId
+	 *            The title and revision of the page.
+	 * @param wikitext
+	 *            The wikitext of the page. Used to detect stale cache entries
+	 *            if the revision of a page is not known.
+	 * @param forInclusion
+	 *            Whether the page was preprocessed for inclusion or for
+	 *            viewing.
+	 * @return The cached AST or null if the page is not in the cache.
+	 */
+	WtPreproWikitextPage retrievePreprocessedPage(
+			PageId pageId,
+			String wikitext,
+			boolean forInclusion);
+	
+	/**
+	 * Stores the preprocessed AST of a page. The AST must not be modified
+	 * after it was handed to the cache.
+	 */
+	void cachePreprocessedPage(
+			PageId pageId,
+			String wikitext,
+			boolean forInclusion,
+			WtPreproWikitextPage ppAst);
+}
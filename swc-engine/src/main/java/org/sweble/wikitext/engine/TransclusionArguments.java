@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtValue;
+
+/**
+ * The arguments passed to a transcluded page.
+ * 
+ * Like MediaWiki we only expand the value of an argument when the transcluded
+ * page actually refers to it. The expanded value is remembered, so every
+ * argument is expanded at most once. Argument names are expanded eagerly by
+ * the caller since they are needed to build the mapping.
+ * 
+ * The values are expanded by the expansion visitor of the frame that contains
+ * the template statement.
+ */
+final class TransclusionArguments
+		extends
+			AbstractMap<String, WtNodeList>
+{
+	private final ExpansionVisitor visitor;
+	
+	private final HashMap<String, Argument> arguments =
+			new HashMap<String, Argument>();
+	
+	// =========================================================================
+	
+	public TransclusionArguments(ExpansionVisitor visitor)
+	{
+		this.visitor = visitor;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Adds an argument that was given an explicit name. Explicitly named
+	 * arguments overwrite arguments of the same name.
+	 */
+	public void putNamed(String name, WtValue value)
+	{
+		arguments.put(name, new Argument(value, true));
+	}
+	
+	/**
+	 * Adds an argument under its one-based index. Automatic indices never
+	 * overwrite existing arguments.
+	 * 
+	 * @param trim
+	 *            Whether the value has to be trimmed after expansion. That's
+	 *            the case for arguments that had a name which could not be
+	 *            resolved.
+	 */
+	public void putIndexed(String index, WtValue value, boolean trim)
+	{
+		if (!arguments.containsKey(index))
+			arguments.put(index, new Argument(value, trim));
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public WtNodeList get(Object key)
+	{
+		Argument arg = arguments.get(key);
+		return (arg != null) ? arg.getExpanded() : null;
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return arguments.containsKey(key);
+	}
+	
+	@Override
+	public int size()
+	{
+		return arguments.size();
+	}
+	
+	@Override
+	public boolean isEmpty()
+	{
+		return arguments.isEmpty();
+	}
+	
+	/**
+	 * Iterating over the arguments forces the expansion of all values.
+	 */
+	@Override
+	public Set<Entry<String, WtNodeList>> entrySet()
+	{
+		HashMap<String, WtNodeList> expanded =
+				new HashMap<String, WtNodeList>(arguments.size());
+		
+		for (Map.Entry<String, Argument> e : arguments.entrySet())
+			expanded.put(e.getKey(), e.getValue().getExpanded());
+		
+		return Collections.unmodifiableMap(expanded).entrySet();
+	}
+	
+	// =========================================================================
+	
+	private final class Argument
+	{
+		private final boolean trim;
+		
+		private WtValue value;
+		
+		private WtNodeList expanded;
+		
+		public Argument(WtValue value, boolean trim)
+		{
+			this.value = value;
+			this.trim = trim;
+		}
+		
+		public WtNodeList getExpanded()
+		{
+			if (expanded == null)
+			{
+				expanded = visitor.expandTransclusionArgument(value, trim);
+				value = null;
+			}
+			return expanded;
+		}
+	}
+}
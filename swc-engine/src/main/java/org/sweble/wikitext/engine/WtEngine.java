@@ -33,6 +33,11 @@ public interface WtEngine
 	
 	public void setCatchAll(boolean catchAll);
 	
+	public void setPreprocessedPageCache(
+			PreprocessedPageCache preprocessedPageCache);
+	
+	public void setMemoizationEnabled(boolean memoizationEnabled);
+	
 	public WikiConfig getWikiConfig();
 	
 	public ExpansionDebugHooks getDebugHooks();
@@ -43,6 +48,10 @@ public interface WtEngine
 	
 	public boolean isCatchAll();
 	
+	public PreprocessedPageCache getPreprocessedPageCache();
+	
+	public boolean isMemoizationEnabled();
+	
 	public EngineNodeFactory nf();
 	
 	/**
@@ -146,4 +155,41 @@ public interface WtEngine
 			WtPreproWikitextPage pprAst)
 			throws EngineException;
 	
+	/**
+	 * Takes the wikitext of a revision of a page and validates, preprocesses,
+	 * expands, parses and postprocesses it section by section. The wikitext
+	 * is split into its top-level sections and the processing results of all
+	 * sections that did not change since the given previous revision are
+	 * reused. Only changed sections are processed again.
+	 *
+	 * The result differs from
+	 * {@link #postprocess(PageId, String, ExpansionCallback)} in the
+	 * following respects:
+	 * <ul>
+	 * <li>Sections are expanded without the revision of the page, magic words
+	 * that refer to the revision see no revision.</li>
+	 * <li>The processing log only covers the sections processed again.</li>
+	 * </ul>
+	 *
+	 * The expansion of a section is only reused if the callback still returns
+	 * the same revisions of all pages, the same file URLs and the same
+	 * existence of pages the section depended on. For that purpose the
+	 * callback is asked again, without an expansion frame. Sections that
+	 * called a volatile parser function (see
+	 * {@link ParserFunctionBase#isVolatile()}) are never reused.
+	 *
+	 * If the sections of a page cannot be processed independently, the page
+	 * is processed as a whole.
+	 *
+	 * @param previous
+	 *            The result of reparsing the previous revision of the same
+	 *            page or null.
+	 */
+	public IncrementalPage reparse(
+			IncrementalPage previous,
+			PageId pageId,
+			String wikitext,
+			ExpansionCallback callback)
+			throws EngineException;
+	
 }
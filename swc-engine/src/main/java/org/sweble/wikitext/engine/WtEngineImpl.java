@@ -19,14 +19,18 @@ package org.sweble.wikitext.engine;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.log4j.Logger;
+import org.sweble.wikitext.engine.IncrementalPage.Section;
 import org.sweble.wikitext.engine.config.EngineConfig;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngLogContainer;
@@ -77,6 +81,50 @@ public class WtEngineImpl
 	
 	private boolean catchAll = true;
 	
+	private PreprocessedPageCache preprocessedPageCache;
+	
+	private boolean memoizationEnabled = false;
+	
+	private ExecutorService sectionExecutor;
+	
+	private int minSectionChunkLength;
+	
+	/**
+	 * Preprocessor, parser and postprocessor instances are reset and reused
+	 * for all pages processed by the same thread. This avoids reallocating
+	 * the character buffers, memoization tables and tree builder stacks for
+	 * every page.
+	 */
+	private final ThreadLocal<WikitextPreprocessor> preprocessors =
+			new ThreadLocal<WikitextPreprocessor>()
+			{
+				@Override
+				protected WikitextPreprocessor initialValue()
+				{
+					return new WikitextPreprocessor(parserConfig);
+				}
+			};
+	
+	private final ThreadLocal<WikitextParser> parsers =
+			new ThreadLocal<WikitextParser>()
+			{
+				@Override
+				protected WikitextParser initialValue()
+				{
+					return new WikitextParser(parserConfig);
+				}
+			};
+	
+	private final ThreadLocal<WikitextPostprocessor> postprocessors =
+			new ThreadLocal<WikitextPostprocessor>()
+			{
+				@Override
+				protected WikitextPostprocessor initialValue()
+				{
+					return new WikitextPostprocessor(parserConfig);
+				}
+			};
+	
 	// =========================================================================
 	
 	public WtEngineImpl(WikiConfig wikiConfig)
@@ -109,6 +157,22 @@ public class WtEngineImpl
 		this.catchAll = catchAll;
 	}
 	
+	public void setPreprocessedPageCache(
+			PreprocessedPageCache preprocessedPageCache)
+	{
+		this.preprocessedPageCache = preprocessedPageCache;
+	}
+	
+	/**
+	 * Enables the memoization of pure parser function calls and transclusions
+	 * with plain text arguments during the expansion of a page (see
+	 * {@link ExpansionMemo}).
+	 */
+	public void setMemoizationEnabled(boolean memoizationEnabled)
+	{
+		this.memoizationEnabled = memoizationEnabled;
+	}
+	
 	public WikiConfig getWikiConfig()
 	{
 		return wikiConfig;
@@ -134,6 +198,31 @@ public class WtEngineImpl
 		return catchAll;
 	}
 	
+	/**
+	 * Enables parsing the top-level sections of large pages concurrently on
+	 * the given executor (see
+	 * {@link WikitextParser#setSectionExecutor(ExecutorService, int)}).
+	 * Pass <code>null</code> to parse all pages sequentially again.
+	 */
+	public void setSectionExecutor(ExecutorService executor, int minChunkLength)
+	{
+		if (executor != null && minChunkLength <= 0)
+			throw new IllegalArgumentException("minChunkLength must be positive");
+		
+		this.sectionExecutor = executor;
+		this.minSectionChunkLength = minChunkLength;
+	}
+	
+	public PreprocessedPageCache getPreprocessedPageCache()
+	{
+		return preprocessedPageCache;
+	}
+	
+	public boolean isMemoizationEnabled()
+	{
+		return memoizationEnabled;
+	}
+	
 	public EngineNodeFactory nf()
 	{
 		return wikiConfig.getNodeFactory();
@@ -178,7 +267,7 @@ public class WtEngineImpl
 			
 			pprAst = ppAst;
 			if (callback != null)
-				pprAst = expand(callback, title, ppAst, null, false, log);
+				pprAst = expand(callback, pageId, ppAst, null, false, log);
 		}
 		catch (EngineException e)
 		{
@@ -251,7 +340,7 @@ public class WtEngineImpl
 					preprocess(title, validatedWikitext, forInclusion, log);
 			
 			WtPreproWikitextPage pprAst = ppAst;
-			pprAst = expand(callback, title, ppAst, null, forInclusion, log);
+			pprAst = expand(callback, pageId, ppAst, null, forInclusion, log);
 			
 			pAst = pprAst;
 		}
@@ -310,7 +399,7 @@ public class WtEngineImpl
 			
 			WtPreproWikitextPage pprAst = ppAst;
 			if (callback != null)
-				pprAst = expand(callback, title, ppAst, null, false, log);
+				pprAst = expand(callback, pageId, ppAst, null, false, log);
 			
 			pAst = parse(title, pprAst, log);
 		}
@@ -415,7 +504,7 @@ public class WtEngineImpl
 			
 			WtPreproWikitextPage pprAst = ppAst;
 			if (callback != null)
-				pprAst = expand(callback, title, ppAst, null, false, log);
+				pprAst = expand(callback, pageId, ppAst, null, false, log);
 			
 			pAst = parse(title, pprAst, log);
 			
@@ -483,6 +572,74 @@ public class WtEngineImpl
 				pAst.getWarnings());
 	}
 	
+	/**
+	 * Takes the wikitext of a revision of a page and validates, preprocesses,
+	 * expands, parses and postprocesses it section by section. The wikitext
+	 * is split into its top-level sections and the processing results of all
+	 * sections that did not change since the given previous revision are
+	 * reused. Only changed sections are processed again.
+	 * 
+	 * The result differs from
+	 * {@link #postprocess(PageId, String, ExpansionCallback)} in the
+	 * following respects:
+	 * <ul>
+	 * <li>Sections are expanded without the revision of the page, magic words
+	 * that refer to the revision see no revision.</li>
+	 * <li>The processing log only covers the sections processed again.</li>
+	 * </ul>
+	 * 
+	 * The expansion of a section is only reused if the callback still returns
+	 * the same revisions of all pages, the same file URLs and the same
+	 * existence of pages the section depended on. For that purpose the
+	 * callback is asked again, without an expansion frame. Sections that
+	 * called a volatile parser function (see
+	 * {@link ParserFunctionBase#isVolatile()}) are never reused.
+	 * 
+	 * If the sections of a page cannot be processed independently (see
+	 * {@link IncrementalSections}), the page is processed as a whole.
+	 * 
+	 * @param previous
+	 *            The result of reparsing the previous revision of the same
+	 *            page or null.
+	 */
+	public IncrementalPage reparse(
+			IncrementalPage previous,
+			PageId pageId,
+			String wikitext,
+			ExpansionCallback callback)
+			throws EngineException
+	{
+		if (pageId == null || wikitext == null)
+			throw new NullPointerException();
+		
+		PageTitle title = pageId.getTitle();
+		
+		EngLogProcessingPass log = nf().logProcessingPass();
+		log.setTitle(title.getDenormalizedFullTitle());
+		log.setRevision(pageId.getRevision());
+		
+		IncrementalPage page;
+		try
+		{
+			int[] offsets = IncrementalSections.split(parserConfig, wikitext);
+			
+			page = reparse(previous, title, wikitext, offsets, callback, log);
+			if (page == null)
+				page = reparse(previous, title, wikitext, new int[] { 0 }, callback, log);
+		}
+		catch (EngineException e)
+		{
+			e.attachLog(log);
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new EngineException(title, "Compilation failed!", e, log);
+		}
+		
+		return page;
+	}
+	
 	// =========================================================================
 	
 	/**
@@ -522,15 +679,17 @@ public class WtEngineImpl
 		WtPreproWikitextPage pprAst;
 		try
 		{
-			ValidatedWikitext validatedWikitext =
-					validate(title, wikitext, log, entityMap);
-			
-			WtPreproWikitextPage ppAst =
-					preprocess(title, validatedWikitext, forInclusion, log);
+			WtPreproWikitextPage ppAst = preprocessCached(
+					pageId,
+					wikitext,
+					forInclusion,
+					entityMap,
+					rootFrame,
+					log);
 			
 			pprAst = expand(
 					callback,
-					title,
+					pageId,
 					ppAst,
 					arguments,
 					forInclusion,
@@ -582,7 +741,7 @@ public class WtEngineImpl
 		{
 			pprAst = expand(
 					callback,
-					title,
+					pageId,
 					ppAst,
 					arguments,
 					forInclusion,
@@ -608,6 +767,104 @@ public class WtEngineImpl
 	
 	// =========================================================================
 	
+	/**
+	 * Validates and preprocesses a page that is pulled in for transclusion or
+	 * redirection. If a preprocessed page cache is set the preprocessed AST is
+	 * taken from or put into the cache.
+	 * 
+	 * Only pages for which the encoding validator did not have to register
+	 * entities are cached. Otherwise the cached AST would refer to entities in
+	 * the entity map of the page that first pulled it in. The cached AST gets
+	 * an empty entity map of its own for the same reason.
+	 * 
+	 * Lookups are counted on the root frame and reported as cache hits and
+	 * misses in the processing log of the page the expansion started with.
+	 * The logs of the transcluded pages are merged into the expansion log of
+	 * their parent and cannot carry such counters themselves.
+	 * 
+	 * @return A private copy of the preprocessed AST which may be modified by
+	 *         the expansion process.
+	 */
+	private WtPreproWikitextPage preprocessCached(
+			PageId pageId,
+			String wikitext,
+			boolean forInclusion,
+			WtEntityMap entityMap,
+			ExpansionFrame rootFrame,
+			EngLogContainer parentLog)
+			throws EngineException
+	{
+		PageTitle title = pageId.getTitle();
+		
+		PreprocessedPageCache cache = this.preprocessedPageCache;
+		if (cache == null)
+		{
+			ValidatedWikitext validatedWikitext =
+					validate(title, wikitext, parentLog, entityMap);
+			
+			return preprocess(title, validatedWikitext, forInclusion, parentLog);
+		}
+		
+		if (entityMap == null)
+			entityMap = new WtEntityMapImpl();
+		
+		WtPreproWikitextPage cached =
+				cache.retrievePreprocessedPage(pageId, wikitext, forInclusion);
+		
+		rootFrame.countCacheLookup(cached != null);
+		
+		if (cached != null)
+			return cloneCached(cached, forInclusion, entityMap, parentLog);
+		
+		int entityCount = entityMap.getMap().size();
+		
+		ValidatedWikitext validatedWikitext =
+				validate(title, wikitext, parentLog, entityMap);
+		
+		WtPreproWikitextPage ppAst =
+				preprocess(title, validatedWikitext, forInclusion, parentLog);
+		
+		if (entityMap.getMap().size() != entityCount)
+			return ppAst;
+		
+		cached = (WtPreproWikitextPage) ppAst.deepCloneWrapException();
+		cached.setEntityMap(WtEntityMap.EMPTY_ENTITY_MAP);
+		
+		cache.cachePreprocessedPage(pageId, wikitext, forInclusion, cached);
+		
+		return ppAst;
+	}
+	
+	private WtPreproWikitextPage cloneCached(
+			WtPreproWikitextPage cached,
+			boolean forInclusion,
+			WtEntityMap entityMap,
+			EngLogContainer parentLog)
+	{
+		EngLogPreprocessorPass log = nf().logPreprocessorPass();
+		parentLog.add(log);
+		
+		log.setForInclusion(forInclusion);
+		
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		
+		try
+		{
+			WtPreproWikitextPage ppAst =
+					(WtPreproWikitextPage) cached.deepCloneWrapException();
+			
+			ppAst.setEntityMap(entityMap);
+			
+			return ppAst;
+		}
+		finally
+		{
+			stopWatch.stop();
+			log.setTimeNeeded(stopWatch.getElapsedTime());
+		}
+	}
+	
 	/**
 	 * Validates wikitext.
 	 */
@@ -676,7 +933,7 @@ public class WtEngineImpl
 		
 		try
 		{
-			WikitextPreprocessor preprocessor = new WikitextPreprocessor(parserConfig);
+			WikitextPreprocessor preprocessor = preprocessors.get();
 			
 			/**
 			 * Entities generated and inserted into the source by the encoding
@@ -726,16 +983,16 @@ public class WtEngineImpl
 	 */
 	private WtPreproWikitextPage expand(
 			ExpansionCallback callback,
-			PageTitle title,
+			PageId pageId,
 			WtPreproWikitextPage ppAst,
 			LinkedHashMap<String, WtNodeList> arguments,
 			boolean forInclusion,
-			EngLogContainer parentLog)
+			EngLogProcessingPass parentLog)
 			throws EngineException
 	{
 		return expand(
 				callback,
-				title,
+				pageId,
 				ppAst,
 				arguments,
 				forInclusion,
@@ -749,15 +1006,17 @@ public class WtEngineImpl
 	 */
 	private WtPreproWikitextPage expand(
 			ExpansionCallback callback,
-			PageTitle title,
+			PageId pageId,
 			WtPreproWikitextPage ppAst,
 			Map<String, WtNodeList> arguments,
 			boolean forInclusion,
 			ExpansionFrame rootFrame,
 			ExpansionFrame parentFrame,
-			EngLogContainer parentLog)
+			EngLogProcessingPass parentLog)
 			throws EngineException
 	{
+		PageTitle title = pageId.getTitle();
+		
 		EngLogExpansionPass log = nf().logExpansionPass();
 		parentLog.add(log);
 		
@@ -780,7 +1039,7 @@ public class WtEngineImpl
 						this,
 						callback,
 						hooks,
-						title,
+						pageId,
 						ppAst.getEntityMap(),
 						arguments,
 						forInclusion,
@@ -798,7 +1057,7 @@ public class WtEngineImpl
 						this,
 						callback,
 						hooks,
-						title,
+						pageId,
 						ppAst.getEntityMap(),
 						noRedirect,
 						warnings,
@@ -813,6 +1072,19 @@ public class WtEngineImpl
 			if (!warnings.isEmpty())
 				ppAst.setWarnings(warnings);
 			
+			ExpansionMemo memo = frame.getMemo();
+			if (memo != null && rootFrame == null)
+			{
+				parentLog.setMemoHits(memo.getHits());
+				parentLog.setMemoMisses(memo.getMisses());
+			}
+			
+			if (preprocessedPageCache != null && rootFrame == null)
+			{
+				parentLog.setCacheHits(frame.getCacheHits());
+				parentLog.setCacheMisses(frame.getCacheMisses());
+			}
+			
 			return expanded;
 		}
 		catch (Exception e)
@@ -832,6 +1104,172 @@ public class WtEngineImpl
 		}
 	}
 	
+	/**
+	 * Processes a page section by section and reuses the results of unchanged
+	 * sections of the previous revision.
+	 * 
+	 * @param offsets
+	 *            The start offsets of the sections.
+	 * @return The processed page or null if the processed sections cannot be
+	 *         combined and the page has to be processed as a whole.
+	 */
+	private IncrementalPage reparse(
+			IncrementalPage previous,
+			PageTitle title,
+			String wikitext,
+			int[] offsets,
+			ExpansionCallback callback,
+			EngLogProcessingPass log)
+			throws EngineException
+	{
+		int count = offsets.length;
+		boolean split = count > 1;
+		
+		Map<String, LinkedList<Section>> reusable =
+				new HashMap<String, LinkedList<Section>>();
+		
+		if (previous != null)
+		{
+			for (Section section : previous.getSections())
+			{
+				if (split && !section.balanced)
+					continue;
+				
+				LinkedList<Section> sameSource = reusable.get(section.source);
+				if (sameSource == null)
+				{
+					sameSource = new LinkedList<Section>();
+					reusable.put(section.source, sameSource);
+				}
+				sameSource.add(section);
+			}
+		}
+		
+		// -- expand changed sections ----
+		
+		Section[] sections = new Section[count];
+		String[] sources = new String[count];
+		String[] expanded = new String[count];
+		WtPreproWikitextPage[] ppAsts = new WtPreproWikitextPage[count];
+		PreprocessedWikitext[] preprocessed = new PreprocessedWikitext[count];
+		ExpansionDependencies[] dependencies = new ExpansionDependencies[count];
+		
+		int reused = 0;
+		for (int i = 0; i < count; ++i)
+		{
+			int end = (i + 1 < count) ? offsets[i + 1] : wikitext.length();
+			sources[i] = wikitext.substring(offsets[i], end);
+			
+			sections[i] = takeUpToDate(reusable.get(sources[i]), callback);
+			if (sections[i] != null)
+			{
+				expanded[i] = sections[i].expanded;
+				++reused;
+				continue;
+			}
+			
+			ValidatedWikitext validatedWikitext =
+					validate(title, sources[i], log, null);
+			
+			WtPreproWikitextPage ppAst =
+					preprocess(title, validatedWikitext, false, log);
+			
+			// Locations in a section are relative to the section and must not
+			// be mistaken for locations in the revision of the page.
+			if (callback != null)
+			{
+				dependencies[i] = new ExpansionDependencies(callback);
+				ppAst = expand(dependencies[i], new PageId(title, -1), ppAst, null, false, log);
+			}
+			
+			ppAsts[i] = ppAst;
+			preprocessed[i] = PreprocessorToParserTransformer.transform(
+					ppAst,
+					engineConfig.isTrimTransparentBeforeParsing());
+			expanded[i] = preprocessed[i].getWikitext();
+		}
+		
+		if (split && !IncrementalSections.canSplitAt(expanded))
+			return null;
+		
+		// -- parse changed sections and combine ----
+		
+		WtNodeList content = nf().list();
+		List<Warning> warnings = new ArrayList<Warning>();
+		
+		int firstLine = 1;
+		for (int i = 0; i < count; ++i)
+		{
+			Section section = sections[i];
+			if (section == null)
+			{
+				WtParsedWikitextPage pAst =
+						parse(title, ppAsts[i], preprocessed[i], log);
+				
+				boolean balanced = IncrementalSections.isBalanced(pAst);
+				if (split && !balanced)
+					return null;
+				
+				pAst = postprocess(title, pAst, log);
+				
+				WtNodeList sectionContent = nf().list();
+				sectionContent.addAll(pAst);
+				
+				section = new Section(
+						sources[i],
+						expanded[i],
+						sectionContent,
+						pAst.getWarnings(),
+						balanced,
+						1,
+						dependencies[i]);
+			}
+			
+			if (section.firstLine != firstLine)
+				section = IncrementalSections.relocate(section, firstLine);
+			
+			sections[i] = section;
+			content.addAll(section.content);
+			warnings.addAll(section.warnings);
+			
+			firstLine += IncrementalSections.countLineBreaks(section.expanded);
+		}
+		
+		EngProcessedPage processedPage = nf().processedPage(
+				nf().page(content),
+				log,
+				warnings);
+		
+		return new IncrementalPage(processedPage, wikitext, sections, reused);
+	}
+	
+	/**
+	 * Removes the first section from the given sections of a previous
+	 * revision whose expansion is still up to date.
+	 * 
+	 * @return The section or null if there is none.
+	 */
+	private static Section takeUpToDate(
+			LinkedList<Section> sameSource,
+			ExpansionCallback callback)
+	{
+		if (sameSource == null)
+			return null;
+		
+		Iterator<Section> i = sameSource.iterator();
+		while (i.hasNext())
+		{
+			Section section = i.next();
+			if (section.isUpToDate(callback))
+			{
+				i.remove();
+				return section;
+			}
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * Parses a preprocessed page.
 	 */
@@ -849,7 +1287,8 @@ public class WtEngineImpl
 		
 		try
 		{
-			WikitextParser parser = new WikitextParser(parserConfig);
+			WikitextParser parser = parsers.get();
+			parser.setSectionExecutor(sectionExecutor, minSectionChunkLength);
 			
 			WtParsedWikitextPage parsedAst =
 					(WtParsedWikitextPage) parser.parseArticle(
@@ -890,6 +1329,24 @@ public class WtEngineImpl
 			WtPreproWikitextPage ppAst,
 			EngLogContainer parentLog)
 			throws EngineException
+	{
+		return parse(title, ppAst, null, parentLog);
+	}
+	
+	/**
+	 * Parses a preprocessed page (wikitext+entities) and substitutes entities
+	 * afterwards.
+	 * 
+	 * @param preprocessedWikitext
+	 *            The preprocessed page already transformed for the parser or
+	 *            null if the page still has to be transformed.
+	 */
+	private WtParsedWikitextPage parse(
+			PageTitle title,
+			WtPreproWikitextPage ppAst,
+			PreprocessedWikitext preprocessedWikitext,
+			EngLogContainer parentLog)
+			throws EngineException
 	{
 		EngLogParserPass log = nf().logParserPass();
 		parentLog.add(log);
@@ -899,12 +1356,15 @@ public class WtEngineImpl
 		
 		try
 		{
-			PreprocessedWikitext preprocessedWikitext =
-					PreprocessorToParserTransformer.transform(
-							ppAst,
-							engineConfig.isTrimTransparentBeforeParsing());
+			if (preprocessedWikitext == null)
+			{
+				preprocessedWikitext = PreprocessorToParserTransformer.transform(
+						ppAst,
+						engineConfig.isTrimTransparentBeforeParsing());
+			}
 			
-			WikitextParser parser = new WikitextParser(parserConfig);
+			WikitextParser parser = parsers.get();
+			parser.setSectionExecutor(sectionExecutor, minSectionChunkLength);
 			
 			WtParsedWikitextPage parsedAst =
 					(WtParsedWikitextPage) parser.parseArticle(
@@ -960,7 +1420,7 @@ public class WtEngineImpl
 		
 		try
 		{
-			WikitextPostprocessor lpp = new WikitextPostprocessor(parserConfig);
+			WikitextPostprocessor lpp = postprocessors.get();
 			
 			pAst = (WtParsedWikitextPage) lpp.postprocess(pAst, title.getTitle());
 			
@@ -34,13 +34,13 @@ import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
 
+import org.sweble.wikitext.engine.PageTitle;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
 import org.sweble.wikitext.parser.NonStandardElementBehavior;
 import org.sweble.wikitext.parser.ParserConfig;
 import org.sweble.wikitext.parser.WikitextWarning.WarningSeverity;
 import org.sweble.wikitext.parser.parser.LinkBuilder.LinkType;
 import org.sweble.wikitext.parser.parser.LinkTargetException;
-import org.sweble.wikitext.parser.parser.LinkTargetParser;
 import org.sweble.wikitext.parser.utils.AstTextUtils;
 
 @XmlRootElement(
@@ -272,23 +272,20 @@ public class ParserConfigImpl
 	@Override
 	public LinkType classifyTarget(String target)
 	{
-		LinkTargetParser ltp = new LinkTargetParser();
+		// Resolving the target through PageTitle shares the resolved title
+		// with the expansion and rendering of the same link.
+		PageTitle title;
 		try
 		{
-			ltp.parse(this, target);
+			title = PageTitle.make(this.wikiConfig, target);
 		}
 		catch (LinkTargetException e)
 		{
 			return LinkType.INVALID;
 		}
 		
-		String nsStr = ltp.getNamespace();
-		if (nsStr != null)
-		{
-			NamespaceImpl ns = this.wikiConfig.getNamespace(nsStr);
-			if (ns != null && ns.isFileNs() && !ltp.isInitialColon())
-				return LinkType.IMAGE;
-		}
+		if (title.isLocal() && title.getNamespace().isFileNs() && !title.hasInitialColon())
+			return LinkType.IMAGE;
 		
 		return LinkType.PAGE;
 	}
@@ -20,6 +20,7 @@ package org.sweble.wikitext.engine.config;
 import java.util.Collection;
 import java.util.TimeZone;
 
+import org.sweble.wikitext.engine.PageTitleCache;
 import org.sweble.wikitext.engine.ParserFunctionBase;
 import org.sweble.wikitext.engine.TagExtensionBase;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
@@ -131,4 +132,12 @@ public interface WikiConfig
 	public WikiRuntimeInfo getRuntimeInfo();
 	
 	public TimeZone getTimezone();
+	
+	// ==[ Caches ]=============================================================
+	
+	/**
+	 * Returns the cache used by PageTitle.make() or null if page titles are
+	 * not cached.
+	 */
+	public PageTitleCache getPageTitleCache();
 }
@@ -47,6 +47,7 @@ import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.util.JAXBSource;
 import javax.xml.transform.Source;
 
+import org.sweble.wikitext.engine.PageTitleCache;
 import org.sweble.wikitext.engine.ParserFunctionBase;
 import org.sweble.wikitext.engine.TagExtensionBase;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactoryImpl;
@@ -140,6 +141,12 @@ public class WikiConfigImpl
 	
 	private WikiRuntimeInfo runtimeInfo;
 	
+	// -- Caches --
+	
+	private static final int DEFAULT_PAGE_TITLE_CACHE_SIZE = 64 * 1024;
+	
+	private PageTitleCache pageTitleCache = new PageTitleCache(DEFAULT_PAGE_TITLE_CACHE_SIZE);
+	
 	// =========================================================================
 	
 	public WikiConfigImpl()
@@ -210,6 +217,8 @@ public class WikiConfigImpl
 		namespaceById.put(ns.getId(), ns);
 		for (String name : names)
 			namespaceByName.put(name, ns);
+		
+		clearPageTitleCache();
 	}
 	
 	public void setDefaultNamespace(NamespaceImpl defaultNamespace)
@@ -218,6 +227,8 @@ public class WikiConfigImpl
 			throw new IllegalArgumentException("Given namespace unknown in this configuration");
 		
 		this.defaultNamespace = defaultNamespace;
+		
+		clearPageTitleCache();
 	}
 	
 	public void setTemplateNamespace(NamespaceImpl templateNamespace)
@@ -294,6 +305,8 @@ public class WikiConfigImpl
 			throw new IllegalArgumentException("A wiki with the same interwiki prefix `" + iw.getPrefix() + "' is already registered.");
 		
 		prefixToInterwikiMap.put(iw.getPrefix(), iw);
+		
+		clearPageTitleCache();
 	}
 	
 	@Override
@@ -564,6 +577,29 @@ public class WikiConfigImpl
 		this.runtimeInfo = runtimeInfo;
 	}
 	
+	// ==[ Caches ]=============================================================
+	
+	@Override
+	public PageTitleCache getPageTitleCache()
+	{
+		return pageTitleCache;
+	}
+	
+	/**
+	 * Replaces the cache used by PageTitle.make(). Pass <code>null</code> to
+	 * disable caching of page titles.
+	 */
+	public void setPageTitleCache(PageTitleCache pageTitleCache)
+	{
+		this.pageTitleCache = pageTitleCache;
+	}
+	
+	private void clearPageTitleCache()
+	{
+		if (pageTitleCache != null)
+			pageTitleCache.clear();
+	}
+	
 	// =========================================================================
 	
 	@Override
@@ -18,14 +18,25 @@
 package org.sweble.wikitext.engine.ext.parser_functions;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Stack;
 
+/**
+ * Evaluates the expressions of the #expr and #ifexpr parser functions.
+ *
+ * An expression is compiled into an {@link Expression} once. The compiled
+ * expressions are kept in a bounded cache keyed by the expression text and
+ * are evaluated on a primitive stack.
+ */
 public class ExprParser
 {
 	private static final int maxStackSize = 100;
 	
+	private static final int MAX_CACHED_EXPRESSIONS = 1024;
+	
 	private static final Map<String, Token> TOKENS = new HashMap<String, Token>();
 	
 	static
@@ -69,33 +80,102 @@ public class ExprParser
 		TOKENS.put("trunc", Token.TRUNC);
 	}
 	
-	// =====================================================================
+	private static final Map<String, Expression> CACHE =
+			new LinkedHashMap<String, Expression>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest)
+				{
+					return size() > MAX_CACHED_EXPRESSIONS;
+				}
+			};
 	
-	private final Stack<Double> operands = new Stack<Double>();
+	// =====================================================================
 	
-	private final Stack<Token> operators = new Stack<Token>();
+	private final ArrayList<Token> operators = new ArrayList<Token>();
 	
 	private Production expecting;
 	
+	private Token[] code = new Token[16];
+	
+	private double[] values = new double[16];
+	
+	private int codeSize;
+	
+	private int operands;
+	
+	private int maxOperands;
+	
+	// =====================================================================
+	
+	public String parse(String expr) throws ExprError
+	{
+		return compile(expr).evaluate();
+	}
+	
+	/**
+	 * Returns the compiled form of an expression. Expressions that do not
+	 * parse are compiled as well. Their evaluation throws the parse error
+	 * after evaluating everything that precedes the error.
+	 */
+	public static Expression compile(String expr)
+	{
+		Expression compiled;
+		synchronized (CACHE)
+		{
+			compiled = CACHE.get(expr);
+		}
+		
+		if (compiled == null)
+		{
+			compiled = new ExprParser().compileExpression(expr);
+			synchronized (CACHE)
+			{
+				CACHE.put(expr, compiled);
+			}
+		}
+		
+		return compiled;
+	}
+	
 	// =====================================================================
 	
 	/**
 	 * http://montcs.bloomu.edu/~bobmon/Information/RPN/infix2rpn.shtml
 	 * 
-	 * @throws ExprError
+	 * The operators are not applied but emitted in the order in which they
+	 * have to be applied. Only the depth of the operand stack is tracked.
 	 */
-	public String parse(String expr) throws ExprError
+	private Expression compileExpression(String expr)
+	{
+		ExprError error = null;
+		try
+		{
+			compileTokens(unescape(expr));
+		}
+		catch (ExprError e)
+		{
+			error = e;
+		}
+		
+		return new Expression(
+				Arrays.copyOf(code, codeSize),
+				Arrays.copyOf(values, codeSize),
+				maxOperands,
+				error);
+	}
+	
+	private void compileTokens(String expr) throws ExprError
 	{
-		operands.clear();
 		operators.clear();
 		expecting = Production.EXPR;
 		int i = 0;
 		
-		expr = unescape(expr);
-		
 		while (i < expr.length())
 		{
-			if (operands.size() > maxStackSize
+			if (operands > maxStackSize
 					|| operators.size() > maxStackSize)
 				throw new ExprError("operands_exhausted");
 			
@@ -162,7 +242,7 @@ public class ExprParser
 					{
 						if (expecting == Production.EXPR)
 						{
-							token.apply(operands);
+							emit(token == Token.E ? Math.E : Math.PI);
 							expecting = Production.OPERATOR;
 						}
 						continue;
@@ -185,7 +265,7 @@ public class ExprParser
 					case CEIL:
 					{
 						expect(Production.EXPR, "unexpected_operator", word);
-						operators.push(token);
+						operators.add(token);
 						continue;
 					}
 					
@@ -196,7 +276,7 @@ public class ExprParser
 					{
 						if (expecting == Production.EXPR)
 						{
-							operators.push(token == Token.PLUS ?
+							operators.add(token == Token.PLUS ?
 									Token.POS :
 									Token.NEG);
 						}
@@ -232,7 +312,7 @@ public class ExprParser
 					case LPAREN:
 					{
 						expect(Production.EXPR, "unexpected_operator", word);
-						operators.push(token);
+						operators.add(token);
 						continue;
 					}
 					
@@ -241,18 +321,18 @@ public class ExprParser
 						Token lastOp = null;
 						while (!operators.isEmpty())
 						{
-							lastOp = operators.peek();
+							lastOp = peekOperator();
 							if (lastOp == Token.LPAREN)
 								break;
 							
-							lastOp.apply(operands);
-							operators.pop();
+							emit(lastOp);
+							popOperator();
 						}
 						
 						if (lastOp != Token.LPAREN)
 							throw new ExprError("unexpected_closing_bracket");
 						
-						operators.pop();
+						popOperator();
 						expecting = Production.OPERATOR;
 						continue;
 					}
@@ -265,14 +345,12 @@ public class ExprParser
 		
 		while (!operators.isEmpty())
 		{
-			Token op = operators.pop();
+			Token op = popOperator();
 			if (op == Token.LPAREN)
 				throw new ExprError("unclosed_bracket");
 			
-			op.apply(operands);
+			emit(op);
 		}
-		
-		return implode("<br />\n", operands);
 	}
 	
 	// =====================================================================
@@ -321,11 +399,11 @@ public class ExprParser
 		
 		try
 		{
-			operands.push(Double.parseDouble(expr.substring(i, j)));
+			emit(Double.parseDouble(expr.substring(i, j)));
 		}
 		catch (NumberFormatException e)
 		{
-			operands.push(0.);
+			emit(0.);
 		}
 		
 		return j;
@@ -374,34 +452,139 @@ public class ExprParser
 		
 		while (!operators.isEmpty())
 		{
-			Token lastOp = operators.peek();
+			Token lastOp = peekOperator();
 			if (op.getPrecedence() > lastOp.getPrecedence())
 				break;
 			
-			lastOp.apply(operands);
-			operators.pop();
+			emit(lastOp);
+			popOperator();
 		}
 		
-		operators.push(op);
+		operators.add(op);
 		expecting = Production.EXPR;
 	}
 	
+	private Token peekOperator()
+	{
+		return operators.get(operators.size() - 1);
+	}
+	
+	private Token popOperator()
+	{
+		return operators.remove(operators.size() - 1);
+	}
+	
 	// =====================================================================
 	
-	private String implode(String serparator, Stack<Double> operands)
+	private void emit(double value)
 	{
-		StringBuilder b = new StringBuilder();
-		for (int i = 0; i < operands.size();)
+		grow();
+		values[codeSize++] = value;
+		if (++operands > maxOperands)
+			maxOperands = operands;
+	}
+	
+	/**
+	 * Emits an operator. If the operand stack will not hold enough operands
+	 * for the operator, the operator would fail with the same error whatever
+	 * the values of the operands are. In that case the error is thrown right
+	 * away to end the compilation.
+	 */
+	private void emit(Token op) throws ExprError
+	{
+		int arity = op.getArity();
+		if (operands < arity)
+			throw new ExprError("Missing operand for %s.", op.toString());
+		
+		grow();
+		code[codeSize++] = op;
+		operands -= arity - 1;
+	}
+	
+	private void grow()
+	{
+		if (codeSize == code.length)
 		{
-			double result = operands.get(i);
-			if (((double) (int) result) == result)
-				b.append((int) result);
-			else
-				b.append(result);
-			if (++i < operands.size())
-				b.append(serparator);
+			code = Arrays.copyOf(code, codeSize * 2);
+			values = Arrays.copyOf(values, codeSize * 2);
+		}
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * A compiled expression. The operators and operands are stored in the
+	 * order in which they are evaluated. A slot without operator pushes its
+	 * value onto the stack. Compiled expressions are immutable and can be
+	 * evaluated concurrently.
+	 */
+	public static final class Expression
+	{
+		private final Token[] code;
+		
+		private final double[] values;
+		
+		private final int stackSize;
+		
+		private final ExprError error;
+		
+		// =====================================================================
+		
+		private Expression(
+				Token[] code,
+				double[] values,
+				int stackSize,
+				ExprError error)
+		{
+			this.code = code;
+			this.values = values;
+			this.stackSize = stackSize;
+			this.error = error;
+		}
+		
+		// =====================================================================
+		
+		public String evaluate() throws ExprError
+		{
+			double[] stack = new double[stackSize];
+			int sp = 0;
+			
+			for (int i = 0; i < code.length; ++i)
+			{
+				Token op = code[i];
+				if (op == null)
+				{
+					stack[sp++] = values[i];
+				}
+				else
+				{
+					sp = op.apply(stack, sp);
+				}
+			}
+			
+			if (error != null)
+				throw new ExprError(error);
+			
+			return implode("<br />\n", stack, sp);
+		}
+		
+		// =====================================================================
+		
+		private static String implode(String serparator, double[] stack, int sp)
+		{
+			StringBuilder b = new StringBuilder();
+			for (int i = 0; i < sp;)
+			{
+				double result = stack[i];
+				if (((double) (int) result) == result)
+					b.append((int) result);
+				else
+					b.append(result);
+				if (++i < sp)
+					b.append(serparator);
+			}
+			return b.toString();
 		}
-		return b.toString();
 	}
 	
 	// =========================================================================
@@ -425,6 +608,15 @@ public class ExprParser
 			this.param = param;
 		}
 		
+		/**
+		 * Rethrows an error recorded while compiling an expression.
+		 */
+		private ExprError(ExprError error)
+		{
+			super(error.getMessage());
+			this.param = error.param;
+		}
+		
 		private static String makeMessage(String message, String param)
 		{
 			String msg = message;
@@ -456,17 +648,19 @@ public class ExprParser
 		E(-1, "e")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				operands.push(Math.E);
+				stack[sp++] = Math.E;
+				return sp;
 			}
 		},
 		PI(-1, "pi")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				operands.push(Math.PI);
+				stack[sp++] = Math.PI;
+				return sp;
 			}
 		},
 		
@@ -475,12 +669,13 @@ public class ExprParser
 		SCIENTIFIC(10, "e")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left * Math.pow(10, right));
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = left * Math.pow(10, right);
+				return sp;
 			}
 		},
 		
@@ -489,30 +684,33 @@ public class ExprParser
 		POS(10, "+")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
+				requireOneOp(this, sp);
+				return sp;
 			}
 		},
 		NEG(10, "-")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(-arg);
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = -arg;
+				return sp;
 			}
 		},
 		
 		NOT(9, "not")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push((arg == 0) ? 1. : 0.);
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = (arg == 0) ? 1. : 0.;
+				return sp;
 			}
 		},
 		
@@ -521,65 +719,71 @@ public class ExprParser
 		SINE(9, "sin")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.sin(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.sin(arg);
+				return sp;
 			}
 		},
 		COSINE(9, "cos")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.cos(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.cos(arg);
+				return sp;
 			}
 		},
 		TANGENS(9, "tan")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.tan(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.tan(arg);
+				return sp;
 			}
 		},
 		ARCSINE(9, "asin")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
 				if (arg < -1 || arg > 1)
 					throw new ExprError("invalid_argument", toString());
-				operands.push(Math.asin(arg));
+				stack[sp++] = Math.asin(arg);
+				return sp;
 			}
 		},
 		ARCCOS(9, "acos")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
 				if (arg < -1 || arg > 1)
 					throw new ExprError("invalid_argument", toString());
-				operands.push(Math.acos(arg));
+				stack[sp++] = Math.acos(arg);
+				return sp;
 			}
 		},
 		ARCTAN(9, "atan")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.atan(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.atan(arg);
+				return sp;
 			}
 		},
 		
@@ -588,23 +792,25 @@ public class ExprParser
 		EXP(9, "exp")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.exp(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.exp(arg);
+				return sp;
 			}
 		},
 		LN(9, "ln")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
 				if (arg <= 0)
 					throw new ExprError("invalid_argument_ln", toString());
-				operands.push(Math.log(arg));
+				stack[sp++] = Math.log(arg);
+				return sp;
 			}
 		},
 		
@@ -613,42 +819,46 @@ public class ExprParser
 		ABS(9, "abs")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.abs(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.abs(arg);
+				return sp;
 			}
 		},
 		
 		FLOOR(9, "floor")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.floor(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.floor(arg);
+				return sp;
 			}
 		},
 		TRUNC(9, "trunc")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push((double) ((int) arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = (double) ((int) arg);
+				return sp;
 			}
 		},
 		CEIL(9, "ceil")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.ceil(arg));
+				requireOneOp(this, sp);
+				double arg = stack[--sp];
+				stack[sp++] = Math.ceil(arg);
+				return sp;
 			}
 		},
 		
@@ -657,52 +867,56 @@ public class ExprParser
 		POW(8, "^")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
 				double result = Math.pow(left, right);
 				if (Double.isNaN(result))
 					throw new ExprError("division_by_zero", toString());
-				operands.push(result);
+				stack[sp++] = result;
+				return sp;
 			}
 		},
 		TIMES(7, "*")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left * right);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = left * right;
+				return sp;
 			}
 		},
 		DIVIDE(7, "/")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
 				if (right == 0)
 					throw new ExprError("division_by_zero", toString());
-				operands.push(left / right);
+				stack[sp++] = left / right;
+				return sp;
 			}
 		},
 		MOD(7, "mod")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
 				if (right == 0)
 					throw new ExprError("division_by_zero", toString());
-				operands.push(left % right);
+				stack[sp++] = left % right;
+				return sp;
 			}
 		},
 		
@@ -711,23 +925,25 @@ public class ExprParser
 		PLUS(6, "+")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left + right);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = left + right;
+				return sp;
 			}
 		},
 		MINUS(6, "-")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left - right);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = left - right;
+				return sp;
 			}
 		},
 		
@@ -736,13 +952,14 @@ public class ExprParser
 		ROUND(5, "round")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				int digits = (int) (double) operands.pop();
-				double value = operands.pop();
+				requireTwoOps(this, sp);
+				int digits = (int) stack[--sp];
+				double value = stack[--sp];
 				value = round(value, digits);
-				operands.push(value);
+				stack[sp++] = value;
+				return sp;
 			}
 		},
 		
@@ -751,67 +968,73 @@ public class ExprParser
 		EQ(4, "=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left == right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left == right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		NEQ(4, "!=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left != right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		LE(4, "<")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left < right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left < right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		GR(4, ">")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left > right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left > right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		LEQ(4, "<=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left <= right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left <= right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		GEQ(4, ">=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left >= right) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left >= right) ? 1. : 0.;
+				return sp;
 			}
 		},
 		
@@ -820,23 +1043,25 @@ public class ExprParser
 		AND(3, "and")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != 0 && right != 0) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left != 0 && right != 0) ? 1. : 0.;
+				return sp;
 			}
 		},
 		OR(2, "or")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != 0 || right != 0) ? 1. : 0.);
+				requireTwoOps(this, sp);
+				double right = stack[--sp];
+				double left = stack[--sp];
+				stack[sp++] = (left != 0 || right != 0) ? 1. : 0.;
+				return sp;
 			}
 		},
 		
@@ -845,7 +1070,7 @@ public class ExprParser
 		LPAREN(-1, "(")
 		{
 			@Override
-			public void apply(Stack<Double> operands)
+			public int apply(double[] stack, int sp)
 			{
 				throw new InternalError();
 			}
@@ -853,7 +1078,7 @@ public class ExprParser
 		RPAREN(-1, ")")
 		{
 			@Override
-			public void apply(Stack<Double> operands)
+			public int apply(double[] stack, int sp)
 			{
 				throw new InternalError();
 			}
@@ -875,13 +1100,44 @@ public class ExprParser
 		
 		// -----------------------------------------------------------------
 		
-		public abstract void apply(Stack<Double> operands) throws ExprError;
+		public abstract int apply(double[] stack, int sp) throws ExprError;
 		
 		public int getPrecedence()
 		{
 			return precedence;
 		}
 		
+		/**
+		 * The number of operands an operator takes from the stack.
+		 */
+		public int getArity()
+		{
+			switch (this)
+			{
+				case E:
+				case PI:
+					return 0;
+				case POS:
+				case NEG:
+				case NOT:
+				case SINE:
+				case COSINE:
+				case TANGENS:
+				case ARCSINE:
+				case ARCCOS:
+				case ARCTAN:
+				case EXP:
+				case LN:
+				case ABS:
+				case FLOOR:
+				case TRUNC:
+				case CEIL:
+					return 1;
+				default:
+					return 2;
+			}
+		}
+		
 		@Override
 		public String toString()
 		{
@@ -890,15 +1146,15 @@ public class ExprParser
 		
 		// -----------------------------------------------------------------
 		
-		private static void requireOneOp(Token op, Stack<Double> operands) throws ExprError
+		private static void requireOneOp(Token op, int sp) throws ExprError
 		{
-			if (operands.isEmpty())
+			if (sp < 1)
 				throw new ExprError("Missing operand for %s.", op.toString());
 		}
 		
-		private static void requireTwoOps(Token op, Stack<Double> operands) throws ExprError
+		private static void requireTwoOps(Token op, int sp) throws ExprError
 		{
-			if (operands.size() < 2)
+			if (sp < 2)
 				throw new ExprError("Missing operand for %s.", op.toString());
 		}
 		
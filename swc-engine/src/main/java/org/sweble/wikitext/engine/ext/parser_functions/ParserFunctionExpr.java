@@ -46,6 +46,12 @@ public class ParserFunctionExpr
 		super(wikiConfig, "expr");
 	}
 	
+	@Override
+	public boolean isPure()
+	{
+		return true;
+	}
+	
 	@Override
 	public WtNode invoke(
 			WtTemplate pfn,
@@ -67,10 +73,9 @@ public class ParserFunctionExpr
 			return EngineRtData.set(nf().softError(pfn));
 		}
 		
-		ExprParser p = new ExprParser();
 		try
 		{
-			return nf().text(p.parse(expr));
+			return nf().text(ExprParser.compile(expr).evaluate());
 		}
 		catch (ExprError e)
 		{
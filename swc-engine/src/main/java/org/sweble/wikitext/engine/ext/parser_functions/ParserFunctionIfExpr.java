@@ -54,6 +54,12 @@ public class ParserFunctionIfExpr
 		super(wikiConfig, "ifexpr", 1 /* thenArgIndex */);
 	}
 	
+	@Override
+	public boolean isPure()
+	{
+		return true;
+	}
+	
 	@Override
 	protected boolean evaluateCondition(
 			WtTemplate pfn,
@@ -76,11 +82,10 @@ public class ParserFunctionIfExpr
 		if (expr.isEmpty())
 			return false;
 		
-		ExprParser p = new ExprParser();
 		String result;
 		try
 		{
-			result = p.parse(expr);
+			result = ExprParser.compile(expr).evaluate();
 		}
 		catch (ExprError e)
 		{
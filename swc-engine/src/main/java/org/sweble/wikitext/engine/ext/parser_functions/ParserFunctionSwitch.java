@@ -17,9 +17,13 @@
 
 package org.sweble.wikitext.engine.ext.parser_functions;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.PageId;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.parser.nodes.WtNode;
 import org.sweble.wikitext.parser.nodes.WtNodeList;
@@ -27,12 +31,34 @@ import org.sweble.wikitext.parser.nodes.WtTemplate;
 import org.sweble.wikitext.parser.nodes.WtText;
 import org.sweble.wikitext.parser.utils.StringConversionException;
 
+import de.fau.cs.osr.ptk.common.ast.AstLocation;
+
 public class ParserFunctionSwitch
 		extends
 			ParserFunctionsExtPfn.CtrlStmt
 {
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Switches with fewer cases are always evaluated case by case.
+	 */
+	private static final int MIN_JUMP_TABLE_CASES = 8;
+	
+	private static final int MAX_JUMP_TABLES = 1024;
+	
+	/**
+	 * Marks switches whose case labels are not all plain text.
+	 */
+	private static final JumpTable NOT_LITERAL = new JumpTable(0);
+	
+	// =========================================================================
+	
+	private transient Map<SwitchId, JumpTable> jumpTables;
+	
+	private transient long jumpTableHits;
+	
+	// =========================================================================
+	
 	/**
 	 * For un-marshaling only.
 	 */
@@ -46,6 +72,12 @@ public class ParserFunctionSwitch
 		super(wikiConfig, "switch");
 	}
 	
+	@Override
+	public boolean isPure()
+	{
+		return true;
+	}
+	
 	@Override
 	protected WtNode evaluate(
 			WtTemplate pfn,
@@ -55,9 +87,114 @@ public class ParserFunctionSwitch
 		if (args.size() < 1)
 			return nf().list();
 		
-		return new Evaluator(frame, args).evaluate();
+		Evaluator evaluator = new Evaluator(frame, args);
+		
+		JumpTable table = getJumpTable(pfn, frame, evaluator);
+		if (table != null)
+			return evaluator.evaluate(table);
+		
+		return evaluator.evaluate();
+	}
+	
+	/**
+	 * Returns the jump table of a switch whose case labels are all plain
+	 * text or null if the switch has to be evaluated case by case.
+	 *
+	 * Jump tables are cached by the location of the switch in a revision of
+	 * a page. Switches of pages whose revision is not known and switches
+	 * which were passed in from another page as template argument are not
+	 * cached.
+	 */
+	private JumpTable getJumpTable(
+			WtTemplate pfn,
+			ExpansionFrame frame,
+			Evaluator evaluator)
+	{
+		int argCount = evaluator.args.size();
+		if (argCount - 1 < MIN_JUMP_TABLE_CASES)
+			return null;
+		
+		PageId pageId = frame.getPageId();
+		if (pageId.getRevision() < 0)
+			return null;
+		
+		AstLocation location = pfn.getNativeLocation();
+		if (location == null)
+			return null;
+		
+		String page = location.getFile();
+		if (page == null || !page.equals(pageId.getTitle().getDenormalizedFullTitle()))
+			return null;
+		
+		SwitchId id = new SwitchId(
+				page,
+				pageId.getRevision(),
+				location.getLine(),
+				location.getColumn());
+		
+		Map<SwitchId, JumpTable> jumpTables = getJumpTables();
+		
+		JumpTable table;
+		synchronized (jumpTables)
+		{
+			table = jumpTables.get(id);
+		}
+		
+		boolean cached = (table != null);
+		if (!cached)
+		{
+			table = evaluator.buildJumpTable();
+			synchronized (jumpTables)
+			{
+				jumpTables.put(id, table);
+			}
+		}
+		
+		if (table == NOT_LITERAL || table.argCount != argCount)
+			return null;
+		
+		if (cached)
+		{
+			synchronized (jumpTables)
+			{
+				++jumpTableHits;
+			}
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Returns how often a switch was evaluated with a cached jump table.
+	 */
+	long getJumpTableHits()
+	{
+		synchronized (getJumpTables())
+		{
+			return jumpTableHits;
+		}
+	}
+	
+	private synchronized Map<SwitchId, JumpTable> getJumpTables()
+	{
+		if (jumpTables == null)
+		{
+			jumpTables = new LinkedHashMap<SwitchId, JumpTable>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<SwitchId, JumpTable> eldest)
+				{
+					return size() > MAX_JUMP_TABLES;
+				}
+			};
+		}
+		return jumpTables;
 	}
 	
+	// =========================================================================
+	
 	private final class Evaluator
 	{
 		private ExpansionFrame frame;
@@ -70,6 +207,10 @@ public class ParserFunctionSwitch
 		
 		private WtNode result;
 		
+		private String cmp;
+		
+		private Double icmp;
+		
 		public Evaluator(ExpansionFrame frame, List<? extends WtNode> args)
 		{
 			this.frame = frame;
@@ -78,20 +219,7 @@ public class ParserFunctionSwitch
 		
 		public WtNode evaluate()
 		{
-			WtNode arg0 = frame.expand(args.get(0));
-			
-			String cmp = null;
-			Double icmp = null;
-			try
-			{
-				cmp = tu().astToText(arg0).trim();
-				
-				icmp = strToDbl(cmp);
-			}
-			catch (StringConversionException e)
-			{
-				// FIXME: Do recursive equality check
-			}
+			evaluateTestString();
 			
 			boolean found = false;
 			
@@ -100,18 +228,7 @@ public class ParserFunctionSwitch
 			{
 				// Process each argument of the switch (after the test string)
 				
-				after = null;
-				before = nf().list();
-				if (args.get(i).isNodeType(WtNode.NT_NODE_LIST))
-				{
-					splitNodeListAtEquals(i);
-				}
-				else
-				{
-					WtNode c = args.get(i);
-					if (c.isNodeType(WtNode.NT_TEXT))
-						splitTextAtEquals(c);
-				}
+				split(i);
 				
 				// Now before holds the stuff in front of the "=" and after
 				// contains everything after the "=". If no "=" was found, 
@@ -144,6 +261,143 @@ public class ParserFunctionSwitch
 			return result;
 		}
 		
+		/**
+		 * Evaluates the switch like {@link #evaluate()} with a single lookup
+		 * in the jump table instead of comparing case by case.
+		 */
+		public WtNode evaluate(JumpTable table)
+		{
+			evaluateTestString();
+			
+			int match = -1;
+			if (cmp != null)
+			{
+				Integer i = table.strings.get(cmp);
+				if (i != null)
+					match = i;
+				
+				if (icmp != null)
+				{
+					i = table.numbers.get(icmp);
+					if (i != null && (match == -1 || i < match))
+						match = i;
+				}
+			}
+			
+			int last = args.size() - 1;
+			
+			int defaultCase;
+			if (match != -1)
+			{
+				// Fall through to the first case with a value
+				int target = table.nextValue[match];
+				if (target != -1)
+				{
+					split(target);
+					return after;
+				}
+				
+				defaultCase = table.lastDefault[match];
+			}
+			else
+			{
+				defaultCase = table.lastDefault[last + 1];
+			}
+			
+			if (defaultCase != -1 && table.hasValue[defaultCase])
+			{
+				split(defaultCase);
+				return after;
+			}
+			
+			if (!table.hasValue[last])
+			{
+				// The last case is an implicit default
+				split(last);
+				return before;
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * Builds the jump table of this switch or returns
+		 * {@link #NOT_LITERAL} if a case label is not plain text.
+		 */
+		public JumpTable buildJumpTable()
+		{
+			int argCount = args.size();
+			
+			JumpTable table = new JumpTable(argCount);
+			
+			int defaultCase = -1;
+			for (int i = 1; i < argCount; ++i)
+			{
+				split(i);
+				
+				String label = getLiteralLabel();
+				if (label == null)
+					return NOT_LITERAL;
+				
+				table.hasValue[i] = (after != null);
+				table.lastDefault[i] = defaultCase;
+				
+				if (label.equals("#default"))
+				{
+					defaultCase = i;
+					continue;
+				}
+				
+				if (!table.strings.containsKey(label))
+					table.strings.put(label, i);
+				
+				Double number = strToDbl(label);
+				if (number != null && !table.numbers.containsKey(number))
+					table.numbers.put(number, i);
+			}
+			table.lastDefault[argCount] = defaultCase;
+			
+			int next = -1;
+			for (int i = argCount - 1; i >= 1; --i)
+			{
+				if (table.hasValue[i])
+					next = i;
+				table.nextValue[i] = next;
+			}
+			
+			return table;
+		}
+		
+		private String getLiteralLabel()
+		{
+			StringBuilder sb = new StringBuilder();
+			for (WtNode c : before)
+			{
+				if (!c.isNodeType(WtNode.NT_TEXT))
+					return null;
+				sb.append(((WtText) c).getContent());
+			}
+			return sb.toString().trim();
+		}
+		
+		private void evaluateTestString()
+		{
+			WtNode arg0 = frame.expand(args.get(0));
+			
+			cmp = null;
+			icmp = null;
+			try
+			{
+				cmp = tu().astToText(arg0).trim();
+				
+				icmp = strToDbl(cmp);
+			}
+			catch (StringConversionException e)
+			{
+				// FIXME: Do recursive equality check
+			}
+		}
+		
 		private boolean compare(String cmp, Double icmp)
 		{
 			// See if the case statement matches the test string.
@@ -193,6 +447,26 @@ public class ParserFunctionSwitch
 			}
 		}
 		
+		/**
+		 * Splits a case at the first "=" into the label in before and the
+		 * value in after. If there is no "=" after is null.
+		 */
+		private void split(int i)
+		{
+			after = null;
+			before = nf().list();
+			if (args.get(i).isNodeType(WtNode.NT_NODE_LIST))
+			{
+				splitNodeListAtEquals(i);
+			}
+			else
+			{
+				WtNode c = args.get(i);
+				if (c.isNodeType(WtNode.NT_TEXT))
+					splitTextAtEquals(c);
+			}
+		}
+		
 		private void splitNodeListAtEquals(int i)
 		{
 			for (WtNode c : args.get(i))
@@ -231,4 +505,88 @@ public class ParserFunctionSwitch
 			}
 		}
 	}
+	
+	// =========================================================================
+	
+	/**
+	 * Maps the case labels of a switch to the index of the first case with
+	 * that label. All arrays are indexed by the index of the case in the
+	 * arguments of the switch.
+	 */
+	private static final class JumpTable
+	{
+		public final int argCount;
+		
+		public final Map<String, Integer> strings = new HashMap<String, Integer>();
+		
+		public final Map<Double, Integer> numbers = new HashMap<Double, Integer>();
+		
+		public final boolean[] hasValue;
+		
+		/**
+		 * The first case at or after a case which has a value or -1.
+		 */
+		public final int[] nextValue;
+		
+		/**
+		 * The last #default case before a case or -1. The entry after the last
+		 * case refers to the last #default case of the switch.
+		 */
+		public final int[] lastDefault;
+		
+		public JumpTable(int argCount)
+		{
+			this.argCount = argCount;
+			this.hasValue = new boolean[argCount];
+			this.nextValue = new int[argCount];
+			this.lastDefault = new int[argCount + 1];
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class SwitchId
+	{
+		private final String page;
+		
+		private final long revision;
+		
+		private final int line;
+		
+		private final int column;
+		
+		public SwitchId(String page, long revision, int line, int column)
+		{
+			this.page = page;
+			this.revision = revision;
+			this.line = line;
+			this.column = column;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + page.hashCode();
+			result = prime * result + (int) (revision ^ (revision >>> 32));
+			result = prime * result + line;
+			result = prime * result + column;
+			return result;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof SwitchId))
+				return false;
+			SwitchId other = (SwitchId) obj;
+			return revision == other.revision
+					&& line == other.line
+					&& column == other.column
+					&& page.equals(other.page);
+		}
+	}
 }
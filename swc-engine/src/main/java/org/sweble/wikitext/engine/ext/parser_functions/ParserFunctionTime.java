@@ -51,6 +51,27 @@ public class ParserFunctionTime
 		super(wikiConfig, "time");
 	}
 	
+	/**
+	 * Only the current date and time can be formatted (see
+	 * {@link #invoke(WtTemplate, ExpansionFrame, List)}). The result depends
+	 * on the wall clock and is therefore only pure for the expansion of a
+	 * single page, which is the lifetime of an
+	 * {@link org.sweble.wikitext.engine.ExpansionMemo}. Memoizing it makes all
+	 * calls with the same format on a page agree on the time, like MediaWiki
+	 * which formats all #time calls of a page with one timestamp.
+	 */
+	@Override
+	public boolean isPure()
+	{
+		return true;
+	}
+	
+	@Override
+	public boolean isVolatile()
+	{
+		return true;
+	}
+	
 	@Override
 	public WtNode invoke(
 			WtTemplate pfn,
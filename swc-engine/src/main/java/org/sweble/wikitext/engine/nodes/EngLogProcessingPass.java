@@ -57,10 +57,62 @@ public class EngLogProcessingPass
 		this.revision = revision;
 	}
 	
+	private Long memoHits;
+	
+	public final Long getMemoHits()
+	{
+		return this.memoHits;
+	}
+	
+	public final void setMemoHits(Long memoHits)
+	{
+		this.memoHits = memoHits;
+	}
+	
+	private Long memoMisses;
+	
+	public final Long getMemoMisses()
+	{
+		return this.memoMisses;
+	}
+	
+	public final void setMemoMisses(Long memoMisses)
+	{
+		this.memoMisses = memoMisses;
+	}
+	
+	private Long cacheHits;
+	
+	/**
+	 * The number of transcluded pages whose preprocessed AST was taken from
+	 * the preprocessed page cache during the expansion of this page.
+	 */
+	public final Long getCacheHits()
+	{
+		return this.cacheHits;
+	}
+	
+	public final void setCacheHits(Long cacheHits)
+	{
+		this.cacheHits = cacheHits;
+	}
+	
+	private Long cacheMisses;
+	
+	public final Long getCacheMisses()
+	{
+		return this.cacheMisses;
+	}
+	
+	public final void setCacheMisses(Long cacheMisses)
+	{
+		this.cacheMisses = cacheMisses;
+	}
+	
 	@Override
 	public final int getPropertyCount()
 	{
-		return 2 + getSuperPropertyCount();
+		return 6 + getSuperPropertyCount();
 	}
 	
 	private final int getSuperPropertyCount()
@@ -88,6 +140,14 @@ public class EngLogProcessingPass
 						return "title";
 					case 1:
 						return "revision";
+					case 2:
+						return "memoHits";
+					case 3:
+						return "memoMisses";
+					case 4:
+						return "cacheHits";
+					case 5:
+						return "cacheMisses";
 						
 					default:
 						return super.getName(index);
@@ -103,6 +163,14 @@ public class EngLogProcessingPass
 						return EngLogProcessingPass.this.getTitle();
 					case 1:
 						return EngLogProcessingPass.this.getRevision();
+					case 2:
+						return EngLogProcessingPass.this.getMemoHits();
+					case 3:
+						return EngLogProcessingPass.this.getMemoMisses();
+					case 4:
+						return EngLogProcessingPass.this.getCacheHits();
+					case 5:
+						return EngLogProcessingPass.this.getCacheMisses();
 						
 					default:
 						return super.getValue(index);
@@ -126,6 +194,30 @@ public class EngLogProcessingPass
 						EngLogProcessingPass.this.setRevision((Long) value);
 						return old;
 					}
+					case 2:
+					{
+						Object old = EngLogProcessingPass.this.getMemoHits();
+						EngLogProcessingPass.this.setMemoHits((Long) value);
+						return old;
+					}
+					case 3:
+					{
+						Object old = EngLogProcessingPass.this.getMemoMisses();
+						EngLogProcessingPass.this.setMemoMisses((Long) value);
+						return old;
+					}
+					case 4:
+					{
+						Object old = EngLogProcessingPass.this.getCacheHits();
+						EngLogProcessingPass.this.setCacheHits((Long) value);
+						return old;
+					}
+					case 5:
+					{
+						Object old = EngLogProcessingPass.this.getCacheMisses();
+						EngLogProcessingPass.this.setCacheMisses((Long) value);
+						return old;
+					}
 					
 					default:
 						return super.setValue(index, value);
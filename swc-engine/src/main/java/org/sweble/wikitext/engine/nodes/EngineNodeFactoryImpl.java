@@ -46,6 +46,21 @@ public final class EngineNodeFactoryImpl
 			prototypes.put(EngNowiki.class, new EngNowiki());
 			prototypes.put(EngPage.class, new EngPage());
 			prototypes.put(EngSoftErrorNode.class, new EngSoftErrorNode());
+			
+			prototypes.put(EngLogExpansionPass.class, new EngLogExpansionPass());
+			prototypes.put(EngLogParserPass.class, new EngLogParserPass());
+			prototypes.put(EngLogPostprocessorPass.class, new EngLogPostprocessorPass());
+			prototypes.put(EngLogPreprocessorPass.class, new EngLogPreprocessorPass());
+			prototypes.put(EngLogProcessingPass.class, new EngLogProcessingPass());
+			prototypes.put(EngLogValidatorPass.class, new EngLogValidatorPass());
+			prototypes.put(EngLogMagicWordResolution.class, new EngLogMagicWordResolution());
+			prototypes.put(EngLogParameterResolution.class, new EngLogParameterResolution());
+			prototypes.put(EngLogParserFunctionResolution.class, new EngLogParserFunctionResolution());
+			prototypes.put(EngLogRedirectResolution.class, new EngLogRedirectResolution());
+			prototypes.put(EngLogTagExtensionResolution.class, new EngLogTagExtensionResolution());
+			prototypes.put(EngLogTransclusionResolution.class, new EngLogTransclusionResolution());
+			prototypes.put(EngLogParserError.class, new EngLogParserError());
+			prototypes.put(EngLogUnhandledError.class, new EngLogUnhandledError());
 		}
 		
 		{
@@ -16,9 +16,16 @@
  */
 package org.sweble.wikitext.engine.output;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
@@ -381,7 +388,7 @@ public class HtmlRenderer
 		// -- <a> classes
 		
 		if (!aClasses.isEmpty())
-			aClasses = String.format(" class=\"%s\"", aClasses.trim());
+			aClasses = " class=\"" + aClasses.trim() + "\"";
 		
 		// -- <a> title --
 		
@@ -402,7 +409,7 @@ public class HtmlRenderer
 			}
 		}
 		if (!aTitle.isEmpty())
-			aTitle = String.format(" title=\"%s\"", aTitle);
+			aTitle = " title=\"" + aTitle + "\"";
 		
 		// -- width & height --
 		
@@ -449,7 +456,7 @@ public class HtmlRenderer
 			{
 				thumb = "thumb";
 				inner = "thumbinner";
-				style = String.format(" style=\"width:%dpx;\"", width + 2);
+				style = " style=\"width:" + (width + 2) + "px;\"";
 			}
 			
 			p.indent();
@@ -462,7 +469,7 @@ public class HtmlRenderer
 			
 			aTitle = "";
 			if (!exists)
-				aTitle = String.format(" title=\"%s\"", makeImageTitle(n, target));
+				aTitle = " title=\"" + makeImageTitle(n, target) + "\"";
 		}
 		else
 		{
@@ -483,7 +490,7 @@ public class HtmlRenderer
 		}
 		
 		if (!imgClasses.isEmpty())
-			imgClasses = String.format(" class=\"%s\"", imgClasses.trim());
+			imgClasses = " class=\"" + imgClasses.trim() + "\"";
 		
 		if (exists)
 		{
@@ -1483,8 +1490,52 @@ public class HtmlRenderer
 		return writer;
 	}
 	
+	/**
+	 * Renders the given AST and writes it UTF-8 encoded to the given stream
+	 * without building the whole document as string first. The stream is
+	 * flushed but not closed.
+	 */
+	public static <T extends WtNode> void print(
+			HtmlRendererCallback callback,
+			WikiConfig wikiConfig,
+			OutputStream out,
+			PageTitle pageTitle,
+			T node) throws IOException
+	{
+		Writer writer = new BufferedWriter(
+				new OutputStreamWriter(out, UTF8),
+				OUTPUT_BUFFER_SIZE);
+		
+		print(callback, wikiConfig, writer, pageTitle, node);
+		writer.flush();
+	}
+	
+	/**
+	 * Renders the given AST and writes it UTF-8 encoded to the given channel
+	 * without building the whole document as string first. The channel is
+	 * not closed.
+	 */
+	public static <T extends WtNode> void print(
+			HtmlRendererCallback callback,
+			WikiConfig wikiConfig,
+			WritableByteChannel channel,
+			PageTitle pageTitle,
+			T node) throws IOException
+	{
+		Writer writer = new BufferedWriter(
+				Channels.newWriter(channel, UTF8.newEncoder(), OUTPUT_BUFFER_SIZE),
+				OUTPUT_BUFFER_SIZE);
+		
+		print(callback, wikiConfig, writer, pageTitle, node);
+		writer.flush();
+	}
+	
 	// =========================================================================
 	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+	
 	protected static final Logger logger = Logger.getLogger(HtmlRenderer.class);
 	
 	protected static final Set<String> blockElements = new HashSet<String>();
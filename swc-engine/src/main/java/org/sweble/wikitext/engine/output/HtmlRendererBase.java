@@ -18,17 +18,27 @@ package org.sweble.wikitext.engine.output;
 
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.sweble.wikitext.parser.nodes.WtDispatchingVisitor;
 import org.sweble.wikitext.parser.nodes.WtNode;
 
-import de.fau.cs.osr.ptk.common.AstVisitor;
 import de.fau.cs.osr.utils.PrinterBase;
 import de.fau.cs.osr.utils.StringUtils;
 
 public class HtmlRendererBase
 		extends
-			AstVisitor<WtNode>
+			WtDispatchingVisitor
 {
+	/**
+	 * Format strings passed to pf() and pt() are almost exclusively literals.
+	 * They are therefore compiled into templates only once.
+	 */
+	private static final ConcurrentHashMap<String, Template> templates =
+			new ConcurrentHashMap<String, Template>();
+	
+	// =========================================================================
+	
 	protected final PrinterBase p;
 	
 	// =========================================================================
@@ -43,11 +53,17 @@ public class HtmlRendererBase
 	
 	protected static String esc(String content)
 	{
+		if (isPlainAscii(content))
+			return content;
 		return StringUtils.escHtml(content);
 	}
 	
 	protected static String esc(String content, boolean forAttribute)
 	{
+		// Most text does not contain characters that need escaping. Avoid
+		// building a copy of the string in that case.
+		if (isPlainAscii(content))
+			return content;
 		return StringUtils.escHtml(content, forAttribute);
 	}
 	
@@ -56,90 +72,236 @@ public class HtmlRendererBase
 		return org.apache.commons.lang.StringUtils.capitalize(text);
 	}
 	
+	private static boolean isPlainAscii(String content)
+	{
+		for (int i = 0; i < content.length(); ++i)
+		{
+			char ch = content.charAt(i);
+			if (ch < 0x20 || ch > 0x7E)
+				return false;
+			switch (ch)
+			{
+				case '&':
+				case '<':
+				case '>':
+				case '"':
+				case '\'':
+					return false;
+			}
+		}
+		return true;
+	}
+	
 	// =========================================================================
 	
 	/**
 	 * Print Formatted
+	 * 
+	 * Supports the conversions %s and %d (with optional relative index %<s)
+	 * directly. Other conversions are handed to String.format().
 	 */
 	protected void pf(String format, Object... args)
 	{
-		p.print(String.format(format, args));
+		print(compile(format), args);
 	}
 	
 	/**
 	 * Print Tree
+	 * 
+	 * In addition to the conversions of pf() supports %! (dispatch to node),
+	 * %= (escape string for HTML) and %~ (escape string for HTML attribute
+	 * value).
 	 */
 	protected void pt(String format, Object... args)
 	{
-		ArrayList<Object> a = new ArrayList<Object>(args.length);
-		
-		int arg = 0;
-		int last = 0;
-		for (int i = 0; i < format.length(); ++i)
+		print(compile(format), args);
+	}
+	
+	private void print(Template t, Object[] args)
+	{
+		for (int i = 0; i < t.conversions.length; ++i)
 		{
-			char ch = format.charAt(i);
-			if (ch == '%' && format.length() > i + 1)
+			String literal = t.literals[i];
+			if (!literal.isEmpty())
+				p.print(literal);
+			
+			Object arg = args[t.argIndices[i]];
+			switch (t.conversions[i])
 			{
-				char ch2 = format.charAt(i + 1);
-				switch (ch2)
+				case '!':
 				{
-					case '!':
+					WtNode n = (WtNode) arg;
+					if (n.isList())
 					{
-						printPart(format, a, last, i);
-						last = i + 2;
-						
-						WtNode n = (WtNode) args[arg++];
-						if (n.isList())
-						{
-							iterate(n);
-						}
-						else
-						{
-							dispatch(n);
-						}
-						break;
+						iterate(n);
 					}
-					
-					case '=': // Escape string for HTML
-					case '~': // Escape string for HTML attribute value
+					else
 					{
-						printPart(format, a, last, i);
-						last = i + 2;
-						
-						String s = (String) args[arg++];
-						p.print(esc(s, ch2 == '~'));
-						
-						break;
+						dispatch(n);
 					}
-					
-					case '%':
-						break;
-					
-					default:
-						a.add(args[arg++]);
-						break;
+					break;
 				}
 				
-				++i;
+				case '=': // Escape string for HTML
+					p.print(esc((String) arg, false));
+					break;
+				
+				case '~': // Escape string for HTML attribute value
+					p.print(esc((String) arg, true));
+					break;
+				
+				case 's':
+				case 'd':
+					if (t.specs[i] == null)
+					{
+						p.print(String.valueOf(arg));
+						break;
+					}
+					// FALL THROUGH
+					
+				default:
+					p.print(String.format(t.specs[i], arg));
+					break;
 			}
 		}
 		
-		printPart(format, a, last, format.length());
+		String tail = t.literals[t.conversions.length];
+		if (!tail.isEmpty())
+			p.print(tail);
+	}
+	
+	private static Template compile(String format)
+	{
+		Template t = templates.get(format);
+		if (t == null)
+		{
+			t = new Template(format);
+			templates.putIfAbsent(format, t);
+		}
+		return t;
 	}
 	
-	private void printPart(String format, ArrayList<Object> a, int last, int i)
+	// =========================================================================
+	
+	/**
+	 * A format string split into literal parts and conversions.
+	 */
+	private static final class Template
 	{
-		if (i - last > 0)
+		/**
+		 * One literal more than there are conversions. The literal at index i
+		 * precedes the conversion at index i.
+		 */
+		private final String[] literals;
+		
+		private final char[] conversions;
+		
+		private final int[] argIndices;
+		
+		/**
+		 * The format specifier of conversions that have to be handed to
+		 * String.format(), null for all others.
+		 */
+		private final String[] specs;
+		
+		public Template(String format)
 		{
-			String f = format.substring(last, i);
-			if (a.isEmpty())
+			ArrayList<String> literals = new ArrayList<String>();
+			ArrayList<Character> conversions = new ArrayList<Character>();
+			ArrayList<Integer> argIndices = new ArrayList<Integer>();
+			ArrayList<String> specs = new ArrayList<String>();
+			
+			StringBuilder literal = new StringBuilder();
+			
+			int arg = 0;
+			int len = format.length();
+			for (int i = 0; i < len; ++i)
+			{
+				char ch = format.charAt(i);
+				if (ch != '%' || i + 1 >= len)
+				{
+					literal.append(ch);
+					continue;
+				}
+				
+				int j = i + 1;
+				boolean relative = (format.charAt(j) == '<');
+				if (relative)
+					++j;
+				
+				while (j < len && !isConversion(format.charAt(j)))
+					++j;
+				
+				if (j >= len)
+				{
+					literal.append(format, i, len);
+					break;
+				}
+				
+				char conversion = format.charAt(j);
+				String spec = format.substring(i, j + 1);
+				i = j;
+				
+				if (conversion == '%')
+				{
+					literal.append('%');
+					continue;
+				}
+				else if (conversion == 'n')
+				{
+					literal.append(String.format("%n"));
+					continue;
+				}
+				
+				boolean direct;
+				switch (conversion)
+				{
+					case '!':
+					case '=':
+					case '~':
+						direct = true;
+						break;
+					case 's':
+					case 'd':
+						direct = (spec.length() == (relative ? 3 : 2));
+						break;
+					default:
+						direct = false;
+						break;
+				}
+				
+				literals.add(literal.toString());
+				literal.setLength(0);
+				
+				conversions.add(conversion);
+				argIndices.add(relative ? arg - 1 : arg++);
+				specs.add(direct ? null : spec.replace("<", ""));
+			}
+			
+			literals.add(literal.toString());
+			
+			this.literals = literals.toArray(new String[literals.size()]);
+			this.specs = specs.toArray(new String[specs.size()]);
+			this.conversions = new char[conversions.size()];
+			this.argIndices = new int[argIndices.size()];
+			for (int i = 0; i < this.conversions.length; ++i)
 			{
-				p.print(f);
+				this.conversions[i] = conversions.get(i);
+				this.argIndices[i] = argIndices.get(i);
 			}
-			else
+		}
+		
+		private static boolean isConversion(char ch)
+		{
+			switch (ch)
 			{
-				p.print(String.format(f, a.toArray()));
-				a.clear();
+				case '!':
+				case '=':
+				case '~':
+				case '%':
+					return true;
+				default:
+					return Character.isLetter(ch);
 			}
 		}
 	}
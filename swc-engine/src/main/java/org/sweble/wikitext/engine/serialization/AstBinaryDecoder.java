@@ -0,0 +1,737 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+import static org.sweble.wikitext.engine.serialization.AstBinaryFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.WtEntityMapImpl;
+import org.sweble.wikitext.parser.WtRtData;
+import org.sweble.wikitext.parser.nodes.WikitextNodeFactory;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+import de.fau.cs.osr.ptk.common.ast.AstLocation;
+import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
+
+/**
+ * Reads trees written by an {@link AstBinaryEncoder}.
+ *
+ * Nodes are instantiated with the given node factory. The factory has to
+ * return the same singletons for immutable nodes that the parser uses, like
+ * the node factory of the wiki configuration does. Only node classes that the
+ * factory knows are accepted. Classes are looked up without initializing
+ * them and values written with Java serialization may only contain types
+ * from the packages of the AST, the JDK's boxed values, strings, collections
+ * and exceptions.
+ *
+ * The decoder buffers its input and may read beyond the end of the last tree
+ * in the stream.
+ *
+ * An {@link AstBinaryView} uses a decoder to decode single subtrees of a
+ * buffer. In this case the decoder takes strings and node classes from the
+ * tables of the view.
+ */
+public class AstBinaryDecoder
+{
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final String[] SERIALIZABLE_PACKAGES = {
+			"org.sweble.wikitext.",
+			"de.fau.cs.osr.",
+			"java.util." };
+	
+	// =========================================================================
+	
+	private final InputStream in;
+	
+	private final ByteBuffer source;
+	
+	private final AstBinaryView view;
+	
+	private final WikitextNodeFactory nodeFactory;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	private int pos = 0;
+	
+	private int limit = 0;
+	
+	private final ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
+	
+	private final ArrayList<String> strings = new ArrayList<String>();
+	
+	private final Map<String, Class<?>> enumClasses = new HashMap<String, Class<?>>();
+	
+	private char[] chars = new char[256];
+	
+	private int lastLine = 0;
+	
+	// =========================================================================
+	
+	public AstBinaryDecoder(InputStream in, WikitextNodeFactory nodeFactory) throws IOException
+	{
+		this.in = in;
+		this.source = null;
+		this.view = null;
+		this.nodeFactory = nodeFactory;
+		
+		for (int i = 0; i < MAGIC.length; ++i)
+		{
+			if (readByte() != MAGIC[i])
+				throw new StreamCorruptedException("Not a binary AST stream");
+		}
+		
+		int version = readVarint();
+		if (version != VERSION)
+			throw new StreamCorruptedException("Unsupported binary AST format version: " + version);
+	}
+	
+	/**
+	 * Creates a decoder that reads from the buffer of a view.
+	 */
+	AstBinaryDecoder(
+			AstBinaryView view,
+			ByteBuffer source,
+			WikitextNodeFactory nodeFactory)
+	{
+		this.in = null;
+		this.source = source;
+		this.view = view;
+		this.nodeFactory = nodeFactory;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Reads the next tree from the stream.
+	 */
+	public WtNode read() throws IOException
+	{
+		return readNode();
+	}
+	
+	public void close() throws IOException
+	{
+		if (in != null)
+			in.close();
+	}
+	
+	/**
+	 * Reads the node that starts at the given offset of the buffer of the
+	 * view.
+	 *
+	 * @param line
+	 *            The line of the location written last before the node.
+	 */
+	WtNode readNodeAt(int offset, int line) throws IOException
+	{
+		seek(offset, line);
+		return readNode();
+	}
+	
+	/**
+	 * Reads the value that starts at the given offset of the buffer of the
+	 * view.
+	 */
+	Object readValueAt(int offset, int line) throws IOException
+	{
+		seek(offset, line);
+		return readValue();
+	}
+	
+	private void seek(int offset, int line)
+	{
+		source.position(offset);
+		pos = 0;
+		limit = 0;
+		lastLine = line;
+	}
+	
+	// =========================================================================
+	
+	private WtNode readNode() throws IOException
+	{
+		int ref = readVarint();
+		if (ref == NODE_NULL)
+			return null;
+		
+		ClassInfo info;
+		if (ref == NODE_NEW_CLASS)
+		{
+			info = readClass();
+		}
+		else if (view != null)
+		{
+			info = view.getClassInfo(ref - NODE_CLASS_BASE);
+		}
+		else
+		{
+			info = getClassInfo(ref - NODE_CLASS_BASE);
+		}
+		
+		WtNode node = nodeFactory.instantiateNode(info.clazz);
+		if (!info.verified)
+			verify(info, node);
+		
+		if (info.kind == KIND_IMMUTABLE)
+			return node;
+		
+		int flags = readByte();
+		
+		if ((flags & FLAG_LOCATION) != 0)
+		{
+			String file = readString();
+			int line = lastLine + unzigzag(readVarint());
+			int column = readVarint();
+			node.setNativeLocation(new AstLocation(file, line, column));
+			lastLine = line;
+		}
+		
+		if (info.kind == KIND_LIST)
+		{
+			int size = readLength();
+			for (int i = 0; i < size; ++i)
+				node.add(readNode());
+		}
+		else
+		{
+			for (int i = 0; i < info.arity; ++i)
+				node.set(i, readNode());
+		}
+		
+		AstNodePropertyIterator i = node.propertyIterator();
+		while (i.next())
+			i.setValue(readValue());
+		
+		if ((flags & FLAG_ATTRIBUTES) != 0)
+		{
+			int size = readLength();
+			for (int j = 0; j < size; ++j)
+			{
+				String name = readString();
+				node.setAttribute(name, readValue());
+			}
+		}
+		
+		return node;
+	}
+	
+	private ClassInfo readClass() throws IOException
+	{
+		String name = readString();
+		int nodeType = readVarint();
+		int kind = readByte();
+		
+		int arity = 0;
+		int propertyCount = 0;
+		if (kind != KIND_IMMUTABLE)
+		{
+			arity = readVarint();
+			propertyCount = readVarint();
+		}
+		
+		// The view already knows all classes of its buffer
+		if (view != null)
+			return view.getClassInfo(name);
+		
+		ClassInfo info = new ClassInfo(
+				loadNodeClass(name, nodeFactory),
+				nodeType,
+				kind,
+				arity,
+				propertyCount);
+		classes.add(info);
+		return info;
+	}
+	
+	/**
+	 * Looks up a node class without initializing it. Only classes that the
+	 * node factory knows are accepted.
+	 */
+	static Class<?> loadNodeClass(String name, WikitextNodeFactory nodeFactory) throws IOException
+	{
+		Class<?> clazz = loadClass(name);
+		
+		if (!WtNode.class.isAssignableFrom(clazz) || !nodeFactory.isKnownNodeClass(clazz))
+			throw new StreamCorruptedException("Not a node class: " + name);
+		
+		return clazz;
+	}
+	
+	private static Class<?> loadClass(String name) throws IOException
+	{
+		try
+		{
+			return Class.forName(name, false, AstBinaryDecoder.class.getClassLoader());
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new StreamCorruptedException("Unknown class: " + name);
+		}
+	}
+	
+	/**
+	 * Values written with Java serialization may only contain arrays,
+	 * primitives, classes from java.lang and java.util and classes from the
+	 * packages of the AST. Exceptions are checked separately.
+	 */
+	static boolean isSerializableClassAllowed(String name)
+	{
+		int dims = 0;
+		while (dims < name.length() && name.charAt(dims) == '[')
+			++dims;
+		
+		if (dims > 0)
+		{
+			// Arrays of primitives or "[L<name>;"
+			if (name.charAt(dims) != 'L')
+				return name.length() == dims + 1;
+			name = name.substring(dims + 1, name.length() - 1);
+		}
+		
+		if (name.startsWith("java.lang."))
+			return name.indexOf('.', "java.lang.".length()) == -1;
+		
+		for (String prefix : SERIALIZABLE_PACKAGES)
+		{
+			if (name.startsWith(prefix))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	private ClassInfo getClassInfo(int index) throws IOException
+	{
+		if (index < 0 || index >= classes.size())
+			throw new StreamCorruptedException("Invalid node class reference");
+		return classes.get(index);
+	}
+	
+	/**
+	 * Makes sure that the node factory creates nodes of the layout that was
+	 * written.
+	 */
+	private void verify(ClassInfo info, WtNode node) throws IOException
+	{
+		if (node.getClass() != info.clazz || node.getNodeType() != info.nodeType)
+			throw new StreamCorruptedException("Node class mismatch: " + info.clazz.getName());
+		
+		if (info.kind != KIND_IMMUTABLE)
+		{
+			if (node.getPropertyCount() != info.propertyCount
+					|| (info.kind == KIND_FIXED && node.size() != info.arity))
+				throw new StreamCorruptedException("Node layout mismatch: " + info.clazz.getName());
+		}
+		
+		info.verified = true;
+	}
+	
+	// =========================================================================
+	
+	private Object readValue() throws IOException
+	{
+		int tag = readByte();
+		switch (tag)
+		{
+			case VALUE_NULL:
+				return null;
+			
+			case VALUE_STRING:
+				return readString();
+			
+			case VALUE_INT:
+				return unzigzag(readVarint());
+			
+			case VALUE_LONG:
+				return unzigzag(readVarLong());
+			
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			
+			case VALUE_ENUM:
+				return readEnum();
+			
+			case VALUE_NODE:
+				return readNode();
+			
+			case VALUE_RTD:
+				return readRtd();
+			
+			case VALUE_RTD_SUPPRESS:
+				return WtRtData.SUPPRESS;
+			
+			case VALUE_LIST:
+			{
+				int size = readLength();
+				ArrayList<Object> list = new ArrayList<Object>(Math.min(size, limit - pos));
+				for (int i = 0; i < size; ++i)
+					list.add(readValue());
+				return list;
+			}
+			
+			case VALUE_ENTITY_MAP:
+				return readEntityMap();
+			
+			case VALUE_EMPTY_ENTITY_MAP:
+				return WtEntityMap.EMPTY_ENTITY_MAP;
+			
+			case VALUE_SERIALIZED:
+				return readSerialized();
+			
+			default:
+				throw new StreamCorruptedException("Invalid value tag: " + tag);
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object readEnum() throws IOException
+	{
+		String className = readString();
+		String name = readString();
+		
+		Class<?> clazz = enumClasses.get(className);
+		if (clazz == null)
+		{
+			clazz = loadClass(className);
+			if (!clazz.isEnum())
+				throw new StreamCorruptedException("Not an enum class: " + className);
+			
+			enumClasses.put(className, clazz);
+		}
+		
+		return Enum.valueOf((Class) clazz, name);
+	}
+	
+	private WtRtData readRtd() throws IOException
+	{
+		// Read the fields first, the size alone does not tell whether the
+		// input really holds that many fields
+		int size = readLength();
+		ArrayList<Object[]> fields = new ArrayList<Object[]>(Math.min(size, limit - pos));
+		for (int i = 0; i < size; ++i)
+		{
+			int length = readLength();
+			if (length == 0)
+			{
+				fields.add(null);
+				continue;
+			}
+			
+			ArrayList<Object> glue = new ArrayList<Object>(Math.min(length, limit - pos));
+			for (int j = 1; j < length; ++j)
+				glue.add(readValue());
+			
+			fields.add(glue.toArray());
+		}
+		
+		WtRtData rtd = new WtRtData(size);
+		for (int i = 0; i < size; ++i)
+		{
+			if (fields.get(i) != null)
+				rtd.setField(i, fields.get(i));
+		}
+		return rtd;
+	}
+	
+	private WtEntityMap readEntityMap() throws IOException
+	{
+		WtEntityMapImpl entityMap = new WtEntityMapImpl();
+		
+		int size = readLength();
+		for (int i = 0; i < size; ++i)
+		{
+			int id = readVarint();
+			if (entityMap.registerEntity(readNode()) != id)
+				throw new StreamCorruptedException("Cannot restore entity id " + id);
+		}
+		
+		return entityMap;
+	}
+	
+	private Object readSerialized() throws IOException
+	{
+		byte[] serialized = readBytes(readLength());
+		
+		ObjectInputStream ois = new FilteredObjectInputStream(
+				new ByteArrayInputStream(serialized));
+		try
+		{
+			return ois.readObject();
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new StreamCorruptedException("Cannot deserialize value: " + e.getMessage());
+		}
+		finally
+		{
+			ois.close();
+		}
+	}
+	
+	// =========================================================================
+	
+	private String readString() throws IOException
+	{
+		int ref = readVarint();
+		switch (ref)
+		{
+			case STRING_NULL:
+				return null;
+			
+			case STRING_INLINE:
+				return readChars();
+			
+			case STRING_NEW:
+			{
+				String s = readChars();
+				if (view == null)
+					strings.add(s);
+				return s;
+			}
+			
+			default:
+			{
+				int index = ref - STRING_TABLE_BASE;
+				if (view != null)
+					return view.getTableString(index);
+				if (index >= strings.size())
+					throw new StreamCorruptedException("Invalid string reference");
+				return strings.get(index);
+			}
+		}
+	}
+	
+	private String readChars() throws IOException
+	{
+		int length = readLength();
+		
+		// Grow while reading, the length alone does not tell whether the input
+		// really holds that many characters
+		for (int i = 0; i < length; ++i)
+		{
+			if (i == chars.length)
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			
+			int b = readByte();
+			if (b < 0x80)
+			{
+				chars[i] = (char) b;
+			}
+			else if (b < 0xE0)
+			{
+				chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+			}
+			else
+			{
+				int b1 = readByte();
+				chars[i] = (char) (((b & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (readByte() & 0x3F));
+			}
+		}
+		
+		return new String(chars, 0, length);
+	}
+	
+	private int readVarint() throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+	
+	/**
+	 * Reads the length of a string, list or byte array. Each element takes at
+	 * least one byte, so a length that exceeds the remaining input of a
+	 * buffer is rejected before anything is allocated.
+	 */
+	private int readLength() throws IOException
+	{
+		int length = readVarint();
+		if (length < 0 || (source != null && length > limit - pos + source.remaining()))
+			throw new StreamCorruptedException("Invalid length: " + length);
+		return length;
+	}
+	
+	private long readVarLong() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+	
+	private int readByte() throws IOException
+	{
+		if (pos == limit)
+			fill();
+		return buffer[pos++] & 0xFF;
+	}
+	
+	/**
+	 * Reads the given number of bytes. The array grows while reading, so that
+	 * a corrupt length makes the stream run out of input instead of
+	 * allocating the whole length up front.
+	 */
+	private byte[] readBytes(int length) throws IOException
+	{
+		byte[] b = new byte[Math.min(length, BUFFER_SIZE)];
+		int off = 0;
+		while (off < length)
+		{
+			if (off == b.length)
+				b = Arrays.copyOf(b, (int) Math.min(length, 2L * b.length));
+			if (pos == limit)
+				fill();
+			int n = Math.min(limit - pos, b.length - off);
+			System.arraycopy(buffer, pos, b, off, n);
+			pos += n;
+			off += n;
+		}
+		return b;
+	}
+	
+	private void fill() throws IOException
+	{
+		int n;
+		if (source != null)
+		{
+			n = Math.min(source.remaining(), BUFFER_SIZE);
+			if (n == 0)
+				throw new EOFException();
+			source.get(buffer, 0, n);
+		}
+		else
+		{
+			do
+			{
+				n = in.read(buffer, 0, BUFFER_SIZE);
+			} while (n == 0);
+		}
+		
+		if (n < 0)
+			throw new EOFException();
+		
+		pos = 0;
+		limit = n;
+	}
+	
+	private static int unzigzag(int value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Refuses to deserialize classes that cannot be part of a value of the
+	 * AST before they are loaded.
+	 */
+	private static final class FilteredObjectInputStream
+			extends
+				ObjectInputStream
+	{
+		public FilteredObjectInputStream(InputStream in) throws IOException
+		{
+			super(in);
+		}
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			if (isSerializableClassAllowed(desc.getName()))
+				return super.resolveClass(desc);
+			
+			// Log nodes carry exceptions of any type, the class is not
+			// initialized by the lookup
+			Class<?> clazz = loadClass(desc.getName());
+			if (!Throwable.class.isAssignableFrom(clazz))
+				throw new InvalidClassException(desc.getName(), "Class not allowed in binary AST");
+			return clazz;
+		}
+		
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+		{
+			throw new InvalidClassException("Proxy classes not allowed in binary AST");
+		}
+	}
+	
+	// =========================================================================
+	
+	static final class ClassInfo
+	{
+		public final Class<?> clazz;
+		
+		public final int nodeType;
+		
+		public final int kind;
+		
+		public final int arity;
+		
+		public final int propertyCount;
+		
+		public boolean verified = false;
+		
+		public ClassInfo(
+				Class<?> clazz,
+				int nodeType,
+				int kind,
+				int arity,
+				int propertyCount)
+		{
+			this.clazz = clazz;
+			this.nodeType = nodeType;
+			this.kind = kind;
+			this.arity = arity;
+			this.propertyCount = propertyCount;
+		}
+	}
+}
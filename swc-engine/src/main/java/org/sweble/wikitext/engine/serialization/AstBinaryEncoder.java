@@ -0,0 +1,469 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+import static org.sweble.wikitext.engine.serialization.AstBinaryFormat.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.WtRtData;
+import org.sweble.wikitext.parser.nodes.WtEmptyImmutableNode;
+import org.sweble.wikitext.parser.nodes.WtInnerImmutableNode1;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+
+import de.fau.cs.osr.ptk.common.ast.AstLocation;
+import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
+
+/**
+ * Writes WtNode and EngNode trees in a compact binary format.
+ *
+ * Node classes and short strings like element and attribute names or the
+ * glue of the round-trip data are written only once per stream and
+ * afterwards referenced by their index. Line numbers are written relative to
+ * the line of the previously written location. The string and class tables
+ * are shared by all trees written to the same encoder. Such a stream has to
+ * be read with a single {@link AstBinaryDecoder}.
+ *
+ * The encoder buffers its output. Every call to {@link #write(WtNode)}
+ * flushes the buffer.
+ */
+public class AstBinaryEncoder
+{
+	private static final int BUFFER_SIZE = 8192;
+	
+	// =========================================================================
+	
+	private final OutputStream out;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	private int pos = 0;
+	
+	private final Map<Class<?>, ClassInfo> classes =
+			new HashMap<Class<?>, ClassInfo>();
+	
+	private final Map<String, Integer> strings =
+			new HashMap<String, Integer>();
+	
+	private int lastLine = 0;
+	
+	// =========================================================================
+	
+	public AstBinaryEncoder(OutputStream out) throws IOException
+	{
+		this.out = out;
+		
+		writeBytes(MAGIC, 0, MAGIC.length);
+		writeVarint(VERSION);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Writes a tree to the stream.
+	 */
+	public void write(WtNode node) throws IOException
+	{
+		writeNode(node);
+		flush();
+	}
+	
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		out.flush();
+	}
+	
+	public void close() throws IOException
+	{
+		flushBuffer();
+		out.close();
+	}
+	
+	// =========================================================================
+	
+	private void writeNode(WtNode node) throws IOException
+	{
+		if (node == null)
+		{
+			writeVarint(NODE_NULL);
+			return;
+		}
+		
+		ClassInfo info = writeClass(node);
+		if (info.kind == KIND_IMMUTABLE)
+			return;
+		
+		AstLocation location = node.getNativeLocation();
+		boolean hasAttributes = node.hasAttributes();
+		
+		int flags = 0;
+		if (location != null)
+			flags |= FLAG_LOCATION;
+		if (hasAttributes)
+			flags |= FLAG_ATTRIBUTES;
+		writeByte(flags);
+		
+		if (location != null)
+		{
+			writeString(location.getFile());
+			writeVarint(zigzag(location.getLine() - lastLine));
+			writeVarint(location.getColumn());
+			lastLine = location.getLine();
+		}
+		
+		if (info.kind == KIND_LIST)
+			writeVarint(node.size());
+		for (WtNode child : node)
+			writeNode(child);
+		
+		AstNodePropertyIterator i = node.propertyIterator();
+		while (i.next())
+			writeValue(i.getValue());
+		
+		if (hasAttributes)
+		{
+			Map<String, Object> attributes = node.getAttributes();
+			writeVarint(attributes.size());
+			for (Entry<String, Object> e : attributes.entrySet())
+			{
+				writeString(e.getKey());
+				writeValue(e.getValue());
+			}
+		}
+	}
+	
+	private ClassInfo writeClass(WtNode node) throws IOException
+	{
+		Class<?> clazz = node.getClass();
+		
+		ClassInfo info = classes.get(clazz);
+		if (info != null)
+		{
+			writeVarint(NODE_CLASS_BASE + info.index);
+			return info;
+		}
+		
+		int kind;
+		if (node instanceof WtEmptyImmutableNode || node instanceof WtInnerImmutableNode1)
+		{
+			kind = KIND_IMMUTABLE;
+		}
+		else if (node instanceof WtNodeList)
+		{
+			kind = KIND_LIST;
+		}
+		else
+		{
+			kind = KIND_FIXED;
+		}
+		
+		info = new ClassInfo(classes.size(), kind);
+		classes.put(clazz, info);
+		
+		writeVarint(NODE_NEW_CLASS);
+		writeString(clazz.getName());
+		writeVarint(node.getNodeType());
+		writeByte(kind);
+		if (kind != KIND_IMMUTABLE)
+		{
+			writeVarint((kind == KIND_FIXED) ? node.size() : 0);
+			writeVarint(node.getPropertyCount());
+		}
+		
+		return info;
+	}
+	
+	// =========================================================================
+	
+	private void writeValue(Object value) throws IOException
+	{
+		if (value == null)
+		{
+			writeByte(VALUE_NULL);
+		}
+		else if (value instanceof String)
+		{
+			writeByte(VALUE_STRING);
+			writeString((String) value);
+		}
+		else if (value instanceof Integer)
+		{
+			writeByte(VALUE_INT);
+			writeVarint(zigzag((Integer) value));
+		}
+		else if (value instanceof Long)
+		{
+			writeByte(VALUE_LONG);
+			writeVarLong(zigzag((Long) value));
+		}
+		else if (value instanceof Boolean)
+		{
+			writeByte(((Boolean) value) ? VALUE_TRUE : VALUE_FALSE);
+		}
+		else if (value instanceof Enum)
+		{
+			Enum<?> e = (Enum<?>) value;
+			writeByte(VALUE_ENUM);
+			writeString(e.getDeclaringClass().getName());
+			writeString(e.name());
+		}
+		else if (value instanceof WtNode)
+		{
+			writeByte(VALUE_NODE);
+			writeNode((WtNode) value);
+		}
+		else if (value instanceof WtRtData)
+		{
+			writeRtd((WtRtData) value);
+		}
+		else if (value instanceof WtEntityMap)
+		{
+			writeEntityMap((WtEntityMap) value);
+		}
+		else if (value instanceof List)
+		{
+			List<?> list = (List<?>) value;
+			writeByte(VALUE_LIST);
+			writeVarint(list.size());
+			for (Object item : list)
+				writeValue(item);
+		}
+		else if (value instanceof Serializable)
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(value);
+			oos.close();
+			
+			byte[] serialized = baos.toByteArray();
+			writeByte(VALUE_SERIALIZED);
+			writeVarint(serialized.length);
+			writeBytes(serialized, 0, serialized.length);
+		}
+		else
+		{
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+	
+	private void writeRtd(WtRtData rtd) throws IOException
+	{
+		if (rtd.isSuppress())
+		{
+			writeByte(VALUE_RTD_SUPPRESS);
+			return;
+		}
+		
+		Object[][] fields = rtd.getFields();
+		
+		writeByte(VALUE_RTD);
+		writeVarint(fields.length);
+		for (Object[] glue : fields)
+		{
+			if (glue == null)
+			{
+				writeVarint(0);
+				continue;
+			}
+			
+			writeVarint(glue.length + 1);
+			for (Object item : glue)
+				writeValue(item);
+		}
+	}
+	
+	private void writeEntityMap(WtEntityMap entityMap) throws IOException
+	{
+		if (entityMap == WtEntityMap.EMPTY_ENTITY_MAP)
+		{
+			writeByte(VALUE_EMPTY_ENTITY_MAP);
+			return;
+		}
+		
+		// The decoder registers the entities in the order of their ids
+		Map<Integer, WtNode> entities =
+				new TreeMap<Integer, WtNode>(entityMap.getMap());
+		
+		writeByte(VALUE_ENTITY_MAP);
+		writeVarint(entities.size());
+		for (Entry<Integer, WtNode> e : entities.entrySet())
+		{
+			writeVarint(e.getKey());
+			writeNode(e.getValue());
+		}
+	}
+	
+	// =========================================================================
+	
+	private void writeString(String s) throws IOException
+	{
+		if (s == null)
+		{
+			writeVarint(STRING_NULL);
+			return;
+		}
+		
+		Integer index = strings.get(s);
+		if (index != null)
+		{
+			writeVarint(STRING_TABLE_BASE + index);
+			return;
+		}
+		
+		if (s.length() <= MAX_TABLE_STRING_LENGTH)
+		{
+			strings.put(s, strings.size());
+			writeVarint(STRING_NEW);
+		}
+		else
+		{
+			writeVarint(STRING_INLINE);
+		}
+		
+		writeChars(s);
+	}
+	
+	/**
+	 * Writes the UTF-16 code units of a string in the variable length
+	 * encoding of UTF-8. Unlike a real UTF-8 encoder this keeps unpaired
+	 * surrogates intact.
+	 */
+	private void writeChars(String s) throws IOException
+	{
+		int length = s.length();
+		writeVarint(length);
+		
+		for (int i = 0; i < length; ++i)
+		{
+			if (pos + 3 > BUFFER_SIZE)
+				flushBuffer();
+			
+			char ch = s.charAt(i);
+			if (ch < 0x80)
+			{
+				buffer[pos++] = (byte) ch;
+			}
+			else if (ch < 0x800)
+			{
+				buffer[pos++] = (byte) (0xC0 | (ch >> 6));
+				buffer[pos++] = (byte) (0x80 | (ch & 0x3F));
+			}
+			else
+			{
+				buffer[pos++] = (byte) (0xE0 | (ch >> 12));
+				buffer[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				buffer[pos++] = (byte) (0x80 | (ch & 0x3F));
+			}
+		}
+	}
+	
+	private void writeVarint(int value) throws IOException
+	{
+		if (pos + 5 > BUFFER_SIZE)
+			flushBuffer();
+		
+		while ((value & ~0x7F) != 0)
+		{
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+	}
+	
+	private void writeVarLong(long value) throws IOException
+	{
+		if (pos + 10 > BUFFER_SIZE)
+			flushBuffer();
+		
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+	}
+	
+	private void writeByte(int value) throws IOException
+	{
+		if (pos == BUFFER_SIZE)
+			flushBuffer();
+		buffer[pos++] = (byte) value;
+	}
+	
+	private void writeBytes(byte[] b, int off, int len) throws IOException
+	{
+		if (pos + len > BUFFER_SIZE)
+		{
+			flushBuffer();
+			if (len > BUFFER_SIZE)
+			{
+				out.write(b, off, len);
+				return;
+			}
+		}
+		System.arraycopy(b, off, buffer, pos, len);
+		pos += len;
+	}
+	
+	private void flushBuffer() throws IOException
+	{
+		if (pos > 0)
+		{
+			out.write(buffer, 0, pos);
+			pos = 0;
+		}
+	}
+	
+	private static int zigzag(int value)
+	{
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	private static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	// =========================================================================
+	
+	private static final class ClassInfo
+	{
+		public final int index;
+		
+		public final int kind;
+		
+		public ClassInfo(int index, int kind)
+		{
+			this.index = index;
+			this.kind = kind;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+/**
+ * Constants of the binary AST format written by {@link AstBinaryEncoder} and
+ * read by {@link AstBinaryDecoder}.
+ *
+ * A stream starts with {@link #MAGIC} and the format {@link #VERSION}. It is
+ * followed by any number of trees. Integers are written as varints, signed
+ * integers are zigzag encoded first.
+ *
+ * A node starts with a class reference: {@link #NODE_NULL},
+ * {@link #NODE_NEW_CLASS} followed by the definition of the node class or
+ * the index of an already defined class plus {@link #NODE_CLASS_BASE}. A
+ * class definition consists of the class name, the node type, the
+ * {@link #KIND_FIXED kind} of the node, the number of children of fixed
+ * nodes and the number of properties. Immutable nodes end here. All other
+ * nodes continue with a flags byte, the location, the children, the property
+ * values and the attributes.
+ *
+ * Strings are written as a reference: {@link #STRING_NULL},
+ * {@link #STRING_INLINE} or {@link #STRING_NEW} followed by the characters
+ * of the string or the index of a string in the string table plus
+ * {@link #STRING_TABLE_BASE}. Only strings written with
+ * {@link #STRING_NEW} are added to the string table.
+ */
+final class AstBinaryFormat
+{
+	public static final byte[] MAGIC = { 'W', 't', 'B', 'n' };
+	
+	public static final int VERSION = 1;
+	
+	// =========================================================================
+	
+	public static final int NODE_NULL = 0;
+	
+	public static final int NODE_NEW_CLASS = 1;
+	
+	public static final int NODE_CLASS_BASE = 2;
+	
+	public static final int KIND_FIXED = 0;
+	
+	public static final int KIND_LIST = 1;
+	
+	public static final int KIND_IMMUTABLE = 2;
+	
+	public static final int FLAG_LOCATION = 0x01;
+	
+	public static final int FLAG_ATTRIBUTES = 0x02;
+	
+	// =========================================================================
+	
+	public static final int STRING_NULL = 0;
+	
+	public static final int STRING_INLINE = 1;
+	
+	public static final int STRING_NEW = 2;
+	
+	public static final int STRING_TABLE_BASE = 3;
+	
+	/**
+	 * Longer strings are most likely text that does not repeat and are not
+	 * added to the string table.
+	 */
+	public static final int MAX_TABLE_STRING_LENGTH = 64;
+	
+	// =========================================================================
+	
+	public static final int VALUE_NULL = 0;
+	
+	public static final int VALUE_STRING = 1;
+	
+	public static final int VALUE_INT = 2;
+	
+	public static final int VALUE_LONG = 3;
+	
+	public static final int VALUE_TRUE = 4;
+	
+	public static final int VALUE_FALSE = 5;
+	
+	public static final int VALUE_ENUM = 6;
+	
+	public static final int VALUE_NODE = 7;
+	
+	public static final int VALUE_RTD = 8;
+	
+	public static final int VALUE_RTD_SUPPRESS = 9;
+	
+	public static final int VALUE_LIST = 10;
+	
+	public static final int VALUE_ENTITY_MAP = 11;
+	
+	public static final int VALUE_EMPTY_ENTITY_MAP = 12;
+	
+	/**
+	 * Values of all other types are written with Java serialization.
+	 */
+	public static final int VALUE_SERIALIZED = 13;
+	
+	// =========================================================================
+	
+	private AstBinaryFormat()
+	{
+	}
+}
@@ -0,0 +1,848 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+import static org.sweble.wikitext.engine.serialization.AstBinaryFormat.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.serialization.AstBinaryDecoder.ClassInfo;
+import org.sweble.wikitext.parser.nodes.WikitextNodeFactory;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+import de.fau.cs.osr.ptk.common.ast.AstLocation;
+import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
+
+/**
+ * A read-only view of the trees in a buffer written by an
+ * {@link AstBinaryEncoder}.
+ *
+ * Opening a view scans the buffer once and records the structure of the
+ * trees in a few int arrays. No nodes and no strings are created. Every node
+ * of the buffer is identified by its index in these arrays. Nodes are
+ * numbered in the order they were written, so the descendants of a node
+ * directly follow the node.
+ *
+ * Strings are exposed as slices of the buffer. Only the node types and the
+ * strings that are actually inspected are decoded. To run an
+ * {@link de.fau.cs.osr.ptk.common.AstVisitor}, the text utilities or XPath
+ * queries on a part of a tree, {@link #materialize(int)} the subtree. This
+ * decodes the subtree into regular nodes.
+ *
+ * The buffer is usually a file mapped with {@link #map(File)}. A view is not
+ * thread-safe.
+ */
+public class AstBinaryView
+{
+	private final ByteBuffer buffer;
+	
+	private final WikitextNodeFactory nodeFactory;
+	
+	private final AstBinaryDecoder decoder;
+	
+	// =========================================================================
+	
+	private final ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
+	
+	private final Map<String, ClassInfo> classesByName = new HashMap<String, ClassInfo>();
+	
+	private final Map<Class<?>, String[]> propertyNames = new HashMap<Class<?>, String[]>();
+	
+	private int[] stringOffsets = new int[256];
+	
+	private String[] stringCache = new String[256];
+	
+	private int stringCount = 0;
+	
+	// =========================================================================
+	
+	private int nodeCount = 0;
+	
+	/**
+	 * The offset of the class reference of a node.
+	 */
+	private int[] offsets = new int[1024];
+	
+	/**
+	 * The offset of the flags of a node. The location follows the flags.
+	 */
+	private int[] dataOffsets = new int[1024];
+	
+	/**
+	 * The offset of the first property value of a node.
+	 */
+	private int[] propertyOffsets = new int[1024];
+	
+	/**
+	 * The line the line of the location of a node is relative to.
+	 */
+	private int[] lines = new int[1024];
+	
+	/**
+	 * The line the lines of the locations in the property values of a node
+	 * are relative to.
+	 */
+	private int[] propertyLines = new int[1024];
+	
+	private int[] classIndices = new int[1024];
+	
+	private int[] parents = new int[1024];
+	
+	/**
+	 * The number of nodes in the subtree of a node including the node itself
+	 * and the nodes in property values.
+	 */
+	private int[] sizes = new int[1024];
+	
+	private int[] childCounts = new int[1024];
+	
+	private int[] roots = new int[4];
+	
+	private int rootCount = 0;
+	
+	// =========================================================================
+	
+	private int p;
+	
+	private int lastLine = 0;
+	
+	private boolean scanned = false;
+	
+	// =========================================================================
+	
+	public AstBinaryView(ByteBuffer buffer, WikitextNodeFactory nodeFactory) throws IOException
+	{
+		this.buffer = buffer.duplicate();
+		this.nodeFactory = nodeFactory;
+		this.decoder = new AstBinaryDecoder(this, buffer.duplicate(), nodeFactory);
+		
+		scan();
+	}
+	
+	/**
+	 * Maps a file into memory.
+	 */
+	public static ByteBuffer map(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			// The mapping remains valid after the channel was closed
+			in.close();
+		}
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * @return The number of trees in the buffer.
+	 */
+	public int getRootCount()
+	{
+		return rootCount;
+	}
+	
+	public int getRoot(int index)
+	{
+		if (index < 0 || index >= rootCount)
+			throw new IndexOutOfBoundsException();
+		return roots[index];
+	}
+	
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+	
+	public int getNodeType(int node)
+	{
+		return classes.get(classIndices[checkNode(node)]).nodeType;
+	}
+	
+	public Class<?> getNodeClass(int node)
+	{
+		return classes.get(classIndices[checkNode(node)]).clazz;
+	}
+	
+	/**
+	 * @return The node whose children or property values contain the given
+	 *         node or -1 for the roots.
+	 */
+	public int getParent(int node)
+	{
+		return parents[checkNode(node)];
+	}
+	
+	public int getChildCount(int node)
+	{
+		return childCounts[checkNode(node)];
+	}
+	
+	public int getChild(int node, int index)
+	{
+		if (index < 0 || index >= getChildCount(node))
+			throw new IndexOutOfBoundsException();
+		
+		// The children are the first subtrees following the node
+		int child = node + 1;
+		for (int i = 0; i < index; ++i)
+			child += sizes[child];
+		return child;
+	}
+	
+	/**
+	 * @return The nodes of the given type in the subtree of the given node,
+	 *         including nodes in property values, in document order.
+	 */
+	public int[] findNodes(int node, int nodeType)
+	{
+		int[] result = new int[16];
+		int count = 0;
+		
+		int end = node + sizes[checkNode(node)];
+		for (int i = node; i < end; ++i)
+		{
+			if (classes.get(classIndices[i]).nodeType == nodeType)
+			{
+				if (count == result.length)
+					result = Arrays.copyOf(result, count * 2);
+				result[count++] = i;
+			}
+		}
+		
+		return Arrays.copyOf(result, count);
+	}
+	
+	public AstLocation getLocation(int node) throws IOException
+	{
+		checkNode(node);
+		if (getClassInfo(classIndices[node]).kind == KIND_IMMUTABLE)
+			return null;
+		
+		p = dataOffsets[node];
+		if ((getByte() & FLAG_LOCATION) == 0)
+			return null;
+		
+		int string = scanString();
+		String file = (string < 0) ? null : sliceToString(string);
+		int line = lines[node] + unzigzag(getVarint());
+		int column = getVarint();
+		return new AstLocation(file, line, column);
+	}
+	
+	/**
+	 * Returns the value of a string property of a node without decoding the
+	 * other properties.
+	 *
+	 * @return A slice of the buffer or <code>null</code> if the property is
+	 *         not set or not a string.
+	 */
+	public CharSequence getString(int node, String property) throws IOException
+	{
+		if (!seekProperty(node, property))
+			return null;
+		
+		if (getByte() != VALUE_STRING)
+			return null;
+		
+		int string = scanString();
+		return (string < 0) ? null : new Slice(string);
+	}
+	
+	/**
+	 * Decodes the value of a property of a node. Nodes in the value are
+	 * materialized.
+	 */
+	public Object getProperty(int node, String property) throws IOException
+	{
+		if (!seekProperty(node, property))
+			return null;
+		
+		return decoder.readValueAt(p, propertyLines[node]);
+	}
+	
+	/**
+	 * Decodes the subtree of the given node into regular nodes.
+	 */
+	public WtNode materialize(int node) throws IOException
+	{
+		checkNode(node);
+		return decoder.readNodeAt(offsets[node], lines[node]);
+	}
+	
+	// =========================================================================
+	
+	ClassInfo getClassInfo(int index) throws StreamCorruptedException
+	{
+		if (index < 0 || index >= classes.size())
+			throw new StreamCorruptedException("Invalid node class reference");
+		return classes.get(index);
+	}
+	
+	ClassInfo getClassInfo(String name) throws StreamCorruptedException
+	{
+		ClassInfo info = classesByName.get(name);
+		if (info == null)
+			throw new StreamCorruptedException("Unknown node class: " + name);
+		return info;
+	}
+	
+	String getTableString(int index) throws StreamCorruptedException
+	{
+		if (index < 0 || index >= stringCount)
+			throw new StreamCorruptedException("Invalid string reference");
+		
+		String s = stringCache[index];
+		if (s == null)
+			stringCache[index] = s = sliceToString(stringOffsets[index]);
+		return s;
+	}
+	
+	// =========================================================================
+	
+	private int checkNode(int node)
+	{
+		if (node < 0 || node >= nodeCount)
+			throw new IndexOutOfBoundsException();
+		return node;
+	}
+	
+	private boolean seekProperty(int node, String property) throws IOException
+	{
+		checkNode(node);
+		
+		ClassInfo info = getClassInfo(classIndices[node]);
+		if (info.kind == KIND_IMMUTABLE)
+			return false;
+		
+		String[] names = getPropertyNames(info.clazz);
+		int index = Arrays.asList(names).indexOf(property);
+		if (index < 0)
+			return false;
+		
+		p = propertyOffsets[node];
+		for (int i = 0; i < index; ++i)
+			skipValue();
+		
+		return true;
+	}
+	
+	private String[] getPropertyNames(Class<?> clazz)
+	{
+		String[] names = propertyNames.get(clazz);
+		if (names == null)
+		{
+			WtNode prototype = nodeFactory.instantiateNode(clazz);
+			
+			ArrayList<String> list = new ArrayList<String>();
+			AstNodePropertyIterator i = prototype.propertyIterator();
+			while (i.next())
+				list.add(i.getName());
+			
+			names = list.toArray(new String[list.size()]);
+			propertyNames.put(clazz, names);
+		}
+		return names;
+	}
+	
+	// =========================================================================
+	
+	private void scan() throws IOException
+	{
+		p = buffer.position();
+		for (int i = 0; i < MAGIC.length; ++i)
+		{
+			if (getByte() != MAGIC[i])
+				throw new StreamCorruptedException("Not a binary AST stream");
+		}
+		
+		int version = getVarint();
+		if (version != VERSION)
+			throw new StreamCorruptedException("Unsupported binary AST format version: " + version);
+		
+		while (p < buffer.limit())
+		{
+			int root = scanNode(-1, true);
+			if (root < 0)
+				continue;
+			
+			if (rootCount == roots.length)
+				roots = Arrays.copyOf(roots, rootCount * 2);
+			roots[rootCount++] = root;
+		}
+		
+		scanned = true;
+	}
+	
+	/**
+	 * Scans a node and its subtree.
+	 *
+	 * @param index
+	 *            Whether the node is added to the index. Otherwise it is only
+	 *            skipped.
+	 * @return The index of the node or -1 if the node is <code>null</code> or
+	 *         not indexed.
+	 */
+	private int scanNode(int parent, boolean index) throws IOException
+	{
+		int offset = p;
+		int line = lastLine;
+		
+		int ref = getVarint();
+		if (ref == NODE_NULL)
+			return -1;
+		
+		int classIndex = (ref == NODE_NEW_CLASS) ?
+				scanClass() :
+				ref - NODE_CLASS_BASE;
+		
+		ClassInfo info = getClassInfo(classIndex);
+		
+		int node = -1;
+		if (index)
+		{
+			node = addNode();
+			offsets[node] = offset;
+			dataOffsets[node] = p;
+			lines[node] = line;
+			classIndices[node] = classIndex;
+			parents[node] = parent;
+		}
+		
+		if (info.kind != KIND_IMMUTABLE)
+		{
+			int flags = getByte();
+			
+			if ((flags & FLAG_LOCATION) != 0)
+			{
+				scanString();
+				lastLine += unzigzag(getVarint());
+				getVarint();
+			}
+			
+			int size = (info.kind == KIND_LIST) ? getLength() : info.arity;
+			
+			int childCount = 0;
+			for (int i = 0; i < size; ++i)
+			{
+				if (scanNode(node, index) >= 0)
+					++childCount;
+			}
+			
+			if (index)
+			{
+				childCounts[node] = childCount;
+				propertyOffsets[node] = p;
+				propertyLines[node] = lastLine;
+			}
+			
+			for (int i = 0; i < info.propertyCount; ++i)
+				scanValue(node, index);
+			
+			if ((flags & FLAG_ATTRIBUTES) != 0)
+			{
+				int count = getLength();
+				for (int i = 0; i < count; ++i)
+				{
+					scanString();
+					scanValue(node, index);
+				}
+			}
+		}
+		
+		if (index)
+			sizes[node] = nodeCount - node;
+		
+		return node;
+	}
+	
+	private int scanClass() throws IOException
+	{
+		String name = sliceToString(scanString());
+		int nodeType = getVarint();
+		int kind = getByte();
+		
+		int arity = 0;
+		int propertyCount = 0;
+		if (kind != KIND_IMMUTABLE)
+		{
+			arity = getVarint();
+			propertyCount = getVarint();
+		}
+		
+		// Lookups after the scan skip classes that the scan already added
+		if (scanned)
+			return classes.indexOf(getClassInfo(name));
+		
+		ClassInfo info = new ClassInfo(
+				AstBinaryDecoder.loadNodeClass(name, nodeFactory),
+				nodeType,
+				kind,
+				arity,
+				propertyCount);
+		
+		classes.add(info);
+		classesByName.put(name, info);
+		return classes.size() - 1;
+	}
+	
+	private void scanValue(int parent, boolean index) throws IOException
+	{
+		int tag = getByte();
+		switch (tag)
+		{
+			case VALUE_NULL:
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+			case VALUE_RTD_SUPPRESS:
+			case VALUE_EMPTY_ENTITY_MAP:
+				break;
+			
+			case VALUE_STRING:
+				scanString();
+				break;
+			
+			case VALUE_INT:
+			case VALUE_LONG:
+				getVarLong();
+				break;
+			
+			case VALUE_ENUM:
+				scanString();
+				scanString();
+				break;
+			
+			case VALUE_NODE:
+				scanNode(parent, index);
+				break;
+			
+			case VALUE_RTD:
+			{
+				int size = getLength();
+				for (int i = 0; i < size; ++i)
+				{
+					int length = getLength();
+					for (int j = 1; j < length; ++j)
+						scanValue(parent, index);
+				}
+				break;
+			}
+			
+			case VALUE_LIST:
+			{
+				int size = getLength();
+				for (int i = 0; i < size; ++i)
+					scanValue(parent, index);
+				break;
+			}
+			
+			case VALUE_ENTITY_MAP:
+			{
+				int size = getLength();
+				for (int i = 0; i < size; ++i)
+				{
+					getVarint();
+					scanNode(parent, index);
+				}
+				break;
+			}
+			
+			case VALUE_SERIALIZED:
+				p += getLength();
+				break;
+			
+			default:
+				throw new StreamCorruptedException("Invalid value tag: " + tag);
+		}
+	}
+	
+	private void skipValue() throws IOException
+	{
+		int saved = lastLine;
+		scanValue(-1, false);
+		lastLine = saved;
+	}
+	
+	/**
+	 * Skips a string reference.
+	 *
+	 * @return The offset of the characters of the string or -1 if the string
+	 *         is <code>null</code>.
+	 */
+	private int scanString() throws IOException
+	{
+		int ref = getVarint();
+		switch (ref)
+		{
+			case STRING_NULL:
+				return -1;
+			
+			case STRING_INLINE:
+			{
+				int offset = p;
+				skipChars();
+				return offset;
+			}
+			
+			case STRING_NEW:
+			{
+				int offset = p;
+				skipChars();
+				
+				// Lookups after the scan skip strings that the scan already
+				// added to the table
+				if (!scanned)
+					addString(offset);
+				return offset;
+			}
+			
+			default:
+			{
+				int index = ref - STRING_TABLE_BASE;
+				if (index < 0 || index >= stringCount)
+					throw new StreamCorruptedException("Invalid string reference");
+				return stringOffsets[index];
+			}
+		}
+	}
+	
+	private void skipChars() throws StreamCorruptedException
+	{
+		int length = getLength();
+		for (int i = 0; i < length; ++i)
+		{
+			int b = getByte();
+			if (b >= 0xE0)
+			{
+				p += 2;
+			}
+			else if (b >= 0x80)
+			{
+				p += 1;
+			}
+		}
+	}
+	
+	private String sliceToString(int offset) throws StreamCorruptedException
+	{
+		int saved = p;
+		p = offset;
+		
+		int length = getLength();
+		char[] chars = new char[length];
+		for (int i = 0; i < length; ++i)
+			chars[i] = getChar();
+		
+		p = saved;
+		return new String(chars);
+	}
+	
+	private void addString(int offset)
+	{
+		if (stringCount == stringOffsets.length)
+		{
+			stringOffsets = Arrays.copyOf(stringOffsets, stringCount * 2);
+			stringCache = Arrays.copyOf(stringCache, stringCount * 2);
+		}
+		stringOffsets[stringCount++] = offset;
+	}
+	
+	private int addNode()
+	{
+		if (nodeCount == offsets.length)
+		{
+			int capacity = nodeCount * 2;
+			offsets = Arrays.copyOf(offsets, capacity);
+			dataOffsets = Arrays.copyOf(dataOffsets, capacity);
+			propertyOffsets = Arrays.copyOf(propertyOffsets, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			propertyLines = Arrays.copyOf(propertyLines, capacity);
+			classIndices = Arrays.copyOf(classIndices, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+		}
+		return nodeCount++;
+	}
+	
+	// =========================================================================
+	
+	private int getByte()
+	{
+		return buffer.get(p++) & 0xFF;
+	}
+	
+	private char getChar()
+	{
+		int b = getByte();
+		if (b < 0x80)
+			return (char) b;
+		if (b < 0xE0)
+			return (char) (((b & 0x1F) << 6) | (getByte() & 0x3F));
+		int b1 = getByte();
+		return (char) (((b & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (getByte() & 0x3F));
+	}
+	
+	private int getVarint() throws StreamCorruptedException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = getByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+	
+	/**
+	 * Reads the length of a string, list or byte array. Each element takes at
+	 * least one byte, so a length that exceeds the rest of the buffer is
+	 * rejected before anything is allocated.
+	 */
+	private int getLength() throws StreamCorruptedException
+	{
+		int length = getVarint();
+		if (length < 0 || length > buffer.limit() - p)
+			throw new StreamCorruptedException("Invalid length: " + length);
+		return length;
+	}
+	
+	private void getVarLong() throws StreamCorruptedException
+	{
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			if ((getByte() & 0x80) == 0)
+				return;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+	
+	private static int unzigzag(int value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * A string in the buffer. Strings that consist of ASCII characters only
+	 * are read from the buffer directly. All other strings are decoded on
+	 * first access.
+	 */
+	private final class Slice
+			implements
+				CharSequence
+	{
+		private final int start;
+		
+		private final int length;
+		
+		private final boolean ascii;
+		
+		private String decoded;
+		
+		// =====================================================================
+		
+		public Slice(int offset) throws StreamCorruptedException
+		{
+			int saved = p;
+			p = offset;
+			this.length = getLength();
+			this.start = p;
+			p = offset;
+			skipChars();
+			this.ascii = (p - start == length);
+			p = saved;
+		}
+		
+		private Slice(int start, int length)
+		{
+			this.start = start;
+			this.length = length;
+			this.ascii = true;
+		}
+		
+		// =====================================================================
+		
+		@Override
+		public int length()
+		{
+			return length;
+		}
+		
+		@Override
+		public char charAt(int index)
+		{
+			if (index < 0 || index >= length)
+				throw new IndexOutOfBoundsException();
+			if (ascii)
+				return (char) buffer.get(start + index);
+			return toString().charAt(index);
+		}
+		
+		@Override
+		public CharSequence subSequence(int from, int to)
+		{
+			if (from < 0 || to > length || from > to)
+				throw new IndexOutOfBoundsException();
+			if (ascii)
+				return new Slice(start + from, to - from);
+			return toString().subSequence(from, to);
+		}
+		
+		@Override
+		public String toString()
+		{
+			if (decoded == null)
+			{
+				char[] chars = new char[length];
+				if (ascii)
+				{
+					for (int i = 0; i < length; ++i)
+						chars[i] = (char) buffer.get(start + i);
+				}
+				else
+				{
+					int saved = p;
+					p = start;
+					for (int i = 0; i < length; ++i)
+						chars[i] = getChar();
+					p = saved;
+				}
+				decoded = new String(chars);
+			}
+			return decoded;
+		}
+	}
+}
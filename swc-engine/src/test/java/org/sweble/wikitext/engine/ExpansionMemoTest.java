@@ -0,0 +1,237 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.I18nAliasImpl;
+import org.sweble.wikitext.engine.config.ParserFunctionGroup;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngLogProcessingPass;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.WikitextWarning.WarningSeverity;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtText;
+
+public class ExpansionMemoTest
+{
+	private WikiConfigImpl config;
+	
+	private WtEngineImpl engine;
+	
+	private PurePfn pure;
+	
+	private ImpurePfn impure;
+	
+	private PageId pageId;
+	
+	private ExpansionCallback callback;
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		
+		pure = new PurePfn(config);
+		impure = new ImpurePfn(config);
+		
+		config.addI18nAlias(new I18nAliasImpl("pure", false, Arrays.asList("#pure:")));
+		config.addI18nAlias(new I18nAliasImpl("impure", false, Arrays.asList("#impure:")));
+		
+		ParserFunctionGroup group = new ParserFunctionGroup("Memo test functions");
+		group.addParserFunction(pure);
+		group.addParserFunction(impure);
+		config.addParserFunctionGroup(group);
+		
+		engine = new WtEngineImpl(config);
+		engine.setMemoizationEnabled(true);
+		
+		pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		callback = new NoPagesCallback();
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testPureFunctionIsEvaluatedOncePerArguments() throws Exception
+	{
+		EngProcessedPage page =
+				engine.expand(pageId, "{{#pure:a}} {{#pure:a}} {{#pure:b}}", callback);
+		
+		assertEquals(2, pure.calls);
+		assertEquals(Long.valueOf(1), getLog(page).getMemoHits());
+	}
+	
+	@Test
+	public void testImpureFunctionIsReevaluated() throws Exception
+	{
+		engine.expand(pageId, "{{#impure:a}} {{#impure:a}}", callback);
+		
+		assertEquals(2, impure.calls);
+	}
+	
+	@Test
+	public void testMemoDoesNotOutliveExpansionOfPage() throws Exception
+	{
+		engine.expand(pageId, "{{#pure:a}} {{#pure:a}}", callback);
+		engine.expand(pageId, "{{#pure:a}} {{#pure:a}}", callback);
+		
+		assertEquals(2, pure.calls);
+	}
+	
+	@Test
+	public void testWarningsAreNotDuplicatedOnHit() throws Exception
+	{
+		EngProcessedPage page =
+				engine.expand(pageId, "{{#pure:a}} {{#pure:a}} {{#pure:a}}", callback);
+		
+		assertEquals(1, page.getWarnings().size());
+	}
+	
+	@Test
+	public void testMemoizationCanBeDisabled() throws Exception
+	{
+		engine.setMemoizationEnabled(false);
+		engine.expand(pageId, "{{#pure:a}} {{#pure:a}}", callback);
+		
+		assertEquals(2, pure.calls);
+	}
+	
+	@Test
+	public void testHitReturnsIndependentClone() throws Exception
+	{
+		ExpansionMemo memo = new ExpansionMemo();
+		
+		WtText stored = config.getNodeFactory().text("result");
+		memo.store("key", stored);
+		stored.setContent("modified after store");
+		
+		WtText first = (WtText) memo.retrieve("key");
+		first.setContent("modified after retrieve");
+		
+		WtText second = (WtText) memo.retrieve("key");
+		
+		assertNotSame(first, second);
+		assertEquals("result", second.getContent());
+		assertNull(memo.retrieve("other key"));
+		assertEquals(2, memo.getHits());
+		assertEquals(1, memo.getMisses());
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * The engine attaches the processing log as second child of the processed
+	 * page.
+	 */
+	private static EngLogProcessingPass getLog(EngProcessedPage page)
+	{
+		return (EngLogProcessingPass) page.get(1);
+	}
+	
+	// =========================================================================
+	
+	private static abstract class CountingPfn
+			extends
+				ParserFunctionBase
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public int calls;
+		
+		public CountingPfn(WikiConfig wikiConfig, String id)
+		{
+			super(wikiConfig, id);
+		}
+		
+		@Override
+		public WtNode invoke(
+				WtNode template,
+				ExpansionFrame frame,
+				List<? extends WtNode> argsValues)
+		{
+			++calls;
+			
+			frame.fileWarning(new IllegalArgumentsWarning(
+					WarningSeverity.NORMAL,
+					getClass(),
+					"Evaluated",
+					template));
+			
+			return nf().text("evaluated");
+		}
+	}
+	
+	private static final class PurePfn
+			extends
+				CountingPfn
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public PurePfn(WikiConfig wikiConfig)
+		{
+			super(wikiConfig, "pure");
+		}
+		
+		@Override
+		public boolean isPure()
+		{
+			return true;
+		}
+	}
+	
+	private static final class ImpurePfn
+			extends
+				CountingPfn
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public ImpurePfn(WikiConfig wikiConfig)
+		{
+			super(wikiConfig, "impure");
+		}
+	}
+	
+	private static final class NoPagesCallback
+			implements
+				ExpansionCallback
+	{
+		@Override
+		public FullPage retrieveWikitext(
+				ExpansionFrame expansionFrame,
+				PageTitle pageTitle) throws Exception
+		{
+			return null;
+		}
+		
+		@Override
+		public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+		{
+			return null;
+		}
+	}
+}
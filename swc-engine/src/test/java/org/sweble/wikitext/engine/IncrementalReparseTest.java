@@ -0,0 +1,238 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.TemplateCallback;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+import org.sweble.wikitext.parser.utils.WtLocationPrinter;
+
+public class IncrementalReparseTest
+{
+	private static final String TEMPLATE =
+			"'''{{{1}}}''' <span>from a template</span>";
+	
+	private static final String[] REVISIONS = {
+			""
+					+ "Intro with {{Tpl|bold}}.\n"
+					+ "\n"
+					+ "== First ==\n"
+					+ "Some ''text''.\n"
+					+ "=== Nested ===\n"
+					+ "* item\n"
+					+ "== Second ==\n"
+					+ "{|\n| cell\n|}\n"
+					+ "== Third ==\n"
+					+ "<div>closed</div> [[Link|title]]\n",
+			
+			// Change the second section
+			""
+					+ "Intro with {{Tpl|bold}}.\n"
+					+ "\n"
+					+ "== First ==\n"
+					+ "Some ''text''.\n"
+					+ "=== Nested ===\n"
+					+ "* item\n"
+					+ "== Second ==\n"
+					+ "{|\n| cell\n| another\ncell\n|}\n"
+					+ "== Third ==\n"
+					+ "<div>closed</div> [[Link|title]]\n",
+			
+			// Add lines to the intro and move the other sections down
+			""
+					+ "Intro with {{Tpl|bold}}.\n"
+					+ "\n"
+					+ "More\n"
+					+ "intro.\n"
+					+ "== First ==\n"
+					+ "Some ''text''.\n"
+					+ "=== Nested ===\n"
+					+ "* item\n"
+					+ "== Second ==\n"
+					+ "{|\n| cell\n| another\ncell\n|}\n"
+					+ "== Third ==\n"
+					+ "<div>closed</div> [[Link|title]]\n",
+			
+			// Open an element that is closed in another section
+			""
+					+ "Intro with {{Tpl|bold}}.\n"
+					+ "\n"
+					+ "More\n"
+					+ "intro.\n"
+					+ "== First ==\n"
+					+ "Some ''text''. <div>\n"
+					+ "=== Nested ===\n"
+					+ "* item\n"
+					+ "== Second ==\n"
+					+ "{|\n| cell\n| another\ncell\n|}\n"
+					+ "</div>\n"
+					+ "== Third ==\n"
+					+ "<div>closed</div> [[Link|title]]\n",
+			
+			// Close it again
+			""
+					+ "Intro with {{Tpl|bold}}.\n"
+					+ "\n"
+					+ "More\n"
+					+ "intro.\n"
+					+ "== First ==\n"
+					+ "Some ''text''.\n"
+					+ "=== Nested ===\n"
+					+ "* item\n"
+					+ "== Second ==\n"
+					+ "{|\n| cell\n| another\ncell\n|}\n"
+					+ "== Third ==\n"
+					+ "<div>closed</div> [[Link|title]]\n" };
+	
+	private static final int[] EXPECTED_SECTIONS = { 4, 4, 4, 1, 4 };
+	
+	private static final int[] EXPECTED_REUSED = { 0, 3, 3, 0, 0 };
+	
+	// =========================================================================
+	
+	@Test
+	public void testReparsedRevisionsEqualFullyProcessedRevisions() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		ExpansionCallback callback = new TemplateCallback(TEMPLATE);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		IncrementalPage previous = null;
+		for (int i = 0; i < REVISIONS.length; ++i)
+		{
+			IncrementalPage page = engine.reparse(previous, pageId, REVISIONS[i], callback);
+			
+			EngProcessedPage expected = engine.postprocess(pageId, REVISIONS[i], callback);
+			EngProcessedPage actual = page.getProcessedPage();
+			
+			assertEquals(
+					WtAstPrinter.print(expected.getPage()),
+					WtAstPrinter.print(actual.getPage()));
+			
+			assertEquals(
+					WtLocationPrinter.print(expected.getPage()),
+					WtLocationPrinter.print(actual.getPage()));
+			
+			assertEquals(EXPECTED_SECTIONS[i], page.getSectionCount());
+			assertEquals(EXPECTED_REUSED[i], page.getReusedSectionCount());
+			
+			previous = page;
+		}
+	}
+	
+	@Test
+	public void testReparsingDoesNotModifyPreviousRevision() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		IncrementalPage first = engine.reparse(null, pageId, REVISIONS[1], null);
+		String before = WtLocationPrinter.print(first.getProcessedPage().getPage());
+		
+		IncrementalPage second = engine.reparse(first, pageId, REVISIONS[2], null);
+		assertEquals(3, second.getReusedSectionCount());
+		
+		assertEquals(before, WtLocationPrinter.print(first.getProcessedPage().getPage()));
+	}
+	
+	@Test
+	public void testSectionIsExpandedAgainWhenTransclusionChanges() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		TemplateCallback callback = new TemplateCallback(TEMPLATE);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		String wikitext = REVISIONS[0];
+		
+		IncrementalPage page = engine.reparse(null, pageId, wikitext, callback);
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(4, page.getReusedSectionCount());
+		
+		// Without revisions the text of the template is compared
+		callback.template = "''{{{1}}}'' changed";
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(3, page.getReusedSectionCount());
+		assertEquals(
+				WtAstPrinter.print(engine.postprocess(pageId, wikitext, callback).getPage()),
+				WtAstPrinter.print(page.getProcessedPage().getPage()));
+		
+		// With revisions only the revision is compared
+		callback.template = "''{{{1}}}'' revised";
+		callback.revision = 1;
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(3, page.getReusedSectionCount());
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(4, page.getReusedSectionCount());
+		callback.revision = 2;
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(3, page.getReusedSectionCount());
+		
+		// The template disappears
+		callback.template = null;
+		page = engine.reparse(page, pageId, wikitext, callback);
+		assertEquals(3, page.getReusedSectionCount());
+		assertEquals(
+				WtAstPrinter.print(engine.postprocess(pageId, wikitext, callback).getPage()),
+				WtAstPrinter.print(page.getProcessedPage().getPage()));
+	}
+	
+	@Test
+	public void testSectionWithVolatileParserFunctionIsNeverReused() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		TemplateCallback callback = new TemplateCallback(TEMPLATE);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		String wikitext = ""
+				+ "Intro.\n"
+				+ "== Time ==\n"
+				+ "{{CURRENTYEAR}} and {{#time:Y}}\n"
+				+ "== Plain ==\n"
+				+ "Text.\n";
+		
+		IncrementalPage page = engine.reparse(null, pageId, wikitext, callback);
+		page = engine.reparse(page, pageId, wikitext, callback);
+		
+		assertEquals(3, page.getSectionCount());
+		assertEquals(2, page.getReusedSectionCount());
+	}
+	
+	@Test
+	public void testSectionExpandedWithoutCallbackIsNotReusedWithCallback() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		IncrementalPage page = engine.reparse(null, pageId, REVISIONS[0], null);
+		page = engine.reparse(page, pageId, REVISIONS[0], new TemplateCallback(TEMPLATE));
+		
+		assertEquals(0, page.getReusedSectionCount());
+	}
+	
+}
+		
\ No newline at end of file
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngLogProcessingPass;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.TemplateCallback;
+import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+
+public class LruPreprocessedPageCacheTest
+{
+	private static final String TEMPLATE = "'''{{{1}}}''' from a template";
+	
+	private WikiConfigImpl config;
+	
+	private WtEngineImpl engine;
+	
+	private LruPreprocessedPageCache cache;
+	
+	private TemplateCallback callback;
+	
+	private PageId pageId;
+	
+	private PageId templateId;
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		cache = new LruPreprocessedPageCache(16);
+		engine = new WtEngineImpl(config);
+		engine.setPreprocessedPageCache(cache);
+		callback = new TemplateCallback(TEMPLATE);
+		pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		templateId = new PageId(PageTitle.make(config, TemplateCallback.TITLE), -1);
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testFirstTransclusionMissesAndSecondHits() throws Exception
+	{
+		EngProcessedPage page =
+				engine.postprocess(pageId, "{{Tpl|one}} {{Tpl|two}}", callback);
+		
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+		
+		assertEquals(Long.valueOf(1), getLog(page).getCacheMisses());
+		assertEquals(Long.valueOf(1), getLog(page).getCacheHits());
+	}
+	
+	@Test
+	public void testLogCountsLookupsOfItsOwnExpansionOnly() throws Exception
+	{
+		engine.postprocess(pageId, "{{Tpl|one}}", callback);
+		
+		EngProcessedPage page =
+				engine.postprocess(pageId, "{{Tpl|two}} {{Tpl|three}}", callback);
+		
+		assertEquals(Long.valueOf(0), getLog(page).getCacheMisses());
+		assertEquals(Long.valueOf(2), getLog(page).getCacheHits());
+	}
+	
+	@Test
+	public void testLogHasNoCacheCountersWithoutCache() throws Exception
+	{
+		engine.setPreprocessedPageCache(null);
+		
+		EngProcessedPage page =
+				engine.postprocess(pageId, "{{Tpl|one}}", callback);
+		
+		assertNull(getLog(page).getCacheHits());
+		assertNull(getLog(page).getCacheMisses());
+	}
+	
+	@Test
+	public void testCachedPagesExpandLikeUncachedPages() throws Exception
+	{
+		String wikitext = "{{Tpl|one}} {{Tpl|two}} {{Tpl|one}}";
+		
+		EngProcessedPage cached = engine.postprocess(pageId, wikitext, callback);
+		
+		WtEngineImpl uncachedEngine = new WtEngineImpl(config);
+		EngProcessedPage uncached = uncachedEngine.postprocess(pageId, wikitext, callback);
+		
+		assertEquals(
+				WtAstPrinter.print(uncached.getPage()),
+				WtAstPrinter.print(cached.getPage()));
+	}
+	
+	@Test
+	public void testChangedWikitextIsAMiss() throws Exception
+	{
+		engine.postprocess(pageId, "{{Tpl|one}}", callback);
+		
+		callback.template = "''{{{1}}}'' changed";
+		engine.postprocess(pageId, "{{Tpl|one}}", callback);
+		
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.size());
+		assertEquals(
+				callback.template.length(),
+				cache.getSourceChars());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedPageIsEvicted() throws Exception
+	{
+		LruPreprocessedPageCache cache = new LruPreprocessedPageCache(2);
+		WtPreproWikitextPage ast = makeAst("text");
+		
+		PageId a = new PageId(PageTitle.make(config, "A"), 1);
+		PageId b = new PageId(PageTitle.make(config, "B"), 1);
+		PageId c = new PageId(PageTitle.make(config, "C"), 1);
+		
+		cache.cachePreprocessedPage(a, "a", true, ast);
+		cache.cachePreprocessedPage(b, "b", true, ast);
+		assertNotNull(cache.retrievePreprocessedPage(a, "a", true));
+		cache.cachePreprocessedPage(c, "c", true, ast);
+		
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.retrievePreprocessedPage(a, "a", true));
+		assertNull(cache.retrievePreprocessedPage(b, "b", true));
+		assertNotNull(cache.retrievePreprocessedPage(c, "c", true));
+	}
+	
+	@Test
+	public void testPagesAreEvictedWhenSourceCharsExceedLimit() throws Exception
+	{
+		LruPreprocessedPageCache cache = new LruPreprocessedPageCache(16, 10);
+		WtPreproWikitextPage ast = makeAst("text");
+		
+		PageId a = new PageId(PageTitle.make(config, "A"), 1);
+		PageId b = new PageId(PageTitle.make(config, "B"), 1);
+		PageId c = new PageId(PageTitle.make(config, "C"), 1);
+		
+		cache.cachePreprocessedPage(a, "aaaa", true, ast);
+		cache.cachePreprocessedPage(b, "bbbb", true, ast);
+		cache.cachePreprocessedPage(c, "cccc", true, ast);
+		
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.getSourceChars());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.retrievePreprocessedPage(a, "aaaa", true));
+		
+		// Pages larger than the limit are not cached at all
+		cache.cachePreprocessedPage(a, "aaaaaaaaaaa", true, ast);
+		assertEquals(2, cache.size());
+	}
+	
+	@Test
+	public void testExpansionDoesNotModifyCachedPage() throws Exception
+	{
+		engine.postprocess(pageId, "{{Tpl|one}}", callback);
+		
+		WtPreproWikitextPage cached =
+				cache.retrievePreprocessedPage(templateId, TEMPLATE, true);
+		String before = WtAstPrinter.print(cached);
+		
+		engine.postprocess(pageId, "{{Tpl|two}} {{Tpl|three}}", callback);
+		
+		assertSame(
+				cached,
+				cache.retrievePreprocessedPage(templateId, TEMPLATE, true));
+		assertEquals(before, WtAstPrinter.print(cached));
+	}
+	
+	@Test
+	public void testCachedPageDoesNotReferenceEntityMapOfRootPage() throws Exception
+	{
+		// The root page registers an entity in its entity map
+		engine.postprocess(pageId, "\u0001 {{Tpl|one}}", callback);
+		
+		WtPreproWikitextPage cached =
+				cache.retrievePreprocessedPage(templateId, TEMPLATE, true);
+		
+		assertSame(WtEntityMap.EMPTY_ENTITY_MAP, cached.getEntityMap());
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * The engine attaches the processing log as second child of the processed
+	 * page.
+	 */
+	private static EngLogProcessingPass getLog(EngProcessedPage page)
+	{
+		return (EngLogProcessingPass) page.get(1);
+	}
+	
+	private WtPreproWikitextPage makeAst(String text)
+	{
+		EngineNodeFactory nf = config.getNodeFactory();
+		return nf.preproPage(nf.list(nf.text(text)));
+	}
+	
+}
+		
\ No newline at end of file
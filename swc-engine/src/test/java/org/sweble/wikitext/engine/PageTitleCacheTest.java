@@ -0,0 +1,81 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class PageTitleCacheTest
+{
+	@Test
+	public void testCachedTitleEqualsUncachedTitle() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		PageTitleCache cache = new PageTitleCache(16);
+		config.setPageTitleCache(cache);
+		
+		String[] targets = {
+				"Template:Cite web",
+				"category:Living_people",
+				":File:Example.png#Section",
+				"cite web" };
+		
+		for (String target : targets)
+		{
+			PageTitle first = PageTitle.make(config, target, config.getTemplateNamespace());
+			PageTitle second = PageTitle.make(config, target, config.getTemplateNamespace());
+			assertSame(first, second);
+			
+			config.setPageTitleCache(null);
+			assertEquals(first, PageTitle.make(config, target, config.getTemplateNamespace()));
+			config.setPageTitleCache(cache);
+		}
+		
+		assertEquals(targets.length, cache.getHits());
+		assertEquals(targets.length, cache.getMisses());
+	}
+	
+	@Test
+	public void testDefaultNamespaceIsPartOfKey() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		
+		PageTitle inMain = PageTitle.make(config, "Cite web");
+		PageTitle inTemplate = PageTitle.make(config, "Cite web", config.getTemplateNamespace());
+		
+		assertEquals(config.getDefaultNamespace(), inMain.getNamespace());
+		assertEquals(config.getTemplateNamespace(), inTemplate.getNamespace());
+	}
+	
+	@Test
+	public void testCacheIsBounded() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		PageTitleCache cache = new PageTitleCache(32);
+		config.setPageTitleCache(cache);
+		
+		for (int i = 0; i < 1000; ++i)
+			PageTitle.make(config, "Page " + i);
+		
+		assertTrue(cache.size() <= 32);
+		assertTrue(cache.getEvictions() > 0);
+	}
+}
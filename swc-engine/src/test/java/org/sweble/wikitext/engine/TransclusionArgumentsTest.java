@@ -0,0 +1,165 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.EnginePrettyPrinter;
+
+public class TransclusionArgumentsTest
+{
+	private static final String[][] TEMPLATES = {
+			{ "Unused", "nothing to see" },
+			{ "Once", "({{{1}}})" },
+			{ "Twice", "({{{1}}}/{{{1}}})" },
+			{ "Inner", "[{{{1}}}]" },
+			{ "Counter", "counted" },
+			
+			// Refers to its arguments in reverse order
+			{ "Lazy", "{{{2|}}}\n* {{{1|}}}\n{{{2|}}}" },
+			
+			// Refers to all arguments before its content like the former
+			// eager expansion of argument values did
+			{ "Eager", "{{#if:{{{1|}}}{{{2|}}}||}}{{{2|}}}\n* {{{1|}}}\n{{{2|}}}" } };
+	
+	private WikiConfigImpl config;
+	
+	private WtEngineImpl engine;
+	
+	private CountingCallback callback;
+	
+	private PageId pageId;
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		engine = new WtEngineImpl(config);
+		callback = new CountingCallback();
+		pageId = new PageId(PageTitle.make(config, "Test"), -1);
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testUnusedArgumentIsNotExpanded() throws Exception
+	{
+		engine.expand(pageId, "{{Unused|{{Counter}}|name={{Counter}}}}", callback);
+		
+		assertEquals(0, callback.getRetrievals("Template:Counter"));
+	}
+	
+	@Test
+	public void testUnusedArgumentDoesNotFileWarnings() throws Exception
+	{
+		EngProcessedPage unused =
+				engine.expand(pageId, "{{Unused|{{NoSuchPage}}}}", callback);
+		
+		EngProcessedPage used =
+				engine.expand(pageId, "{{Once|{{NoSuchPage}}}}", callback);
+		
+		assertTrue(unused.getWarnings().isEmpty());
+		assertFalse(used.getWarnings().isEmpty());
+	}
+	
+	@Test
+	public void testArgumentUsedTwiceIsExpandedOnce() throws Exception
+	{
+		String twice = print("{{Twice|{{Counter}}}}");
+		
+		assertEquals(1, callback.getRetrievals("Template:Counter"));
+		assertEquals(print("(counted/counted)"), twice);
+	}
+	
+	@Test
+	public void testLazyExpansionEqualsEagerExpansion() throws Exception
+	{
+		String[] args = {
+				"{{Inner|x}}|{{Inner|y}}",
+				"{{Inner|{{Inner|x}}}}|\n{{Inner|y}}",
+				"{{Lazy|{{Inner|x}}|{{Once|y}}}}|{{Lazy|a|b}}",
+				"2={{Inner|x}}|1={{Twice|{{Inner|y}}}}" };
+		
+		for (String arg : args)
+		{
+			assertEquals(
+					print("a\n{{Eager|" + arg + "}}\nb"),
+					print("a\n{{Lazy|" + arg + "}}\nb"));
+		}
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Prints the wikitext of the postprocessed page.
+	 */
+	private String print(String wikitext) throws Exception
+	{
+		EngProcessedPage page = engine.postprocess(pageId, wikitext, callback);
+		return EnginePrettyPrinter.print(page.getPage());
+	}
+	
+	// =========================================================================
+	
+	private static final class CountingCallback
+			implements
+				ExpansionCallback
+	{
+		private final Map<String, Integer> retrievals =
+				new HashMap<String, Integer>();
+		
+		public int getRetrievals(String title)
+		{
+			Integer count = retrievals.get(title);
+			return (count != null) ? count : 0;
+		}
+		
+		@Override
+		public FullPage retrieveWikitext(
+				ExpansionFrame expansionFrame,
+				PageTitle pageTitle) throws Exception
+		{
+			String title = pageTitle.getNormalizedFullTitle();
+			retrievals.put(title, getRetrievals(title) + 1);
+			
+			for (String[] template : TEMPLATES)
+			{
+				if (title.equals("Template:" + template[0]))
+					return new FullPage(new PageId(pageTitle, -1), template[1]);
+			}
+			
+			return null;
+		}
+		
+		@Override
+		public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+		{
+			return null;
+		}
+	}
+}
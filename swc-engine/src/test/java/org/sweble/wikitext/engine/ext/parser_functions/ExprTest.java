@@ -161,6 +161,39 @@ public class ExprTest
 				0);
 	}
 	
+	@Test
+	public void testErrorsAreReportedInEvaluationOrder() throws Exception
+	{
+		try
+		{
+			p.parse("1/0 )");
+			fail();
+		}
+		catch (ExprParser.ExprError e)
+		{
+			assertEquals("Expression error: division_by_zero", e.getMessage());
+		}
+		
+		try
+		{
+			p.parse("1 + )");
+			fail();
+		}
+		catch (ExprParser.ExprError e)
+		{
+			assertEquals("Expression error: Missing operand for +.", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testCompiledExpressionsAreCachedAndReusable() throws Exception
+	{
+		ExprParser.Expression expr = ExprParser.compile("2 * (3 + 4)");
+		assertSame(expr, ExprParser.compile("2 * (3 + 4)"));
+		assertEquals("14", expr.evaluate());
+		assertEquals("14", expr.evaluate());
+	}
+	
 	private static double round(double value, int digits)
 	{
 		return new BigDecimal(value)
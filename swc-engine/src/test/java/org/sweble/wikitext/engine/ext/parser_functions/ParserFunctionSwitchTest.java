@@ -0,0 +1,270 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.ext.parser_functions;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.ExpansionCallback;
+import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.EnginePrettyPrinter;
+
+/**
+ * Compares the evaluation of switches via cached jump tables with the case by
+ * case evaluation. The switch is placed in a template whose revision is known
+ * to use a jump table and unknown to evaluate it case by case.
+ */
+public class ParserFunctionSwitchTest
+{
+	private static final String[] COMMON_INPUTS = {
+			"",
+			"zz",
+			"#default",
+			"a",
+			"b",
+			"c",
+			"d",
+			"e",
+			"f",
+			"g",
+			"h" };
+	
+	private WikiConfigImpl config;
+	
+	private WtEngineImpl engine;
+	
+	private SwitchCallback callback;
+	
+	private PageId pageId;
+	
+	private ParserFunctionSwitch pfn;
+	
+	// =========================================================================
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		engine = new WtEngineImpl(config);
+		callback = new SwitchCallback();
+		pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		pfn = (ParserFunctionSwitch) config.getParserFunction("#switch:");
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testFallThroughLabels() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a|b|c=ABC|d=D|e|f|g=EFG|h=H|#default=DEF",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testFallThroughToEndOfSwitch() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A|b=B|c=C|d=D|e=E|f=F|#default=DEF|g|h",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testDefaultAtStart() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"#default=DEF|a=A|b=B|c=C|d=D|e=E|f=F|g=G|h=H",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testDefaultInMiddle() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A|b=B|c=C|#default=DEF|d=D|e=E|f=F|g=G|h=H",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testRepeatedDefaults() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"#default=D1|a=A|b|#default=D2|c=C|d=D|e|f=F|#default=D3|g=G|h",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testDefaultWithoutValue() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A|b|#default|c=C|d=D|e=E|f=F|g=G|h=H",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testImplicitDefault() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A|b=B|c=C|d=D|e=E|f=F|g=G|h=H|Implicit",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testImplicitDefaultAfterExplicitDefault() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A|b=B|c=C|#default=DEF|d=D|e=E|f=F|g=G|h",
+				COMMON_INPUTS);
+	}
+	
+	@Test
+	public void testNumericAndStringLabels() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"abc=ABC|01=zero one|1=one|1.0=one point zero|1e0=exponent|" +
+						"-0=negative zero|0=zero|+2=plus two|2=two|#default=DEF",
+				new String[] {
+						"1",
+						"01",
+						"1.0",
+						"1e0",
+						"0",
+						"-0",
+						"0.0",
+						"2",
+						"+2",
+						"2.000",
+						"abc",
+						" 1 ",
+						"3",
+						"x" });
+	}
+	
+	@Test
+	public void testDuplicateLabels() throws Exception
+	{
+		assertJumpTableEqualsLinear(
+				"a=A1|b=B1|a=A2|c|c=C2|d=D|b=B2|e=E|1=one|1.0=dup|#default=DEF",
+				new String[] { "a", "b", "c", "d", "e", "1", "1.0", "zz" });
+	}
+	
+	@Test
+	public void testCachedTableIsHitAcrossFrames() throws Exception
+	{
+		callback.template = "{{#switch:{{{1}}}|a=A|b=B|c=C|d=D|e=E|f=F|g=G|h=H|#default=DEF}}";
+		callback.revision = 1;
+		
+		assertEquals(
+				print("A B DEF"),
+				print("{{Sw|a}} {{Sw|b}} {{Sw|zz}}"));
+		
+		// The first frame builds the table, the other two find it
+		assertEquals(2, pfn.getJumpTableHits());
+		
+		// Another expansion of the same revision reuses the table
+		assertEquals(print("H"), print("{{Sw|h}}"));
+		assertEquals(3, pfn.getJumpTableHits());
+	}
+	
+	@Test
+	public void testNewRevisionDoesNotHitCachedTable() throws Exception
+	{
+		callback.template = "{{#switch:{{{1}}}|a=A|b=B|c=C|d=D|e=E|f=F|g=G|h=H|#default=DEF}}";
+		callback.revision = 1;
+		assertEquals(print("A"), print("{{Sw|a}}"));
+		
+		callback.template = "{{#switch:{{{1}}}|a=X|b=B|c=C|d=D|e=E|f=F|g=G|h=H|#default=DEF}}";
+		callback.revision = 2;
+		assertEquals(print("X"), print("{{Sw|a}}"));
+		
+		assertEquals(0, pfn.getJumpTableHits());
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Expands the switch with the given cases for each input once with and
+	 * once without jump table and compares the results.
+	 */
+	private void assertJumpTableEqualsLinear(String cases, String[] inputs) throws Exception
+	{
+		callback.template = "{{#switch:{{{1}}}|" + cases + "}}";
+		
+		long hits = pfn.getJumpTableHits();
+		for (String input : inputs)
+		{
+			String wikitext = "{{Sw|1=" + input + "}}";
+			
+			callback.revision = -1;
+			String linear = print(wikitext);
+			
+			callback.revision = 1;
+			String table = print(wikitext);
+			
+			assertEquals("Input '" + input + "'", linear, table);
+		}
+		
+		// Make sure the jump table was used at all
+		assertEquals(hits + inputs.length - 1, pfn.getJumpTableHits());
+	}
+	
+	/**
+	 * Prints the wikitext of the postprocessed page.
+	 */
+	private String print(String wikitext) throws Exception
+	{
+		EngProcessedPage page = engine.postprocess(pageId, wikitext, callback);
+		return EnginePrettyPrinter.print(page.getPage());
+	}
+	
+	// =========================================================================
+	
+	private static final class SwitchCallback
+			implements
+				ExpansionCallback
+	{
+		public String template;
+		
+		public long revision = -1;
+		
+		@Override
+		public FullPage retrieveWikitext(
+				ExpansionFrame expansionFrame,
+				PageTitle pageTitle) throws Exception
+		{
+			if (!pageTitle.getNormalizedFullTitle().equals("Template:Sw"))
+				return null;
+			
+			return new FullPage(new PageId(pageTitle, revision), template);
+		}
+		
+		@Override
+		public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+		{
+			return null;
+		}
+	}
+}
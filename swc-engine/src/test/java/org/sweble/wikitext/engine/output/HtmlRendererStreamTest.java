@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.nodes.WtUrl;
+
+public class HtmlRendererStreamTest
+{
+	private static final String WIKITEXT = ""
+			+ "== Überschrift & <more> ==\n"
+			+ "Some '''bold''' and ''italic'' text with [[Link|a \"title\"]] and "
+			+ "[http://example.org external] links, &amp; an entity.\n"
+			+ "{| class=\"wikitable\"\n"
+			+ "| cell || <span title=\"it's\">other</span>\n"
+			+ "|}\n"
+			+ "* Grüße\n"
+			+ "# One\n";
+	
+	private final WikiConfig config = DefaultConfigEnWp.generate();
+	
+	// =========================================================================
+	
+	@Test
+	public void testStreamedOutputMatchesStringOutput() throws Exception
+	{
+		PageTitle pageTitle = PageTitle.make(config, "Test");
+		EngProcessedPage ast = new WtEngineImpl(config).postprocess(
+				new PageId(pageTitle, -1),
+				WIKITEXT,
+				null);
+		
+		String expected = HtmlRenderer.print(new TestCallback(), config, pageTitle, ast);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HtmlRenderer.print(new TestCallback(), config, out, pageTitle, ast);
+		assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+		
+		out = new ByteArrayOutputStream();
+		HtmlRenderer.print(new TestCallback(), config, Channels.newChannel(out), pageTitle, ast);
+		assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+	}
+	
+	// =========================================================================
+	
+	private static final class TestCallback
+			implements
+				HtmlRendererCallback
+	{
+		@Override
+		public boolean resourceExists(PageTitle target)
+		{
+			return true;
+		}
+		
+		@Override
+		public MediaInfo getMediaInfo(String title, int width, int height) throws Exception
+		{
+			return null;
+		}
+		
+		@Override
+		public String makeUrl(PageTitle target)
+		{
+			return "/" + target.getNormalizedFullTitle();
+		}
+		
+		@Override
+		public String makeUrl(WtUrl target)
+		{
+			return target.getProtocol() + ":" + target.getPath();
+		}
+		
+		@Override
+		public String makeUrlMissingTarget(String path)
+		{
+			return "?title=" + path;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+import static org.junit.Assert.*;
+import static org.sweble.wikitext.engine.serialization.AstBinaryFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InvalidClassException;
+import java.io.StreamCorruptedException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtText;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+
+public class AstBinaryDecoderTest
+{
+	private static boolean poisonInitialized = false;
+	
+	private WikiConfigImpl config;
+	
+	// =========================================================================
+	
+	@Before
+	public void before() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testDecodedPageEqualsOriginalPage() throws Exception
+	{
+		WtEngineImpl engine = new WtEngineImpl(config);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		EngProcessedPage page = engine.postprocess(
+				pageId,
+				"Some [[Link|text]] and '''bold''' text.\n",
+				null);
+		
+		EngProcessedPage decoded = (EngProcessedPage) decode(encode(page));
+		
+		// The printer cannot print the log child of a processed page
+		assertEquals(WtAstPrinter.print(page.getPage()), WtAstPrinter.print(decoded.getPage()));
+		assertEquals(page.get(1).getClass(), decoded.get(1).getClass());
+	}
+	
+	@Test
+	public void testValuesOfAllowedClassesAreDeserialized() throws Exception
+	{
+		WtText text = config.getNodeFactory().text("text");
+		text.setAttribute("date", new Date(0));
+		text.setAttribute("exception", new IllegalStateException("message"));
+		
+		WtNode decoded = decode(encode(text));
+		
+		assertEquals(new Date(0), decoded.getAttribute("date"));
+		assertEquals(
+				"message",
+				((IllegalStateException) decoded.getAttribute("exception")).getMessage());
+	}
+	
+	@Test(expected = InvalidClassException.class)
+	public void testValuesOfOtherClassesAreRejected() throws Exception
+	{
+		WtText text = config.getNodeFactory().text("text");
+		text.setAttribute("url", new URL("http://example.org/"));
+		
+		decode(encode(text));
+	}
+	
+	@Test
+	public void testUnknownNodeClassIsRejectedWithoutInitialization() throws Exception
+	{
+		try
+		{
+			decode(header(Poison.class.getName()));
+			fail();
+		}
+		catch (StreamCorruptedException e)
+		{
+		}
+		
+		assertFalse(poisonInitialized);
+	}
+	
+	@Test(expected = StreamCorruptedException.class)
+	public void testNonNodeClassIsRejected() throws Exception
+	{
+		decode(header("java.util.ArrayList"));
+	}
+	
+	@Test(expected = EOFException.class)
+	public void testLengthBeyondEndOfStreamDoesNotAllocate() throws Exception
+	{
+		decode(hugeStringLength());
+	}
+	
+	@Test(expected = StreamCorruptedException.class)
+	public void testLengthBeyondEndOfBufferIsRejected() throws Exception
+	{
+		new AstBinaryView(ByteBuffer.wrap(hugeStringLength()), config.getNodeFactory());
+	}
+	
+	// =========================================================================
+	
+	private byte[] encode(WtNode node) throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AstBinaryEncoder encoder = new AstBinaryEncoder(baos);
+		encoder.write(node);
+		encoder.close();
+		return baos.toByteArray();
+	}
+	
+	private WtNode decode(byte[] data) throws Exception
+	{
+		AstBinaryDecoder decoder = new AstBinaryDecoder(
+				new ByteArrayInputStream(data),
+				config.getNodeFactory());
+		try
+		{
+			return decoder.read();
+		}
+		finally
+		{
+			decoder.close();
+		}
+	}
+	
+	/**
+	 * A stream that starts with the class record of a node of the given class.
+	 */
+	private static byte[] header(String className)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(MAGIC, 0, MAGIC.length);
+		baos.write(VERSION);
+		baos.write(NODE_NEW_CLASS);
+		baos.write(STRING_INLINE);
+		baos.write(className.length());
+		for (char ch : className.toCharArray())
+			baos.write(ch);
+		baos.write(WtNode.NT_TEXT);
+		baos.write(KIND_FIXED);
+		baos.write(0);
+		baos.write(0);
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * A stream whose first class name claims to be almost 2 GiB long.
+	 */
+	private static byte[] hugeStringLength()
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(MAGIC, 0, MAGIC.length);
+		baos.write(VERSION);
+		baos.write(NODE_NEW_CLASS);
+		baos.write(STRING_INLINE);
+		baos.write(new byte[] { (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 }, 0, 5);
+		baos.write('x');
+		return baos.toByteArray();
+	}
+	
+	// =========================================================================
+	
+	public static final class Poison
+	{
+		static
+		{
+			poisonInitialized = true;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.serialization;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.nodes.WtInternalLink;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+
+public class AstBinaryViewTest
+{
+	private static final String WIKITEXT = ""
+			+ "Some [[Link|text]] and '''bold''' text.\n"
+			+ "\n"
+			+ "== Section ==\n"
+			+ "* [[Another link]]s in a list\n"
+			+ "{|\n| cell with [[Grüße]]\n|}\n";
+	
+	private WikiConfigImpl config;
+	
+	private EngProcessedPage page;
+	
+	private AstBinaryView view;
+	
+	// =========================================================================
+	
+	@Before
+	public void before() throws Exception
+	{
+		config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		
+		page = engine.postprocess(pageId, WIKITEXT, null);
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AstBinaryEncoder encoder = new AstBinaryEncoder(baos);
+		encoder.write(page);
+		encoder.close();
+		
+		view = new AstBinaryView(
+				ByteBuffer.wrap(baos.toByteArray()),
+				config.getNodeFactory());
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testMaterializedTreeEqualsOriginalTree() throws Exception
+	{
+		assertEquals(1, view.getRootCount());
+		
+		EngProcessedPage root = (EngProcessedPage) view.materialize(view.getRoot(0));
+		
+		// The printer cannot print the log child of a processed page
+		assertEquals(WtAstPrinter.print(page.getPage()), WtAstPrinter.print(root.getPage()));
+		assertEquals(page.get(1).getClass(), root.get(1).getClass());
+	}
+	
+	@Test
+	public void testLinksCanBeInspectedWithoutMaterializingThePage() throws Exception
+	{
+		List<WtInternalLink> expected = new ArrayList<WtInternalLink>();
+		collectLinks(page, expected);
+		
+		int[] links = view.findNodes(view.getRoot(0), WtNode.NT_INTERNAL_LINK);
+		assertEquals(3, links.length);
+		assertEquals(expected.size(), links.length);
+		
+		for (int i = 0; i < links.length; ++i)
+		{
+			WtInternalLink link = expected.get(i);
+			
+			assertEquals(
+					link.getPostfix(),
+					view.getString(links[i], "postfix").toString());
+			
+			assertEquals(
+					String.valueOf(link.getNativeLocation()),
+					String.valueOf(view.getLocation(links[i])));
+			
+			assertEquals(
+					WtAstPrinter.print(link),
+					WtAstPrinter.print(view.materialize(links[i])));
+		}
+	}
+	
+	@Test
+	public void testChildrenOfIndexedNodesMatchOriginalChildren() throws Exception
+	{
+		compareStructure(page, view.getRoot(0));
+	}
+	
+	// =========================================================================
+	
+	private void compareStructure(WtNode expected, int node)
+	{
+		assertEquals(expected.getNodeType(), view.getNodeType(node));
+		assertEquals(expected.getClass(), view.getNodeClass(node));
+		assertEquals(expected.size(), view.getChildCount(node));
+		
+		for (int i = 0; i < expected.size(); ++i)
+		{
+			int child = view.getChild(node, i);
+			assertEquals(node, view.getParent(child));
+			compareStructure(expected.get(i), child);
+		}
+	}
+	
+	private void collectLinks(WtNode node, List<WtInternalLink> links)
+	{
+		if (node.getNodeType() == WtNode.NT_INTERNAL_LINK)
+			links.add((WtInternalLink) node);
+		
+		for (WtNode child : node)
+			collectLinks(child, links);
+	}
+}
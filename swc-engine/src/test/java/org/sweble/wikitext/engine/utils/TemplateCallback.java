@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.utils;
+
+import org.sweble.wikitext.engine.ExpansionCallback;
+import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+
+/**
+ * An expansion callback that only knows a single page, Template:Tpl. Tests
+ * change the text and the revision of the template between expansions to
+ * simulate edits of the template.
+ */
+public class TemplateCallback
+		implements
+			ExpansionCallback
+{
+	public static final String TITLE = "Template:Tpl";
+	
+	/**
+	 * The text of the template or null if the template does not exist.
+	 */
+	public String template;
+	
+	/**
+	 * The revision of the template or -1 if the revision is unknown.
+	 */
+	public long revision = -1;
+	
+	// =========================================================================
+	
+	public TemplateCallback(String template)
+	{
+		this.template = template;
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public FullPage retrieveWikitext(
+			ExpansionFrame expansionFrame,
+			PageTitle pageTitle) throws Exception
+	{
+		if (template == null || !pageTitle.getNormalizedFullTitle().equals(TITLE))
+			return null;
+		
+		return new FullPage(new PageId(pageTitle, revision), template);
+	}
+	
+	@Override
+	public String fileUrl(PageTitle pageTitle, int width, int height) throws Exception
+	{
+		return null;
+	}
+}
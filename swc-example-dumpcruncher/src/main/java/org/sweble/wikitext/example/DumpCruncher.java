@@ -281,6 +281,20 @@ public class DumpCruncher
 				.withArgName("N")
 				.create();
 		
+		options.createOption("dump-reader-workers")
+				.withDescription("The number of threads decoding pages of the dump. 0 reads the dump on a single thread.")
+				.withPropertyKey("DumpReader.NumWorkers")
+				.withDefault("0")
+				.withArgName("N")
+				.create();
+		
+		options.createOption("decompression-threads")
+				.withDescription("The number of threads decompressing a multistream bzip2 dump.")
+				.withPropertyKey("DumpReader.NumDecompressionThreads")
+				.withDefault("1")
+				.withArgName("N")
+				.create();
+		
 		options.createOption('P', "properties")
 				.withDescription("A properties file to load additional configuration options from.")
 				.withDefault("dump2db.properties")
@@ -310,6 +324,8 @@ public class DumpCruncher
 			options.optional("Nexus.ProcessedJobsCapacity");
 			options.optional("Nexus.OutTrayCapacity");
 			options.optional("Nexus.NumProcessingWorkers");
+			options.optional("DumpReader.NumWorkers");
+			options.optional("DumpReader.NumDecompressionThreads");
 			
 			options.checkForInvalidOptions();
 			
@@ -72,7 +72,8 @@ public class DumpReaderJobGenerator
 					Charset.forName("UTF8"),
 					dumpFile.getPath(),
 					getLogger(),
-					false)
+					false,
+					dumpCruncher.getOptions().value("DumpReader.NumDecompressionThreads", int.class))
 			{
 				@Override
 				protected void processPage(Object mediaWiki, Object page) throws Exception
@@ -133,7 +134,16 @@ public class DumpReaderJobGenerator
 	@Override
 	protected void work() throws Throwable
 	{
-		dumpReader.unmarshal();
+		int numWorkers = dumpCruncher.getOptions().value("DumpReader.NumWorkers", int.class);
+		if (numWorkers > 0)
+		{
+			// Pages are handed to the Nexus in dump order
+			dumpReader.unmarshalParallel(numWorkers, 16 * numWorkers, true);
+		}
+		else
+		{
+			dumpReader.unmarshal();
+		}
 	}
 	
 	protected void processPage(Object mediaWiki, Object page_) throws Exception
@@ -37,7 +37,7 @@ public class App
 		// Serilization format
 		
 		opt.createOption('f', "format")
-				.withDescription("Serialization format, one of 'json', 'xml' or 'java'")
+				.withDescription("Serialization format, one of 'json', 'xml', 'java' or 'binary'")
 				.withArgName("FORMAT")
 				.withRequiredArg()
 				.create();
@@ -123,6 +123,10 @@ public class App
 		{
 			method = SerializationMethod.JSON;
 		}
+		else if (methodName.toLowerCase().equals("binary"))
+		{
+			method = SerializationMethod.BINARY;
+		}
 		else
 		{
 			printHelp(opt);
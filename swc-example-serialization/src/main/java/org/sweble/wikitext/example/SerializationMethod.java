@@ -41,6 +41,14 @@ public enum SerializationMethod
 		{
 			return "xml";
 		}
+	},
+	BINARY
+	{
+		@Override
+		public String getExt()
+		{
+			return "wtb";
+		}
 	};
 	
 	public abstract String getExt();
@@ -34,6 +34,8 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.serialization.AstBinaryDecoder;
+import org.sweble.wikitext.engine.serialization.AstBinaryEncoder;
 import org.sweble.wikitext.engine.serialization.EngineAstNodeConverter;
 import org.sweble.wikitext.parser.WtRtData;
 import org.sweble.wikitext.parser.comparer.WtComparer;
@@ -469,6 +471,13 @@ public class Serializer
 				osw.close();
 				break;
 			}
+			case BINARY:
+			{
+				AstBinaryEncoder encoder = new AstBinaryEncoder(objBaos);
+				encoder.write(getAst());
+				encoder.close();
+				break;
+			}
 			default:
 				objBaos.close();
 				throw new UnsupportedOperationException();
@@ -604,6 +613,15 @@ public class Serializer
 				isr.close();
 				break;
 			}
+			case BINARY:
+			{
+				AstBinaryDecoder decoder = new AstBinaryDecoder(
+						is,
+						new WikiConfigImpl().getNodeFactory());
+				result = decoder.read();
+				decoder.close();
+				break;
+			}
 			default:
 				throw new UnsupportedOperationException();
 		}
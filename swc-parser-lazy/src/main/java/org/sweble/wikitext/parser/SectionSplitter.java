@@ -0,0 +1,476 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser;
+
+import java.util.Arrays;
+
+/**
+ * Finds the offsets at which preprocessed wikitext can be cut into chunks that
+ * parse to the same top-level sections as the whole text.
+ *
+ * A chunk always starts with a heading of the lowest level found in the text.
+ * Such a heading closes all open sections, so the sections of two adjacent
+ * chunks never nest. A heading is only used as a split point if it is not
+ * inside a table, an internal link, a comment, a nowiki or pre element or a
+ * tag that spans multiple lines. Headings whose title could change the way
+ * the heading line is parsed (links, tags, entities) are never used either.
+ * When in doubt the splitter does not split.
+ *
+ * The engine also uses the splitter to check whether independently expanded
+ * sections can be parsed independently.
+ *
+ * Elements that are merely open at a heading do not prevent a split. The
+ * parser emits start and end tags as separate nodes and only the
+ * postprocessor nests them, so an open element does not change how the text
+ * after it is parsed.
+ */
+public final class SectionSplitter
+{
+	private static final int MAX_LEVEL = 6;
+	
+	// =========================================================================
+	
+	private final CharSequence text;
+	
+	private final int length;
+	
+	private int tableDepth = 0;
+	
+	private int linkDepth = 0;
+	
+	private boolean unsafe = false;
+	
+	private int minLevel = MAX_LEVEL + 1;
+	
+	private int[] candidates = new int[16];
+	
+	private int[] candidateLevels = new int[16];
+	
+	private int candidateCount = 0;
+	
+	// =========================================================================
+	
+	private SectionSplitter(CharSequence text)
+	{
+		this.text = text;
+		this.length = text.length();
+	}
+	
+	/**
+	 * @param text
+	 *            The preprocessed wikitext.
+	 * @param minChunkLength
+	 *            The minimum length of a chunk. Adjacent sections are put into
+	 *            the same chunk until it is at least this long.
+	 * @return The start offsets of the chunks, beginning with 0, or
+	 *         <code>null</code> if the text cannot be split into at least two
+	 *         chunks.
+	 */
+	public static int[] split(CharSequence text, int minChunkLength)
+	{
+		SectionSplitter splitter = new SectionSplitter(text);
+		splitter.scan();
+		return splitter.group(minChunkLength);
+	}
+	
+	/**
+	 * Determines the line number of each of the given offsets the same way
+	 * the Rats! parser counts lines: "\n", "\r" and "\r\n" each end a line.
+	 *
+	 * @param offsets
+	 *            Offsets in ascending order.
+	 */
+	public static int[] getLineNumbers(CharSequence text, int[] offsets)
+	{
+		int[] lines = new int[offsets.length];
+		
+		int line = 1;
+		int pos = 0;
+		for (int i = 0; i < offsets.length; ++i)
+		{
+			for (; pos < offsets[i]; ++pos)
+			{
+				char ch = text.charAt(pos);
+				if (ch == '\n')
+				{
+					++line;
+				}
+				else if (ch == '\r')
+				{
+					if (pos + 1 >= text.length() || text.charAt(pos + 1) != '\n')
+						++line;
+				}
+			}
+			lines[i] = line;
+		}
+		
+		return lines;
+	}
+	
+	// =========================================================================
+	
+	private void scan()
+	{
+		boolean bol = true;
+		int i = 0;
+		while (i < length && !unsafe)
+		{
+			if (bol)
+			{
+				bol = false;
+				startOfLine(i);
+			}
+			
+			char ch = text.charAt(i);
+			switch (ch)
+			{
+				case '\n':
+					bol = true;
+					++i;
+					break;
+				
+				case '[':
+					if (i + 1 < length && text.charAt(i + 1) == '[')
+					{
+						++linkDepth;
+						i += 2;
+					}
+					else
+					{
+						++i;
+					}
+					break;
+				
+				case ']':
+					if (i + 1 < length && text.charAt(i + 1) == ']')
+					{
+						if (linkDepth > 0)
+							--linkDepth;
+						i += 2;
+					}
+					else
+					{
+						++i;
+					}
+					break;
+				
+				case '<':
+					i = scanTag(i);
+					break;
+				
+				default:
+					++i;
+					break;
+			}
+		}
+	}
+	
+	private void startOfLine(int i)
+	{
+		int eol = i;
+		while (eol < length && text.charAt(eol) != '\n')
+			++eol;
+		
+		int level = getHeadingLevel(i, eol);
+		if (level > 0)
+		{
+			if (level < minLevel)
+				minLevel = level;
+			
+			if (isSafe() && isPlainHeading(i, eol))
+				addCandidate(i, level);
+		}
+		
+		int j = i;
+		while (j < eol && (text.charAt(j) == ' ' || text.charAt(j) == '\t'))
+			++j;
+		
+		if (startsWith(j, "{|"))
+		{
+			++tableDepth;
+		}
+		else if (startsWith(j, "|}"))
+		{
+			if (tableDepth > 0)
+				--tableDepth;
+		}
+	}
+	
+	private boolean isSafe()
+	{
+		return !unsafe && tableDepth == 0 && linkDepth == 0;
+	}
+	
+	/**
+	 * Returns the level the parser would assign to the heading on the given
+	 * line or 0 if the line does not look like a heading. Entities in front of
+	 * and after the heading are skipped since the parser treats comments as
+	 * transparent there.
+	 */
+	private int getHeadingLevel(int from, int to)
+	{
+		from = skipEntities(from, to);
+		
+		int end = to;
+		while (end > from)
+		{
+			char ch = text.charAt(end - 1);
+			if (ch == ' ' || ch == '\t' || ch == '\r')
+			{
+				--end;
+			}
+			else if (ch == '\uE001')
+			{
+				int start = end - 1;
+				while (start > from && text.charAt(start) != '\uE000')
+					--start;
+				if (text.charAt(start) != '\uE000')
+					break;
+				end = start;
+			}
+			else
+			{
+				break;
+			}
+		}
+		
+		int open = 0;
+		while (from + open < end && text.charAt(from + open) == '=')
+			++open;
+		if (open == 0)
+			return 0;
+		
+		int close = 0;
+		while (end - close - 1 >= from && text.charAt(end - close - 1) == '=')
+			++close;
+		
+		if (open + close > end - from)
+		{
+			// The whole line consists of equals signs
+			open = (end - from) / 2;
+			close = open;
+			if (open == 0)
+				return 0;
+		}
+		
+		return Math.min(Math.min(open, close), MAX_LEVEL);
+	}
+	
+	/**
+	 * A heading at the start of the line whose title consists of plain text
+	 * only. Such a line is always parsed as a heading.
+	 */
+	private boolean isPlainHeading(int from, int to)
+	{
+		int end = to;
+		while (end > from && (isSpace(text.charAt(end - 1)) || text.charAt(end - 1) == '\r'))
+			--end;
+		
+		int open = 0;
+		while (from + open < end && text.charAt(from + open) == '=')
+			++open;
+		
+		int close = 0;
+		while (end - close - 1 >= from && text.charAt(end - close - 1) == '=')
+			++close;
+		
+		if (open == 0 || open + close >= end - from)
+			return false;
+		
+		boolean hasText = false;
+		for (int i = from + open; i < end - close; ++i)
+		{
+			char ch = text.charAt(i);
+			switch (ch)
+			{
+				case '[':
+				case ']':
+				case '{':
+				case '}':
+				case '<':
+				case '>':
+				case '\r':
+				case '\uE000':
+				case '\uE001':
+					return false;
+				
+				default:
+					if (!isSpace(ch))
+						hasText = true;
+					break;
+			}
+		}
+		
+		return hasText;
+	}
+	
+	private int skipEntities(int from, int to)
+	{
+		while (from < to && text.charAt(from) == '\uE000')
+		{
+			int i = from + 1;
+			while (i < to && text.charAt(i) != '\uE001')
+				++i;
+			if (i >= to)
+				break;
+			from = i + 1;
+		}
+		return from;
+	}
+	
+	private int scanTag(int i)
+	{
+		if (startsWith(i, "<!--"))
+		{
+			int end = indexOf("-->", i + 4);
+			if (end < 0)
+			{
+				unsafe = true;
+				return length;
+			}
+			return end + 3;
+		}
+		
+		int j = i + 1;
+		boolean closing = (j < length && text.charAt(j) == '/');
+		if (closing)
+			++j;
+		
+		int nameStart = j;
+		while (j < length && isNameChar(text.charAt(j), j == nameStart))
+			++j;
+		if (j == nameStart)
+			return i + 1;
+		
+		String name = text.subSequence(nameStart, j).toString().toLowerCase();
+		
+		int end = j;
+		while (end < length && text.charAt(end) != '>' && text.charAt(end) != '<')
+			++end;
+		if (end >= length || text.charAt(end) != '>')
+			return i + 1;
+		
+		if (closing || text.charAt(end - 1) == '/')
+			return end + 1;
+		
+		if (name.equals("nowiki") || name.equals("pre"))
+		{
+			// The content of these elements is not wikitext
+			int close = indexOfIgnoreCase("</" + name, end + 1);
+			if (close < 0)
+			{
+				unsafe = true;
+				return length;
+			}
+			int closeEnd = close + name.length() + 2;
+			while (closeEnd < length && text.charAt(closeEnd) != '>')
+				++closeEnd;
+			return closeEnd + 1;
+		}
+		
+		// Skipping the whole tag ignores lines inside multi-line attributes
+		return end + 1;
+	}
+	
+	private void addCandidate(int offset, int level)
+	{
+		if (candidateCount == candidates.length)
+		{
+			candidates = Arrays.copyOf(candidates, candidateCount * 2);
+			candidateLevels = Arrays.copyOf(candidateLevels, candidateCount * 2);
+		}
+		candidates[candidateCount] = offset;
+		candidateLevels[candidateCount] = level;
+		++candidateCount;
+	}
+	
+	private int[] group(int minChunkLength)
+	{
+		int[] starts = new int[candidateCount + 1];
+		int count = 1;
+		
+		for (int i = 0; i < candidateCount; ++i)
+		{
+			if (candidateLevels[i] != minLevel)
+				continue;
+			
+			int offset = candidates[i];
+			if (offset - starts[count - 1] >= minChunkLength)
+				starts[count++] = offset;
+		}
+		
+		// Merge a short last chunk into its predecessor
+		if (count > 1 && length - starts[count - 1] < minChunkLength)
+			--count;
+		
+		if (count < 2)
+			return null;
+		
+		return Arrays.copyOf(starts, count);
+	}
+	
+	// =========================================================================
+	
+	private boolean startsWith(int i, String s)
+	{
+		if (i + s.length() > length)
+			return false;
+		for (int j = 0; j < s.length(); ++j)
+		{
+			if (text.charAt(i + j) != s.charAt(j))
+				return false;
+		}
+		return true;
+	}
+	
+	private int indexOf(String s, int from)
+	{
+		for (int i = from; i + s.length() <= length; ++i)
+		{
+			if (startsWith(i, s))
+				return i;
+		}
+		return -1;
+	}
+	
+	private int indexOfIgnoreCase(String s, int from)
+	{
+		outer: for (int i = from; i + s.length() <= length; ++i)
+		{
+			for (int j = 0; j < s.length(); ++j)
+			{
+				if (Character.toLowerCase(text.charAt(i + j)) != s.charAt(j))
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+	
+	private static boolean isSpace(char ch)
+	{
+		return ch == ' ' || ch == '\t';
+	}
+	
+	private static boolean isNameChar(char ch, boolean first)
+	{
+		if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))
+			return true;
+		return !first && ch >= '0' && ch <= '9';
+	}
+}
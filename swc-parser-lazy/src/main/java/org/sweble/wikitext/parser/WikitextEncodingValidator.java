@@ -26,6 +26,12 @@ import org.sweble.wikitext.parser.encval.ValidatedWikitext;
 
 public class WikitextEncodingValidator
 {
+	/**
+	 * Validates the given source. The source is first scanned for characters
+	 * that have to be wrapped as illegal code point entities. If there are
+	 * none, the source is returned as is. Otherwise the lexer only processes
+	 * the source from the first offending character onwards.
+	 */
 	public ValidatedWikitext validate(
 			ParserConfig parserConfig,
 			WtEntityMap entityMap,
@@ -33,12 +39,23 @@ public class WikitextEncodingValidator
 			String source)
 			throws IOException
 	{
+		int start = findFirstIllegalCodePoint(source);
+		if (start == -1)
+			return new ValidatedWikitext(source, entityMap);
+		
+		// An isolated low surrogate is matched together with its predecessor
+		if (start > 0 && Character.isLowSurrogate(source.charAt(start)))
+			--start;
+		
 		StringReader in = new StringReader(source);
+		in.skip(start);
+		
 		EncodingValidatorLexer lexer = new EncodingValidatorLexer(in);
 		
 		lexer.setFile(title);
 		lexer.setEntityMap(entityMap);
 		lexer.setWikitextNodeFactory(parserConfig.getNodeFactory());
+		lexer.skipValidPrefix(source, start);
 		
 		while (lexer.yylex() != null)
 			;
@@ -67,6 +84,69 @@ public class WikitextEncodingValidator
 		return new ValidatedWikitext(lexer.getWikitext(), entityMap);
 	}
 	
+	/**
+	 * Finds the first character that the encoding validator lexer would wrap
+	 * as illegal code point: control characters, isolated surrogates,
+	 * non-characters and private use characters.
+	 * 
+	 * @return The offset of the first such character or -1 if there is none.
+	 */
+	public static int findFirstIllegalCodePoint(String source)
+	{
+		final int len = source.length();
+		for (int i = 0; i < len; ++i)
+		{
+			char ch = source.charAt(i);
+			
+			// By far the most common case
+			if (ch >= 0x20 && ch < 0x7F)
+				continue;
+			
+			if (ch < 0x20)
+			{
+				// Mirrors CONTROL_CHAR: [\u0000-\u0008\u000B\u000C\u000E-\u0019]
+				if (ch <= 0x08 || ch == 0x0B || ch == 0x0C || (ch >= 0x0E && ch <= 0x19))
+					return i;
+			}
+			else if (ch == 0x7F)
+			{
+				return i;
+			}
+			else if (ch >= 0xD800 && ch <= 0xDBFF)
+			{
+				// A high surrogate at the very end is not matched by the lexer
+				if (i + 1 == len)
+					return -1;
+				
+				char low = source.charAt(i + 1);
+				if (!Character.isLowSurrogate(low))
+					return i;
+				
+				// Planes 15 and 16 are private use (or non-characters)
+				if (ch >= 0xDB80)
+					return i;
+				
+				// U+xxFFFE and U+xxFFFF are non-characters
+				if (low >= 0xDFFE && (ch & 0x3F) == 0x3F)
+					return i;
+				
+				++i;
+			}
+			else if (ch >= 0xDC00 && ch <= 0xF8FF)
+			{
+				// Isolated low surrogate or private use character
+				return i;
+			}
+			else if ((ch >= 0xFDD0 && ch <= 0xFDEF) || ch >= 0xFFFE)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	// =========================================================================
+	
 	public ValidatedWikitext validate(
 			ParserConfig parserConfig,
 			String source,
@@ -19,12 +19,19 @@ package org.sweble.wikitext.parser;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.sweble.wikitext.parser.nodes.WtNode;
 import org.sweble.wikitext.parser.nodes.WtParsedWikitextPage;
 import org.sweble.wikitext.parser.parser.RatsWikitextParser;
 import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.ParserStats;
 
 import xtc.parser.ParseError;
 import xtc.parser.ParseException;
@@ -40,6 +47,20 @@ public class WikitextParser
 	
 	private RatsWikitextParser parser;
 	
+	private ExecutorService sectionExecutor;
+	
+	/**
+	 * Rats! parsers of the threads of the section executor. The thread local
+	 * belongs to this parser and the executor it was set up for, so that the
+	 * threads do not keep parsers alive once the executor is replaced or this
+	 * parser is gone.
+	 */
+	private ThreadLocal<RatsWikitextParser> sectionParsers;
+	
+	private int minSectionChunkLength;
+	
+	private ParserStats stats;
+	
 	// =========================================================================
 	
 	public WikitextParser(ParserConfig config)
@@ -55,6 +76,61 @@ public class WikitextParser
 		return config;
 	}
 	
+	/**
+	 * Enables parsing the top-level sections of large pages concurrently.
+	 *
+	 * Pages which are at least twice as long as the given chunk length are
+	 * cut into chunks at top-level headings that are safe to split at (see
+	 * {@link SectionSplitter}). The first chunk is parsed on the calling
+	 * thread, the others are handed to the executor. Chunks which have not
+	 * been picked up by the executor once the calling thread has finished its
+	 * chunk are parsed by the calling thread as well. The sections of all
+	 * chunks are then joined into one page which is identical to the page
+	 * parsed sequentially. If a chunk fails to parse the whole page is parsed
+	 * again sequentially to report the same error.
+	 *
+	 * @param executor
+	 *            The executor to parse chunks on, or <code>null</code> to
+	 *            disable concurrent parsing.
+	 * @param minChunkLength
+	 *            The minimum length of a chunk in characters.
+	 */
+	public void setSectionExecutor(ExecutorService executor, int minChunkLength)
+	{
+		if (executor != null && minChunkLength <= 0)
+			throw new IllegalArgumentException("minChunkLength must be positive");
+		
+		if (executor != sectionExecutor)
+		{
+			this.sectionParsers = (executor != null) ?
+					new ThreadLocal<RatsWikitextParser>() :
+					null;
+		}
+		
+		this.sectionExecutor = executor;
+		this.minSectionChunkLength = minChunkLength;
+	}
+	
+	/**
+	 * Enables recording memoization statistics. Each thread parsing on behalf
+	 * of this parser, including the threads parsing sections concurrently,
+	 * records into its own recorder and merges it into the given statistics
+	 * once its parse has finished.
+	 *
+	 * @param stats
+	 *            The statistics to record into, or <code>null</code> to
+	 *            disable recording.
+	 */
+	public void setStats(ParserStats stats)
+	{
+		this.stats = stats;
+	}
+	
+	public ParserStats getStats()
+	{
+		return stats;
+	}
+	
 	// =========================================================================
 	
 	@Override
@@ -66,57 +142,222 @@ public class WikitextParser
 		return parseArticle(ppWt, title);
 	}
 	
+	/**
+	 * Parses the given wikitext. The underlying Rats! parser is created on
+	 * the first call and reset for subsequent calls, which allows the
+	 * character buffer and the memoization table to be reused across pages.
+	 * Consequently, a WikitextParser instance must not be used by multiple
+	 * threads concurrently.
+	 */
 	public WtNode parseArticle(PreprocessedWikitext wikitext, String title) throws IOException, ParseException
 	{
-		Reader in = new StringReader(wikitext.getWikitext());
+		if (sectionExecutor != null && wikitext.length() >= 2 * minSectionChunkLength)
+		{
+			int[] chunks = SectionSplitter.split(
+					wikitext.getWikitext(),
+					minSectionChunkLength);
+			
+			if (chunks != null)
+			{
+				WtParsedWikitextPage page = parseChunks(wikitext, title, chunks);
+				if (page != null)
+					return (WtNode) process(page);
+			}
+		}
+		
+		return (WtNode) process(parse(getParser(wikitext, title), wikitext, title, 1));
+	}
+	
+	// =========================================================================
+	
+	private RatsWikitextParser getParser(PreprocessedWikitext wikitext, String title)
+	{
+		if (parser == null)
+			parser = new RatsWikitextParser(wikitext.getReader(), title, wikitext.length());
+		return parser;
+	}
+	
+	private WtParsedWikitextPage parse(
+			RatsWikitextParser parser,
+			PreprocessedWikitext wikitext,
+			String title,
+			int firstLine) throws IOException, ParseException
+	{
+		Reader in = wikitext.getReader();
 		
-		int inputSize = wikitext.getWikitext().getBytes().length;
+		int inputSize = wikitext.length();
 		
-		parser = new RatsWikitextParser(in, title, inputSize);
+		parser.reset(in, title, inputSize, firstLine);
 		
-		parser.getState().init(config, wikitext.getEntityMap());
+		parser.getState().init(config, wikitext);
 		
 		parser.setNodeFactory(config.getNodeFactory());
 		
-		Result r = null;
+		ParserStats.Recorder recorder = (stats != null) ? stats.getRecorder() : null;
+		
+		parser.setStatsRecorder(recorder);
 		
-		//RatsWikitextParser.enableStats();
+		try
+		{
+			Result r = parser.pArticle(0);
+			
+			if (r.hasValue())
+			{
+				SemanticValue v = (SemanticValue) r;
+				
+				if (v.value instanceof WtParsedWikitextPage)
+				{
+					return (WtParsedWikitextPage) v.value;
+				}
+				else
+				{
+					throw new ParseException(
+							"Internal parser error: Unexpected parser result type!");
+				}
+			}
+			else
+			{
+				ParseError err = (ParseError) r;
+				
+				if (err.index == -1)
+				{
+					throw new ParseException(
+							"Parse error: No information available");
+				}
+				else
+				{
+					throw new ParseException(String.format(
+							"%s: %s",
+							parser.location(err.index),
+							err.msg));
+				}
+			}
+		}
+		finally
 		{
-			r = this.parser.pArticle(0);
+			parser.clearMemoTable();
+			
+			if (recorder != null)
+				recorder.commit();
 		}
-		if (RatsWikitextParser.isStatsEnabled())
-			RatsWikitextParser.getStats().dump(System.err);
+	}
+	
+	/**
+	 * @return The joined page or <code>null</code> if a chunk could not be
+	 *         parsed.
+	 */
+	private WtParsedWikitextPage parseChunks(
+			PreprocessedWikitext wikitext,
+			String title,
+			int[] chunks) throws IOException, ParseException
+	{
+		String text = wikitext.getWikitext();
+		
+		int[] firstLines = SectionSplitter.getLineNumbers(text, chunks);
+		
+		List<FutureTask<WtParsedWikitextPage>> tasks =
+				new ArrayList<FutureTask<WtParsedWikitextPage>>(chunks.length - 1);
 		
-		if (r.hasValue())
+		for (int i = 1; i < chunks.length; ++i)
 		{
-			SemanticValue v = (SemanticValue) r;
+			int to = (i + 1 < chunks.length) ? chunks[i + 1] : text.length();
+			
+			FutureTask<WtParsedWikitextPage> task = new FutureTask<WtParsedWikitextPage>(
+					new ChunkParser(
+							sectionParsers,
+							wikitext.slice(chunks[i], to),
+							title,
+							firstLines[i]));
+			
+			tasks.add(task);
 			
-			if (v.value instanceof WtParsedWikitextPage)
+			try
 			{
-				return (WtNode) process((WtParsedWikitextPage) v.value);
+				sectionExecutor.execute(task);
 			}
-			else
+			catch (RejectedExecutionException e)
 			{
-				throw new ParseException(
-						"Internal parser error: Unexpected parser result type!");
+				// The task will be run by this thread
 			}
 		}
-		else
+		
+		try
 		{
-			ParseError err = (ParseError) r;
+			WtParsedWikitextPage page = parse(
+					getParser(wikitext, title),
+					wikitext.slice(0, chunks[1]),
+					title,
+					1);
+			
+			// Parse the chunks no worker has started on yet
+			for (FutureTask<WtParsedWikitextPage> task : tasks)
+				task.run();
 			
-			if (err.index == -1)
+			for (FutureTask<WtParsedWikitextPage> task : tasks)
 			{
-				throw new ParseException(
-						"Parse error: No information available");
+				for (WtNode section : task.get())
+					page.add(section);
 			}
-			else
+			
+			return page;
+		}
+		catch (ParseException e)
+		{
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			return null;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		finally
+		{
+			for (FutureTask<WtParsedWikitextPage> task : tasks)
+				task.cancel(false);
+		}
+	}
+	
+	// =========================================================================
+	
+	private final class ChunkParser
+			implements
+				Callable<WtParsedWikitextPage>
+	{
+		private final ThreadLocal<RatsWikitextParser> parsers;
+		
+		private final PreprocessedWikitext chunk;
+		
+		private final String title;
+		
+		private final int firstLine;
+		
+		public ChunkParser(
+				ThreadLocal<RatsWikitextParser> parsers,
+				PreprocessedWikitext chunk,
+				String title,
+				int firstLine)
+		{
+			this.parsers = parsers;
+			this.chunk = chunk;
+			this.title = title;
+			this.firstLine = firstLine;
+		}
+		
+		@Override
+		public WtParsedWikitextPage call() throws Exception
+		{
+			RatsWikitextParser p = parsers.get();
+			if (p == null)
 			{
-				throw new ParseException(String.format(
-						"%s: %s",
-						parser.location(err.index),
-						err.msg));
+				p = new RatsWikitextParser(chunk.getReader(), title, chunk.length());
+				parsers.set(p);
 			}
+			
+			return parse(p, chunk, title, firstLine);
 		}
 	}
 }
@@ -25,11 +25,18 @@ public class WikitextPostprocessor
 {
 	private final ParserConfig config;
 	
+	private final TreeBuilder treeBuilder;
+	
 	// =========================================================================
 	
+	/**
+	 * The postprocessor keeps a tree builder which is reused for every page
+	 * it processes. An instance must therefore not be shared between threads.
+	 */
 	public WikitextPostprocessor(ParserConfig config)
 	{
 		this.config = config;
+		this.treeBuilder = new TreeBuilder(config);
 	}
 	
 	// =========================================================================
@@ -39,7 +46,7 @@ public class WikitextPostprocessor
 		WtNode result = ast;
 		
 		result = TicksAnalyzer.process(config, result);
-		result = TreeBuilder.process(config, result);
+		result = treeBuilder.build(result);
 		
 		return result;
 	}
@@ -63,54 +63,73 @@ public class WikitextPreprocessor
 		return parseArticle(new ValidatedWikitext(src, new WtEntityMapImpl()), title, false);
 	}
 	
+	/**
+	 * Preprocesses the given wikitext. The underlying Rats! parser is created
+	 * on the first call and reset for subsequent calls, which allows the
+	 * character buffer and the memoization table to be reused across pages.
+	 * Consequently, a WikitextPreprocessor instance must not be used by
+	 * multiple threads concurrently.
+	 */
 	public WtNode parseArticle(
 			ValidatedWikitext wikitext,
 			String title,
 			boolean forInclusion) throws IOException, ParseException
 	{
-		Reader in = new StringReader(wikitext.getWikitext());
+		String src = wikitext.getWikitext();
 		
-		int inputSize = wikitext.getWikitext().getBytes().length;
+		Reader in = new StringReader(src);
 		
-		preprocessor = new RatsWikitextPreprocessor(in, title, inputSize);
+		int inputSize = src.length();
+		
+		if (preprocessor == null)
+			preprocessor = new RatsWikitextPreprocessor(in, title, inputSize);
+		else
+			preprocessor.reset(in, title, inputSize);
 		
 		preprocessor.getState().init(config, wikitext.getEntityMap(), forInclusion);
 		
 		preprocessor.setNodeFactory(config.getNodeFactory());
 		
-		Result r = this.preprocessor.pArticle(0);
-		
-		if (r.hasValue())
+		try
 		{
-			SemanticValue v = (SemanticValue) r;
+			Result r = this.preprocessor.pArticle(0);
 			
-			if (v.value instanceof WtPreproWikitextPage)
+			if (r.hasValue())
 			{
-				return (WtNode) process((WtPreproWikitextPage) v.value);
+				SemanticValue v = (SemanticValue) r;
+				
+				if (v.value instanceof WtPreproWikitextPage)
+				{
+					return (WtNode) process((WtPreproWikitextPage) v.value);
+				}
+				else
+				{
+					throw new ParseException(
+							"Internal preprocessor error: " +
+									"Unexpected preprocessor result type!");
+				}
 			}
 			else
 			{
-				throw new ParseException(
-						"Internal preprocessor error: " +
-								"Unexpected preprocessor result type!");
+				ParseError err = (ParseError) r;
+				
+				if (err.index == -1)
+				{
+					throw new ParseException(
+							"Parse error: No information available");
+				}
+				else
+				{
+					throw new ParseException(String.format(
+							"%s: %s",
+							preprocessor.location(err.index),
+							err.msg));
+				}
 			}
 		}
-		else
+		finally
 		{
-			ParseError err = (ParseError) r;
-			
-			if (err.index == -1)
-			{
-				throw new ParseException(
-						"Parse error: No information available");
-			}
-			else
-			{
-				throw new ParseException(String.format(
-						"%s: %s",
-						preprocessor.location(err.index),
-						err.msg));
-			}
+			preprocessor.clearMemoTable();
 		}
 	}
 }
@@ -0,0 +1,406 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.nodes;
+
+/**
+ * Dispatches a node to the matching visit() method of a complete wikitext
+ * visitor by switching on the node type id. Unlike the reflective dispatch of
+ * the ptk visitors this requires no method lookup and the calls can be inlined
+ * by the JIT.
+ * 
+ * This class is generated by CompleteWikitextDispatcherGenerator (see the
+ * tests of this module) from the node type ids declared in {@link WtNode} and
+ * the methods of {@link CompleteWikitextVisitor}. Do not edit it by hand.
+ * 
+ * Nodes are passed to the visit() method of the type that declares their node
+ * type id. For nodes whose type is not covered by the complete visitor
+ * interfaces (e.g. language conversion nodes or custom nodes) the dispatcher
+ * returns {@link #NOT_FOUND}. Visitors should extend
+ * {@link WtDispatchingVisitor}, which falls back to the reflective dispatch
+ * in that case.
+ */
+public final class CompleteWikitextDispatcher
+{
+	/**
+	 * Returned if the type of the given node is not covered by the complete
+	 * visitor interfaces.
+	 */
+	public static final Object NOT_FOUND = new Object();
+	
+	// =========================================================================
+	
+	private CompleteWikitextDispatcher()
+	{
+	}
+	
+	// =========================================================================
+	
+	public static <T> Object dispatch(CompleteWikitextVisitor<T> v, WtNode n)
+	{
+		switch (n.getNodeType())
+		{
+			case WtNode.NT_NODE_LIST:
+				return v.visit((WtNodeList) n);
+			case WtNode.NT_TEXT:
+				return v.visit((WtText) n);
+			case WtNode.NT_NEWLINE:
+				return v.visit((WtNewline) n);
+			case WtNode.NT_WHITESPACE:
+				return v.visit((WtWhitespace) n);
+			case WtNode.NT_IGNORED:
+				return v.visit((WtIgnored) n);
+			case WtNode.NT_ILLEGAL_CODE_POINT:
+				return v.visit((WtIllegalCodePoint) n);
+			case WtNode.NT_XML_COMMENT:
+				return v.visit((WtXmlComment) n);
+			case WtNode.NT_TAG_EXTENSION:
+				return v.visit((WtTagExtension) n);
+			case WtNode.NT_TEMPLATE:
+				return v.visit((WtTemplate) n);
+			case WtNode.NT_TEMPLATE_ARGUMENT:
+				return v.visit((WtTemplateArgument) n);
+			case WtNode.NT_TEMPLATE_PARAMETER:
+				return v.visit((WtTemplateParameter) n);
+			case WtNode.NT_ONLY_INCLUDE:
+				return v.visit((WtOnlyInclude) n);
+			case WtNode.NT_REDIRECT:
+				return v.visit((WtRedirect) n);
+			case WtNode.NT_NAME:
+				return v.visit((WtName) n);
+			case WtNode.NT_TEMPLATE_ARGUMENTS:
+				return v.visit((WtTemplateArguments) n);
+			case WtNode.NT_VALUE:
+				return v.visit((WtValue) n);
+			case WtNode.NT_TAG_EXTENSION_BODY:
+				return v.visit((WtTagExtensionBody) n);
+			case WtNode.NT_PARSED_WIKITEXT_PAGE:
+				if (n instanceof WtParsedWikitextPage)
+					return v.visit((WtParsedWikitextPage) n);
+				if (n instanceof WtPreproWikitextPage)
+					return v.visit((WtPreproWikitextPage) n);
+				break;
+			case WtNode.NT_PARAGRAPH:
+				return v.visit((WtParagraph) n);
+			case WtNode.NT_HORIZONTAL_RULE:
+				return v.visit((WtHorizontalRule) n);
+			case WtNode.NT_URL:
+				return v.visit((WtUrl) n);
+			case WtNode.NT_EXTERNAL_LINK:
+				return v.visit((WtExternalLink) n);
+			case WtNode.NT_INTERNAL_LINK:
+				return v.visit((WtInternalLink) n);
+			case WtNode.NT_IMAGE_LINK:
+				return v.visit((WtImageLink) n);
+			case WtNode.NT_LINK_OPTION_ALT_TEXT:
+				return v.visit((WtLinkOptionAltText) n);
+			case WtNode.NT_LINK_OPTION_GARBAGE:
+				return v.visit((WtLinkOptionGarbage) n);
+			case WtNode.NT_LINK_OPTION_KEYWORD:
+				return v.visit((WtLinkOptionKeyword) n);
+			case WtNode.NT_LINK_OPTION_LINK_TARGET:
+				return v.visit((WtLinkOptionLinkTarget) n);
+			case WtNode.NT_LINK_OPTION_RESIZE:
+				return v.visit((WtLinkOptionResize) n);
+			case WtNode.NT_PAGE_NAME:
+				return v.visit((WtPageName) n);
+			case WtNode.NT_LINK_TITLE:
+				return v.visit((WtLinkTitle) n);
+			case WtNode.NT_TABLE:
+				return v.visit((WtTable) n);
+			case WtNode.NT_TABLE_CAPTION:
+				return v.visit((WtTableCaption) n);
+			case WtNode.NT_TABLE_ROW:
+				return v.visit((WtTableRow) n);
+			case WtNode.NT_TABLE_CELL:
+				return v.visit((WtTableCell) n);
+			case WtNode.NT_TABLE_HEADER:
+				return v.visit((WtTableHeader) n);
+			case WtNode.NT_TICKS:
+				return v.visit((WtTicks) n);
+			case WtNode.NT_BOLD:
+				return v.visit((WtBold) n);
+			case WtNode.NT_ITALICS:
+				return v.visit((WtItalics) n);
+			case WtNode.NT_DEFINITION_LIST_DEF:
+				return v.visit((WtDefinitionListDef) n);
+			case WtNode.NT_DEFINITION_LIST:
+				return v.visit((WtDefinitionList) n);
+			case WtNode.NT_DEFINITION_LIST_TERM:
+				return v.visit((WtDefinitionListTerm) n);
+			case WtNode.NT_ORDERED_LIST:
+				return v.visit((WtOrderedList) n);
+			case WtNode.NT_UNORDERED_LIST:
+				return v.visit((WtUnorderedList) n);
+			case WtNode.NT_LIST_ITEM:
+				return v.visit((WtListItem) n);
+			case WtNode.NT_SEMI_PRE:
+				return v.visit((WtSemiPre) n);
+			case WtNode.NT_SEMI_PRE_LINE:
+				return v.visit((WtSemiPreLine) n);
+			case WtNode.NT_XML_ATTRIBUTE:
+				return v.visit((WtXmlAttribute) n);
+			case WtNode.NT_XML_ATTRIBUTE_GARBAGE:
+				return v.visit((WtXmlAttributeGarbage) n);
+			case WtNode.NT_XML_CHAR_REF:
+				return v.visit((WtXmlCharRef) n);
+			case WtNode.NT_XML_ELEMENT:
+				return v.visit((WtXmlElement) n);
+			case WtNode.NT_XML_ENTITY_REF:
+				return v.visit((WtXmlEntityRef) n);
+			case WtNode.NT_XML_END_TAG:
+				return v.visit((WtXmlEndTag) n);
+			case WtNode.NT_XML_EMPTY_TAG:
+				return v.visit((WtXmlEmptyTag) n);
+			case WtNode.NT_XML_START_TAG:
+				return v.visit((WtXmlStartTag) n);
+			case WtNode.NT_HEADING:
+				return v.visit((WtHeading) n);
+			case WtNode.NT_SECTION:
+				return v.visit((WtSection) n);
+			case WtNode.NT_PAGE_SWITCH:
+				return v.visit((WtPageSwitch) n);
+			case WtNode.NT_SIGNATURE:
+				return v.visit((WtSignature) n);
+			case WtNode.NT_BODY:
+				return v.visit((WtBody) n);
+			case WtNode.NT_LINK_OPTIONS:
+				return v.visit((WtLinkOptions) n);
+			case WtNode.NT_XML_ATTRIBUTES:
+				return v.visit((WtXmlAttributes) n);
+			case WtNode.NT_IM_START_TAG:
+				return v.visit((WtImStartTag) n);
+			case WtNode.NT_IM_END_TAG:
+				return v.visit((WtImEndTag) n);
+			case WtNode.NT_TABLE_IMPLICIT_TBODY:
+				return v.visit((WtTableImplicitTableBody) n);
+		}
+		return NOT_FOUND;
+	}
+	
+	public static Object dispatch(CompleteWikitextVisitorNoReturn v, WtNode n)
+	{
+		switch (n.getNodeType())
+		{
+			case WtNode.NT_NODE_LIST:
+				v.visit((WtNodeList) n);
+				return null;
+			case WtNode.NT_TEXT:
+				v.visit((WtText) n);
+				return null;
+			case WtNode.NT_NEWLINE:
+				v.visit((WtNewline) n);
+				return null;
+			case WtNode.NT_WHITESPACE:
+				v.visit((WtWhitespace) n);
+				return null;
+			case WtNode.NT_IGNORED:
+				v.visit((WtIgnored) n);
+				return null;
+			case WtNode.NT_ILLEGAL_CODE_POINT:
+				v.visit((WtIllegalCodePoint) n);
+				return null;
+			case WtNode.NT_XML_COMMENT:
+				v.visit((WtXmlComment) n);
+				return null;
+			case WtNode.NT_TAG_EXTENSION:
+				v.visit((WtTagExtension) n);
+				return null;
+			case WtNode.NT_TEMPLATE:
+				v.visit((WtTemplate) n);
+				return null;
+			case WtNode.NT_TEMPLATE_ARGUMENT:
+				v.visit((WtTemplateArgument) n);
+				return null;
+			case WtNode.NT_TEMPLATE_PARAMETER:
+				v.visit((WtTemplateParameter) n);
+				return null;
+			case WtNode.NT_ONLY_INCLUDE:
+				v.visit((WtOnlyInclude) n);
+				return null;
+			case WtNode.NT_REDIRECT:
+				v.visit((WtRedirect) n);
+				return null;
+			case WtNode.NT_NAME:
+				v.visit((WtName) n);
+				return null;
+			case WtNode.NT_TEMPLATE_ARGUMENTS:
+				v.visit((WtTemplateArguments) n);
+				return null;
+			case WtNode.NT_VALUE:
+				v.visit((WtValue) n);
+				return null;
+			case WtNode.NT_TAG_EXTENSION_BODY:
+				v.visit((WtTagExtensionBody) n);
+				return null;
+			case WtNode.NT_PARSED_WIKITEXT_PAGE:
+				if (n instanceof WtParsedWikitextPage)
+				{
+					v.visit((WtParsedWikitextPage) n);
+					return null;
+				}
+				if (n instanceof WtPreproWikitextPage)
+				{
+					v.visit((WtPreproWikitextPage) n);
+					return null;
+				}
+				break;
+			case WtNode.NT_PARAGRAPH:
+				v.visit((WtParagraph) n);
+				return null;
+			case WtNode.NT_HORIZONTAL_RULE:
+				v.visit((WtHorizontalRule) n);
+				return null;
+			case WtNode.NT_URL:
+				v.visit((WtUrl) n);
+				return null;
+			case WtNode.NT_EXTERNAL_LINK:
+				v.visit((WtExternalLink) n);
+				return null;
+			case WtNode.NT_INTERNAL_LINK:
+				v.visit((WtInternalLink) n);
+				return null;
+			case WtNode.NT_IMAGE_LINK:
+				v.visit((WtImageLink) n);
+				return null;
+			case WtNode.NT_LINK_OPTION_ALT_TEXT:
+				v.visit((WtLinkOptionAltText) n);
+				return null;
+			case WtNode.NT_LINK_OPTION_GARBAGE:
+				v.visit((WtLinkOptionGarbage) n);
+				return null;
+			case WtNode.NT_LINK_OPTION_KEYWORD:
+				v.visit((WtLinkOptionKeyword) n);
+				return null;
+			case WtNode.NT_LINK_OPTION_LINK_TARGET:
+				v.visit((WtLinkOptionLinkTarget) n);
+				return null;
+			case WtNode.NT_LINK_OPTION_RESIZE:
+				v.visit((WtLinkOptionResize) n);
+				return null;
+			case WtNode.NT_PAGE_NAME:
+				v.visit((WtPageName) n);
+				return null;
+			case WtNode.NT_LINK_TITLE:
+				v.visit((WtLinkTitle) n);
+				return null;
+			case WtNode.NT_TABLE:
+				v.visit((WtTable) n);
+				return null;
+			case WtNode.NT_TABLE_CAPTION:
+				v.visit((WtTableCaption) n);
+				return null;
+			case WtNode.NT_TABLE_ROW:
+				v.visit((WtTableRow) n);
+				return null;
+			case WtNode.NT_TABLE_CELL:
+				v.visit((WtTableCell) n);
+				return null;
+			case WtNode.NT_TABLE_HEADER:
+				v.visit((WtTableHeader) n);
+				return null;
+			case WtNode.NT_TICKS:
+				v.visit((WtTicks) n);
+				return null;
+			case WtNode.NT_BOLD:
+				v.visit((WtBold) n);
+				return null;
+			case WtNode.NT_ITALICS:
+				v.visit((WtItalics) n);
+				return null;
+			case WtNode.NT_DEFINITION_LIST_DEF:
+				v.visit((WtDefinitionListDef) n);
+				return null;
+			case WtNode.NT_DEFINITION_LIST:
+				v.visit((WtDefinitionList) n);
+				return null;
+			case WtNode.NT_DEFINITION_LIST_TERM:
+				v.visit((WtDefinitionListTerm) n);
+				return null;
+			case WtNode.NT_ORDERED_LIST:
+				v.visit((WtOrderedList) n);
+				return null;
+			case WtNode.NT_UNORDERED_LIST:
+				v.visit((WtUnorderedList) n);
+				return null;
+			case WtNode.NT_LIST_ITEM:
+				v.visit((WtListItem) n);
+				return null;
+			case WtNode.NT_SEMI_PRE:
+				v.visit((WtSemiPre) n);
+				return null;
+			case WtNode.NT_SEMI_PRE_LINE:
+				v.visit((WtSemiPreLine) n);
+				return null;
+			case WtNode.NT_XML_ATTRIBUTE:
+				v.visit((WtXmlAttribute) n);
+				return null;
+			case WtNode.NT_XML_ATTRIBUTE_GARBAGE:
+				v.visit((WtXmlAttributeGarbage) n);
+				return null;
+			case WtNode.NT_XML_CHAR_REF:
+				v.visit((WtXmlCharRef) n);
+				return null;
+			case WtNode.NT_XML_ELEMENT:
+				v.visit((WtXmlElement) n);
+				return null;
+			case WtNode.NT_XML_ENTITY_REF:
+				v.visit((WtXmlEntityRef) n);
+				return null;
+			case WtNode.NT_XML_END_TAG:
+				v.visit((WtXmlEndTag) n);
+				return null;
+			case WtNode.NT_XML_EMPTY_TAG:
+				v.visit((WtXmlEmptyTag) n);
+				return null;
+			case WtNode.NT_XML_START_TAG:
+				v.visit((WtXmlStartTag) n);
+				return null;
+			case WtNode.NT_HEADING:
+				v.visit((WtHeading) n);
+				return null;
+			case WtNode.NT_SECTION:
+				v.visit((WtSection) n);
+				return null;
+			case WtNode.NT_PAGE_SWITCH:
+				v.visit((WtPageSwitch) n);
+				return null;
+			case WtNode.NT_SIGNATURE:
+				v.visit((WtSignature) n);
+				return null;
+			case WtNode.NT_BODY:
+				v.visit((WtBody) n);
+				return null;
+			case WtNode.NT_LINK_OPTIONS:
+				v.visit((WtLinkOptions) n);
+				return null;
+			case WtNode.NT_XML_ATTRIBUTES:
+				v.visit((WtXmlAttributes) n);
+				return null;
+			case WtNode.NT_IM_START_TAG:
+				v.visit((WtImStartTag) n);
+				return null;
+			case WtNode.NT_IM_END_TAG:
+				v.visit((WtImEndTag) n);
+				return null;
+			case WtNode.NT_TABLE_IMPLICIT_TBODY:
+				v.visit((WtTableImplicitTableBody) n);
+				return null;
+		}
+		return NOT_FOUND;
+	}
+}
@@ -284,4 +284,13 @@ public interface WikitextNodeFactory
 	// -- Text -----------------------------------------------------------------
 	
 	WtText text(String content);
+	
+	// -- Deserialization ------------------------------------------------------
+	
+	/**
+	 * Tells whether this factory knows the given node class, that is, whether
+	 * instantiateNode() creates nodes of this class from a prototype or an
+	 * immutable instance instead of invoking a constructor by reflection.
+	 */
+	boolean isKnownNodeClass(Class<?> clazz);
 }
@@ -268,6 +268,12 @@ public class WikitextNodeFactoryImpl
 		return super.instantiateNode(clazz);
 	}
 	
+	@Override
+	public boolean isKnownNodeClass(Class<?> clazz)
+	{
+		return prototypes.containsKey(clazz) || immutables.containsKey(clazz);
+	}
+	
 	@Override
 	public WtNode instantiateDefaultChild(
 			NodeFactory.NamedMemberId id, Class<?> type)
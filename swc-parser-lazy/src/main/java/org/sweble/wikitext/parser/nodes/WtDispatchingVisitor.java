@@ -0,0 +1,174 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.nodes;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.fau.cs.osr.ptk.common.AstVisitor;
+
+/**
+ * A visitor which dispatches nodes by their node type id if it implements
+ * {@link CompleteWikitextVisitor} or {@link CompleteWikitextVisitorNoReturn}.
+ * See {@link CompleteWikitextDispatcher}. Nodes whose type is not covered by
+ * the complete visitor interfaces go through the reflective dispatch of the
+ * {@link AstVisitor}.
+ *
+ * The dispatch by node type id passes a node to the visit() method of the
+ * type that declares its node type id. The reflective dispatch passes it to
+ * the visit() method of its most specific type instead. If the class of a
+ * visitor declares a public visit() method for a node type that is more
+ * specific than a type of the complete visitor interfaces, nodes of that type
+ * are dispatched reflectively, so that such methods are still called.
+ */
+public abstract class WtDispatchingVisitor
+		extends
+			AstVisitor<WtNode>
+{
+	private static final Class<?>[] NONE = new Class<?>[0];
+	
+	private static final ConcurrentHashMap<Class<?>, Class<?>[]> reflectivelyDispatchedTypes =
+			new ConcurrentHashMap<Class<?>, Class<?>[]>();
+	
+	private static Set<Class<?>> visitedTypes;
+	
+	// =========================================================================
+	
+	private final boolean byNodeType;
+	
+	private final Class<?>[] reflectiveTypes;
+	
+	// =========================================================================
+	
+	protected WtDispatchingVisitor()
+	{
+		this.byNodeType = isCompleteVisitor(getClass());
+		this.reflectiveTypes = getReflectivelyDispatchedTypes(getClass());
+	}
+	
+	// =========================================================================
+	
+	@Override
+	protected Object dispatch(WtNode node)
+	{
+		if (byNodeType && !isDispatchedReflectively(node))
+		{
+			Object result;
+			if (this instanceof CompleteWikitextVisitorNoReturn)
+			{
+				result = CompleteWikitextDispatcher.dispatch(
+						(CompleteWikitextVisitorNoReturn) this,
+						node);
+			}
+			else
+			{
+				result = CompleteWikitextDispatcher.dispatch(
+						(CompleteWikitextVisitor<?>) this,
+						node);
+			}
+			
+			if (result != CompleteWikitextDispatcher.NOT_FOUND)
+				return result;
+		}
+		
+		return super.dispatch(node);
+	}
+	
+	private boolean isDispatchedReflectively(WtNode node)
+	{
+		for (Class<?> type : reflectiveTypes)
+		{
+			if (type.isInstance(node))
+				return true;
+		}
+		return false;
+	}
+	
+	// =========================================================================
+	
+	private static boolean isCompleteVisitor(Class<?> visitorClass)
+	{
+		return CompleteWikitextVisitorNoReturn.class.isAssignableFrom(visitorClass) ||
+				CompleteWikitextVisitor.class.isAssignableFrom(visitorClass);
+	}
+	
+	/**
+	 * Returns the node types for which the given visitor class declares a
+	 * public visit() method although they are more specific than a type of the
+	 * complete visitor interfaces. Instances of the visitor class dispatch
+	 * nodes of these types reflectively.
+	 */
+	public static Class<?>[] getReflectivelyDispatchedTypes(Class<?> visitorClass)
+	{
+		Class<?>[] result = reflectivelyDispatchedTypes.get(visitorClass);
+		if (result == null)
+		{
+			result = findReflectivelyDispatchedTypes(visitorClass);
+			reflectivelyDispatchedTypes.put(visitorClass, result);
+		}
+		return result;
+	}
+	
+	private static Class<?>[] findReflectivelyDispatchedTypes(Class<?> visitorClass)
+	{
+		if (!isCompleteVisitor(visitorClass))
+			return NONE;
+		
+		Set<Class<?>> visitedTypes = getVisitedTypes();
+		Set<Class<?>> types = new HashSet<Class<?>>();
+		
+		// The reflective dispatch only finds public methods
+		for (Method m : visitorClass.getMethods())
+		{
+			if (!m.getName().equals("visit") || m.getParameterTypes().length != 1)
+				continue;
+			
+			Class<?> type = m.getParameterTypes()[0];
+			if (visitedTypes.contains(type))
+				continue;
+			
+			for (Class<?> visitedType : visitedTypes)
+			{
+				if (visitedType.isAssignableFrom(type))
+				{
+					types.add(type);
+					break;
+				}
+			}
+		}
+		
+		return types.isEmpty() ? NONE : types.toArray(new Class<?>[types.size()]);
+	}
+	
+	private static synchronized Set<Class<?>> getVisitedTypes()
+	{
+		if (visitedTypes == null)
+		{
+			Set<Class<?>> types = new HashSet<Class<?>>();
+			for (Method m : CompleteWikitextVisitor.class.getMethods())
+			{
+				if (m.getName().equals("visit") && m.getParameterTypes().length == 1)
+					types.add(m.getParameterTypes()[0]);
+			}
+			visitedTypes = types;
+		}
+		return visitedTypes;
+	}
+}
@@ -349,8 +349,35 @@ public enum ParserScopes
 		}
 	};
 	
+	/**
+	 * The atoms accepted by each scope as a bit mask indexed by the ordinal of
+	 * the atom. Computed once from {@link #accepts(ParserAtoms)}.
+	 */
+	private int acceptedAtoms;
+	
+	static
+	{
+		for (ParserScopes scope : values())
+		{
+			int atoms = 0;
+			for (ParserAtoms atom : ParserAtoms.values())
+			{
+				if (scope.accepts(atom))
+					atoms |= 1 << atom.ordinal();
+			}
+			scope.acceptedAtoms = atoms;
+		}
+	}
+	
+	// =========================================================================
+	
 	public abstract boolean accepts(ParserAtoms atom);
 	
+	public final int getAcceptedAtoms()
+	{
+		return acceptedAtoms;
+	}
+	
 	public boolean isSticky()
 	{
 		return false;
@@ -26,6 +26,7 @@ import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
 import org.sweble.wikitext.parser.nodes.WtText;
 import org.sweble.wikitext.parser.nodes.WtXmlComment;
 import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.preprocessor.WikitextSegments;
 
 import de.fau.cs.osr.ptk.common.AstVisitor;
 
@@ -51,7 +52,7 @@ public class PreprocessorToParserTransformer
 			extends
 				AstVisitor<WtNode>
 	{
-		private StringBuilder builder;
+		private WikitextSegments segments;
 		
 		private WtEntityMap entityMap;
 		
@@ -69,14 +70,14 @@ public class PreprocessorToParserTransformer
 		@Override
 		protected WtNode before(WtNode node)
 		{
-			builder = new StringBuilder();
+			segments = new WikitextSegments();
 			return super.before(node);
 		}
 		
 		@Override
 		protected PreprocessedWikitext after(WtNode node, Object result)
 		{
-			return new PreprocessedWikitext(builder.toString(), entityMap);
+			return new PreprocessedWikitext(segments, entityMap);
 		}
 		
 		// =====================================================================
@@ -99,7 +100,7 @@ public class PreprocessorToParserTransformer
 		
 		public void visit(WtText n)
 		{
-			builder.append(n.getContent());
+			segments.appendText(n.getContent());
 		}
 		
 		// =====================================================================
@@ -126,9 +127,7 @@ public class PreprocessorToParserTransformer
 		private void makeParserEntity(WtNode n)
 		{
 			int id = entityMap.registerEntity(n);
-			builder.append('\uE000');
-			builder.append(id);
-			builder.append('\uE001');
+			segments.appendEntity(id, n);
 		}
 	}
 }
@@ -22,16 +22,46 @@ import org.sweble.wikitext.parser.nodes.WtPageName;
 
 import de.fau.cs.osr.ptk.common.ParserContext;
 
+/**
+ * The scope state of the parser.
+ *
+ * Two contexts are equal if they have the same scope and the same sticking
+ * scopes. Both are packed into a single int key which is kept up to date
+ * whenever the context changes. Memoized results are validated against the
+ * current context on every lookup, which therefore only compares two ints.
+ * The atoms accepted by the scope and all sticking scopes are kept as a bit
+ * mask for the same reason.
+ */
 public class WikitextParserContext
 		extends
 			ParserContext
 {
+	/**
+	 * The number of bits of the key which hold the ordinal of the scope.
+	 */
+	private static final int SCOPE_BITS = 5;
+	
+	static
+	{
+		int scopes = ParserScopes.values().length;
+		if (scopes >= (1 << SCOPE_BITS) || scopes > 32 - SCOPE_BITS)
+			throw new AssertionError("Too many parser scopes to pack into a context key");
+	}
+	
+	// =========================================================================
+	
 	private int stickingScopes;
 	
 	private ParserScopes scope;
 	
 	private LinkBuilder linkBuilder;
 	
+	private int key;
+	
+	private int stickingAtoms = ~0;
+	
+	private int acceptedAtoms;
+	
 	// =========================================================================
 	
 	@Override
@@ -40,6 +70,9 @@ public class WikitextParserContext
 		this.scope = null;
 		this.stickingScopes = 0;
 		this.linkBuilder = null;
+		this.key = 0;
+		this.stickingAtoms = ~0;
+		this.acceptedAtoms = 0;
 	}
 	
 	@Override
@@ -49,6 +82,9 @@ public class WikitextParserContext
 		this.stickingScopes = p.stickingScopes;
 		this.scope = p.scope;
 		this.linkBuilder = p.linkBuilder; //null;
+		this.key = p.key;
+		this.stickingAtoms = p.stickingAtoms;
+		this.acceptedAtoms = p.acceptedAtoms;
 	}
 	
 	// =========================================================================
@@ -61,6 +97,7 @@ public class WikitextParserContext
 	public final void setScope(ParserScopes scope)
 	{
 		this.scope = scope;
+		update();
 	}
 	
 	public final int getStickingScopes()
@@ -71,6 +108,17 @@ public class WikitextParserContext
 	public final void addStickingScope(ParserScopes scope)
 	{
 		stickingScopes |= 1 << scope.ordinal();
+		stickingAtoms &= scope.getAcceptedAtoms();
+		update();
+	}
+	
+	/**
+	 * Returns whether the scope and all sticking scopes accept the given
+	 * atom.
+	 */
+	public final boolean accepts(ParserAtoms atom)
+	{
+		return 0 != (acceptedAtoms & (1 << atom.ordinal()));
 	}
 	
 	public final LinkBuilder getLinkBuilder()
@@ -85,16 +133,26 @@ public class WikitextParserContext
 		this.linkBuilder = new LinkBuilder(parserConfig, target);
 	}
 	
+	private void update()
+	{
+		if (scope == null)
+		{
+			key = stickingScopes << SCOPE_BITS;
+			acceptedAtoms = 0;
+		}
+		else
+		{
+			key = (stickingScopes << SCOPE_BITS) | (scope.ordinal() + 1);
+			acceptedAtoms = scope.getAcceptedAtoms() & stickingAtoms;
+		}
+	}
+	
 	// =========================================================================
 	
 	@Override
 	public final int hashCode()
 	{
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((scope == null) ? 0 : scope.hashCode());
-		result = prime * result + stickingScopes;
-		return result;
+		return key;
 	}
 	
 	@Override
@@ -111,12 +169,6 @@ public class WikitextParserContext
 	
 	public final boolean equals(WikitextParserContext other)
 	{
-		if (this == other)
-			return true;
-		if (scope != other.scope)
-			return false;
-		if (stickingScopes != other.stickingScopes)
-			return false;
-		return true;
+		return key == other.key;
 	}
 }
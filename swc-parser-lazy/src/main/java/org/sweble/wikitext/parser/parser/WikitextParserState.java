@@ -17,6 +17,7 @@
 
 package org.sweble.wikitext.parser.parser;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.sweble.wikitext.parser.ParserConfig;
@@ -24,6 +25,7 @@ import org.sweble.wikitext.parser.WtEntityMap;
 import org.sweble.wikitext.parser.WtEntityMapImpl;
 import org.sweble.wikitext.parser.nodes.WtNode;
 import org.sweble.wikitext.parser.nodes.WtPageName;
+import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
 
 import de.fau.cs.osr.ptk.common.ParserState;
 
@@ -31,8 +33,20 @@ public class WikitextParserState
 		extends
 			ParserState<WikitextParserContext>
 {
+	/**
+	 * Compiled internal link prefix and postfix patterns. Usually all parsers
+	 * of an application share the same few configurations, therefore the
+	 * patterns are not recompiled for every page.
+	 */
+	private static final ConcurrentHashMap<String, Pattern> patternCache =
+			new ConcurrentHashMap<String, Pattern>();
+	
+	// =========================================================================
+	
 	private WtEntityMap entityMap = new WtEntityMapImpl();
 	
+	private PreprocessedWikitext wikitext;
+	
 	private ParserConfig config;
 	
 	private Pattern postfixPattern;
@@ -62,6 +76,8 @@ public class WikitextParserState
 	
 	public WtNode getEntity(int id)
 	{
+		if (wikitext != null)
+			return wikitext.getEntity(id);
 		return entityMap.getEntity(id);
 	}
 	
@@ -72,25 +88,45 @@ public class WikitextParserState
 		return config;
 	}
 	
+	public void init(ParserConfig config, PreprocessedWikitext wikitext)
+	{
+		init(config, wikitext.getEntityMap());
+		
+		this.wikitext = wikitext;
+	}
+	
 	public void init(ParserConfig config, WtEntityMap entityMap)
 	{
 		this.config = config;
 		
 		this.entityMap = entityMap;
 		
+		this.wikitext = null;
+		
 		this.autoCorrect = config.isAutoCorrect();
 		
 		this.warningsEnabled = config.isWarningsEnabled();
 		
 		this.gatherRtData = config.isGatherRtData();
 		
-		this.prefixPattern = Pattern.compile(
+		this.prefixPattern = compile(
 				"(" + config.getInternalLinkPrefixPattern() + ")$");
 		
-		this.postfixPattern = Pattern.compile(
+		this.postfixPattern = compile(
 				config.getInternalLinkPostfixPattern());
 	}
 	
+	private static Pattern compile(String regex)
+	{
+		Pattern pattern = patternCache.get(regex);
+		if (pattern == null)
+		{
+			pattern = Pattern.compile(regex);
+			patternCache.putIfAbsent(regex, pattern);
+		}
+		return pattern;
+	}
+	
 	// =========================================================================
 	
 	public boolean isAutoCorrect()
@@ -149,21 +185,7 @@ public class WikitextParserState
 	
 	public boolean accepts(ParserAtoms atom)
 	{
-		WikitextParserContext c = getTop();
-		if (c.getScope().accepts(atom))
-		{
-			int sticking = c.getStickingScopes();
-			for (int i = 0; sticking != 0; ++i, sticking >>= 1)
-			{
-				if ((sticking & 1) != 0)
-				{
-					if (!ParserScopes.values()[i].accepts(atom))
-						return false;
-				}
-			}
-			return true;
-		}
-		return false;
+		return getTop().accepts(atom);
 	}
 	
 	public boolean inScope(ParserScopes scope)
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.postprocessor;
+
+import java.util.Arrays;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * The stack of open elements used by the {@link TreeBuilder}.
+ * 
+ * Entries are stored in an array together with their {@link ElementType},
+ * which is determined once when a node is put onto the stack. Entries are
+ * addressed by their position counted from the bottom of the stack: the root
+ * node lives at index 0 and the current node at index {@code size() - 1}.
+ * 
+ * For every element type the stack also keeps track of how many entries of
+ * that type it contains. This allows scope checks to fail fast if an element
+ * type is not on the stack at all.
+ */
+final class OpenElementStack
+{
+	private static final int INITIAL_CAPACITY = 32;
+	
+	private WtNode[] nodes = new WtNode[INITIAL_CAPACITY];
+	
+	private ElementType[] types = new ElementType[INITIAL_CAPACITY];
+	
+	private final int[] typeCounts = new int[ElementType.values().length];
+	
+	private int size = 0;
+	
+	// =========================================================================
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	public WtNode get(int index)
+	{
+		checkIndex(index);
+		return nodes[index];
+	}
+	
+	public ElementType typeAt(int index)
+	{
+		checkIndex(index);
+		return types[index];
+	}
+	
+	public boolean containsType(ElementType type)
+	{
+		return typeCounts[type.ordinal()] != 0;
+	}
+	
+	/**
+	 * Searches the stack from the current node towards the root for the given
+	 * node. Nodes are compared by reference.
+	 * 
+	 * @return The index of the node or -1 if the node is not on the stack.
+	 */
+	public int indexOf(WtNode node)
+	{
+		for (int i = size - 1; i >= 0; --i)
+		{
+			if (nodes[i] == node)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Searches the stack from the current node towards the root for a node of
+	 * the given type.
+	 * 
+	 * @return The index of the topmost node of the given type or -1 if there
+	 *         is no such node on the stack.
+	 */
+	public int indexOfType(ElementType type)
+	{
+		if (!containsType(type))
+			return -1;
+		
+		for (int i = size - 1; i >= 0; --i)
+		{
+			if (types[i] == type)
+				return i;
+		}
+		throw new InternalError();
+	}
+	
+	// =========================================================================
+	
+	public WtNode peek()
+	{
+		return (size == 0) ? null : nodes[size - 1];
+	}
+	
+	public ElementType peekType()
+	{
+		return (size == 0) ? null : types[size - 1];
+	}
+	
+	public void push(WtNode node)
+	{
+		insert(size, node);
+	}
+	
+	public WtNode pop()
+	{
+		if (size == 0)
+			throw new InternalError("Stack of open elements is empty!");
+		return remove(size - 1);
+	}
+	
+	public void set(int index, WtNode node)
+	{
+		checkIndex(index);
+		ElementType type = TreeBuilder.getNodeType(node);
+		--typeCounts[types[index].ordinal()];
+		++typeCounts[type.ordinal()];
+		nodes[index] = node;
+		types[index] = type;
+	}
+	
+	public void insert(int index, WtNode node)
+	{
+		if (index < 0 || index > size)
+			throw new IndexOutOfBoundsException();
+		
+		ElementType type = TreeBuilder.getNodeType(node);
+		
+		if (size == nodes.length)
+		{
+			int capacity = nodes.length * 2;
+			nodes = Arrays.copyOf(nodes, capacity);
+			types = Arrays.copyOf(types, capacity);
+		}
+		
+		int moved = size - index;
+		if (moved > 0)
+		{
+			System.arraycopy(nodes, index, nodes, index + 1, moved);
+			System.arraycopy(types, index, types, index + 1, moved);
+		}
+		
+		nodes[index] = node;
+		types[index] = type;
+		++typeCounts[type.ordinal()];
+		++size;
+	}
+	
+	public WtNode remove(int index)
+	{
+		checkIndex(index);
+		
+		WtNode node = nodes[index];
+		--typeCounts[types[index].ordinal()];
+		
+		int moved = size - index - 1;
+		if (moved > 0)
+		{
+			System.arraycopy(nodes, index + 1, nodes, index, moved);
+			System.arraycopy(types, index + 1, types, index, moved);
+		}
+		
+		--size;
+		nodes[size] = null;
+		types[size] = null;
+		return node;
+	}
+	
+	/**
+	 * Removes all entries but keeps the allocated arrays so that the stack can
+	 * be reused for the next page.
+	 */
+	public void clear()
+	{
+		Arrays.fill(nodes, 0, size, null);
+		Arrays.fill(types, 0, size, null);
+		Arrays.fill(typeCounts, 0);
+		size = 0;
+	}
+	
+	// =========================================================================
+	
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException();
+	}
+}
@@ -111,4 +111,28 @@ public enum StackScope
 	};
 	
 	public abstract boolean isInList(ElementType nodeType);
+	
+	// =========================================================================
+	
+	private boolean[] inList;
+	
+	static
+	{
+		ElementType[] types = ElementType.values();
+		for (StackScope scope : values())
+		{
+			scope.inList = new boolean[types.length];
+			for (ElementType type : types)
+				scope.inList[type.ordinal()] = scope.isInList(type);
+		}
+	}
+	
+	/**
+	 * Same as {@link #isInList(ElementType)} but answered from a table that is
+	 * indexed by the ordinal of the element type.
+	 */
+	final boolean isBoundary(ElementType nodeType)
+	{
+		return inList[nodeType.ordinal()];
+	}
 }
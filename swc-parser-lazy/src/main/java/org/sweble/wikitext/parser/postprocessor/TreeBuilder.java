@@ -21,9 +21,8 @@ import static org.sweble.wikitext.parser.nodes.WtNode.*;
 import static org.sweble.wikitext.parser.postprocessor.ElementType.*;
 import static org.sweble.wikitext.parser.postprocessor.StackScope.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Map;
 
@@ -103,11 +102,11 @@ public class TreeBuilder
 	
 	private final AstVisitor<WtNode> inCellMode = new TreeBuilderInCell(logic, this);
 	
-	private final LinkedList<WtNode> stack = new LinkedList<WtNode>();
+	private final OpenElementStack stack = new OpenElementStack();
 	
-	private final LinkedList<WtNode> activeFormattingElements = new LinkedList<WtNode>();
+	private final ArrayList<WtNode> activeFormattingElements = new ArrayList<WtNode>();
 	
-	private final LinkedList<Warning> errors = new LinkedList<Warning>();
+	private final ArrayList<Warning> errors = new ArrayList<Warning>();
 	
 	private final ElementFactory factory;
 	
@@ -134,6 +133,27 @@ public class TreeBuilder
 		return new TreeBuilder(config).go(ast);
 	}
 	
+	/**
+	 * Builds the tree for the given AST. Unlike the static
+	 * {@link #process(ParserConfig, WtNode)} method this allows one tree
+	 * builder to be used for many pages, reusing its stack of open elements
+	 * and its list of active formatting elements. A tree builder instance
+	 * must not be used by multiple threads at the same time.
+	 */
+	public WtParsedWikitextPage build(WtNode ast)
+	{
+		reset();
+		try
+		{
+			return go(ast);
+		}
+		finally
+		{
+			// Don't keep the last page alive
+			reset();
+		}
+	}
+	
 	// =========================================================================
 	
 	public TreeBuilder(ParserConfig config)
@@ -172,6 +192,19 @@ public class TreeBuilder
 	
 	// =========================================================================
 	
+	private void reset()
+	{
+		stack.clear();
+		activeFormattingElements.clear();
+		errors.clear();
+		rootNode = null;
+		formPointer = null;
+		originalInsertionMode = null;
+		pendingTableCharTokens = null;
+		fosterParentingMode = false;
+		dbgIndent = 0;
+	}
+	
 	private WtParsedWikitextPage go(WtNode ast)
 	{
 		if (DEBUG)
@@ -186,7 +219,7 @@ public class TreeBuilder
 		if (!errors.isEmpty())
 		{
 			if (getRootNode().getWarnings().isEmpty())
-				getRootNode().setWarnings(errors);
+				getRootNode().setWarnings(new ArrayList<Warning>(errors));
 			else
 				getRootNode().getWarnings().addAll(errors);
 		}
@@ -257,7 +290,7 @@ public class TreeBuilder
 	{
 		// 1. Let last be false.
 		// 2. Let node be the last node in the stack of open elements.
-		for (WtNode node : stack)
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
 			// We have no fragment case:
 			//
@@ -269,7 +302,7 @@ public class TreeBuilder
 			// "in select" and abort these steps. 
 			// (fragment case)
 			
-			switch (getNodeType(node))
+			switch (stack.typeAt(i))
 			{
 				case TD:
 				case TH:
@@ -364,7 +397,7 @@ public class TreeBuilder
 		this.rootNode = rootNode;
 	}
 	
-	LinkedList<WtNode> getStack()
+	OpenElementStack getStack()
 	{
 		return stack;
 	}
@@ -661,7 +694,7 @@ public class TreeBuilder
 	{
 		WtNode newNode = factory.createNewElement(sample);
 		appendToCurrentNode(newNode);
-		getStack().push(newNode);
+		stack.push(newNode);
 		return newNode;
 	}
 	
@@ -669,7 +702,7 @@ public class TreeBuilder
 	{
 		WtNode newNode = factory.createRepairFormattingElement(sample);
 		appendToCurrentNode(newNode);
-		getStack().push(newNode);
+		stack.push(newNode);
 		return newNode;
 	}
 	
@@ -701,8 +734,14 @@ public class TreeBuilder
 	
 	WtNode getCurrentNode()
 	{
-		assert !getStack().isEmpty();
-		return getStack().peek();
+		assert !stack.isEmpty();
+		return stack.peek();
+	}
+	
+	ElementType getCurrentNodeType()
+	{
+		assert !stack.isEmpty();
+		return stack.peekType();
 	}
 	
 	void appendToCurrentNode(WtNode e)
@@ -727,7 +766,7 @@ public class TreeBuilder
 	
 	boolean isCurrentNodeTypeOneOf(ElementType... nodeTypes)
 	{
-		return isNodeTypeOneOf(getCurrentNode(), nodeTypes);
+		return isTypeOneOf(getCurrentNodeType(), nodeTypes);
 	}
 	
 	// =========================================================================
@@ -754,14 +793,16 @@ public class TreeBuilder
 			StackScope scope,
 			ElementType targetType)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (i.hasNext())
+		if (!stack.containsType(targetType))
+			return false;
+		
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			ElementType nodeType = getNodeType(i.next());
+			ElementType nodeType = stack.typeAt(i);
 			if (nodeType == targetType)
 				return true;
 			
-			if (scope.isInList(nodeType))
+			if (scope.isBoundary(nodeType))
 				return false;
 		}
 		throw new InternalError("This should never happen!");
@@ -791,14 +832,13 @@ public class TreeBuilder
 			StackScope scope,
 			ElementType... targetTypes)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (i.hasNext())
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			ElementType nodeType = getNodeType(i.next());
+			ElementType nodeType = stack.typeAt(i);
 			if (isTypeOneOf(nodeType, targetTypes))
 				return true;
 			
-			if (scope.isInList(nodeType))
+			if (scope.isBoundary(nodeType))
 				return false;
 		}
 		throw new InternalError("This should never happen!");
@@ -811,30 +851,28 @@ public class TreeBuilder
 	
 	boolean isNodeInSpecificScope(StackScope scope, WtNode targetNode)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (true)
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			WtNode node = i.next();
-			if (isSameTag(node, targetNode))
+			if (isSameTag(stack.get(i), targetNode))
 				return true;
 			
-			if (scope.isInList(getNodeType(node)))
+			if (scope.isBoundary(stack.typeAt(i)))
 				return false;
 		}
+		throw new InternalError("This should never happen!");
 	}
 	
 	boolean isNodeRefInSpecificScope(StackScope scope, WtNode targetNode)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (true)
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			WtNode node = i.next();
-			if (node == targetNode)
+			if (stack.get(i) == targetNode)
 				return true;
 			
-			if (scope.isInList(getNodeType(node)))
+			if (scope.isBoundary(stack.typeAt(i)))
 				return false;
 		}
+		throw new InternalError("This should never happen!");
 	}
 	
 	boolean isNodeRefInScope(WtNode targetNode)
@@ -846,41 +884,26 @@ public class TreeBuilder
 	
 	void removeFromStack(WtNode node)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (i.hasNext())
-		{
-			if (i.next() == node)
-			{
-				i.remove();
-				return;
-			}
-		}
-		throw new InternalError("Could not remove node from stack!");
+		int i = stack.indexOf(node);
+		if (i < 0)
+			throw new InternalError("Could not remove node from stack!");
+		stack.remove(i);
 	}
 	
 	boolean isInStackOfOpenElements(WtNode node)
 	{
-		for (WtNode e : getStack())
-		{
-			if (e == node)
-				return true;
-		}
-		return false;
+		return stack.indexOf(node) >= 0;
 	}
 	
 	WtNode getFromStack(ElementType nodeType)
 	{
-		for (WtNode e : getStack())
-		{
-			if (getNodeType(e) == nodeType)
-				return e;
-		}
-		return null;
+		int i = stack.indexOfType(nodeType);
+		return (i < 0) ? null : stack.get(i);
 	}
 	
 	WtNode popFromStackUntilIncluding(WtNode nodeExample)
 	{
-		while (!getStack().isEmpty())
+		while (!stack.isEmpty())
 		{
 			WtNode found = popFromStack();
 			if (isSameTag(nodeExample, found))
@@ -891,10 +914,11 @@ public class TreeBuilder
 	
 	WtNode popFromStackUntilIncluding(ElementType nodeType)
 	{
-		while (!getStack().isEmpty())
+		while (!stack.isEmpty())
 		{
+			ElementType foundType = stack.peekType();
 			WtNode found = popFromStack();
-			if (getNodeType(found) == nodeType)
+			if (foundType == nodeType)
 				return found;
 		}
 		throw new InternalError("Everything's gone :(");
@@ -902,10 +926,11 @@ public class TreeBuilder
 	
 	WtNode popFromStackUntilIncluding(ElementType... nodeTypes)
 	{
-		while (!getStack().isEmpty())
+		while (!stack.isEmpty())
 		{
+			ElementType foundType = stack.peekType();
 			WtNode found = popFromStack();
-			if (isTypeOneOf(getNodeType(found), nodeTypes))
+			if (isTypeOneOf(foundType, nodeTypes))
 				return found;
 		}
 		throw new InternalError("Everything's gone :(");
@@ -915,21 +940,21 @@ public class TreeBuilder
 	{
 		while (popFromStack() != node)
 			;
-		if (getStack().isEmpty())
+		if (stack.isEmpty())
 			throw new InternalError("Everything's gone :(");
 	}
 	
 	void popFromStackUntilExcluding(ElementType... nodeTypes)
 	{
-		while (!isTypeOneOf(getNodeType(getCurrentNode()), nodeTypes))
+		while (!isTypeOneOf(getCurrentNodeType(), nodeTypes))
 			popFromStack();
-		if (getStack().isEmpty())
+		if (stack.isEmpty())
 			throw new InternalError("Everything's gone :(");
 	}
 	
 	WtNode popFromStack()
 	{
-		return getStack().pop();
+		return stack.pop();
 	}
 	
 	void clearStackBackToTableContext()
@@ -949,31 +974,16 @@ public class TreeBuilder
 	
 	WtNode getAboveOnStack(WtNode node)
 	{
-		Iterator<WtNode> i = getStack().iterator();
-		while (i.hasNext())
-		{
-			if (i.next() == node)
-			{
-				if (i.hasNext())
-					return i.next();
-			}
-		}
-		return null;
+		int i = stack.indexOf(node);
+		return (i > 0) ? stack.get(i - 1) : null;
 	}
 	
 	void insertOnStackBelow(WtNode marker, WtNode node)
 	{
-		ListIterator<WtNode> i = getStack().listIterator();
-		while (i.hasNext())
-		{
-			if (i.next() == marker)
-			{
-				i.previous();
-				i.add(node);
-				return;
-			}
-		}
-		throw new InternalError("Marker MUST exist in stack!");
+		int i = stack.indexOf(marker);
+		if (i < 0)
+			throw new InternalError("Marker MUST exist in stack!");
+		stack.insert(i + 1, node);
 	}
 	
 	void removeFromParent(WtNode node, WtNode parent)
@@ -1010,7 +1020,7 @@ public class TreeBuilder
 	{
 		while (true)
 		{
-			ElementType nodeType = getNodeType(getCurrentNode());
+			ElementType nodeType = getCurrentNodeType();
 			
 			// OPTION, OPTGROUP, RP, RT
 			if (nodeType == excludedType || !isTypeOneOf(nodeType, DD, DT, LI, P))
@@ -1030,7 +1040,7 @@ public class TreeBuilder
 		while (true)
 		{
 			WtNode currentNode = getCurrentNode();
-			ElementType nodeType = getNodeType(currentNode);
+			ElementType nodeType = getCurrentNodeType();
 			
 			// OPTION, OPTGROUP, RP, RT
 			if (!isTypeOneOf(nodeType, DD, DT, LI, P) || isSameTag(currentNode, node))
@@ -1071,11 +1081,12 @@ public class TreeBuilder
 	
 	void pushActiveFormattingElements(WtNode node)
 	{
+		ArrayList<WtNode> list = activeFormattingElements;
+		
 		int count = 0;
-		Iterator<WtNode> i = activeFormattingElements.descendingIterator();
-		while (i.hasNext())
+		for (int i = list.size() - 1; i >= 0; --i)
 		{
-			WtNode fe = i.next();
+			WtNode fe = list.get(i);
 			if (fe == MARKER)
 				break;
 			
@@ -1084,24 +1095,27 @@ public class TreeBuilder
 			
 			if (count == 3)
 			{
-				i.remove();
+				list.remove(i);
 				break;
 			}
 		}
-		activeFormattingElements.add(node);
+		list.add(node);
 	}
 	
 	boolean isInListOfActiveFormattingElements(WtNode node)
 	{
+		// Most lookups hit by reference; only fall back to equals() otherwise
+		if (lastIndexOfActiveFormattingElement(node) >= 0)
+			return true;
 		return activeFormattingElements.contains(node);
 	}
 	
 	WtNode getActiveFormattingElement(ElementType nodeType)
 	{
-		Iterator<WtNode> i = activeFormattingElements.descendingIterator();
-		while (i.hasNext())
+		ArrayList<WtNode> list = activeFormattingElements;
+		for (int i = list.size() - 1; i >= 0; --i)
 		{
-			WtNode node = i.next();
+			WtNode node = list.get(i);
 			if (node == MARKER)
 				return null;
 			
@@ -1113,32 +1127,31 @@ public class TreeBuilder
 	
 	void removeFromActiveFormattingElements(WtNode node)
 	{
-		Iterator<WtNode> i = activeFormattingElements.descendingIterator();
-		while (i.hasNext())
-		{
-			if (i.next() == node)
-			{
-				i.remove();
-				return;
-			}
-		}
-		throw new InternalError("Could not remove formatting element");
+		int i = lastIndexOfActiveFormattingElement(node);
+		if (i < 0)
+			throw new InternalError("Could not remove formatting element");
+		activeFormattingElements.remove(i);
 	}
 	
 	void replaceInListOfActiveFormattingElements(
 			WtNode replacee,
 			WtNode replacement)
 	{
-		ListIterator<WtNode> i = activeFormattingElements.listIterator(activeFormattingElements.size());
-		while (i.hasPrevious())
+		int i = lastIndexOfActiveFormattingElement(replacee);
+		if (i < 0)
+			throw new InternalError("Could not replace formatting element");
+		activeFormattingElements.set(i, replacement);
+	}
+	
+	private int lastIndexOfActiveFormattingElement(WtNode node)
+	{
+		ArrayList<WtNode> list = activeFormattingElements;
+		for (int i = list.size() - 1; i >= 0; --i)
 		{
-			if (i.previous() == replacee)
-			{
-				i.set(replacement);
-				return;
-			}
+			if (list.get(i) == node)
+				return i;
 		}
-		throw new InternalError("Could not replace formatting element");
+		return -1;
 	}
 	
 	/**
@@ -1161,7 +1174,7 @@ public class TreeBuilder
 	 */
 	void reconstructActiveFormattingElements()
 	{
-		LinkedList<WtNode> list = activeFormattingElements;
+		ArrayList<WtNode> list = activeFormattingElements;
 		
 		/* 1) If there are no entries in the list of active formatting elements, then
 		 * there is nothing to reconstruct; stop this algorithm.
@@ -1173,7 +1186,7 @@ public class TreeBuilder
 		 * elements is a marker, or if it is an element that is in the stack of open
 		 * elements, then there is nothing to reconstruct; stop this algorithm.
 		 */
-		WtNode last = list.getLast();
+		WtNode last = list.get(list.size() - 1);
 		if (last == MARKER || isInStackOfOpenElements(last))
 			return;
 		
@@ -1236,27 +1249,23 @@ public class TreeBuilder
 	
 	void insertMarkerInActiveFormattingElements()
 	{
-		this.activeFormattingElements.add(MARKER);
+		ArrayList<WtNode> list = activeFormattingElements;
+		list.add(MARKER);
 		
 		// LctVarConv tags must be effective over marker boundaries in order
 		// to "leak" into tables
 		
-		LinkedList<WtNode> list = activeFormattingElements;
-		ListIterator<WtNode> iter = list.listIterator(list.size());
-		
 		// Skip the just inserted marker
-		iter.previous();
-		
-		while (iter.hasPrevious())
+		for (int i = list.size() - 2; i >= 0; --i)
 		{
-			WtNode e = iter.previous();
+			WtNode e = list.get(i);
 			// We only look back to the last marker
 			if (e == MARKER)
 				break;
 			if (getNodeType(e) == LCT_VAR_CONV)
 			{
 				// Copy the LctVarConv tag after the marker
-				this.activeFormattingElements.add(e);
+				list.add(e);
 				break;
 			}
 		}
@@ -1264,11 +1273,10 @@ public class TreeBuilder
 	
 	void clearActiveFormattingElementsToLastMarker()
 	{
-		Iterator<WtNode> i = this.activeFormattingElements.descendingIterator();
-		while (i.hasNext())
+		ArrayList<WtNode> list = activeFormattingElements;
+		while (!list.isEmpty())
 		{
-			WtNode fe = i.next();
-			i.remove();
+			WtNode fe = list.remove(list.size() - 1);
 			if (fe == MARKER)
 				break;
 		}
@@ -1276,44 +1284,26 @@ public class TreeBuilder
 	
 	void placeBookmarkAfter(WtNode node)
 	{
-		ListIterator<WtNode> i = this.activeFormattingElements.listIterator(
-				this.activeFormattingElements.size());
-		
-		while (i.hasPrevious())
-		{
-			WtNode fe = i.previous();
-			if (fe == node)
-			{
-				i.next();
-				i.add(BOOKMARK);
-				return;
-			}
-		}
-		throw new InternalError("This method must only be called if there definitily is a bookmark!");
+		int i = lastIndexOfActiveFormattingElement(node);
+		if (i < 0)
+			throw new InternalError("This method must only be called if there definitily is a bookmark!");
+		activeFormattingElements.add(i + 1, BOOKMARK);
 	}
 	
 	void moveBookmarkAfter(WtNode node)
 	{
-		ListIterator<WtNode> i = this.activeFormattingElements.listIterator(
-				this.activeFormattingElements.size());
+		ArrayList<WtNode> list = activeFormattingElements;
 		
-		while (i.hasPrevious())
-		{
-			WtNode fe = i.previous();
-			if (fe == node)
-			{
-				i.next();
-				i.add(BOOKMARK);
-				i.previous();
-				break;
-			}
-		}
-		while (i.hasPrevious())
+		int i = lastIndexOfActiveFormattingElement(node);
+		if (i >= 0)
+			list.add(i + 1, BOOKMARK);
+		
+		// Remove the old bookmark which precedes the new one
+		while (--i >= 0)
 		{
-			WtNode fe = i.previous();
-			if (fe == BOOKMARK)
+			if (list.get(i) == BOOKMARK)
 			{
-				i.remove();
+				list.remove(i);
 				return;
 			}
 		}
@@ -1322,25 +1312,17 @@ public class TreeBuilder
 	
 	public void replaceBookmarkWithAndRemove(WtNode replacement, WtNode remove)
 	{
-		ListIterator<WtNode> i = this.activeFormattingElements.listIterator(
-				this.activeFormattingElements.size());
+		ArrayList<WtNode> list = activeFormattingElements;
 		
-		while (i.hasPrevious())
-		{
-			WtNode fe = i.previous();
-			if (fe == BOOKMARK)
-			{
-				i.remove();
-				i.add(replacement);
-				break;
-			}
-		}
-		while (i.hasPrevious())
+		int i = lastIndexOfActiveFormattingElement(BOOKMARK);
+		if (i >= 0)
+			list.set(i, replacement);
+		
+		while (--i >= 0)
 		{
-			WtNode fe = i.previous();
-			if (fe == remove)
+			if (list.get(i) == remove)
 			{
-				i.remove();
+				list.remove(i);
 				return;
 			}
 		}
@@ -1394,7 +1376,7 @@ public class TreeBuilder
 		}
 		else
 		{
-			getContentOfNodeForModification(getStack().getLast()).add(node);
+			getContentOfNodeForModification(stack.get(0)).add(node);
 		}
 	}
 	
@@ -21,8 +21,6 @@ import static org.sweble.wikitext.parser.nodes.WtNode.*;
 import static org.sweble.wikitext.parser.postprocessor.ElementType.*;
 import static org.sweble.wikitext.parser.postprocessor.StackScope.*;
 
-import java.util.ListIterator;
-
 import org.sweble.wikitext.parser.WtRtData;
 import org.sweble.wikitext.parser.nodes.WtBody;
 import org.sweble.wikitext.parser.nodes.WtBold;
@@ -523,9 +521,10 @@ public final class TreeBuilderInBody
 		if (!tb.isElementTypeInSpecificScope(GENERAL_SCOPE_WITHOUT_LAZY_PARSED_PAGE, PAGE))
 			tb.error(n, "12.2.5.4.7 R10 (1)");
 		
-		for (WtNode node : tb.getStack())
+		OpenElementStack stack = tb.getStack();
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			switch (getNodeType(node))
+			switch (stack.typeAt(i))
 			{
 				case DD:
 				case DT:
@@ -959,9 +958,10 @@ public final class TreeBuilderInBody
 	 */
 	private void startTagR16(WtNode n)
 	{
-		for (WtNode node : tb.getStack())
+		OpenElementStack stack = tb.getStack();
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			ElementType nodeType = getNodeType(node);
+			ElementType nodeType = stack.typeAt(i);
 			if (nodeType == LI)
 			{
 				dispatch(getFactory().createMissingRepairEndTag(LI));
@@ -980,9 +980,10 @@ public final class TreeBuilderInBody
 	 */
 	private void startTagR17(WtNode n)
 	{
-		for (WtNode node : tb.getStack())
+		OpenElementStack stack = tb.getStack();
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
-			ElementType nodeType = getNodeType(node);
+			ElementType nodeType = stack.typeAt(i);
 			if (isTypeOneOf(nodeType, DD, DT))
 			{
 				dispatch(getFactory().createMissingRepairEndTag(nodeType));
@@ -1305,30 +1306,22 @@ public final class TreeBuilderInBody
 				tb.error(n, "12.2.5.4.7 - R30 (3)");
 			}
 			
-			ListIterator<WtNode> stackIter = tb.getStack().listIterator();
-			
-			WtNode commonAncestor = null;
-			while (stackIter.hasNext())
-			{
-				WtNode e = stackIter.next();
-				if (e == fe)
-				{
-					commonAncestor = stackIter.next();
-					stackIter.previous();
-					stackIter.previous();
-					break;
-				}
-			}
+			OpenElementStack stack = tb.getStack();
 			
-			if (commonAncestor == null)
+			// The stack is indexed from the root (0) to the current node
+			int feIndex = stack.indexOf(fe);
+			if (feIndex < 1)
 				throw new InternalError();
 			
+			WtNode commonAncestor = stack.get(feIndex - 1);
+			
+			int stackIndex = feIndex + 1;
 			WtNode furthestBlock = null;
 			WtNode furthestBlockParent = fe;
-			while (stackIter.hasPrevious())
+			for (; stackIndex < stack.size(); ++stackIndex)
 			{
-				WtNode e = stackIter.previous();
-				if (getNodeType(e).isSpecial())
+				WtNode e = stack.get(stackIndex);
+				if (stack.typeAt(stackIndex).isSpecial())
 				{
 					furthestBlock = e;
 					break;
@@ -1349,10 +1342,8 @@ public final class TreeBuilderInBody
 			tb.placeBookmarkAfter(fe);
 			
 			// Step 9
-			// Note: stackIter last returned furthestBlock after call to 
-			// previous. Make sure the next next() call will return the node 
-			// "above" furthestBlock.
-			stackIter.next();
+			// Note: stackIndex points at furthestBlock. Walking towards the 
+			// root of the stack yields the node "above" furthestBlock.
 			WtNode node = furthestBlock;
 			WtNode lastNode = furthestBlock;
 			WtNode lastNodeParent = furthestBlockParent;
@@ -1361,7 +1352,7 @@ public final class TreeBuilderInBody
 				++j;
 				
 				// Step 9.4
-				node = stackIter.next();
+				node = stack.get(--stackIndex);
 				
 				// Step 9.5
 				if (!tb.isInListOfActiveFormattingElements(node))
@@ -1369,7 +1360,7 @@ public final class TreeBuilderInBody
 					// Node is guarantteed to be on stack. From here we 
 					// definitely get to step 9.4 next. Make sure, we know
 					// which node was "above" node before node was removed.
-					stackIter.remove();
+					stack.remove(stackIndex);
 					continue inner;
 				}
 				else if (node == fe)
@@ -1379,7 +1370,7 @@ public final class TreeBuilderInBody
 				
 				WtNode replacement = getFactory().createRepairFormattingElement(node);
 				tb.replaceInListOfActiveFormattingElements(node, replacement);
-				stackIter.set(replacement);
+				stack.set(stackIndex, replacement);
 				node = replacement;
 				
 				// Step 9.8
@@ -1507,8 +1498,10 @@ public final class TreeBuilderInBody
 	 */
 	private void endTagR52(WtNode n)
 	{
-		for (WtNode node : tb.getStack())
+		OpenElementStack stack = tb.getStack();
+		for (int i = stack.size() - 1; i >= 0; --i)
 		{
+			WtNode node = stack.get(i);
 			if (TreeBuilder.isSameTag(node, n))
 			{
 				tb.generateImpliedEndTags(n);
@@ -1520,7 +1513,7 @@ public final class TreeBuilderInBody
 				addRtDataOfEndTag(node, n);
 				return;
 			}
-			else if (getNodeType(node).isSpecial())
+			else if (stack.typeAt(i).isSpecial())
 			{
 				tb.error(n, "12.2.5.4.7 - R52 (2)");
 				tb.ignore(n);
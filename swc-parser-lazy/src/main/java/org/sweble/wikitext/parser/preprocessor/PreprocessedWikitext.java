@@ -21,22 +21,54 @@
 
 package org.sweble.wikitext.parser.preprocessor;
 
+import java.io.Reader;
+import java.io.StringReader;
+
 import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.nodes.WtNode;
 
 public final class PreprocessedWikitext
 {
 	private String wikitext;
 	
+	private final WikitextSegments segments;
+	
 	private WtEntityMap entityMap;
 	
+	private final PreprocessedWikitext entitySource;
+	
 	public PreprocessedWikitext(String wikitext, WtEntityMap entityMap)
 	{
 		this.wikitext = wikitext;
+		this.segments = null;
+		this.entityMap = entityMap;
+		this.entitySource = null;
+	}
+	
+	public PreprocessedWikitext(WikitextSegments segments, WtEntityMap entityMap)
+	{
+		this.wikitext = null;
+		this.segments = segments;
 		this.entityMap = entityMap;
+		this.entitySource = null;
+	}
+	
+	private PreprocessedWikitext(String wikitext, PreprocessedWikitext entitySource)
+	{
+		this.wikitext = wikitext;
+		this.segments = null;
+		this.entityMap = entitySource.entityMap;
+		this.entitySource = entitySource;
 	}
 	
+	/**
+	 * If this wikitext was assembled from segments, the string is only built
+	 * on the first call. The parser does not need it.
+	 */
 	public String getWikitext()
 	{
+		if (wikitext == null)
+			wikitext = segments.toString();
 		return wikitext;
 	}
 	
@@ -44,4 +76,36 @@ public final class PreprocessedWikitext
 	{
 		return entityMap;
 	}
+	
+	public int length()
+	{
+		return (wikitext != null) ? wikitext.length() : segments.length();
+	}
+	
+	public Reader getReader()
+	{
+		return (wikitext != null) ? new StringReader(wikitext) : segments.newReader();
+	}
+	
+	/**
+	 * Returns the wikitext between the given offsets. Entities referenced in
+	 * the slice are resolved by this wikitext.
+	 */
+	public PreprocessedWikitext slice(int from, int to)
+	{
+		return new PreprocessedWikitext(getWikitext().substring(from, to), this);
+	}
+	
+	public WtNode getEntity(int id)
+	{
+		if (entitySource != null)
+			return entitySource.getEntity(id);
+		if (segments != null)
+		{
+			WtNode entity = segments.getEntity(id);
+			if (entity != null)
+				return entity;
+		}
+		return entityMap.getEntity(id);
+	}
 }
@@ -71,6 +71,8 @@ public class WikitextPreprocessorState
 		
 		this.parseForInclusion = forInclusion;
 		
+		this.hasOnlyInclude = false;
+		
 		this.autoCorrect = config.isAutoCorrect();
 		
 		this.warningsEnabled = config.isWarningsEnabled();
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.preprocessor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * The wikitext handed from the preprocessor to the parser, represented as a
+ * sequence of segments instead of one contiguous string. Text segments refer
+ * to the content strings of the preprocessed AST's text nodes and are not
+ * copied. Entity segments are the parser entity markers of nodes registered
+ * in the entity map. The registered nodes are also kept in a table indexed by
+ * their entity id, which allows the parser to resolve them without going
+ * through the entity map.
+ */
+public final class WikitextSegments
+		implements
+			CharSequence
+{
+	private String[] segments = new String[64];
+	
+	/**
+	 * The exclusive end offset of each segment.
+	 */
+	private int[] ends = new int[64];
+	
+	private int count = 0;
+	
+	private int length = 0;
+	
+	private WtNode[] entities = new WtNode[16];
+	
+	private int firstEntityId = -1;
+	
+	private int entityCount = 0;
+	
+	// =========================================================================
+	
+	public void appendText(String text)
+	{
+		if (!text.isEmpty())
+			append(text);
+	}
+	
+	/**
+	 * Appends the parser entity marker for the given entity.
+	 * 
+	 * The entity table only covers the contiguous run of ids starting with the
+	 * id of the first appended entity. The transformer registers its entities
+	 * one after the other, so usually all of them end up in the table. An id
+	 * that does not continue the run (e.g. because the entity map already
+	 * contained entities registered by someone else in between) is not added
+	 * to the table. getEntity() returns null for such an id and the caller
+	 * has to resolve it through the entity map, as
+	 * {@link PreprocessedWikitext#getEntity(int)} does.
+	 * 
+	 * @param id
+	 *            The id under which the entity was registered in the entity
+	 *            map.
+	 */
+	public void appendEntity(int id, WtNode entity)
+	{
+		append("\uE000" + id + "\uE001");
+		
+		if (entityCount == 0)
+			firstEntityId = id;
+		
+		int index = id - firstEntityId;
+		if (index == entityCount)
+		{
+			if (entityCount == entities.length)
+				entities = Arrays.copyOf(entities, entityCount * 2);
+			entities[entityCount++] = entity;
+		}
+	}
+	
+	/**
+	 * @return The entity registered under the given id or null if the entity
+	 *         is not part of this text's entity table (see
+	 *         {@link #appendEntity(int, WtNode)}).
+	 */
+	public WtNode getEntity(int id)
+	{
+		int index = id - firstEntityId;
+		if (entityCount == 0 || index < 0 || index >= entityCount)
+			return null;
+		return entities[index];
+	}
+	
+	/**
+	 * @return A reader that copies the segments straight into the caller's
+	 *         buffer.
+	 */
+	public Reader newReader()
+	{
+		return new SegmentReader();
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public int length()
+	{
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException();
+		
+		int i = findSegment(index);
+		return segments[i].charAt(index - start(i));
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException();
+		
+		StringBuilder b = new StringBuilder(end - start);
+		if (start == end)
+			return b;
+		
+		int i = findSegment(start);
+		int offset = start - start(i);
+		while (start < end)
+		{
+			String s = segments[i++];
+			int n = Math.min(s.length() - offset, end - start);
+			b.append(s, offset, offset + n);
+			start += n;
+			offset = 0;
+		}
+		return b;
+	}
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder b = new StringBuilder(length);
+		for (int i = 0; i < count; ++i)
+			b.append(segments[i]);
+		return b.toString();
+	}
+	
+	// =========================================================================
+	
+	private void append(String s)
+	{
+		if (count == segments.length)
+		{
+			segments = Arrays.copyOf(segments, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+		}
+		length += s.length();
+		segments[count] = s;
+		ends[count] = length;
+		++count;
+	}
+	
+	private int start(int segment)
+	{
+		return (segment == 0) ? 0 : ends[segment - 1];
+	}
+	
+	/**
+	 * @return The index of the segment containing the given offset.
+	 */
+	private int findSegment(int offset)
+	{
+		int lo = 0;
+		int hi = count - 1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (ends[mid] <= offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+	
+	// =========================================================================
+	
+	private final class SegmentReader
+			extends
+				Reader
+	{
+		private int segment = 0;
+		
+		private int offset = 0;
+		
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			
+			if (segment >= count)
+				return -1;
+			
+			int read = 0;
+			while (read < len && segment < count)
+			{
+				String s = segments[segment];
+				int n = Math.min(s.length() - offset, len - read);
+				s.getChars(offset, offset + n, cbuf, off + read);
+				read += n;
+				offset += n;
+				if (offset == s.length())
+				{
+					++segment;
+					offset = 0;
+				}
+			}
+			return read;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+}
@@ -17,85 +17,278 @@
 
 package org.sweble.wikitext.parser.utils;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-
-import org.sweble.wikitext.parser.parser.RatsWikitextParser;
+import java.util.TreeMap;
 
 import de.fau.cs.osr.utils.StringUtils;
 
+/**
+ * Collects statistics about the state aware memoization of the Rats! parser.
+ *
+ * Every thread that parses on behalf of a ParserStats instance records into
+ * its own {@link Recorder}. A recorder counts in plain fields that are only
+ * touched by its thread. At the end of each parse the recorder merges its
+ * counters into the totals of the ParserStats instance. Consequently, a
+ * snapshot only contains parses that have finished.
+ *
+ * The time spent in a production includes the time spent in the productions
+ * it calls. Productions are named like their memoized production in the
+ * grammar without the "Memoized" suffix.
+ */
 public class ParserStats
 {
 	public static final class MemoizedProduction
 	{
-		public int called;
+		/**
+		 * How often the production was called.
+		 */
+		public long called;
+		
+		/**
+		 * How often the production was parsed because the memoization table
+		 * did not contain a result for the position yet.
+		 */
+		public long parsed;
+		
+		/**
+		 * How often the production was parsed again because the memoized
+		 * result was created in a different parser context.
+		 */
+		public long reparsed;
 		
-		public int failed;
+		/**
+		 * How many of the parsed and reparsed results were failures.
+		 */
+		public long failed;
 		
-		public int reused;
+		/**
+		 * The time spent parsing and reparsing in nanoseconds.
+		 */
+		public long nanos;
 		
-		public int parsed;
+		private void add(MemoizedProduction p)
+		{
+			called += p.called;
+			parsed += p.parsed;
+			reparsed += p.reparsed;
+			failed += p.failed;
+			nanos += p.nanos;
+		}
+		
+		private MemoizedProduction copy()
+		{
+			MemoizedProduction p = new MemoizedProduction();
+			p.add(this);
+			return p;
+		}
+		
+		/**
+		 * How often a memoized result was returned.
+		 */
+		public long getReused()
+		{
+			return called - parsed - reparsed;
+		}
+		
+		/**
+		 * The fraction of calls that were answered from the memoization
+		 * table.
+		 */
+		public double getHitRate()
+		{
+			return (called == 0) ? 0. : (double) getReused() / called;
+		}
 		
 		@Override
 		public String toString()
 		{
 			return String.format(
-					"MemoizedProduction [called=%5d, reused=%5d, parsed=%5d, failed=%5d]",
+					"MemoizedProduction [called=%5d, reused=%5d, parsed=%5d, reparsed=%5d, failed=%5d, hits=%5.1f%%, time=%8.3fms]",
 					called,
-					reused,
+					getReused(),
 					parsed,
-					failed);
+					reparsed,
+					failed,
+					getHitRate() * 100.,
+					nanos / 1000000.);
 		}
 	}
 	
-	private final Map<String, MemoizedProduction> memoizedProductions =
+	// =========================================================================
+	
+	private final Map<String, MemoizedProduction> totals =
 			new HashMap<String, MemoizedProduction>();
 	
-	public Map<String, MemoizedProduction> getMemoizedProductions()
+	private final ThreadLocal<Recorder> recorders = new ThreadLocal<Recorder>()
 	{
-		return memoizedProductions;
+		@Override
+		protected Recorder initialValue()
+		{
+			return new Recorder();
+		}
+	};
+	
+	// =========================================================================
+	
+	/**
+	 * Returns the recorder of the calling thread.
+	 */
+	public Recorder getRecorder()
+	{
+		return recorders.get();
 	}
 	
-	public void parsed(String prod)
+	/**
+	 * Returns a snapshot of the statistics of all finished parses, ordered by
+	 * production name.
+	 */
+	public synchronized Map<String, MemoizedProduction> getMemoizedProductions()
 	{
-		getMemoizedProduction(prod).parsed++;
+		Map<String, MemoizedProduction> snapshot =
+				new TreeMap<String, MemoizedProduction>();
+		
+		for (Entry<String, MemoizedProduction> e : totals.entrySet())
+			snapshot.put(e.getKey(), e.getValue().copy());
+		
+		return snapshot;
 	}
 	
-	public void failed(String prod)
+	/**
+	 * Discards the statistics of all finished parses.
+	 */
+	public synchronized void clear()
 	{
-		getMemoizedProduction(prod).failed++;
+		totals.clear();
 	}
 	
-	public void called(String prod)
+	public void dump(PrintStream err)
 	{
-		getMemoizedProduction(prod).called++;
+		for (Entry<String, MemoizedProduction> x : getMemoizedProductions().entrySet())
+		{
+			err.print(x.getKey() + ":");
+			err.print(StringUtils.strrep(' ', 20 - x.getKey().length()));
+			err.println(x.getValue());
+		}
 	}
 	
-	public void reused(String prod)
+	/**
+	 * Writes a memoization profile which turns the memoized productions whose
+	 * hit rate is below the given rate into transient productions. The
+	 * profile is a token value map for the maven-replacer-plugin and is
+	 * applied to the grammars by the <code>tuned-memoization</code> build
+	 * profile:
+	 *
+	 * <pre>
+	 * mvn -Ptuned-memoization -DmemoizationProfile=&lt;file&gt; install
+	 * </pre>
+	 *
+	 * Productions that were never called are left untouched.
+	 */
+	public void writeMemoizationProfile(Writer out, double minHitRate) throws IOException
 	{
-		getMemoizedProduction(prod).reused++;
+		for (Entry<String, MemoizedProduction> x : getMemoizedProductions().entrySet())
+		{
+			if (x.getValue().getHitRate() >= minHitRate)
+				continue;
+			
+			out.write("\\bmemoized(\\s+[\\w.]+\\s+");
+			out.write(x.getKey());
+			out.write("Memoized\\s*\\=)=transient$1\n");
+		}
+		out.flush();
 	}
 	
-	private MemoizedProduction getMemoizedProduction(String prod)
+	private synchronized void merge(Map<String, MemoizedProduction> counters)
 	{
-		MemoizedProduction p = memoizedProductions.get(prod);
-		if (p == null)
+		for (Entry<String, MemoizedProduction> e : counters.entrySet())
 		{
-			p = new MemoizedProduction();
-			memoizedProductions.put(prod, p);
+			MemoizedProduction p = e.getValue();
+			if (p.called == 0)
+				continue;
+			
+			MemoizedProduction total = totals.get(e.getKey());
+			if (total == null)
+				totals.put(e.getKey(), p.copy());
+			else
+				total.add(p);
 		}
-		return p;
 	}
 	
-	public void dump(PrintStream err)
+	// =========================================================================
+	
+	/**
+	 * Records the statistics of the parses of a single thread. A recorder
+	 * must only be used by the thread it was handed out to.
+	 */
+	public final class Recorder
 	{
-		for (Entry<String, MemoizedProduction> x : RatsWikitextParser.getStats().getMemoizedProductions().entrySet())
+		private final Map<String, MemoizedProduction> counters =
+				new HashMap<String, MemoizedProduction>();
+		
+		private Recorder()
 		{
-			err.print(x.getKey() + ":");
-			err.print(StringUtils.strrep(' ', 20 - x.getKey().length()));
-			err.println(x.getValue());
+		}
+		
+		// =====================================================================
+		
+		public void called(String prod)
+		{
+			getMemoizedProduction(prod).called++;
+		}
+		
+		/**
+		 * @param reparsed
+		 *            Whether a result memoized in a different context was
+		 *            replaced.
+		 * @param failed
+		 *            Whether the production failed to match.
+		 * @param nanos
+		 *            The time spent parsing the production.
+		 */
+		public void parsed(String prod, boolean reparsed, boolean failed, long nanos)
+		{
+			MemoizedProduction p = getMemoizedProduction(prod);
+			if (reparsed)
+				p.reparsed++;
+			else
+				p.parsed++;
+			if (failed)
+				p.failed++;
+			p.nanos += nanos;
+		}
+		
+		/**
+		 * Merges the counters recorded since the last commit into the totals
+		 * and resets them.
+		 */
+		public void commit()
+		{
+			merge(counters);
+			
+			for (MemoizedProduction p : counters.values())
+			{
+				p.called = 0;
+				p.parsed = 0;
+				p.reparsed = 0;
+				p.failed = 0;
+				p.nanos = 0;
+			}
+		}
+		
+		private MemoizedProduction getMemoizedProduction(String prod)
+		{
+			MemoizedProduction p = counters.get(prod);
+			if (p == null)
+			{
+				p = new MemoizedProduction();
+				counters.put(prod, p);
+			}
+			return p;
 		}
 	}
 }
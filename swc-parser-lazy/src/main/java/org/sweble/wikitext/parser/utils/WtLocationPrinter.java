@@ -0,0 +1,54 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.utils;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * Prints the name and native location of every node of a tree, one node per
+ * line in document order. Useful to compare the locations of trees that were
+ * built in different ways, which the {@link WtAstPrinter} does not print.
+ */
+public final class WtLocationPrinter
+{
+	public static String print(WtNode node)
+	{
+		StringBuilder sb = new StringBuilder();
+		print(sb, node);
+		return sb.toString();
+	}
+	
+	public static StringBuilder print(StringBuilder sb, WtNode node)
+	{
+		sb.append(node.getNodeName());
+		sb.append('@');
+		sb.append(node.getNativeLocation());
+		sb.append('\n');
+		
+		for (WtNode child : node)
+			print(sb, child);
+		
+		return sb;
+	}
+	
+	// =========================================================================
+	
+	private WtLocationPrinter()
+	{
+	}
+}
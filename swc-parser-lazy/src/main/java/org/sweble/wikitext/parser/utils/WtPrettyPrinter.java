@@ -24,11 +24,13 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.sweble.wikitext.parser.nodes.CompleteWikitextVisitorNoReturn;
 import org.sweble.wikitext.parser.nodes.WtBody;
 import org.sweble.wikitext.parser.nodes.WtBold;
 import org.sweble.wikitext.parser.nodes.WtDefinitionList;
 import org.sweble.wikitext.parser.nodes.WtDefinitionListDef;
 import org.sweble.wikitext.parser.nodes.WtDefinitionListTerm;
+import org.sweble.wikitext.parser.nodes.WtDispatchingVisitor;
 import org.sweble.wikitext.parser.nodes.WtExternalLink;
 import org.sweble.wikitext.parser.nodes.WtHeading;
 import org.sweble.wikitext.parser.nodes.WtHorizontalRule;
@@ -99,13 +101,14 @@ import org.sweble.wikitext.parser.nodes.WtXmlEndTag;
 import org.sweble.wikitext.parser.nodes.WtXmlEntityRef;
 import org.sweble.wikitext.parser.nodes.WtXmlStartTag;
 
-import de.fau.cs.osr.ptk.common.AstVisitor;
 import de.fau.cs.osr.utils.PrinterBase;
 import de.fau.cs.osr.utils.StringUtils;
 
 public class WtPrettyPrinter
 		extends
-			AstVisitor<WtNode>
+			WtDispatchingVisitor
+		implements
+			CompleteWikitextVisitorNoReturn
 {
 	// --[ WtInnerNode1 ]-------------------------------------------------------
 	
@@ -20,6 +20,7 @@ package org.sweble.wikitext.parser;
 import static junit.framework.Assert.*;
 
 import java.io.IOException;
+import java.io.StringReader;
 
 import org.junit.Test;
 import org.sweble.wikitext.parser.encval.ValidatedWikitext;
@@ -104,4 +105,55 @@ public class EncodingValidatorTest
 		
 		assertEquals(ref.toString(), validatedWikitext);
 	}
+	
+	@Test
+	public void testCleanInputIsReturnedUnchanged() throws IOException
+	{
+		String source = "Gr\u00FC\u00DFe, \uD83D\uDE00 and\r\n\ttabs.\n";
+		
+		WikitextEncodingValidator v = new WikitextEncodingValidator();
+		ValidatedWikitext result = v.validate(new SimpleParserConfig(), source, "dummy");
+		
+		assertSame(source, result.getWikitext());
+		assertTrue(result.getEntityMap().isEmpty());
+	}
+	
+	@Test
+	public void testFastPathMatchesLexer() throws IOException
+	{
+		String[] sources = new String[] {
+				"\u0001 at the beginning",
+				"at the end \u007F",
+				"line\r\n\uDC80 isolated low after CRLF",
+				"line\r\uDC80 isolated low after CR",
+				"pair \uD83D\uDE00 then isolated low \uDC80",
+				"pair \uD83D\uDE00\uDC80 followed by low",
+				"high \uD83D\u0001 followed by control",
+				"plane 16 \uDBFF\uDC00 private use",
+				"non-char \uD83F\uDFFE in plane 1",
+				"\u2028separator\u0085next \uFFFE",
+				"dangling high at the end \uD83D" };
+		
+		SimpleParserConfig parserConfig = new SimpleParserConfig();
+		WikitextEncodingValidator v = new WikitextEncodingValidator();
+		
+		for (String source : sources)
+		{
+			ValidatedWikitext fast = v.validate(parserConfig, source, "dummy");
+			ValidatedWikitext full = v.validate(parserConfig, new StringReader(source), "dummy");
+			
+			assertEquals(source, full.getWikitext(), fast.getWikitext());
+			
+			int count = full.getEntityMap().getMap().size();
+			assertEquals(source, count, fast.getEntityMap().getMap().size());
+			for (int i = 0; i < count; ++i)
+			{
+				WtIllegalCodePoint a = (WtIllegalCodePoint) full.getEntityMap().getEntity(i);
+				WtIllegalCodePoint b = (WtIllegalCodePoint) fast.getEntityMap().getEntity(i);
+				assertEquals(source, a.getCodePoint(), b.getCodePoint());
+				assertEquals(source, a.getType(), b.getType());
+				assertEquals(source, a.getNativeLocation(), b.getNativeLocation());
+			}
+		}
+	}
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.sweble.wikitext.parser.encval.ValidatedWikitext;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.SimpleParserConfig;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+
+public class ParserReuseTest
+{
+	private static final String LONG_INPUT = "/nopkg-complex/input.wikitext/raw-Germany.wikitext";
+	
+	private static final String SHORT_INPUT = "== Heading ==\n* [[Link|with ''title'']]\n{|\n| cell\n|}\n";
+	
+	private static final String MISNESTED_INPUT = "<b>1<i>2<div>3</b>4</i>5</div>\n{|\n| <b>a\n|}\nb</b>\n";
+	
+	private final ParserConfig config = new SimpleParserConfig();
+	
+	// =========================================================================
+	
+	@Test
+	public void testReusedPreprocessorYieldsSameAstAsFreshPreprocessor() throws Exception
+	{
+		String longInput = loadLongInput();
+		
+		WikitextPreprocessor reused = new WikitextPreprocessor(config);
+		
+		// Long input first so that the short input has to cope with buffers
+		// and memoization tables that are larger than needed.
+		for (String input : new String[] { longInput, SHORT_INPUT, longInput })
+		{
+			assertEquals(
+					WtAstPrinter.print(preprocess(new WikitextPreprocessor(config), input)),
+					WtAstPrinter.print(preprocess(reused, input)));
+		}
+	}
+	
+	@Test
+	public void testReusedParserYieldsSameAstAsFreshParser() throws Exception
+	{
+		String longInput = loadLongInput();
+		
+		WikitextParser reused = new WikitextParser(config);
+		
+		for (String input : new String[] { SHORT_INPUT, longInput, SHORT_INPUT })
+		{
+			assertEquals(
+					WtAstPrinter.print(parse(new WikitextParser(config), input)),
+					WtAstPrinter.print(parse(reused, input)));
+		}
+	}
+	
+	@Test
+	public void testReusedPostprocessorYieldsSameAstAsFreshPostprocessor() throws Exception
+	{
+		String longInput = loadLongInput();
+		
+		WikitextParser parser = new WikitextParser(config);
+		
+		WikitextPostprocessor reused = new WikitextPostprocessor(config);
+		
+		for (String input : new String[] { longInput, MISNESTED_INPUT, SHORT_INPUT, longInput })
+		{
+			assertEquals(
+					WtAstPrinter.print(new WikitextPostprocessor(config).postprocess(parse(parser, input), "Test")),
+					WtAstPrinter.print(reused.postprocess(parse(parser, input), "Test")));
+		}
+	}
+	
+	// =========================================================================
+	
+	private WtNode preprocess(WikitextPreprocessor preprocessor, String input) throws Exception
+	{
+		return preprocessor.parseArticle(
+				new ValidatedWikitext(input, new WtEntityMapImpl()),
+				"Test",
+				false);
+	}
+	
+	private WtNode parse(WikitextParser parser, String input) throws Exception
+	{
+		return parser.parseArticle(
+				new PreprocessedWikitext(input, new WtEntityMapImpl()),
+				"Test");
+	}
+	
+	private String loadLongInput() throws Exception
+	{
+		InputStream is = getClass().getResourceAsStream(LONG_INPUT);
+		try
+		{
+			return IOUtils.toString(is, "UTF-8");
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+}
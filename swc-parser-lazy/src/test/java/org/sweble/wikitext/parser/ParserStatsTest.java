@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.ParserStats;
+import org.sweble.wikitext.parser.utils.ParserStats.MemoizedProduction;
+import org.sweble.wikitext.parser.utils.SimpleParserConfig;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+
+public class ParserStatsTest
+{
+	private static final String INPUT = "== Heading ==\n* [[Link|with ''title'']]\n{|\n| cell\n|-\n| [[a]] || b\n|}\n";
+	
+	private final ParserConfig config = new SimpleParserConfig();
+	
+	// =========================================================================
+	
+	@Test
+	public void testRecordingDoesNotChangeAst() throws Exception
+	{
+		WikitextParser recording = new WikitextParser(config);
+		recording.setStats(new ParserStats());
+		
+		assertEquals(
+				WtAstPrinter.print(parse(new WikitextParser(config), INPUT)),
+				WtAstPrinter.print(parse(recording, INPUT)));
+	}
+	
+	@Test
+	public void testCountersAreConsistentAndAccumulate() throws Exception
+	{
+		ParserStats stats = new ParserStats();
+		
+		WikitextParser parser = new WikitextParser(config);
+		parser.setStats(stats);
+		
+		parse(parser, INPUT);
+		Map<String, MemoizedProduction> first = stats.getMemoizedProductions();
+		
+		assertTrue(first.containsKey("Table"));
+		assertTrue(first.containsKey("InternalLink"));
+		
+		for (MemoizedProduction p : first.values())
+		{
+			assertTrue(p.called > 0);
+			assertTrue(p.getReused() >= 0);
+			assertTrue(p.failed <= p.parsed + p.reparsed);
+		}
+		
+		parse(parser, INPUT);
+		Map<String, MemoizedProduction> second = stats.getMemoizedProductions();
+		
+		assertEquals(first.keySet(), second.keySet());
+		for (String prod : first.keySet())
+		{
+			assertEquals(2 * first.get(prod).called, second.get(prod).called);
+			assertEquals(2 * first.get(prod).parsed, second.get(prod).parsed);
+		}
+		
+		stats.clear();
+		assertTrue(stats.getMemoizedProductions().isEmpty());
+	}
+	
+	@Test
+	public void testMemoizationProfileListsProductionsBelowHitRate() throws Exception
+	{
+		ParserStats stats = new ParserStats();
+		
+		WikitextParser parser = new WikitextParser(config);
+		parser.setStats(stats);
+		parse(parser, INPUT);
+		
+		StringWriter none = new StringWriter();
+		stats.writeMemoizationProfile(none, 0.);
+		assertEquals("", none.toString());
+		
+		StringWriter all = new StringWriter();
+		stats.writeMemoizationProfile(all, 1.1);
+		String[] lines = all.toString().split("\n");
+		assertEquals(stats.getMemoizedProductions().size(), lines.length);
+		
+		// Apply the first line like the maven-replacer-plugin does
+		String prod = stats.getMemoizedProductions().keySet().iterator().next();
+		String token = lines[0].substring(0, lines[0].indexOf(")=") + 1).replace("\\=", "=");
+		String value = lines[0].substring(lines[0].indexOf(")=") + 2);
+		assertEquals(
+				"noinline transient WtNode " + prod + "Memoized =",
+				("noinline memoized WtNode " + prod + "Memoized =").replaceAll(token, value));
+	}
+	
+	// =========================================================================
+	
+	private WtNode parse(WikitextParser parser, String input) throws Exception
+	{
+		return parser.parseArticle(
+				new PreprocessedWikitext(input, new WtEntityMapImpl()),
+				"Test");
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.SimpleParserConfig;
+import org.sweble.wikitext.parser.utils.WtAstPrinter;
+import org.sweble.wikitext.parser.utils.WtLocationPrinter;
+
+public class SectionParallelParsingTest
+{
+	private static final String LONG_INPUT = "/nopkg-complex/input.wikitext/raw-Germany.wikitext";
+	
+	private static final String SECTIONED_INPUT = ""
+			+ "Intro ''text''\n\n"
+			+ "== First ==\n"
+			+ "* item\n"
+			+ "=== Nested ===\n"
+			+ "{|\n| cell\n== Not split ==\n|}\n"
+			+ "== Second ==\n"
+			+ "[[Link|with\n== Not split ==\ntitle]]\n"
+			+ "== Third ==\r\n"
+			+ "<div>\n"
+			+ "== Fourth ==\n"
+			+ "</div>\n"
+			+ " semi pre\n"
+			+ "== Fifth ==";
+	
+	private final ParserConfig config = new SimpleParserConfig();
+	
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	
+	// =========================================================================
+	
+	@After
+	public void after()
+	{
+		executor.shutdownNow();
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testSplitterOnlySplitsAtSafeTopLevelHeadings() throws Exception
+	{
+		int[] chunks = SectionSplitter.split(SECTIONED_INPUT, 1);
+		
+		assertNotNull(chunks);
+		assertEquals(6, chunks.length);
+		assertEquals(0, chunks[0]);
+		assertTrue(SECTIONED_INPUT.startsWith("== First ==", chunks[1]));
+		assertTrue(SECTIONED_INPUT.startsWith("== Second ==", chunks[2]));
+		assertTrue(SECTIONED_INPUT.startsWith("== Third ==", chunks[3]));
+		assertTrue(SECTIONED_INPUT.startsWith("== Fourth ==", chunks[4]));
+		assertTrue(SECTIONED_INPUT.startsWith("== Fifth ==", chunks[5]));
+		
+		int[] lines = SectionSplitter.getLineNumbers(SECTIONED_INPUT, chunks);
+		assertEquals(3, lines[1]);
+		assertEquals(14, lines[3]);
+		assertEquals(16, lines[4]);
+	}
+	
+	@Test
+	public void testSplitterDoesNotSplitBelowMinimumLevel() throws Exception
+	{
+		assertNull(SectionSplitter.split("= Top =\n== A ==\nx\n== B ==\ny\n", 1));
+	}
+	
+	@Test
+	public void testParallelParserYieldsSameAstAsSequentialParser() throws Exception
+	{
+		String longInput = loadLongInput();
+		
+		WikitextParser sequential = new WikitextParser(config);
+		
+		WikitextParser parallel = new WikitextParser(config);
+		
+		for (String input : new String[] { SECTIONED_INPUT, longInput, SECTIONED_INPUT })
+		{
+			parallel.setSectionExecutor(executor, (input == longInput) ? 4096 : 8);
+			
+			WtNode expected = parse(sequential, input);
+			WtNode actual = parse(parallel, input);
+			
+			assertEquals(WtAstPrinter.print(expected), WtAstPrinter.print(actual));
+			assertEquals(WtLocationPrinter.print(expected), WtLocationPrinter.print(actual));
+		}
+	}
+	
+	// =========================================================================
+	
+	private WtNode parse(WikitextParser parser, String input) throws Exception
+	{
+		return parser.parseArticle(
+				new PreprocessedWikitext(input, new WtEntityMapImpl()),
+				"Test");
+	}
+	
+	private String loadLongInput() throws Exception
+	{
+		InputStream is = getClass().getResourceAsStream(LONG_INPUT);
+		try
+		{
+			return IOUtils.toString(is, "UTF-8");
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+}
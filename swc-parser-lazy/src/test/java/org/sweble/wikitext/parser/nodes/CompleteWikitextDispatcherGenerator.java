@@ -0,0 +1,477 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.nodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates the {@link CompleteWikitextDispatcher} from the node type ids
+ * declared in {@link WtNode} and the visit() methods of the
+ * {@link CompleteWikitextVisitor} interface.
+ *
+ * Run from the directory of the swc-parser-lazy module after adding or
+ * changing a node type or a method of the complete visitor interfaces.
+ * {@link CompleteWikitextDispatcherTest} fails if the dispatcher is out of
+ * date.
+ */
+public class CompleteWikitextDispatcherGenerator
+{
+	public static final String DISPATCHER_SOURCE =
+			"src/main/java/org/sweble/wikitext/parser/nodes/CompleteWikitextDispatcher.java";
+	
+	private static final String LICENSE = "" +
+			"/**\n" +
+			" * Copyright 2011 The Open Source Research Group,\n" +
+			" *                University of Erlangen-Nürnberg\n" +
+			" *\n" +
+			" * Licensed under the Apache License, Version 2.0 (the \"License\");\n" +
+			" * you may not use this file except in compliance with the License.\n" +
+			" * You may obtain a copy of the License at\n" +
+			" *\n" +
+			" *     http://www.apache.org/licenses/LICENSE-2.0\n" +
+			" *\n" +
+			" * Unless required by applicable law or agreed to in writing, software\n" +
+			" * distributed under the License is distributed on an \"AS IS\" BASIS,\n" +
+			" * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.\n" +
+			" * See the License for the specific language governing permissions and\n" +
+			" * limitations under the License.\n" +
+			" */\n";
+	
+	// =========================================================================
+	
+	public static void main(String[] args) throws Exception
+	{
+		File file = new File(args.length > 0 ? args[0] : DISPATCHER_SOURCE);
+		FileUtils.writeStringToFile(file, generate(), "UTF-8");
+	}
+	
+	/**
+	 * Returns the source code of the dispatcher.
+	 */
+	public static String generate() throws Exception
+	{
+		Map<Integer, List<Class<?>>> cases = getCases();
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(LICENSE);
+		sb.append("\n");
+		sb.append("package org.sweble.wikitext.parser.nodes;\n");
+		sb.append("\n");
+		sb.append("/**\n");
+		sb.append(" * Dispatches a node to the matching visit() method of a complete wikitext\n");
+		sb.append(" * visitor by switching on the node type id. Unlike the reflective dispatch of\n");
+		sb.append(" * the ptk visitors this requires no method lookup and the calls can be inlined\n");
+		sb.append(" * by the JIT.\n");
+		sb.append(" * \n");
+		sb.append(" * This class is generated by CompleteWikitextDispatcherGenerator (see the\n");
+		sb.append(" * tests of this module) from the node type ids declared in {@link WtNode} and\n");
+		sb.append(" * the methods of {@link CompleteWikitextVisitor}. Do not edit it by hand.\n");
+		sb.append(" * \n");
+		sb.append(" * Nodes are passed to the visit() method of the type that declares their node\n");
+		sb.append(" * type id. For nodes whose type is not covered by the complete visitor\n");
+		sb.append(" * interfaces (e.g. language conversion nodes or custom nodes) the dispatcher\n");
+		sb.append(" * returns {@link #NOT_FOUND}. Visitors should extend\n");
+		sb.append(" * {@link WtDispatchingVisitor}, which falls back to the reflective dispatch\n");
+		sb.append(" * in that case.\n");
+		sb.append(" */\n");
+		sb.append("public final class CompleteWikitextDispatcher\n");
+		sb.append("{\n");
+		sb.append("\t/**\n");
+		sb.append("\t * Returned if the type of the given node is not covered by the complete\n");
+		sb.append("\t * visitor interfaces.\n");
+		sb.append("\t */\n");
+		sb.append("\tpublic static final Object NOT_FOUND = new Object();\n");
+		sb.append("\t\n");
+		sb.append("\t// =========================================================================\n");
+		sb.append("\t\n");
+		sb.append("\tprivate CompleteWikitextDispatcher()\n");
+		sb.append("\t{\n");
+		sb.append("\t}\n");
+		sb.append("\t\n");
+		sb.append("\t// =========================================================================\n");
+		sb.append("\t\n");
+		
+		sb.append("\tpublic static <T> Object dispatch(CompleteWikitextVisitor<T> v, WtNode n)\n");
+		sb.append("\t{\n");
+		sb.append("\t\tswitch (n.getNodeType())\n");
+		sb.append("\t\t{\n");
+		for (Map.Entry<Integer, List<Class<?>>> e : cases.entrySet())
+		{
+			sb.append("\t\t\tcase WtNode.").append(getNodeTypeName(e.getKey(), e.getValue())).append(":\n");
+			List<Class<?>> classes = e.getValue();
+			if (classes.size() == 1)
+			{
+				String name = classes.get(0).getSimpleName();
+				sb.append("\t\t\t\treturn v.visit((").append(name).append(") n);\n");
+			}
+			else
+			{
+				for (Class<?> clazz : classes)
+				{
+					String name = clazz.getSimpleName();
+					sb.append("\t\t\t\tif (n instanceof ").append(name).append(")\n");
+					sb.append("\t\t\t\t\treturn v.visit((").append(name).append(") n);\n");
+				}
+				sb.append("\t\t\t\tbreak;\n");
+			}
+		}
+		sb.append("\t\t}\n");
+		sb.append("\t\treturn NOT_FOUND;\n");
+		sb.append("\t}\n");
+		sb.append("\t\n");
+		
+		sb.append("\tpublic static Object dispatch(CompleteWikitextVisitorNoReturn v, WtNode n)\n");
+		sb.append("\t{\n");
+		sb.append("\t\tswitch (n.getNodeType())\n");
+		sb.append("\t\t{\n");
+		for (Map.Entry<Integer, List<Class<?>>> e : cases.entrySet())
+		{
+			sb.append("\t\t\tcase WtNode.").append(getNodeTypeName(e.getKey(), e.getValue())).append(":\n");
+			List<Class<?>> classes = e.getValue();
+			if (classes.size() == 1)
+			{
+				String name = classes.get(0).getSimpleName();
+				sb.append("\t\t\t\tv.visit((").append(name).append(") n);\n");
+				sb.append("\t\t\t\treturn null;\n");
+			}
+			else
+			{
+				for (Class<?> clazz : classes)
+				{
+					String name = clazz.getSimpleName();
+					sb.append("\t\t\t\tif (n instanceof ").append(name).append(")\n");
+					sb.append("\t\t\t\t{\n");
+					sb.append("\t\t\t\t\tv.visit((").append(name).append(") n);\n");
+					sb.append("\t\t\t\t\treturn null;\n");
+					sb.append("\t\t\t\t}\n");
+				}
+				sb.append("\t\t\t\tbreak;\n");
+			}
+		}
+		sb.append("\t\t}\n");
+		sb.append("\t\treturn NOT_FOUND;\n");
+		sb.append("\t}\n");
+		sb.append("}\n");
+		
+		return sb.toString();
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Maps every node type id to the node types of the complete visitor
+	 * interface that carry this id. The ids are sorted in ascending order.
+	 * Node types sharing an id are sorted such that subtypes come first.
+	 */
+	private static Map<Integer, List<Class<?>>> getCases() throws Exception
+	{
+		Map<Integer, List<Class<?>>> cases = new TreeMap<Integer, List<Class<?>>>();
+		for (Class<?> type : getVisitedTypes())
+		{
+			int id = getNodeType(type);
+			List<Class<?>> classes = cases.get(id);
+			if (classes == null)
+			{
+				classes = new ArrayList<Class<?>>();
+				cases.put(id, classes);
+			}
+			classes.add(type);
+		}
+		
+		for (List<Class<?>> classes : cases.values())
+		{
+			Collections.sort(classes, new Comparator<Class<?>>()
+			{
+				@Override
+				public int compare(Class<?> a, Class<?> b)
+				{
+					if (a.isAssignableFrom(b))
+						return 1;
+					if (b.isAssignableFrom(a))
+						return -1;
+					return a.getSimpleName().compareTo(b.getSimpleName());
+				}
+			});
+		}
+		
+		return cases;
+	}
+	
+	/**
+	 * Returns the parameter types of all visit() methods of the complete
+	 * wikitext visitor interface.
+	 */
+	public static List<Class<?>> getVisitedTypes()
+	{
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		for (Method m : CompleteWikitextVisitor.class.getMethods())
+		{
+			if (m.getName().equals("visit") && m.getParameterTypes().length == 1)
+				types.add(m.getParameterTypes()[0]);
+		}
+		return types;
+	}
+	
+	/**
+	 * Determines the node type id of a node type by instantiating the type
+	 * itself or, if it is abstract, the implementations nested in it.
+	 */
+	public static int getNodeType(Class<?> type) throws Exception
+	{
+		Integer id = null;
+		for (WtNode node : instantiate(type))
+		{
+			if (id == null)
+			{
+				id = node.getNodeType();
+			}
+			else if (id != node.getNodeType())
+			{
+				throw new IllegalStateException(
+						"Implementations of " + type.getName() + " have different node type ids");
+			}
+		}
+		
+		if (id == null)
+			throw new IllegalStateException("Cannot instantiate " + type.getName());
+		
+		return id;
+	}
+	
+	private static List<WtNode> instantiate(Class<?> type) throws Exception
+	{
+		List<WtNode> nodes = new ArrayList<WtNode>();
+		if (isInstantiable(type))
+			nodes.add(newInstance(type));
+		
+		for (Class<?> nested : type.getDeclaredClasses())
+		{
+			if (type.isAssignableFrom(nested) && isInstantiable(nested))
+				nodes.add(newInstance(nested));
+		}
+		
+		return nodes;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns the names of all node type ids declared in {@link WtNode} and
+	 * its super interfaces by their id. Bit masks are omitted. Some ids are
+	 * declared under more than one name.
+	 */
+	public static Map<Integer, List<String>> getNodeTypes() throws Exception
+	{
+		Map<Integer, List<String>> nodeTypes = new TreeMap<Integer, List<String>>();
+		for (Field f : WtNode.class.getFields())
+		{
+			String name = f.getName();
+			if (!name.startsWith("NT_") || name.endsWith("_BITS") || name.endsWith("_BIT"))
+				continue;
+			if (f.getType() != int.class || !Modifier.isStatic(f.getModifiers()))
+				continue;
+			
+			List<String> names = nodeTypes.get(f.getInt(null));
+			if (names == null)
+			{
+				names = new ArrayList<String>();
+				nodeTypes.put(f.getInt(null), names);
+			}
+			names.add(name);
+		}
+		return nodeTypes;
+	}
+	
+	/**
+	 * Returns the name of a node type id. If the id is declared under more
+	 * than one name, the name is chosen that matches the name of one of the
+	 * given node types (e.g. NT_ILLEGAL_CODE_POINT for WtIllegalCodePoint).
+	 */
+	private static String getNodeTypeName(int id, List<Class<?>> types) throws Exception
+	{
+		List<String> names = getNodeTypes().get(id);
+		if (names == null)
+			throw new IllegalStateException("Node type id " + id + " is not declared in WtNode");
+		
+		if (names.size() == 1)
+			return names.get(0);
+		
+		for (Class<?> type : types)
+		{
+			String name = type.getSimpleName().replaceFirst("^Wt", "");
+			name = "NT_" + name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+			if (names.contains(name))
+				return name;
+		}
+		
+		throw new IllegalStateException("Node type id " + id + " has ambiguous names " + names);
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns all classes in the package of {@link WtNode} which implement
+	 * {@link WtNode} and can be instantiated with a constructor that takes no
+	 * arguments.
+	 */
+	public static List<Class<?>> getInstantiableNodeClasses() throws Exception
+	{
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (String name : listClassesInPackage(WtNode.class))
+		{
+			Class<?> clazz = Class.forName(name, false, WtNode.class.getClassLoader());
+			if (WtNode.class.isAssignableFrom(clazz) && isInstantiable(clazz))
+				classes.add(clazz);
+		}
+		return classes;
+	}
+	
+	public static boolean isInstantiable(Class<?> clazz)
+	{
+		if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()))
+			return false;
+		if (clazz.isMemberClass() && !Modifier.isStatic(clazz.getModifiers()))
+			return false;
+		return clazz.getDeclaredConstructors().length > 0;
+	}
+	
+	/**
+	 * Instantiates a node class. Classes without a default constructor (like
+	 * the intermediate tags) are instantiated with the constructor taking the
+	 * fewest arguments and default values for these arguments.
+	 */
+	public static WtNode newInstance(Class<?> clazz) throws Exception
+	{
+		Constructor<?>[] ctors = clazz.getDeclaredConstructors();
+		Arrays.sort(ctors, new Comparator<Constructor<?>>()
+		{
+			@Override
+			public int compare(Constructor<?> a, Constructor<?> b)
+			{
+				return a.getParameterTypes().length - b.getParameterTypes().length;
+			}
+		});
+		
+		Exception error = null;
+		for (Constructor<?> ctor : ctors)
+		{
+			Class<?>[] paramTypes = ctor.getParameterTypes();
+			Object[] args = new Object[paramTypes.length];
+			for (int i = 0; i < paramTypes.length; ++i)
+				args[i] = getDefaultArgument(paramTypes[i]);
+			
+			try
+			{
+				ctor.setAccessible(true);
+				return (WtNode) ctor.newInstance(args);
+			}
+			catch (Exception e)
+			{
+				if (error == null)
+					error = e;
+			}
+		}
+		
+		throw new IllegalStateException("Cannot instantiate " + clazz.getName(), error);
+	}
+	
+	private static Object getDefaultArgument(Class<?> type)
+	{
+		if (type == boolean.class)
+			return false;
+		if (type == char.class)
+			return '\0';
+		if (type == byte.class)
+			return (byte) 0;
+		if (type == short.class)
+			return (short) 0;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		if (type == float.class)
+			return 0.0f;
+		if (type == double.class)
+			return 0.0;
+		if (type == String.class)
+			return "";
+		if (type.isEnum())
+			return type.getEnumConstants()[0];
+		return null;
+	}
+	
+	private static List<String> listClassesInPackage(Class<?> member) throws IOException
+	{
+		String pkg = member.getPackage().getName();
+		String path = pkg.replace('.', '/');
+		
+		List<String> names = new ArrayList<String>();
+		
+		URL url = member.getResource(member.getSimpleName() + ".class");
+		if (url.getProtocol().equals("jar"))
+		{
+			String jar = url.getPath().substring(5, url.getPath().indexOf('!'));
+			JarFile jarFile = new JarFile(jar);
+			try
+			{
+				Enumeration<JarEntry> entries = jarFile.entries();
+				while (entries.hasMoreElements())
+				{
+					String name = entries.nextElement().getName();
+					if (name.startsWith(path + "/") && name.endsWith(".class") &&
+							name.indexOf('/', path.length() + 1) == -1)
+						names.add(name.substring(0, name.length() - 6).replace('/', '.'));
+				}
+			}
+			finally
+			{
+				jarFile.close();
+			}
+		}
+		else
+		{
+			File dir = new File(FileUtils.toFile(url).getParentFile().getPath());
+			for (String name : dir.list())
+			{
+				if (name.endsWith(".class"))
+					names.add(pkg + "." + name.substring(0, name.length() - 6));
+			}
+		}
+		
+		Collections.sort(names);
+		return names;
+	}
+}
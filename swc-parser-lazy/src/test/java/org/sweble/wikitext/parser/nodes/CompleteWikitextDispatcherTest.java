@@ -0,0 +1,245 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.nodes;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sweble.wikitext.parser.utils.WtPrettyPrinter;
+
+public class CompleteWikitextDispatcherTest
+{
+	@Test
+	public void testDispatcherIsUpToDate() throws Exception
+	{
+		String expected = CompleteWikitextDispatcherGenerator.generate();
+		String actual = FileUtils.readFileToString(
+				new File(CompleteWikitextDispatcherGenerator.DISPATCHER_SOURCE),
+				"UTF-8");
+		
+		assertEquals(
+				"CompleteWikitextDispatcher is out of date, run CompleteWikitextDispatcherGenerator",
+				expected,
+				actual);
+	}
+	
+	@Test
+	public void testEveryNodeTypeDispatchesToMatchingVisit() throws Exception
+	{
+		List<Class<?>> visitedTypes = CompleteWikitextDispatcherGenerator.getVisitedTypes();
+		List<Class<?>> nodeClasses = CompleteWikitextDispatcherGenerator.getInstantiableNodeClasses();
+		
+		for (int id : CompleteWikitextDispatcherGenerator.getNodeTypes().keySet())
+		{
+			List<WtNode> nodes = new ArrayList<WtNode>();
+			for (Class<?> clazz : nodeClasses)
+			{
+				WtNode node = CompleteWikitextDispatcherGenerator.newInstance(clazz);
+				if (node.getNodeType() == id)
+					nodes.add(node);
+			}
+			
+			if (nodes.isEmpty())
+			{
+				// No node carries this id, the dispatcher must not claim it
+				assertDispatchedTo(null, new UnknownNode(id));
+			}
+			
+			for (WtNode node : nodes)
+			{
+				Class<?> expected = getMostSpecificVisitedType(visitedTypes, node);
+				assertDispatchedTo(expected, node);
+			}
+		}
+	}
+	
+	@Test
+	public void testOnlyMoreSpecificVisitedTypesAreDispatchedReflectively() throws Exception
+	{
+		List<Class<?>> visitedTypes = CompleteWikitextDispatcherGenerator.getVisitedTypes();
+		
+		List<Class<?>> types = Arrays.asList(
+				WtDispatchingVisitor.getReflectivelyDispatchedTypes(WtPrettyPrinter.class));
+		assertFalse(types.contains(ShoutingText.class));
+		for (Class<?> type : types)
+			assertFalse(type.getName(), visitedTypes.contains(type));
+		
+		// WtNoLink is no visited type, it always goes through the fallback
+		assertFalse(types.contains(WtLinkTarget.WtNoLink.class));
+		
+		types = Arrays.asList(
+				WtDispatchingVisitor.getReflectivelyDispatchedTypes(ShoutingPrettyPrinter.class));
+		assertTrue(types.contains(ShoutingText.class));
+	}
+	
+	@Test
+	public void testVisitorWithSpecificVisitFallsBackToReflectiveDispatch() throws Exception
+	{
+		StringWriter w = new StringWriter();
+		new ShoutingPrettyPrinter(w).go(new ShoutingText("shout"));
+		assertEquals("SHOUT", w.toString());
+		
+		w = new StringWriter();
+		new ShoutingPrettyPrinter(w).go(new WtText("talk"));
+		assertEquals("talk", w.toString());
+		
+		assertEquals("shout", WtPrettyPrinter.print(new ShoutingText("shout")));
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Returns the most specific visited type which the node is an instance of
+	 * and which declares the node type id of the node. Nodes which override
+	 * the id of a visited type (like the language conversion nodes) are not
+	 * covered.
+	 */
+	private static Class<?> getMostSpecificVisitedType(
+			List<Class<?>> visitedTypes,
+			WtNode node) throws Exception
+	{
+		Class<?> result = null;
+		for (Class<?> type : visitedTypes)
+		{
+			if (!type.isInstance(node) ||
+					CompleteWikitextDispatcherGenerator.getNodeType(type) != node.getNodeType())
+				continue;
+			
+			if (result == null || result.isAssignableFrom(type))
+				result = type;
+		}
+		return result;
+	}
+	
+	private static void assertDispatchedTo(Class<?> expected, WtNode node)
+	{
+		String message = node.getClass().getName() + " (" + node.getNodeType() + ")";
+		
+		RecordingHandler handler = new RecordingHandler();
+		CompleteWikitextVisitor<?> visitor = (CompleteWikitextVisitor<?>) Proxy.newProxyInstance(
+				CompleteWikitextVisitor.class.getClassLoader(),
+				new Class<?>[] { CompleteWikitextVisitor.class },
+				handler);
+		
+		Object result = CompleteWikitextDispatcher.dispatch(visitor, node);
+		if (expected == null)
+		{
+			assertSame(message, CompleteWikitextDispatcher.NOT_FOUND, result);
+			assertNull(message, handler.visitedType);
+		}
+		else
+		{
+			assertSame(message, handler, result);
+			assertEquals(message, expected, handler.visitedType);
+		}
+		
+		handler = new RecordingHandler();
+		CompleteWikitextVisitorNoReturn visitorNoReturn = (CompleteWikitextVisitorNoReturn) Proxy.newProxyInstance(
+				CompleteWikitextVisitorNoReturn.class.getClassLoader(),
+				new Class<?>[] { CompleteWikitextVisitorNoReturn.class },
+				handler);
+		
+		result = CompleteWikitextDispatcher.dispatch(visitorNoReturn, node);
+		if (expected == null)
+		{
+			assertSame(message, CompleteWikitextDispatcher.NOT_FOUND, result);
+			assertNull(message, handler.visitedType);
+		}
+		else
+		{
+			assertNull(message, result);
+			assertEquals(message, expected, handler.visitedType);
+		}
+	}
+	
+	// =========================================================================
+	
+	private static final class RecordingHandler
+			implements
+				InvocationHandler
+	{
+		public Class<?> visitedType;
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			if (!method.getName().equals("visit"))
+				throw new UnsupportedOperationException(method.getName());
+			
+			visitedType = method.getParameterTypes()[0];
+			return method.getReturnType() == void.class ? null : this;
+		}
+	}
+	
+	private static final class UnknownNode
+			extends
+				WtIgnored
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int nodeType;
+		
+		public UnknownNode(int nodeType)
+		{
+			this.nodeType = nodeType;
+		}
+		
+		@Override
+		public int getNodeType()
+		{
+			return nodeType;
+		}
+	}
+	
+	public static final class ShoutingText
+			extends
+				WtText
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public ShoutingText(String content)
+		{
+			super(content);
+		}
+	}
+	
+	public static final class ShoutingPrettyPrinter
+			extends
+				WtPrettyPrinter
+	{
+		public ShoutingPrettyPrinter(StringWriter writer)
+		{
+			super(writer);
+		}
+		
+		public void visit(ShoutingText n)
+		{
+			p.print(n.getContent().toUpperCase());
+		}
+	}
+}
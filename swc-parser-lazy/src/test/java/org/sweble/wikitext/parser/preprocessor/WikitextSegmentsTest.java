@@ -0,0 +1,287 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.preprocessor;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.junit.Test;
+import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.WtEntityMapImpl;
+import org.sweble.wikitext.parser.nodes.WikitextNodeFactory;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.utils.SimpleParserConfig;
+
+public class WikitextSegmentsTest
+{
+	private final WikitextNodeFactory nf =
+			new SimpleParserConfig().getNodeFactory();
+	
+	// =========================================================================
+	
+	@Test
+	public void testEmptySegments() throws Exception
+	{
+		WikitextSegments segments = new WikitextSegments();
+		segments.appendText("");
+		
+		assertEquals(0, segments.length());
+		assertEquals("", segments.toString());
+		assertEquals("", segments.subSequence(0, 0).toString());
+		assertEquals(-1, segments.newReader().read(new char[4], 0, 4));
+	}
+	
+	@Test
+	public void testCharSequenceAcrossSegmentBoundaries() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		String expected = appendMixed(segments, entityMap);
+		
+		assertEquals(expected, segments.toString());
+		assertEquals(expected.length(), segments.length());
+		
+		for (int i = 0; i < expected.length(); ++i)
+			assertEquals("charAt(" + i + ")", expected.charAt(i), segments.charAt(i));
+		
+		for (int start = 0; start <= expected.length(); ++start)
+		{
+			for (int end = start; end <= expected.length(); ++end)
+			{
+				assertEquals(
+						"subSequence(" + start + ", " + end + ")",
+						expected.substring(start, end),
+						segments.subSequence(start, end).toString());
+			}
+		}
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testCharAtBehindEnd() throws Exception
+	{
+		WikitextSegments segments = new WikitextSegments();
+		segments.appendText("abc");
+		segments.charAt(3);
+	}
+	
+	@Test
+	public void testReaderAcrossSegmentBoundaries() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		String expected = appendMixed(segments, entityMap);
+		
+		for (int bufferSize : new int[] { 1, 2, 3, 5, 7, 64 })
+		{
+			assertEquals(
+					"Buffer size " + bufferSize,
+					expected,
+					readAll(segments.newReader(), bufferSize));
+		}
+		
+		Reader reader = segments.newReader();
+		assertEquals(0, reader.read(new char[4], 0, 0));
+	}
+	
+	@Test
+	public void testManySegmentsGrowTheTables() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 200; ++i)
+		{
+			String text = "t" + i;
+			segments.appendText(text);
+			expected.append(text);
+			
+			WtNode entity = nf.text("e" + i);
+			int id = entityMap.registerEntity(entity);
+			segments.appendEntity(id, entity);
+			expected.append("\uE000" + id + "\uE001");
+		}
+		
+		assertEquals(expected.toString(), segments.toString());
+		assertEquals(expected.toString(), readAll(segments.newReader(), 13));
+		assertEquals(expected.charAt(expected.length() - 1), segments.charAt(expected.length() - 1));
+		
+		for (int id = 0; id < 200; ++id)
+			assertSame(entityMap.getEntity(id), segments.getEntity(id));
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testEntityTableWithContiguousIds() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		
+		WtNode[] entities = new WtNode[3];
+		int[] ids = new int[3];
+		for (int i = 0; i < entities.length; ++i)
+		{
+			entities[i] = nf.text("entity " + i);
+			ids[i] = entityMap.registerEntity(entities[i]);
+			segments.appendEntity(ids[i], entities[i]);
+		}
+		
+		for (int i = 0; i < entities.length; ++i)
+			assertSame(entities[i], segments.getEntity(ids[i]));
+		
+		assertNull(segments.getEntity(ids[0] - 1));
+		assertNull(segments.getEntity(ids[2] + 1));
+	}
+	
+	@Test
+	public void testEntitiesWithNonContiguousIdsFallBackToEntityMap() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		
+		WtNode first = nf.text("first");
+		int firstId = entityMap.registerEntity(first);
+		segments.appendEntity(firstId, first);
+		
+		// Registered by someone else, leaves a gap in the ids of the segments
+		entityMap.registerEntity(nf.text("foreign"));
+		
+		WtNode second = nf.text("second");
+		int secondId = entityMap.registerEntity(second);
+		segments.appendEntity(secondId, second);
+		
+		assertSame(first, segments.getEntity(firstId));
+		assertNull(segments.getEntity(secondId));
+		
+		PreprocessedWikitext ppw = new PreprocessedWikitext(segments, entityMap);
+		assertSame(first, ppw.getEntity(firstId));
+		assertSame(second, ppw.getEntity(secondId));
+	}
+	
+	@Test
+	public void testSegmentsWithoutEntities() throws Exception
+	{
+		WikitextSegments segments = new WikitextSegments();
+		segments.appendText("abc");
+		
+		assertNull(segments.getEntity(0));
+	}
+	
+	// =========================================================================
+	
+	@Test
+	public void testPreprocessedWikitextFromSegments() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		String expected = appendMixed(segments, entityMap);
+		
+		PreprocessedWikitext ppw = new PreprocessedWikitext(segments, entityMap);
+		assertEquals(expected.length(), ppw.length());
+		assertEquals(expected, readAll(ppw.getReader(), 4));
+		assertEquals(expected, ppw.getWikitext());
+	}
+	
+	@Test
+	public void testSliceResolvesEntitiesOfItsSource() throws Exception
+	{
+		WtEntityMap entityMap = new WtEntityMapImpl();
+		WikitextSegments segments = new WikitextSegments();
+		
+		segments.appendText("before ");
+		WtNode entity = nf.text("entity");
+		int id = entityMap.registerEntity(entity);
+		segments.appendEntity(id, entity);
+		segments.appendText(" after");
+		
+		PreprocessedWikitext ppw = new PreprocessedWikitext(segments, entityMap);
+		String text = ppw.getWikitext();
+		
+		int from = "before".length();
+		int to = text.length() - "after".length();
+		PreprocessedWikitext slice = ppw.slice(from, to);
+		
+		assertEquals(text.substring(from, to), slice.getWikitext());
+		assertEquals(to - from, slice.length());
+		assertEquals(text.substring(from, to), readAll(slice.getReader(), 3));
+		assertSame(entityMap, slice.getEntityMap());
+		assertSame(entity, slice.getEntity(id));
+		
+		// A slice of a slice still resolves through the original text
+		PreprocessedWikitext inner = slice.slice(1, slice.length() - 1);
+		assertEquals(text.substring(from + 1, to - 1), inner.getWikitext());
+		assertSame(entity, inner.getEntity(id));
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Appends text segments, an empty text segment and entities, some of them
+	 * directly following each other.
+	 *
+	 * @return The expected content of the segments.
+	 */
+	private String appendMixed(WikitextSegments segments, WtEntityMap entityMap)
+	{
+		StringBuilder b = new StringBuilder();
+		
+		segments.appendText("abc");
+		b.append("abc");
+		
+		b.append(appendEntity(segments, entityMap, "one"));
+		b.append(appendEntity(segments, entityMap, "two"));
+		
+		segments.appendText("");
+		
+		segments.appendText("d");
+		b.append("d");
+		
+		b.append(appendEntity(segments, entityMap, "three"));
+		
+		segments.appendText("efgh");
+		b.append("efgh");
+		
+		return b.toString();
+	}
+	
+	private String appendEntity(
+			WikitextSegments segments,
+			WtEntityMap entityMap,
+			String text)
+	{
+		WtNode entity = nf.text(text);
+		int id = entityMap.registerEntity(entity);
+		segments.appendEntity(id, entity);
+		return "\uE000" + id + "\uE001";
+	}
+	
+	private static String readAll(Reader reader, int bufferSize) throws IOException
+	{
+		StringBuilder b = new StringBuilder();
+		char[] buffer = new char[bufferSize];
+		int read;
+		while ((read = reader.read(buffer, 0, bufferSize)) != -1)
+		{
+			assertTrue(read > 0);
+			b.append(buffer, 0, read);
+		}
+		return b.toString();
+	}
+}